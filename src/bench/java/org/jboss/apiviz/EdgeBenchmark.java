@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.apiviz.FakeDocletModel.Shape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Edge#compareTo(Edge)}, which orders the edges of every
+ * diagram.  Most edges of a diagram share the same type, so the comparison
+ * usually falls through to the qualified names of both ends.
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args=EdgeBenchmark
+ * </pre>
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class EdgeBenchmark {
+
+    @Param({ "100", "10000" })
+    public int edges;
+
+    private Edge[] edgeArray;
+
+    @Setup
+    public void setUp() {
+        List<ApiClass> classes = ApiModelExtractor.extract(
+                FakeDocletModel.newRootDoc(Shape.MIXED, 1000, 42)).getClasses();
+        EdgeType[] types = EdgeType.values();
+        Random random = new Random(42);
+        edgeArray = new Edge[edges];
+        for (int i = 0; i < edges; i ++) {
+            ApiClass source = classes.get(random.nextInt(classes.size()));
+            ApiClass target = classes.get(random.nextInt(classes.size()));
+            EdgeType type = types[random.nextInt(4) == 0? random.nextInt(types.length) : 0];
+            if (random.nextBoolean()) {
+                edgeArray[i] = new Edge(type, source, target);
+            } else {
+                edgeArray[i] = new Edge(type, source, target, "1", "*", "uses", random.nextBoolean());
+            }
+        }
+    }
+
+    @Benchmark
+    public int compareTo() {
+        int sum = 0;
+        for (int i = 1; i < edgeArray.length; i ++) {
+            sum += edgeArray[i - 1].compareTo(edgeArray[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public List<Edge> sort() {
+        List<Edge> list = new ArrayList<Edge>(edgeArray.length);
+        Collections.addAll(list, edgeArray);
+        Collections.sort(list);
+        return list;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.apiviz.FakeDocletModel.Shape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long {@link GraphAggregator} takes to merge the fragments
+ * of a synthetic API split into modules, compared to loading the merged
+ * graph saved by a previous run when no fragment changed.
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args=GraphAggregationBenchmark
+ * </pre>
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class GraphAggregationBenchmark {
+
+    @Param({ "4", "16" })
+    public int modules;
+
+    @Param({ "20000" })
+    public int classes;
+
+    private final List<File> files = new ArrayList<File>();
+    private File merged;
+
+    @Setup
+    public void setUp() throws IOException {
+        for (int i = 0; i < modules; i ++) {
+            File f = File.createTempFile("apiviz-", ".snapshot");
+            GraphSnapshot.write(
+                    new ClassDocGraph(ApiModelExtractor.extract(
+                            FakeDocletModel.newModuleRootDoc(Shape.MIXED, classes, 42, i, modules))),
+                    f);
+            files.add(f);
+        }
+        merged = File.createTempFile("apiviz-", ".snapshot");
+        GraphSnapshot.write(new GraphAggregator(LayoutPolicy.DEFAULT, 1).aggregate(files), merged);
+        GraphAggregator.writeFragmentList(merged, files);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File f: files) {
+            f.delete();
+        }
+        GraphAggregator.invalidate(merged);
+        merged.delete();
+    }
+
+    @Benchmark
+    public ClassDocGraph aggregateAll() throws IOException {
+        return new GraphAggregator(LayoutPolicy.DEFAULT, 1).aggregate(files);
+    }
+
+    @Benchmark
+    public ClassDocGraph loadUpToDate() throws IOException {
+        if (!GraphAggregator.isUpToDate(merged, files)) {
+            throw new IllegalStateException("not up to date");
+        }
+        return GraphSnapshot.open(merged).toGraph(LayoutPolicy.DEFAULT);
+    }
+}
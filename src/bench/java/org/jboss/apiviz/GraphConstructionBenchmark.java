@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.apiviz.FakeDocletModel.Shape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.javadoc.RootDoc;
+
+/**
+ * Measures how the construction of a {@link ClassDocGraph} and the
+ * extraction of its {@link ApiModel} scale with the number of threads, for
+ * a synthetic API of 20,000 types.  Compare the results of each thread
+ * count with the number of available cores of the machine.
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args=GraphConstructionBenchmark
+ * </pre>
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class GraphConstructionBenchmark {
+
+    @Param({ "MIXED", "HEAVY_TAGS" })
+    public Shape shape;
+
+    @Param({ "1", "2", "4", "8" })
+    public int threads;
+
+    @Param({ "20000" })
+    public int classes;
+
+    private RootDoc root;
+    private ApiModel model;
+
+    @Setup
+    public void setUp() {
+        root = FakeDocletModel.newRootDoc(shape, classes, 42);
+        model = ApiModelExtractor.extract(root, threads);
+    }
+
+    @Benchmark
+    public ApiModel extract() {
+        return ApiModelExtractor.extract(root, threads);
+    }
+
+    @Benchmark
+    public ClassDocGraph construct() {
+        return new ClassDocGraph(model, LayoutPolicy.DEFAULT, threads);
+    }
+}
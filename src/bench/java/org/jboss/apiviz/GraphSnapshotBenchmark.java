@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.apiviz.FakeDocletModel.Shape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to open a {@link GraphSnapshot} and look a
+ * class and its edges up, compared to decoding the whole graph.
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args=GraphSnapshotBenchmark
+ * </pre>
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class GraphSnapshotBenchmark {
+
+    @Param({ "20000", "100000" })
+    public int classes;
+
+    private File file;
+    private String className;
+
+    @Setup
+    public void setUp() throws IOException {
+        ClassDocGraph graph = new ClassDocGraph(
+                ApiModelExtractor.extract(FakeDocletModel.newRootDoc(Shape.MIXED, classes, 42)));
+        className = graph.getModel().getClasses().get(classes / 2).getQualifiedName();
+        file = File.createTempFile("apiviz-", ".snapshot");
+        GraphSnapshot.write(graph, file);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public int openAndLookup() throws IOException {
+        GraphSnapshot snapshot = GraphSnapshot.open(file);
+        int vertex = snapshot.getClassVertex(snapshot.findClass(className));
+        int sum = 0;
+        for (int i = 0; i < snapshot.getOutgoingEdgeCount(vertex); i ++) {
+            sum += snapshot.getEdgeTarget(snapshot.getOutgoingEdge(vertex, i));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public ClassDocGraph decode() throws IOException {
+        return GraphSnapshot.open(file).toGraph(LayoutPolicy.DEFAULT);
+    }
+}
@@ -19,17 +19,10 @@ package org.jboss.apiviz;
 
 import static org.jboss.apiviz.Constant.*;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.Map;
-import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import com.sun.javadoc.ClassDoc;
 import com.sun.javadoc.DocErrorReporter;
 import com.sun.javadoc.LanguageVersion;
-import com.sun.javadoc.PackageDoc;
 import com.sun.javadoc.RootDoc;
 import com.sun.tools.doclets.standard.Standard;
 
@@ -42,144 +35,158 @@ import com.sun.tools.doclets.standard.Standard;
  */
 public class APIviz {
 
-    private static final Pattern INSERTION_POINT_PATTERN = Pattern.compile(
-            "((<\\/PRE>)(?=\\s*<P>)|(?=<TABLE BORDER=\"1\"))");
-
     public static boolean start(RootDoc root) {
         root = new APIvizRootDoc(root);
+        PerformanceReport report = new PerformanceReport();
+        long startTime = System.nanoTime();
         if (!Standard.start(root)) {
             return false;
         }
+        report.addPhase(
+                PerformanceReport.PHASE_STANDARD_DOCLET, System.nanoTime() - startTime);
 
-        if (!Graphviz.isAvailable()) {
-            root.printWarning("Graphviz is not found in the system path.");
-            root.printWarning("Skipping diagram generation.");
-            return true;
-        }
-
+        RenderSetup setup = new RenderSetup(root.options(), root);
+        int threads = setup.getThreads();
+        DiagramManifest manifest = null;
+        boolean complete = false;
         try {
-            File outputDirectory = getOutputDirectory(root.options());
-            ClassDocGraph graph = new ClassDocGraph(root);
-            generateOverviewSummary(root, graph, outputDirectory);
-            generatePackageSummaries(root, graph, outputDirectory);
-            generateClassDiagrams(root, graph, outputDirectory);
+            manifest = setup.openManifest();
+
+            // The diagrams are generated from the model only; the root is
+            // used only for reporting from now on.
+            startTime = System.nanoTime();
+            ApiModel model = ApiModelExtractor.extract(root, threads);
+            report.addPhase(
+                    PerformanceReport.PHASE_MODEL_EXTRACTION,
+                    System.nanoTime() - startTime);
+
+            startTime = System.nanoTime();
+            root.printNotice("Building graph for all classes...");
+            ClassDocGraph graph = new ClassDocGraph(model, setup.getLayoutPolicy(), threads);
+            report.addPhase(
+                    PerformanceReport.PHASE_GRAPH_CONSTRUCTION,
+                    System.nanoTime() - startTime);
+            setup.writeSnapshot(graph, report);
+
+            startTime = System.nanoTime();
+            DiagramGenerator generator = setup.newGenerator(graph, manifest, report);
+            generator.generateOverviewSummary();
+            generator.generatePackageSummaries();
+            if (RenderSetup.hasOption(root.options(), OPTION_LAZY)) {
+                root.printNotice(
+                        "Leaving the class diagrams to be rendered on demand.");
+            } else {
+                generator.generateClassDiagrams();
+            }
+            setup.getPool().finish();
+            complete = true;
+            report.addPhase(
+                    PerformanceReport.PHASE_DIAGRAM_GENERATION,
+                    System.nanoTime() - startTime);
+            setup.printSummary(generator);
         } catch(Throwable t) {
             root.printError(
                     "An error occurred during diagram generation: " +
                     t.toString());
             t.printStackTrace();
             return false;
+        } finally {
+            setup.close();
+            if (manifest != null) {
+                try {
+                    manifest.close(complete);
+                } catch (IOException e) {
+                    root.printWarning("Failed to write the manifest: " + e);
+                }
+            }
         }
         return true;
     }
 
     public static boolean validOptions(String[][] options, DocErrorReporter errorReporter) {
-        return Standard.validOptions(options, errorReporter);
-    }
-
-    public static int optionLength(String option) {
-        return Standard.optionLength(option);
-    }
-
-    public static LanguageVersion languageVersion() {
-        return Standard.languageVersion();
+        return checkOptions(options, errorReporter) &&
+               Standard.validOptions(options, errorReporter);
     }
 
-    private static void generateOverviewSummary(RootDoc root, ClassDocGraph graph, File outputDirectory) throws IOException {
-        instrumentDiagram(
-                root, outputDirectory, "overview-summary",
-                graph.getOverviewSummaryDiagram());
-    }
-
-    private static void generatePackageSummaries(RootDoc root, ClassDocGraph graph, File outputDirectory) throws IOException {
-        for (PackageDoc p: getPackages(root).values()) {
-            instrumentDiagram(
-                    root, outputDirectory,
-                    p.name().replace('.', File.separatorChar) +
-                    File.separatorChar + "package-summary",
-                    graph.getPackageSummaryDiagram(p));
+    /**
+     * Validates the {@code -apiviz.*} options only.
+     */
+    static boolean checkOptions(String[][] options, DocErrorReporter errorReporter) {
+        for (String[] o: options) {
+            if (o[0].equals(OPTION_THREADS) || o[0].equals(OPTION_CACHE_SIZE) ||
+                o[0].equals(OPTION_LAYOUT_THRESHOLD) ||
+                o[0].equals(OPTION_MEMORY_CACHE_SIZE)) {
+                try {
+                    if (Integer.parseInt(o[1]) > 0) {
+                        continue;
+                    }
+                } catch (NumberFormatException e) {
+                    // Fall through
+                }
+                errorReporter.printError(
+                        o[0] + " requires a positive integer: " + o[1]);
+                return false;
+            }
+            if (o[0].equals(OPTION_TIMEOUT) || o[0].equals(OPTION_PORT)) {
+                try {
+                    if (Integer.parseInt(o[1]) >= 0) {
+                        continue;
+                    }
+                } catch (NumberFormatException e) {
+                    // Fall through
+                }
+                errorReporter.printError(
+                        o[0] + " requires a non-negative integer: " + o[1]);
+                return false;
+            }
+            if (o[0].equals(OPTION_FORMAT) && DiagramFormat.parse(o[1]) == null) {
+                errorReporter.printError(
+                        o[0] + " requires png, svg or inline-svg: " + o[1]);
+                return false;
+            }
         }
-    }
-
-    private static void generateClassDiagrams(RootDoc root, ClassDocGraph graph, File outputDirectory) throws IOException {
-        for (ClassDoc c: root.classes()) {
-            instrumentDiagram(
-                    root, outputDirectory,
-                    c.qualifiedName().replace('.', File.separatorChar),
-                    graph.getClassDiagram(c));
+        if (RenderSetup.hasOption(options, OPTION_LAZY) &&
+            RenderSetup.getOption(options, OPTION_SNAPSHOT) == null) {
+            errorReporter.printError(
+                    OPTION_LAZY + " requires " + OPTION_SNAPSHOT + '.');
+            return false;
         }
+        return true;
     }
 
-    private static Map<String, PackageDoc> getPackages(RootDoc root) {
-        Map<String, PackageDoc> packages = new TreeMap<String, PackageDoc>();
-        for (ClassDoc c: root.classes()) {
-            PackageDoc p = c.containingPackage();
-            if(!packages.containsKey(p.name())) {
-                packages.put(p.name(), p);
-            }
+    public static int optionLength(String option) {
+        int length = getOptionLength(option);
+        if (length != 0) {
+            return length;
         }
-
-        return packages;
+        return Standard.optionLength(option);
     }
 
-    private static void instrumentDiagram(RootDoc root, File outputDirectory, String filename, String diagram) throws IOException {
-        File htmlFile = new File(outputDirectory, filename + ".html");
-        File pngFile = new File(outputDirectory, filename + ".png");
-        File mapFile = new File(outputDirectory, filename + ".map");
-
-        if (!htmlFile.exists()) {
-            // May be an inner class?
-            for (;;) {
-                int idx = filename.lastIndexOf(File.separatorChar);
-                if (idx > 0) {
-                    filename = filename.substring(0, idx) + '.' +
-                               filename.substring(idx + 1);
-                } else {
-                    // Give up (maybe missing)
-                    return;
-                }
-                htmlFile = new File(outputDirectory, filename + ".html");
-                if (htmlFile.exists()) {
-                    pngFile = new File(outputDirectory, filename + ".png");
-                    mapFile = new File(outputDirectory, filename + ".map");
-                    break;
-                }
-            }
+    /**
+     * Returns the length of an {@code -apiviz.*} option, or {@code 0} if the
+     * option is not one of them.
+     */
+    static int getOptionLength(String option) {
+        if (option.equals(OPTION_THREADS) ||
+            option.equals(OPTION_CACHE_DIR) ||
+            option.equals(OPTION_CACHE_SIZE) ||
+            option.equals(OPTION_MANIFEST) ||
+            option.equals(OPTION_SNAPSHOT) ||
+            option.equals(OPTION_FORMAT) ||
+            option.equals(OPTION_TIMEOUT) ||
+            option.equals(OPTION_LAYOUT_THRESHOLD) ||
+            option.equals(OPTION_PORT) ||
+            option.equals(OPTION_MEMORY_CACHE_SIZE)) {
+            return 2;
         }
-
-        root.printNotice("Generating " + pngFile + "...");
-        Graphviz.writeImageAndMap(diagram, outputDirectory, filename);
-
-        try {
-            String oldContent = FileUtil.readFile(htmlFile);
-            String mapContent = FileUtil.readFile(mapFile);
-
-            Matcher matcher = INSERTION_POINT_PATTERN.matcher(oldContent);
-            if (!matcher.find()) {
-                throw new IllegalStateException(
-                        "Failed to find an insertion point.");
-            }
-            String newContent =
-                oldContent.substring(0, matcher.end()) +
-                mapContent + NEWLINE +
-                "<CENTER><IMG SRC=\"" + pngFile.getName() +
-                "\" USEMAP=\"#APIVIZ\" BORDER=\"0\"></CENTER>" +
-                NEWLINE + NEWLINE +
-                oldContent.substring(matcher.end());
-            FileUtil.writeFile(htmlFile, newContent);
-        } finally {
-            mapFile.delete();
+        if (option.equals(OPTION_BATCH) || option.equals(OPTION_DRAFT) ||
+            option.equals(OPTION_LAZY)) {
+            return 1;
         }
+        return 0;
     }
 
-    private static File getOutputDirectory(String[][] options) {
-        for (String[] o: options) {
-            if (o[0].equals("-d")) {
-                return new File(o[1]);
-            }
-        }
-
-        // Fall back to the current working directory.
-        return new File(System.getProperty("user.dir", "."));
+    public static LanguageVersion languageVersion() {
+        return Standard.languageVersion();
     }
 }
@@ -53,13 +53,13 @@ public class APIvizRootDoc implements RootDoc {
                msg.indexOf(TAG_EXCLUDE + ' ') >= 0;
     }
 
-    public void printWarning(SourcePosition arg0, String arg1) {
+    public synchronized void printWarning(SourcePosition arg0, String arg1) {
         if (!isAboutApiVizTag(arg1)) {
             root.printWarning(arg0, arg1);
         }
     }
 
-    public void printWarning(String arg0) {
+    public synchronized void printWarning(String arg0) {
         if (!isAboutApiVizTag(arg0)) {
             root.printWarning(arg0);
         }
@@ -161,19 +161,19 @@ public class APIvizRootDoc implements RootDoc {
         return root.position();
     }
 
-    public void printError(SourcePosition arg0, String arg1) {
+    public synchronized void printError(SourcePosition arg0, String arg1) {
         root.printError(arg0, arg1);
     }
 
-    public void printError(String arg0) {
+    public synchronized void printError(String arg0) {
         root.printError(arg0);
     }
 
-    public void printNotice(SourcePosition arg0, String arg1) {
+    public synchronized void printNotice(SourcePosition arg0, String arg1) {
         root.printNotice(arg0, arg1);
     }
 
-    public void printNotice(String arg0) {
+    public synchronized void printNotice(String arg0) {
         root.printNotice(arg0);
     }
 
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A class, an interface, an enum or an annotation type of an
+ * {@link ApiModel}.  Only the classes documented in this run know their
+ * relationships - the others are referred to by name only.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class ApiClass extends ApiElement {
+
+    public static final int INTERFACE       = 0x01;
+    public static final int ABSTRACT        = 0x02;
+    public static final int EXCEPTION       = 0x04;
+    public static final int ANNOTATION_TYPE = 0x08;
+    public static final int ENUM            = 0x10;
+    /**
+     * Set if the class has at least one method and all its methods are
+     * static.
+     */
+    public static final int STATIC_TYPE     = 0x20;
+
+    private final ApiPackage containingPackage;
+    private final int flags;
+
+    private ApiClass superclass;
+    private List<ApiClass> interfaces = Collections.emptyList();
+    private List<ApiClass> seeAlso = Collections.emptyList();
+    private List<ApiClass> memberTypes = Collections.emptyList();
+    private List<ApiPackage> importedPackages = Collections.emptyList();
+    private List<ApiClass> importedClasses = Collections.emptyList();
+
+    /**
+     * @param name   the name of the class without its package, such as
+     *               {@code Map.Entry}
+     * @param flags  the bitwise OR of {@link #INTERFACE}, {@link #ABSTRACT}
+     *               and the other flags
+     */
+    public ApiClass(
+            ApiPackage containingPackage, String name, String qualifiedName,
+            int flags, boolean included, ApiPosition position, List<ApiTag> tags) {
+        super(name, qualifiedName, included, position, tags);
+        if (containingPackage == null) {
+            throw new NullPointerException("containingPackage");
+        }
+        this.containingPackage = containingPackage;
+        this.flags = flags;
+    }
+
+    /**
+     * Sets the relationships of the class.  Called only once, before the
+     * model is published.
+     */
+    void setRelations(
+            ApiClass superclass, List<ApiClass> interfaces, List<ApiClass> seeAlso,
+            List<ApiClass> memberTypes,
+            List<ApiPackage> importedPackages, List<ApiClass> importedClasses) {
+        this.superclass = superclass;
+        this.interfaces = Collections.unmodifiableList(interfaces);
+        this.seeAlso = Collections.unmodifiableList(seeAlso);
+        this.memberTypes = Collections.unmodifiableList(memberTypes);
+        this.importedPackages = Collections.unmodifiableList(importedPackages);
+        this.importedClasses = Collections.unmodifiableList(importedClasses);
+    }
+
+    public ApiPackage getContainingPackage() {
+        return containingPackage;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public boolean isInterface() {
+        return (flags & INTERFACE) != 0;
+    }
+
+    public boolean isAbstract() {
+        return (flags & ABSTRACT) != 0;
+    }
+
+    public boolean isException() {
+        return (flags & EXCEPTION) != 0;
+    }
+
+    public boolean isAnnotationType() {
+        return (flags & ANNOTATION_TYPE) != 0;
+    }
+
+    public boolean isEnum() {
+        return (flags & ENUM) != 0;
+    }
+
+    public boolean isStaticType() {
+        return (flags & STATIC_TYPE) != 0;
+    }
+
+    /**
+     * Returns the superclass, or {@code null} if the class has no
+     * superclass or is not documented in this run.
+     */
+    public ApiClass getSuperclass() {
+        return superclass;
+    }
+
+    public List<ApiClass> getInterfaces() {
+        return interfaces;
+    }
+
+    /**
+     * Returns the classes referenced by the {@code @see} tags.
+     */
+    public List<ApiClass> getSeeAlso() {
+        return seeAlso;
+    }
+
+    /**
+     * Returns the class types of the fields, and then the return type and
+     * the parameter types of each method, in the order of their
+     * declarations.  A type appears as many times as it is referenced.
+     */
+    public List<ApiClass> getMemberTypes() {
+        return memberTypes;
+    }
+
+    public List<ApiPackage> getImportedPackages() {
+        return importedPackages;
+    }
+
+    public List<ApiClass> getImportedClasses() {
+        return importedClasses;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A class or a package of an {@link ApiModel}.  There's only one element
+ * of the same qualified name in a model, so elements are compared by
+ * identity.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public abstract class ApiElement {
+
+    private final String name;
+    private final String qualifiedName;
+    private final boolean included;
+    private final ApiPosition position;
+    private final List<ApiTag> tags;
+    private volatile DocMetadata metadata;
+
+    /**
+     * @param tags      the {@code @apiviz.*} and {@code @deprecated} tags
+     * @param position  the position of the element, or {@code null} if
+     *                  unknown
+     */
+    ApiElement(
+            String name, String qualifiedName, boolean included,
+            ApiPosition position, List<ApiTag> tags) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        if (qualifiedName == null) {
+            throw new NullPointerException("qualifiedName");
+        }
+        if (tags == null) {
+            throw new NullPointerException("tags");
+        }
+        this.name = name;
+        this.qualifiedName = qualifiedName;
+        this.included = included;
+        this.position = position;
+        this.tags = Collections.unmodifiableList(tags);
+    }
+
+    /**
+     * Returns the name of a class without its package, or the name of a
+     * package.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getQualifiedName() {
+        return qualifiedName;
+    }
+
+    /**
+     * Returns {@code true} if the element is documented in this run.
+     */
+    public boolean isIncluded() {
+        return included;
+    }
+
+    public ApiPosition getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the {@code @apiviz.*} and {@code @deprecated} tags in the
+     * order of their appearance.
+     */
+    public List<ApiTag> getTags() {
+        return tags;
+    }
+
+    /**
+     * Returns the parsed tags, which are available once the model has been
+     * {@linkplain ApiModelExtractor extracted}.
+     */
+    public DocMetadata getMetadata() {
+        return metadata;
+    }
+
+    void setMetadata(DocMetadata metadata) {
+        this.metadata = metadata;
+    }
+
+    @Override
+    public String toString() {
+        return qualifiedName;
+    }
+}
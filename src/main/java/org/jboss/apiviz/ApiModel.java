@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The classes and packages APIviz draws diagrams of, copied out of the
+ * doclet API by {@link ApiModelExtractor}.  Immutable and safe for
+ * concurrent reads.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class ApiModel {
+
+    private final List<ApiClass> classes;
+    private final List<ApiPackage> packages;
+    private final Map<String, ApiClass> names;
+
+    /**
+     * @param classes the classes documented in this run
+     * @param names   the classes resolved by their names, including the
+     *                names which could not be resolved, mapped to
+     *                {@code null}
+     */
+    public ApiModel(List<ApiClass> classes, Map<String, ApiClass> names) {
+        if (classes == null) {
+            throw new NullPointerException("classes");
+        }
+        if (names == null) {
+            throw new NullPointerException("names");
+        }
+        this.classes = Collections.unmodifiableList(new ArrayList<ApiClass>(classes));
+        this.names = new HashMap<String, ApiClass>(names);
+
+        Map<String, ApiPackage> packages = new TreeMap<String, ApiPackage>();
+        for (ApiClass c: classes) {
+            ApiPackage p = c.getContainingPackage();
+            if (!packages.containsKey(p.getName())) {
+                packages.put(p.getName(), p);
+            }
+        }
+        this.packages = Collections.unmodifiableList(
+                new ArrayList<ApiPackage>(packages.values()));
+    }
+
+    /**
+     * Returns the classes documented in this run, in the order the doclet
+     * API returned them.
+     */
+    public List<ApiClass> getClasses() {
+        return classes;
+    }
+
+    /**
+     * Returns the packages of the {@linkplain #getClasses() classes}, sorted
+     * by their names.
+     */
+    public List<ApiPackage> getPackages() {
+        return packages;
+    }
+
+    /**
+     * Returns the class of the specified name, such as the target of an
+     * {@code @apiviz.uses} tag, or {@code null} if there's no such class.
+     */
+    public ApiClass findClass(String name) {
+        return names.get(name);
+    }
+
+    /**
+     * Returns the table {@link #findClass(String)} looks the classes up in.
+     */
+    public Map<String, ApiClass> getClassNames() {
+        return Collections.unmodifiableMap(names);
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import static org.jboss.apiviz.Constant.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.Doc;
+import com.sun.javadoc.DocErrorReporter;
+import com.sun.javadoc.FieldDoc;
+import com.sun.javadoc.MethodDoc;
+import com.sun.javadoc.PackageDoc;
+import com.sun.javadoc.Parameter;
+import com.sun.javadoc.RootDoc;
+import com.sun.javadoc.SeeTag;
+import com.sun.javadoc.SourcePosition;
+import com.sun.javadoc.Tag;
+
+/**
+ * Copies what APIviz needs out of the doclet API into an {@link ApiModel},
+ * so that no later stage keeps the javadoc objects reachable or has to
+ * synchronize on them.
+ * <p>
+ * The doclet API is not thread-safe, so the classes, their relationships
+ * and their tags are copied by the calling thread.  Parsing the tags into
+ * {@link DocMetadata} touches only the copies, so it is partitioned across
+ * the specified number of threads.  The errors found in the tags are
+ * reported in the same order regardless of the number of threads.
+ * <p>
+ * Only the classes which can appear in a diagram as a node - the classes
+ * documented in this run, their superclasses, interfaces and the classes
+ * they refer to with {@code @see} or {@code @apiviz.*} tags - keep their
+ * tags.  The other classes, such as the types of the fields, are copied by
+ * name only.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class ApiModelExtractor {
+
+    private static final int MIN_CHUNK_SIZE = 64;
+
+    public static ApiModel extract(RootDoc root) {
+        return extract(root, 1);
+    }
+
+    /**
+     * @param threads the number of threads to parse the tags with
+     */
+    public static ApiModel extract(RootDoc root, int threads) {
+        if (root == null) {
+            throw new NullPointerException("root");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads: " + threads);
+        }
+        return new ApiModelExtractor(root).extract(threads);
+    }
+
+    private final RootDoc root;
+    private final Map<String, ClassDoc> documented = new LinkedHashMap<String, ClassDoc>();
+    private final Map<String, ClassDoc> resolved = new HashMap<String, ClassDoc>();
+    private final Map<String, ApiClass> classes = new HashMap<String, ApiClass>();
+    private final Map<String, ApiPackage> packages = new HashMap<String, ApiPackage>();
+    private final List<ApiElement> elements = new ArrayList<ApiElement>();
+
+    private ApiModelExtractor(RootDoc root) {
+        this.root = root;
+    }
+
+    private ApiModel extract(int threads) {
+        root.printNotice("Extracting the API model...");
+        ClassDoc[] included = root.classes();
+
+        // Find the classes whose tags are needed first, so that each class
+        // is copied only once.
+        for (ClassDoc c: included) {
+            documented.put(c.qualifiedName(), c);
+        }
+        for (ClassDoc c: included) {
+            ClassDoc superclass = c.superclass();
+            if (superclass != null) {
+                addDocumented(superclass);
+            }
+            for (ClassDoc i: c.interfaces()) {
+                addDocumented(i);
+            }
+            for (ClassDoc s: getSeeAlso(c)) {
+                addDocumented(s);
+            }
+            for (String name: getRelationshipTargets(c)) {
+                ClassDoc target = resolve(name);
+                if (target != null) {
+                    addDocumented(target);
+                }
+            }
+        }
+
+        // Resolve the targets of the other classes too, because their
+        // relationships are parsed as well.
+        for (ClassDoc c: documented.values()) {
+            for (String name: getRelationshipTargets(c)) {
+                resolve(name);
+            }
+        }
+
+        for (ClassDoc c: documented.values()) {
+            copyClass(c, true);
+        }
+
+        List<ApiClass> includedClasses = new ArrayList<ApiClass>(included.length);
+        for (ClassDoc c: included) {
+            ApiClass cls = classes.get(c.qualifiedName());
+            copyRelations(c, cls);
+            includedClasses.add(cls);
+        }
+
+        Map<String, ApiClass> names = new HashMap<String, ApiClass>(classes);
+        for (Map.Entry<String, ClassDoc> e: resolved.entrySet()) {
+            ClassDoc c = e.getValue();
+            names.put(e.getKey(), c == null? null : copyClass(c, false));
+        }
+
+        ApiModel model = new ApiModel(includedClasses, names);
+        parseTags(elements, model, root, threads);
+        return model;
+    }
+
+    private void addDocumented(ClassDoc cls) {
+        String name = cls.qualifiedName();
+        if (!documented.containsKey(name)) {
+            documented.put(name, cls);
+        }
+    }
+
+    private ClassDoc resolve(String name) {
+        if (resolved.containsKey(name)) {
+            return resolved.get(name);
+        }
+        ClassDoc cls = root.classNamed(name);
+        resolved.put(name, cls);
+        return cls;
+    }
+
+    private static List<ClassDoc> getSeeAlso(ClassDoc cls) {
+        List<ClassDoc> seeAlso = new ArrayList<ClassDoc>();
+        for (SeeTag t: cls.seeTags()) {
+            ClassDoc referencedClass;
+            try {
+                referencedClass = t.referencedClass();
+            } catch (Exception e) {
+                continue;
+            }
+            if (referencedClass != null) {
+                seeAlso.add(referencedClass);
+            }
+        }
+        return seeAlso;
+    }
+
+    /**
+     * Returns the target names of the valid relationship tags of the
+     * specified class.  The invalid ones are reported later by
+     * {@link DocMetadata}.
+     */
+    private static List<String> getRelationshipTargets(ClassDoc cls) {
+        List<String> names = null;
+        for (Tag t: cls.tags()) {
+            if (DocMetadata.getRelationshipType(t.name()) == null) {
+                continue;
+            }
+            try {
+                String name = Edge.parseSpec(t.text()).targetName;
+                if (names == null) {
+                    names = new ArrayList<String>();
+                }
+                names.add(name);
+            } catch (IllegalArgumentException e) {
+                // Ignore.
+            }
+        }
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        return names;
+    }
+
+    private ApiClass copyClass(ClassDoc cls, boolean withTags) {
+        String name = cls.qualifiedName();
+        ApiClass copy = classes.get(name);
+        if (copy != null) {
+            return copy;
+        }
+
+        int flags = 0;
+        if (cls.isInterface()) {
+            flags |= ApiClass.INTERFACE;
+        }
+        if (cls.isAbstract()) {
+            flags |= ApiClass.ABSTRACT;
+        }
+        if (cls.isException()) {
+            flags |= ApiClass.EXCEPTION;
+        }
+        if (cls.isAnnotationType()) {
+            flags |= ApiClass.ANNOTATION_TYPE;
+        }
+        if (cls.isEnum()) {
+            flags |= ApiClass.ENUM;
+        }
+        if (isStaticType(cls)) {
+            flags |= ApiClass.STATIC_TYPE;
+        }
+
+        copy = new ApiClass(
+                copyPackage(cls.containingPackage(), withTags), cls.name(), name,
+                flags, cls.isIncluded(), ApiPosition.copyOf(cls.position()),
+                withTags? copyTags(cls) : Collections.<ApiTag>emptyList());
+        classes.put(name, copy);
+        elements.add(copy);
+        return copy;
+    }
+
+    private static boolean isStaticType(ClassDoc cls) {
+        int methods = 0;
+        for (MethodDoc m: cls.methods()) {
+            if (m.isConstructor()) {
+                continue;
+            }
+            methods ++;
+            if (!m.isStatic()) {
+                return false;
+            }
+        }
+        return methods > 0;
+    }
+
+    private ApiPackage copyPackage(PackageDoc pkg, boolean withTags) {
+        String name = pkg.name();
+        ApiPackage copy = packages.get(name);
+        if (copy != null) {
+            return copy;
+        }
+
+        copy = new ApiPackage(
+                name, pkg.isIncluded(), ApiPosition.copyOf(pkg.position()),
+                withTags? copyTags(pkg) : Collections.<ApiTag>emptyList());
+        packages.put(name, copy);
+        elements.add(copy);
+        return copy;
+    }
+
+    private static List<ApiTag> copyTags(Doc doc) {
+        List<ApiTag> tags = null;
+        for (Tag t: doc.tags()) {
+            String name = t.name();
+            if (!name.equals("@deprecated") && !name.startsWith(TAG_PREFIX)) {
+                continue;
+            }
+            if (tags == null) {
+                tags = new ArrayList<ApiTag>();
+            }
+            tags.add(new ApiTag(name, t.text(), ApiPosition.copyOf(t.position())));
+        }
+        if (tags == null) {
+            return Collections.emptyList();
+        }
+        return tags;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void copyRelations(ClassDoc cls, ApiClass copy) {
+        ClassDoc superclass = cls.superclass();
+
+        List<ApiClass> interfaces = new ArrayList<ApiClass>();
+        for (ClassDoc i: cls.interfaces()) {
+            interfaces.add(copyClass(i, false));
+        }
+
+        List<ApiClass> seeAlso = new ArrayList<ApiClass>();
+        for (ClassDoc s: getSeeAlso(cls)) {
+            seeAlso.add(copyClass(s, false));
+        }
+
+        List<ApiClass> memberTypes = new ArrayList<ApiClass>();
+        for (FieldDoc f: cls.fields()) {
+            addMemberType(memberTypes, f.type().asClassDoc());
+        }
+        for (MethodDoc m: cls.methods()) {
+            addMemberType(memberTypes, m.returnType().asClassDoc());
+            for (Parameter p: m.parameters()) {
+                addMemberType(memberTypes, p.type().asClassDoc());
+            }
+        }
+
+        // This is likely to be removed in the future.. but this is the
+        // most precise way to figure out the dependencies in JavaDoc.
+        List<ApiPackage> importedPackages = new ArrayList<ApiPackage>();
+        try {
+            for (PackageDoc p: cls.importedPackages()) {
+                importedPackages.add(copyPackage(p, false));
+            }
+        } catch (Exception e) {
+            importedPackages.clear();
+        }
+        List<ApiClass> importedClasses = new ArrayList<ApiClass>();
+        try {
+            for (ClassDoc c: cls.importedClasses()) {
+                importedClasses.add(copyClass(c, false));
+            }
+        } catch (Exception e) {
+            importedClasses.clear();
+        }
+
+        copy.setRelations(
+                superclass == null? null : copyClass(superclass, false),
+                interfaces, seeAlso, memberTypes, importedPackages, importedClasses);
+    }
+
+    private void addMemberType(List<ApiClass> memberTypes, ClassDoc type) {
+        if (type != null) {
+            memberTypes.add(copyClass(type, false));
+        }
+    }
+
+    /**
+     * Parses the tags of the specified elements, in chunks of consecutive
+     * elements, and replays the errors of each chunk in the order of the
+     * chunks.
+     */
+    static void parseTags(
+            List<? extends ApiElement> elements, final ApiModel model,
+            DocErrorReporter reporter, int threads) {
+        int chunkSize = ParallelUtil.getChunkSize(elements.size(), threads, MIN_CHUNK_SIZE);
+        List<Callable<BufferedReporter>> chunks = new ArrayList<Callable<BufferedReporter>>();
+        for (int i = 0; i < elements.size(); i += chunkSize) {
+            final List<? extends ApiElement> chunk =
+                elements.subList(i, Math.min(elements.size(), i + chunkSize));
+            chunks.add(new Callable<BufferedReporter>() {
+                public BufferedReporter call() {
+                    BufferedReporter reporter = new BufferedReporter();
+                    for (ApiElement e: chunk) {
+                        e.setMetadata(new DocMetadata(e, model, reporter));
+                    }
+                    return reporter;
+                }
+            });
+        }
+
+        List<BufferedReporter> reporters = ParallelUtil.invokeAll(chunks, threads);
+        for (BufferedReporter r: reporters) {
+            r.replay(reporter);
+        }
+    }
+
+    /**
+     * Keeps the errors of a chunk until they can be reported in order.
+     */
+    private static final class BufferedReporter implements DocErrorReporter {
+
+        private static final int ERROR = 0;
+        private static final int WARNING = 1;
+        private static final int NOTICE = 2;
+
+        private final List<Object[]> messages = new ArrayList<Object[]>();
+
+        public void printError(String msg) {
+            add(ERROR, null, msg);
+        }
+
+        public void printError(SourcePosition pos, String msg) {
+            add(ERROR, pos, msg);
+        }
+
+        public void printWarning(String msg) {
+            add(WARNING, null, msg);
+        }
+
+        public void printWarning(SourcePosition pos, String msg) {
+            add(WARNING, pos, msg);
+        }
+
+        public void printNotice(String msg) {
+            add(NOTICE, null, msg);
+        }
+
+        public void printNotice(SourcePosition pos, String msg) {
+            add(NOTICE, pos, msg);
+        }
+
+        private void add(int level, SourcePosition pos, String msg) {
+            messages.add(new Object[] { Integer.valueOf(level), pos, msg });
+        }
+
+        void replay(DocErrorReporter reporter) {
+            for (Object[] m: messages) {
+                SourcePosition pos = (SourcePosition) m[1];
+                String msg = (String) m[2];
+                switch (((Integer) m[0]).intValue()) {
+                case ERROR:
+                    if (pos == null) {
+                        reporter.printError(msg);
+                    } else {
+                        reporter.printError(pos, msg);
+                    }
+                    break;
+                case WARNING:
+                    if (pos == null) {
+                        reporter.printWarning(msg);
+                    } else {
+                        reporter.printWarning(pos, msg);
+                    }
+                    break;
+                default:
+                    if (pos == null) {
+                        reporter.printNotice(msg);
+                    } else {
+                        reporter.printNotice(pos, msg);
+                    }
+                }
+            }
+        }
+    }
+}
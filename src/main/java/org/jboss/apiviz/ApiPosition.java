@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+
+import com.sun.javadoc.SourcePosition;
+
+/**
+ * An immutable copy of a {@link SourcePosition}, which does not keep the
+ * source file of javadoc in memory.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class ApiPosition implements SourcePosition {
+
+    private final File file;
+    private final int line;
+    private final int column;
+
+    /**
+     * Returns a copy of the specified position, or {@code null} if the
+     * position is {@code null}.
+     */
+    public static ApiPosition copyOf(SourcePosition position) {
+        if (position == null) {
+            return null;
+        }
+        if (position instanceof ApiPosition) {
+            return (ApiPosition) position;
+        }
+        return new ApiPosition(position.file(), position.line(), position.column());
+    }
+
+    public ApiPosition(File file, int line, int column) {
+        this.file = file;
+        this.line = line;
+        this.column = column;
+    }
+
+    public File file() {
+        return file;
+    }
+
+    public int line() {
+        return line;
+    }
+
+    public int column() {
+        return column;
+    }
+
+    @Override
+    public String toString() {
+        if (file == null) {
+            return "";
+        }
+        return line > 0? file.getPath() + ':' + line : file.getPath();
+    }
+}
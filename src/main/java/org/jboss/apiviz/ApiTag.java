@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+/**
+ * A block tag of an {@link ApiElement}, such as {@code @apiviz.uses}.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class ApiTag {
+
+    private final String name;
+    private final String text;
+    private final ApiPosition position;
+
+    /**
+     * @param name      the name of the tag with the leading {@code @}
+     * @param position  the position of the tag, or {@code null} if unknown
+     */
+    public ApiTag(String name, String text, ApiPosition position) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        if (text == null) {
+            throw new NullPointerException("text");
+        }
+        this.name = name;
+        this.text = text;
+        this.position = position;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public ApiPosition getPosition() {
+        return position;
+    }
+
+    @Override
+    public String toString() {
+        return name + ' ' + text;
+    }
+}
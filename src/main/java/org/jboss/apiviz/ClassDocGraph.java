@@ -20,25 +20,27 @@ package org.jboss.apiviz;
 import static org.jboss.apiviz.Constant.*;
 import static org.jboss.apiviz.EdgeType.*;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.regex.Pattern;
-
-import com.sun.javadoc.ClassDoc;
-import com.sun.javadoc.Doc;
-import com.sun.javadoc.FieldDoc;
-import com.sun.javadoc.MethodDoc;
-import com.sun.javadoc.PackageDoc;
-import com.sun.javadoc.Parameter;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import com.sun.javadoc.RootDoc;
-import com.sun.javadoc.SeeTag;
-import com.sun.javadoc.Tag;
 
 /**
+ * The graph of the classes of an {@link ApiModel} and their
+ * relationships, which generates the DOT source of the diagrams.  It
+ * touches only the model, so it is safe to generate many diagrams at once.
+ *
  * @author The APIviz Project (http://apiviz.googlecode.com/)
  * @author Trustin Lee (http://gleamynode.net/)
  *
@@ -47,138 +49,249 @@ import com.sun.javadoc.Tag;
  */
 public class ClassDocGraph {
 
-    private final RootDoc root;
-    private final Map<String, ClassDoc> nodes = new TreeMap<String, ClassDoc>();
-    private final Map<ClassDoc, Set<Edge>> edges = new HashMap<ClassDoc, Set<Edge>>();
-    private final Map<ClassDoc, Set<Edge>> reversedEdges = new HashMap<ClassDoc, Set<Edge>>();
+    private static final int MIN_CHUNK_SIZE = 256;
 
+    private final ApiModel model;
+    private final LayoutPolicy policy;
+    private final DenseGraph graph;
+    private final Map<ApiPackage, Map<String, ApiClass>> packageNodes =
+        new HashMap<ApiPackage, Map<String, ApiClass>>();
+    private final ConcurrentMap<ApiClass, String> fingerprints =
+        new ConcurrentHashMap<ApiClass, String>();
+
+    /**
+     * Extracts the {@link ApiModel} of the specified root and builds its
+     * graph.
+     */
     public ClassDocGraph(RootDoc root) {
-        this.root = root;
+        this(ApiModelExtractor.extract(root), LayoutPolicy.DEFAULT);
+    }
 
-        root.printNotice("Building graph for all classes...");
-        for (ClassDoc node: root.classes()) {
-            addNode(node, true);
+    /**
+     * Extracts the {@link ApiModel} of the specified root and builds its
+     * graph.
+     *
+     * @param policy  chooses the layout parameters of each diagram
+     */
+    public ClassDocGraph(RootDoc root, LayoutPolicy policy) {
+        this(ApiModelExtractor.extract(root), policy);
+    }
+
+    public ClassDocGraph(ApiModel model) {
+        this(model, LayoutPolicy.DEFAULT);
+    }
+
+    /**
+     * @param policy  chooses the layout parameters of each diagram
+     */
+    public ClassDocGraph(ApiModel model, LayoutPolicy policy) {
+        this(model, policy, 1);
+    }
+
+    /**
+     * Builds the graph on the specified number of threads.  The classes
+     * of the model are split into chunks, and each chunk collects its nodes
+     * and sorts its edges on its own.  The chunks are merged in their
+     * order, so the graph is the same regardless of the number of threads.
+     *
+     * @param policy   chooses the layout parameters of each diagram
+     * @param threads  the number of threads to build the graph with
+     */
+    public ClassDocGraph(ApiModel model, LayoutPolicy policy, int threads) {
+        if (model == null) {
+            throw new NullPointerException("model");
+        }
+        if (policy == null) {
+            throw new NullPointerException("policy");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads: " + threads);
+        }
+        this.model = model;
+        this.policy = policy;
+
+        List<ApiClass> classes = model.getClasses();
+        int chunkSize = ParallelUtil.getChunkSize(classes.size(), threads, MIN_CHUNK_SIZE);
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        for (int i = 0; i < classes.size(); i += chunkSize) {
+            chunks.add(new Chunk(classes.subList(i, Math.min(classes.size(), i + chunkSize))));
+        }
+        chunks = ParallelUtil.invokeAll(chunks, threads);
+
+        // Merge the sorted edges of the chunks pairwise, so that each edge
+        // is merged only log(chunks) times.
+        Map<String, ApiClass> nodes = new HashMap<String, ApiClass>();
+        List<Edge[]> edges = new ArrayList<Edge[]>(chunks.size());
+        for (Chunk c: chunks) {
+            nodes.putAll(c.nodes);
+            edges.add(c.edges);
+        }
+        while (edges.size() > 1) {
+            List<Edge[]> merged = new ArrayList<Edge[]>((edges.size() + 1) / 2);
+            for (int i = 0; i < edges.size(); i += 2) {
+                if (i + 1 < edges.size()) {
+                    merged.add(DenseGraph.mergeUnique(edges.get(i), edges.get(i + 1)));
+                } else {
+                    merged.add(edges.get(i));
+                }
+            }
+            edges = merged;
         }
+
+        graph = new DenseGraph(
+                nodes.values(), edges.isEmpty()? new Edge[0] : edges.get(0));
+        indexPackageNodes();
+    }
+
+    /**
+     * Wraps a graph which has been built already, such as the one loaded
+     * from a {@link GraphSnapshot}.
+     */
+    ClassDocGraph(ApiModel model, DenseGraph graph, LayoutPolicy policy) {
+        if (model == null) {
+            throw new NullPointerException("model");
+        }
+        if (graph == null) {
+            throw new NullPointerException("graph");
+        }
+        if (policy == null) {
+            throw new NullPointerException("policy");
+        }
+        this.model = model;
+        this.graph = graph;
+        this.policy = policy;
+        indexPackageNodes();
     }
 
-    private void addNode(ClassDoc node, boolean addRelatedClasses) {
-        String key = node.qualifiedName();
+    private void indexPackageNodes() {
+        for (int i = 0; i < graph.getNodeCount(); i ++) {
+            ApiClass node = graph.getVertex(i);
+            ApiPackage pkg = node.getContainingPackage();
+            Map<String, ApiClass> members = packageNodes.get(pkg);
+            if (members == null) {
+                members = new TreeMap<String, ApiClass>();
+                packageNodes.put(pkg, members);
+            }
+            members.put(node.getQualifiedName(), node);
+        }
+    }
+
+    private static void addNode(
+            Map<String, ApiClass> nodes, List<Edge> edges,
+            ApiClass node, boolean addRelatedClasses) {
+        String key = node.getQualifiedName();
         if (!nodes.containsKey(key)) {
             nodes.put(key, node);
-            edges.put(node, new TreeSet<Edge>());
         }
 
         if (addRelatedClasses) {
-            addRelatedClasses(node);
+            addRelatedClasses(nodes, edges, node);
         }
     }
 
-    private void addRelatedClasses(ClassDoc type) {
+    private static void addRelatedClasses(
+            Map<String, ApiClass> nodes, List<Edge> edges, ApiClass type) {
         // Generalization
-        ClassDoc superType = type.superclass();
+        ApiClass superType = type.getSuperclass();
         if (superType != null &&
-            !superType.qualifiedName().equals("java.lang.Object") &&
-            !superType.qualifiedName().equals("java.lang.Annotation") &&
-            !superType.qualifiedName().equals("java.lang.Enum")) {
-            addNode(superType, false);
-            addEdge(new Edge(GENERALIZATION, type, superType));
+            !superType.getQualifiedName().equals("java.lang.Object") &&
+            !superType.getQualifiedName().equals("java.lang.Annotation") &&
+            !superType.getQualifiedName().equals("java.lang.Enum")) {
+            addNode(nodes, edges, superType, false);
+            edges.add(new Edge(GENERALIZATION, type, superType));
         }
 
         // Realization
-        for (ClassDoc i: type.interfaces()) {
-            if (i.qualifiedName().equals("java.lang.annotation.Annotation")) {
+        for (ApiClass i: type.getInterfaces()) {
+            if (i.getQualifiedName().equals("java.lang.annotation.Annotation")) {
                 continue;
             }
 
-            addNode(i, false);
-            addEdge(new Edge(REALIZATION, type, i));
+            addNode(nodes, edges, i, false);
+            edges.add(new Edge(REALIZATION, type, i));
         }
 
         // Apply custom doclet tags first.
-        for (Tag t: type.tags()) {
-            if (t.name().equals(TAG_USES)) {
-                addEdge(new Edge(root, DEPENDENCY, type, t.text()));
-            } else if (t.name().equals(TAG_HAS)) {
-                addEdge(new Edge(root, NAVIGABILITY, type, t.text()));
-            } else if (t.name().equals(TAG_OWNS)) {
-                addEdge(new Edge(root, AGGREGATION, type, t.text()));
-            } else if (t.name().equals(TAG_COMPOSED_OF)) {
-                addEdge(new Edge(root, COMPOSITION, type, t.text()));
-            }
-        }
+        edges.addAll(getMetadata(type).getRelationships());
 
         // Add an edge with '<<see also>>' label for the classes with @see
         // tags, but avoid duplication.
-        for (SeeTag t: type.seeTags()) {
-            try {
-                if (t.referencedClass() == null) {
-                    continue;
-                }
-            } catch (Exception e) {
-                continue;
-            }
-
-            String a = type.qualifiedName();
-            String b = t.referencedClass().qualifiedName();
-            addNode(t.referencedClass(), false);
+        for (ApiClass referencedClass: type.getSeeAlso()) {
+            String a = type.getQualifiedName();
+            String b = referencedClass.getQualifiedName();
+            addNode(nodes, edges, referencedClass, false);
             if (a.compareTo(b) != 0) {
                 if (a.compareTo(b) < 0) {
-                    addEdge(new Edge(
-                            root, SEE_ALSO, type,
-                            b + " - - &#171;see also&#187;"));
+                    edges.add(new Edge(
+                            SEE_ALSO, type, referencedClass,
+                            "", "", "&#171;see also&#187;", false));
                 } else {
-                    addEdge(new Edge(
-                            root, SEE_ALSO, t.referencedClass(),
-                            a + " - - &#171;see also&#187;"));
+                    edges.add(new Edge(
+                            SEE_ALSO, referencedClass, type,
+                            "", "", "&#171;see also&#187;", false));
                 }
             }
         }
     }
 
-    private void addEdge(Edge edge) {
-        edges.get(edge.getSource()).add(edge);
+    public ApiModel getModel() {
+        return model;
+    }
+
+    DenseGraph getGraph() {
+        return graph;
+    }
 
-        Set<Edge> reversedEdgeSubset = reversedEdges.get(edge.getTarget());
-        if (reversedEdgeSubset == null) {
-            reversedEdgeSubset = new TreeSet<Edge>();
-            reversedEdges.put((ClassDoc) edge.getTarget(), reversedEdgeSubset);
+    public LayoutPolicy getLayoutPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the classes in the specified package, sorted by their
+     * qualified names.
+     */
+    private Collection<ApiClass> getPackageNodes(ApiPackage pkg) {
+        Map<String, ApiClass> members = packageNodes.get(pkg);
+        if (members == null) {
+            return Collections.emptySet();
         }
-        reversedEdgeSubset.add(edge);
+        return members.values();
+    }
+
+    private static DocMetadata getMetadata(ApiElement doc) {
+        return doc.getMetadata();
     }
 
     public String getOverviewSummaryDiagram() {
-        Map<String, PackageDoc> packages = new TreeMap<String, PackageDoc>();
+        StringBuilder buf = new StringBuilder(16384);
+        try {
+            writeOverviewSummaryDiagram(buf);
+        } catch (IOException e) {
+            throw new Error(e);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Writes the DOT source of the overview summary diagram into the
+     * specified {@link Appendable}, one node or edge at a time.
+     */
+    public void writeOverviewSummaryDiagram(Appendable buf) throws IOException {
+        writeOverviewSummaryDiagram(buf, policy);
+    }
+
+    /**
+     * Same as {@link #writeOverviewSummaryDiagram(Appendable)}, with the layout
+     * parameters chosen by the specified policy instead.
+     */
+    public void writeOverviewSummaryDiagram(Appendable buf, LayoutPolicy policy) throws IOException {
+        Map<String, ApiPackage> packages = new TreeMap<String, ApiPackage>();
         Set<Edge> edgesToRender = new TreeSet<Edge>();
         addPackageDependencies(packages, edgesToRender);
 
         // Replace direct dependencies with transitive dependencies
         // if possible to simplify the diagram.
-
-        //// Build the matrix first.
-        Map<Doc, Set<Doc>> dependencies = new HashMap<Doc, Set<Doc>>();
-        for (Edge edge: edgesToRender) {
-            Set<Doc> nextDependencies = dependencies.get(edge.getSource());
-            if (nextDependencies == null) {
-                nextDependencies = new HashSet<Doc>();
-                dependencies.put(edge.getSource(), nextDependencies);
-            }
-            nextDependencies.add(edge.getTarget());
-        }
-
-        //// Remove the edges which doesn't change the effective relationship
-        //// which can be calculated by indirect (transitive) dependency resolution.
-        for (int i = edgesToRender.size(); i > 0 ; i --) {
-            for (Edge edge: edgesToRender) {
-                if (isIndirectlyReachable(dependencies, edge.getSource(), edge.getTarget())) {
-                    edgesToRender.remove(edge);
-                    Set<Doc> targets = dependencies.get(edge.getSource());
-                    if (targets != null) {
-                        targets.remove(edge.getTarget());
-                    }
-                    break;
-                }
-            }
-        }
+        TransitiveReduction.reduce(edgesToRender);
 
         // Get the least common prefix to compact the diagram even further.
         int minPackageNameLen = Integer.MAX_VALUE;
@@ -217,23 +330,15 @@ public class ClassDocGraph {
             }
         }
 
-        StringBuilder buf = new StringBuilder(16384);
+        buf.append("digraph APIVIZ {" + NEWLINE);
+        policy.writeGraphAttributes(buf, "LR", 128, packages.size(), edgesToRender.size());
         buf.append(
-                "digraph APIVIZ {" + NEWLINE +
-                "rankdir=LR;" + NEWLINE +
-                "ranksep=0.3;" + NEWLINE +
-                "nodesep=0.3;" + NEWLINE +
-                "mclimit=128;" + NEWLINE +
-                "outputorder=edgesfirst;" + NEWLINE +
-                "center=1;" + NEWLINE +
-                "remincross=true;" + NEWLINE +
-                "searchsize=65536;" + NEWLINE +
                 "edge [fontsize=10, fontname=\"" + NORMAL_FONT + "\", " +
                 "style=\"setlinewidth(0.6)\"]; " + NEWLINE +
                 "node [shape=box, fontsize=10, fontname=\"" + NORMAL_FONT + "\", " +
                 "width=0.1, height=0.1, style=\"setlinewidth(0.6)\"]; " + NEWLINE);
 
-        for (PackageDoc pkg: packages.values()) {
+        for (ApiPackage pkg: packages.values()) {
             renderPackage(buf, pkg, prefixLen);
         }
 
@@ -242,337 +347,363 @@ public class ClassDocGraph {
         }
 
         buf.append("}" + NEWLINE);
-
-        return buf.toString();
     }
 
-    @SuppressWarnings("deprecation")
     private void addPackageDependencies(
-            Map<String, PackageDoc> packages, Set<Edge> edgesToRender) {
+            Map<String, ApiPackage> packages, Set<Edge> edgesToRender) {
 
-        for (ClassDoc node: nodes.values()) {
+        for (int id = 0; id < graph.getNodeCount(); id ++) {
+            ApiClass node = graph.getVertex(id);
             if (!node.isIncluded()) {
                 continue;
             }
 
-            PackageDoc pkg = node.containingPackage();
-            packages.put(pkg.name(), pkg);
+            ApiPackage pkg = node.getContainingPackage();
+            packages.put(pkg.getName(), pkg);
 
             // Generate dependency nodes from known relationships.
-            addPackageDependency(edgesToRender, edges.get(node));
-            addPackageDependency(edgesToRender, reversedEdges.get(node));
-
-            // And then try all fields and parameter types.
-            for (FieldDoc f: node.fields()) {
-                if (f.type().asClassDoc() != null) {
-                    addPackageDependency(edgesToRender, pkg, f.type().asClassDoc().containingPackage());
-                }
+            for (int i = 0; i < graph.getOutgoingEdgeCount(id); i ++) {
+                addPackageDependency(edgesToRender, graph.getOutgoingEdge(id, i));
             }
-
-            // And all methods.
-            for (MethodDoc m: node.methods()) {
-                if (m.returnType().asClassDoc() != null) {
-                    addPackageDependency(edgesToRender, pkg, m.returnType().asClassDoc().containingPackage());
-                }
-                for (Parameter p: m.parameters()) {
-                    if (p.type().asClassDoc() != null) {
-                        addPackageDependency(edgesToRender, pkg, p.type().asClassDoc().containingPackage());
-                    }
-                }
+            for (int i = 0; i < graph.getIncomingEdgeCount(id); i ++) {
+                addPackageDependency(edgesToRender, graph.getIncomingEdge(id, i));
             }
 
-            // This is likely to be removed in the future.. but this is the
-            // most precise way to figure out the dependencies in JavaDoc.
-            PackageDoc[] importedPackages;
-            try {
-                importedPackages = node.importedPackages();
-            } catch (Exception e) {
-                importedPackages = null;
+            // And then try all field, return and parameter types.
+            for (ApiClass t: node.getMemberTypes()) {
+                addPackageDependency(edgesToRender, pkg, t.getContainingPackage());
             }
-            if (importedPackages != null) {
-                for (PackageDoc p: importedPackages) {
-                    addPackageDependency(edgesToRender, pkg, p);
-                }
+
+            // And the imports.
+            for (ApiPackage p: node.getImportedPackages()) {
+                addPackageDependency(edgesToRender, pkg, p);
             }
-            ClassDoc[] importedClasses;
-            try {
-                importedClasses = node.importedClasses();
-            } catch (Exception e) {
-                importedClasses = null;
-            }
-            if (importedClasses != null) {
-                for (ClassDoc c: importedClasses) {
-                    addPackageDependency(edgesToRender, pkg, c.containingPackage());
-                }
+            for (ApiClass c: node.getImportedClasses()) {
+                addPackageDependency(edgesToRender, pkg, c.getContainingPackage());
             }
         }
     }
 
-    private static void addPackageDependency(
-            Set<Edge> edgesToRender, Set<Edge> candidates) {
-        if (candidates == null) {
+    private void addPackageDependency(Set<Edge> edgesToRender, int edge) {
+        if (graph.getType(edge) == SEE_ALSO) {
             return;
         }
-        for (Edge edge: candidates) {
-            if (edge.getType() == SEE_ALSO) {
-                continue;
-            }
-            PackageDoc source = ((ClassDoc) edge.getSource()).containingPackage();
-            PackageDoc target = ((ClassDoc) edge.getTarget()).containingPackage();
-            addPackageDependency(edgesToRender, source, target);
-        }
+        ApiPackage source = graph.getVertex(graph.getSource(edge)).getContainingPackage();
+        ApiPackage target = graph.getVertex(graph.getTarget(edge)).getContainingPackage();
+        addPackageDependency(edgesToRender, source, target);
     }
 
     private static void addPackageDependency(
-            Set<Edge> edgesToRender, PackageDoc source, PackageDoc target) {
+            Set<Edge> edgesToRender, ApiPackage source, ApiPackage target) {
         if (source != target && source.isIncluded() && target.isIncluded()) {
             edgesToRender.add(
                     new Edge(EdgeType.DEPENDENCY, source, target));
         }
     }
 
-    private static boolean isIndirectlyReachable(Map<Doc, Set<Doc>> dependencyGraph, Doc source, Doc target) {
-        Set<Doc> intermediaryTargets = dependencyGraph.get(source);
-        if (intermediaryTargets == null || intermediaryTargets.isEmpty()) {
-            return false;
-        }
-
-        Set<Doc> visited = new HashSet<Doc>();
-        visited.add(source);
-
-        for (Doc t: intermediaryTargets) {
-            if (t == target) {
-                continue;
-            }
-            if (isIndirectlyReachable(dependencyGraph, t, target, visited)) {
-                return true;
-            }
+    public String getPackageSummaryDiagram(ApiPackage pkg) {
+        StringBuilder buf = new StringBuilder(16384);
+        try {
+            writePackageSummaryDiagram(pkg, buf);
+        } catch (IOException e) {
+            throw new Error(e);
         }
-        return false;
+        return buf.toString();
     }
 
-    private static boolean isIndirectlyReachable(Map<Doc, Set<Doc>> dependencyGraph, Doc source, Doc target, Set<Doc> visited) {
-        if (visited.contains(source)) {
-            // Evade cyclic dependency.
-            return false;
-        }
-        visited.add(source);
-
-        Set<Doc> intermediaryTargets = dependencyGraph.get(source);
-        if (intermediaryTargets == null || intermediaryTargets.isEmpty()) {
-            return false;
-        }
+    /**
+     * Writes the DOT source of the package summary diagram of the specified
+     * package into the specified {@link Appendable}.
+     */
+    public void writePackageSummaryDiagram(ApiPackage pkg, Appendable buf) throws IOException {
+        writePackageSummaryDiagram(pkg, buf, policy);
+    }
 
-        for (Doc t: intermediaryTargets) {
-            if (t == target) {
-                return true;
-            }
+    /**
+     * Same as {@link #writePackageSummaryDiagram(ApiPackage, Appendable)}, with the layout
+     * parameters chosen by the specified policy instead.
+     */
+    public void writePackageSummaryDiagram(
+            ApiPackage pkg, Appendable buf, LayoutPolicy policy) throws IOException {
+        Map<String, ApiClass> nodesToRender = new TreeMap<String, ApiClass>();
+        Set<Edge> edgesToRender = new TreeSet<Edge>();
 
-            if (isIndirectlyReachable(dependencyGraph, t, target, visited)) {
-                return true;
-            }
+        for (ApiClass node: getPackageNodes(pkg)) {
+            fetchSubgraph(pkg, node, nodesToRender, edgesToRender, true, false, true);
         }
-        return false;
-    }
 
-    public String getPackageSummaryDiagram(PackageDoc pkg) {
-        StringBuilder buf = new StringBuilder(16384);
+        buf.append("digraph APIVIZ {" + NEWLINE);
+        policy.writeGraphAttributes(buf, "LR", 1024, nodesToRender.size(), edgesToRender.size());
         buf.append(
-                "digraph APIVIZ {" + NEWLINE +
-                "rankdir=LR;" + NEWLINE +
-                "ranksep=0.3;" + NEWLINE +
-                "nodesep=0.3;" + NEWLINE +
-                "mclimit=1024;" + NEWLINE +
-                "outputorder=edgesfirst;" + NEWLINE +
-                "center=1;" + NEWLINE +
-                "remincross=true;" + NEWLINE +
-                "searchsize=65536;" + NEWLINE +
                 "edge [fontsize=10, fontname=\"" + NORMAL_FONT + "\", " +
                 "style=\"setlinewidth(0.6)\"]; " + NEWLINE +
                 "node [shape=box, fontsize=10, fontname=\"" + NORMAL_FONT + "\", " +
                 "width=0.1, height=0.1, style=\"setlinewidth(0.6)\"]; " + NEWLINE);
 
-        Map<String, ClassDoc> nodesToRender = new TreeMap<String, ClassDoc>();
-        Set<Edge> edgesToRender = new TreeSet<Edge>();
-
-        for (ClassDoc node: nodes.values()) {
-            fetchSubgraph(pkg, node, nodesToRender, edgesToRender, true, false, true);
-        }
-
         renderSubgraph(pkg, null, buf, nodesToRender, edgesToRender);
 
         buf.append("}" + NEWLINE);
-
-        return buf.toString();
     }
 
     private void fetchSubgraph(
-            PackageDoc pkg, ClassDoc cls,
-            Map<String, ClassDoc> nodesToRender, Set<Edge> edgesToRender,
+            ApiPackage pkg, ApiClass cls,
+            Map<String, ApiClass> nodesToRender, Set<Edge> edgesToRender,
             boolean useHidden, boolean useSee, boolean forceInherit) {
 
-        if (useHidden && cls.tags(TAG_HIDDEN).length > 0) {
+        DocMetadata clsMetadata = getMetadata(cls);
+        DocMetadata pkgMetadata = getMetadata(pkg);
+
+        if (useHidden && clsMetadata.isHidden()) {
             return;
         }
 
-        if (forceInherit) {
-            for (Tag t: pkg.tags(TAG_EXCLUDE)) {
-                if (Pattern.compile(t.text().trim()).matcher(cls.qualifiedName()).find()) {
-                    return;
-                }
-            }
+        if (forceInherit && pkgMetadata.isExcluded(cls.getQualifiedName())) {
+            return;
         }
 
-        if (cls.containingPackage() == pkg) {
-            Set<Edge> directEdges = edges.get(cls);
-            nodesToRender.put(cls.qualifiedName(), cls);
-            for (Edge edge: directEdges) {
-                if (!useSee && edge.getType() == SEE_ALSO) {
-                    continue;
-                }
-
-                ClassDoc source = (ClassDoc) edge.getSource();
-                ClassDoc target = (ClassDoc) edge.getTarget();
-
-                boolean excluded = false;
-                if (forceInherit || cls.tags(TAG_INHERIT).length > 0) {
-                    for (Tag t: pkg.tags(TAG_EXCLUDE)) {
-                        Pattern p = Pattern.compile(t.text().trim());
-
-                        if (p.matcher(source.qualifiedName()).find()) {
-                            excluded = true;
-                            break;
-                        }
-                        if (p.matcher(target.qualifiedName()).find()) {
-                            excluded = true;
-                            break;
-                        }
-                    }
-                    if (excluded) {
-                        continue;
-                    }
-                }
+        if (cls.getContainingPackage() == pkg) {
+            nodesToRender.put(cls.getQualifiedName(), cls);
+            boolean inherit = forceInherit || clsMetadata.isInherit();
+            int id = graph.getId(cls);
+            if (id < 0) {
+                return;
+            }
+            for (int i = 0; i < graph.getOutgoingEdgeCount(id); i ++) {
+                fetchEdge(
+                        pkgMetadata, clsMetadata, graph.getOutgoingEdge(id, i),
+                        nodesToRender, edgesToRender, useHidden, useSee, inherit);
+            }
+            for (int i = 0; i < graph.getIncomingEdgeCount(id); i ++) {
+                fetchEdge(
+                        pkgMetadata, clsMetadata, graph.getIncomingEdge(id, i),
+                        nodesToRender, edgesToRender, useHidden, useSee, inherit);
+            }
+        }
+    }
 
-                for (Tag t: cls.tags(TAG_EXCLUDE)) {
-                    Pattern p = Pattern.compile(t.text().trim());
+    private void fetchEdge(
+            DocMetadata pkgMetadata, DocMetadata clsMetadata, int edge,
+            Map<String, ApiClass> nodesToRender, Set<Edge> edgesToRender,
+            boolean useHidden, boolean useSee, boolean inherit) {
 
-                    if (p.matcher(source.qualifiedName()).find()) {
-                        excluded = true;
-                        break;
-                    }
-                    if (p.matcher(target.qualifiedName()).find()) {
-                        excluded = true;
-                        break;
-                    }
-                }
-                if (excluded) {
-                    continue;
-                }
+        if (!useSee && graph.getType(edge) == SEE_ALSO) {
+            return;
+        }
 
-                if (!useHidden || source.tags(TAG_HIDDEN).length == 0 && target.tags(TAG_HIDDEN).length == 0) {
-                    edgesToRender.add(edge);
-                }
-                if (!useHidden || source.tags(TAG_HIDDEN).length == 0) {
-                    nodesToRender.put(source.qualifiedName(), source);
-                }
-                if (!useHidden || target.tags(TAG_HIDDEN).length == 0) {
-                    nodesToRender.put(target.qualifiedName(), target);
-                }
-            }
+        ApiClass source = graph.getVertex(graph.getSource(edge));
+        ApiClass target = graph.getVertex(graph.getTarget(edge));
+        String sourceName = source.getQualifiedName();
+        String targetName = target.getQualifiedName();
 
-            Set<Edge> reversedDirectEdges = reversedEdges.get(cls);
-            if (reversedDirectEdges != null) {
-                for (Edge edge: reversedDirectEdges) {
-                    if (!useSee && edge.getType() == SEE_ALSO) {
-                        continue;
-                    }
+        if (inherit && pkgMetadata.hasExcludes() &&
+            (pkgMetadata.isExcluded(sourceName) ||
+             pkgMetadata.isExcluded(targetName))) {
+            return;
+        }
 
-                    ClassDoc source = (ClassDoc) edge.getSource();
-                    ClassDoc target = (ClassDoc) edge.getTarget();
-
-                    boolean excluded = false;
-                    if (forceInherit || cls.tags(TAG_INHERIT).length > 0) {
-                        for (Tag t: pkg.tags(TAG_EXCLUDE)) {
-                            Pattern p = Pattern.compile(t.text().trim());
-
-                            if (p.matcher(source.qualifiedName()).find()) {
-                                excluded = true;
-                                break;
-                            }
-                            if (p.matcher(target.qualifiedName()).find()) {
-                                excluded = true;
-                                break;
-                            }
-                        }
-                        if (excluded) {
-                            continue;
-                        }
-                    }
+        if (clsMetadata.hasExcludes() &&
+            (clsMetadata.isExcluded(sourceName) ||
+             clsMetadata.isExcluded(targetName))) {
+            return;
+        }
 
-                    for (Tag t: cls.tags(TAG_EXCLUDE)) {
-                        Pattern p = Pattern.compile(t.text().trim());
-
-                        if (p.matcher(source.qualifiedName()).find()) {
-                            excluded = true;
-                            break;
-                        }
-                        if (p.matcher(target.qualifiedName()).find()) {
-                            excluded = true;
-                            break;
-                        }
-                    }
-                    if (excluded) {
-                        continue;
-                    }
+        boolean sourceHidden = useHidden && getMetadata(source).isHidden();
+        boolean targetHidden = useHidden && getMetadata(target).isHidden();
+        if (!sourceHidden && !targetHidden) {
+            edgesToRender.add(graph.getEdge(edge));
+        }
+        if (!sourceHidden) {
+            nodesToRender.put(sourceName, source);
+        }
+        if (!targetHidden) {
+            nodesToRender.put(targetName, target);
+        }
+    }
 
-                    if (!useHidden || source.tags(TAG_HIDDEN).length == 0 && target.tags(TAG_HIDDEN).length == 0) {
-                        edgesToRender.add(edge);
-                    }
-                    if (!useHidden || source.tags(TAG_HIDDEN).length == 0) {
-                        nodesToRender.put(source.qualifiedName(), source);
-                    }
-                    if (!useHidden || target.tags(TAG_HIDDEN).length == 0) {
-                        nodesToRender.put(target.qualifiedName(), target);
-                    }
-                }
-            }
+    public String getClassDiagram(ApiClass cls) {
+        StringBuilder buf = new StringBuilder(16384);
+        try {
+            writeClassDiagram(cls, buf);
+        } catch (IOException e) {
+            throw new Error(e);
         }
+        return buf.toString();
     }
 
-    public String getClassDiagram(ClassDoc cls) {
-        PackageDoc pkg = cls.containingPackage();
+    /**
+     * Writes the DOT source of the class diagram of the specified class
+     * into the specified {@link Appendable}.
+     */
+    public void writeClassDiagram(ApiClass cls, Appendable buf) throws IOException {
+        writeClassDiagram(cls, buf, policy);
+    }
 
-        StringBuilder buf = new StringBuilder(16384);
+    /**
+     * Same as {@link #writeClassDiagram(ApiClass, Appendable)}, with the layout
+     * parameters chosen by the specified policy instead.
+     */
+    public void writeClassDiagram(
+            ApiClass cls, Appendable buf, LayoutPolicy policy) throws IOException {
+        ApiPackage pkg = cls.getContainingPackage();
+
+        Map<String, ApiClass> nodesToRender = new TreeMap<String, ApiClass>();
+        Set<Edge> edgesToRender = new TreeSet<Edge>();
+
+        fetchSubgraph(pkg, cls, nodesToRender, edgesToRender, false, true, false);
+
+        buf.append("digraph APIVIZ {" + NEWLINE);
+        policy.writeGraphAttributes(buf, "TB", 128, nodesToRender.size(), edgesToRender.size());
         buf.append(
-                "digraph APIVIZ {" + NEWLINE +
-                "rankdir=TB;" + NEWLINE +
-                "ranksep=0.3;" + NEWLINE +
-                "nodesep=0.3;" + NEWLINE +
-                "mclimit=128;" + NEWLINE +
-                "outputorder=edgesfirst;" + NEWLINE +
-                "center=1;" + NEWLINE +
-                "remincross=true;" + NEWLINE +
-                "searchsize=65536;" + NEWLINE +
                 "edge [fontsize=10, fontname=\"" + NORMAL_FONT + "\", " +
                 "style=\"setlinewidth(0.6)\"]; " + NEWLINE +
                 "node [shape=box, fontsize=10, fontname=\"" + NORMAL_FONT + "\", " +
                 "width=0.1, height=0.1, style=\"setlinewidth(0.6)\"]; " + NEWLINE);
 
-        Map<String, ClassDoc> nodesToRender = new TreeMap<String, ClassDoc>();
-        Set<Edge> edgesToRender = new TreeSet<Edge>();
-
-        fetchSubgraph(pkg, cls, nodesToRender, edgesToRender, false, true, false);
         renderSubgraph(pkg, cls, buf, nodesToRender, edgesToRender);
 
         buf.append("}" + NEWLINE);
+    }
 
-        return buf.toString();
+    /**
+     * Returns the fingerprints of the packages and classes the overview
+     * summary diagram depends on, keyed by their names.
+     */
+    public Map<String, String> getOverviewSummaryInputs() {
+        Map<String, String> inputs = new TreeMap<String, String>();
+        for (int id = 0; id < graph.getNodeCount(); id ++) {
+            ApiClass node = graph.getVertex(id);
+            addPackageInput(inputs, node.getContainingPackage());
+            inputs.put(node.getQualifiedName(), getFingerprint(node));
+            if (!node.isIncluded()) {
+                continue;
+            }
+
+            // Fields, methods and imports contribute to the package
+            // dependencies - see addPackageDependencies().
+            StringBuilder buf = new StringBuilder(1024);
+            for (ApiClass t: node.getMemberTypes()) {
+                appendPackageName(buf, t);
+            }
+            for (ApiPackage p: node.getImportedPackages()) {
+                buf.append(p.getName());
+                buf.append(p.isIncluded()? "+\n" : "-\n");
+            }
+            for (ApiClass c: node.getImportedClasses()) {
+                appendPackageName(buf, c);
+            }
+            inputs.put(node.getQualifiedName() + "#members", DigestUtil.sha1(buf.toString()));
+        }
+        return inputs;
     }
 
-    private void renderSubgraph(PackageDoc pkg, ClassDoc cls,
-            StringBuilder buf, Map<String, ClassDoc> nodesToRender,
-            Set<Edge> edgesToRender) {
-        for (ClassDoc node: nodesToRender.values()) {
+    /**
+     * Returns the fingerprints of the package and the classes the package
+     * summary diagram of the specified package depends on, keyed by their
+     * names.
+     */
+    public Map<String, String> getPackageSummaryInputs(ApiPackage pkg) {
+        Map<String, String> inputs = new TreeMap<String, String>();
+        addPackageInput(inputs, pkg);
+        for (ApiClass node: getPackageNodes(pkg)) {
+            addNeighbourhoodInputs(inputs, node);
+        }
+        return inputs;
+    }
+
+    /**
+     * Returns the fingerprints of the package and the classes the class
+     * diagram of the specified class depends on, keyed by their names.
+     */
+    public Map<String, String> getClassDiagramInputs(ApiClass cls) {
+        Map<String, String> inputs = new TreeMap<String, String>();
+        addPackageInput(inputs, cls.getContainingPackage());
+        addNeighbourhoodInputs(inputs, cls);
+        return inputs;
+    }
+
+    private void addNeighbourhoodInputs(Map<String, String> inputs, ApiClass cls) {
+        inputs.put(cls.getQualifiedName(), getFingerprint(cls));
+        int id = graph.getId(cls);
+        if (id < 0) {
+            return;
+        }
+        for (int i = 0; i < graph.getOutgoingEdgeCount(id); i ++) {
+            addNeighbourhoodInput(inputs, graph.getOutgoingEdge(id, i));
+        }
+        for (int i = 0; i < graph.getIncomingEdgeCount(id); i ++) {
+            addNeighbourhoodInput(inputs, graph.getIncomingEdge(id, i));
+        }
+    }
+
+    private void addNeighbourhoodInput(Map<String, String> inputs, int edge) {
+        ApiClass source = graph.getVertex(graph.getSource(edge));
+        ApiClass target = graph.getVertex(graph.getTarget(edge));
+        inputs.put(source.getQualifiedName(), getFingerprint(source));
+        inputs.put(target.getQualifiedName(), getFingerprint(target));
+    }
+
+    private void addPackageInput(Map<String, String> inputs, ApiPackage pkg) {
+        String key = "package " + pkg.getName();
+        if (inputs.containsKey(key)) {
+            return;
+        }
+
+        StringBuilder buf = new StringBuilder(256);
+        buf.append(pkg.getName());
+        buf.append(pkg.isIncluded()? "+\n" : "-\n");
+        buf.append(getMetadata(pkg).getTagText());
+        inputs.put(key, DigestUtil.sha1(buf.toString()));
+    }
+
+    /**
+     * Returns the hash of everything that affects how the specified node
+     * and its relationships are rendered.
+     */
+    private String getFingerprint(ApiClass node) {
+        String fingerprint = fingerprints.get(node);
+        if (fingerprint != null) {
+            return fingerprint;
+        }
+
+        StringBuilder buf = new StringBuilder(1024);
+        buf.append(node.getQualifiedName());
+        buf.append('\n');
+        buf.append(node.getContainingPackage().getName());
+        buf.append('\n');
+        buf.append(node.isIncluded()? 'I' : '-');
+        buf.append(node.isInterface()? 'i' : '-');
+        buf.append(node.isAbstract()? 'a' : '-');
+        DocMetadata nodeMetadata = getMetadata(node);
+        buf.append(nodeMetadata.getStereotype());
+        buf.append('\n');
+        buf.append(nodeMetadata.getTagText());
+        int id = graph.getId(node);
+        if (id >= 0) {
+            for (int i = 0; i < graph.getOutgoingEdgeCount(id); i ++) {
+                buf.append(graph.getEdge(graph.getOutgoingEdge(id, i)));
+                buf.append('\n');
+            }
+            for (int i = 0; i < graph.getIncomingEdgeCount(id); i ++) {
+                buf.append(graph.getEdge(graph.getIncomingEdge(id, i)));
+                buf.append('\n');
+            }
+        }
+
+        fingerprint = DigestUtil.sha1(buf.toString());
+        fingerprints.putIfAbsent(node, fingerprint);
+        return fingerprint;
+    }
+
+    private static void appendPackageName(StringBuilder buf, ApiClass cls) {
+        ApiPackage pkg = cls.getContainingPackage();
+        buf.append(pkg.getName());
+        buf.append(pkg.isIncluded()? "+\n" : "-\n");
+    }
+
+    private void renderSubgraph(ApiPackage pkg, ApiClass cls,
+            Appendable buf, Map<String, ApiClass> nodesToRender,
+            Set<Edge> edgesToRender) throws IOException {
+        for (ApiClass node: nodesToRender.values()) {
             renderClass(pkg, cls, buf, node);
         }
 
@@ -581,15 +712,15 @@ public class ClassDocGraph {
         }
     }
 
-    private static void renderPackage(
-            StringBuilder buf, PackageDoc pkg, int prefixLen) {
+    private void renderPackage(
+            Appendable buf, ApiPackage pkg, int prefixLen) throws IOException {
 
-        String href = pkg.name().replace('.', '/') + "/package-summary.html";
+        String href = pkg.getName().replace('.', '/') + "/package-summary.html";
         buf.append(getNodeId(pkg));
         buf.append(" [label=\"");
-        buf.append(pkg.name().substring(prefixLen));
+        buf.append(pkg.getName().substring(prefixLen));
         buf.append("\", style=\"filled");
-        if (pkg.tags("@deprecated").length > 0) {
+        if (getMetadata(pkg).isDeprecated()) {
             buf.append(",dotted");
         }
         buf.append("\", fillcolor=\"");
@@ -600,17 +731,19 @@ public class ClassDocGraph {
         buf.append(NEWLINE);
     }
 
-    private static void renderClass(PackageDoc pkg, ClassDoc cls, StringBuilder buf, ClassDoc node) {
+    private void renderClass(ApiPackage pkg, ApiClass cls, Appendable buf, ApiClass node) throws IOException {
+        DocMetadata nodeMetadata = getMetadata(node);
         String fillColor = getFillColor(pkg, cls, node);
         String lineColor = getLineColor(pkg, node);
         String fontColor = getFontColor(pkg, node);
         String href = getPath(pkg, node);
+        String label = getNodeLabel(pkg, node);
 
         buf.append(getNodeId(node));
         buf.append(" [label=\"");
-        buf.append(getNodeLabel(pkg, node));
+        buf.append(label);
         buf.append("\", tooltip=\"");
-        buf.append(escape(getNodeLabel(pkg, node)));
+        buf.append(escape(label));
         buf.append("\"");
         if (node.isAbstract() && !node.isInterface()) {
             buf.append(", fontname=\"");
@@ -618,7 +751,7 @@ public class ClassDocGraph {
             buf.append("\"");
         }
         buf.append(", style=\"filled");
-        if (node.tags("@deprecated").length > 0) {
+        if (nodeMetadata.isDeprecated()) {
             buf.append(",dotted");
         }
         buf.append("\", color=\"");
@@ -637,7 +770,7 @@ public class ClassDocGraph {
         buf.append(NEWLINE);
     }
 
-    private void renderEdge(PackageDoc pkg, StringBuilder buf, Edge edge) {
+    private void renderEdge(ApiPackage pkg, Appendable buf, Edge edge) throws IOException {
         EdgeType type = edge.getType();
         String lineColor = getLineColor(pkg, edge);
         String fontColor = getFontColor(pkg, edge);
@@ -656,10 +789,10 @@ public class ClassDocGraph {
         // relationship is found, otherwise, class hierarchy
         // will look cluttered.
         if (!reverse) {
-            Set<Edge> allEdges = edges.get(edge.getSource());
-            if (allEdges != null) {
-                for (Edge e: allEdges) {
-                    switch (e.getType()) {
+            int source = graph.getId(edge.getSource());
+            if (source >= 0) {
+                for (int i = 0; i < graph.getOutgoingEdgeCount(source); i ++) {
+                    switch (graph.getType(graph.getOutgoingEdge(source, i))) {
                     case GENERALIZATION:
                     case REALIZATION:
                     case DEPENDENCY:
@@ -702,51 +835,18 @@ public class ClassDocGraph {
         buf.append(NEWLINE);
     }
 
-    private static String getStereotype(ClassDoc node) {
-        String stereotype = node.isInterface()? "interface" : null;
-        if (node.isException()) {
-            stereotype = "exception";
-        } else if (node.isAnnotationType()) {
-            stereotype = "annotation";
-        } else if (node.isEnum()) {
-            stereotype = "enum";
-        } else {
-            boolean staticType = true;
-            int methods = 0;
-            for (MethodDoc m: node.methods()) {
-                if (m.isConstructor()) {
-                    continue;
-                }
-                methods ++;
-                if (!m.isStatic()) {
-                    staticType = false;
-                    break;
-                }
-            }
-            if (staticType && methods > 0) {
-                stereotype = "static";
-            }
-        }
-
-        if (node.tags(TAG_STEREOTYPE).length > 0) {
-            stereotype = node.tags(TAG_STEREOTYPE)[0].text();
-        }
-
-        return escape(stereotype);
-    }
-
-    private static String getFillColor(PackageDoc pkg) {
+    private String getFillColor(ApiPackage pkg) {
         String color = "white";
-        if (pkg.tags(TAG_LANDMARK).length > 0) {
+        if (getMetadata(pkg).isLandmark()) {
             color = "khaki1";
         }
         return color;
     }
 
-    private static String getFillColor(PackageDoc pkg, ClassDoc cls, ClassDoc node) {
+    private String getFillColor(ApiPackage pkg, ApiClass cls, ApiClass node) {
         String color = "white";
         if (cls == null) {
-            if (node.containingPackage() == pkg && node.tags(TAG_LANDMARK).length > 0) {
+            if (node.getContainingPackage() == pkg && getMetadata(node).isLandmark()) {
                 color = "khaki1";
             }
         } else if (cls == node) {
@@ -755,61 +855,55 @@ public class ClassDocGraph {
         return color;
     }
 
-    private static String getLineColor(PackageDoc pkg, ClassDoc doc) {
+    private static String getLineColor(ApiPackage pkg, ApiClass doc) {
         String color = "black";
-        if (!(doc.containingPackage() == pkg)) {
+        if (!(doc.getContainingPackage() == pkg)) {
             color = "gray";
         }
         return color;
     }
 
-    private static String getLineColor(PackageDoc pkg, Edge edge) {
-        if (edge.getTarget() instanceof ClassDoc) {
-            return getLineColor(pkg, (ClassDoc) edge.getTarget());
+    private static String getLineColor(ApiPackage pkg, Edge edge) {
+        if (edge.getTarget() instanceof ApiClass) {
+            return getLineColor(pkg, (ApiClass) edge.getTarget());
         } else {
             return "black";
         }
     }
 
-    private static String getFontColor(PackageDoc pkg, ClassDoc doc) {
+    private static String getFontColor(ApiPackage pkg, ApiClass doc) {
         String color = "black";
-        if (!(doc.containingPackage() == pkg)) {
+        if (!(doc.getContainingPackage() == pkg)) {
             color = "gray30";
         }
         return color;
     }
 
-    private static String getFontColor(PackageDoc pkg, Edge edge) {
-        if (edge.getTarget() instanceof ClassDoc) {
-            return getFontColor(pkg, (ClassDoc) edge.getTarget());
+    private static String getFontColor(ApiPackage pkg, Edge edge) {
+        if (edge.getTarget() instanceof ApiClass) {
+            return getFontColor(pkg, (ApiClass) edge.getTarget());
         } else {
             return "black";
         }
     }
 
-    private static String getNodeId(Doc node) {
-        String name;
-        if (node instanceof ClassDoc) {
-            name = ((ClassDoc) node).qualifiedName();
-        } else {
-            name = node.name();
-        }
-        return name.replace('.', '_');
+    private static String getNodeId(ApiElement node) {
+        return node.getQualifiedName().replace('.', '_');
     }
 
-    private static String getNodeLabel(PackageDoc pkg, ClassDoc node) {
+    private String getNodeLabel(ApiPackage pkg, ApiClass node) {
         StringBuilder buf = new StringBuilder(256);
-        String stereotype = getStereotype(node);
+        String stereotype = getMetadata(node).getStereotype();
         if (stereotype != null) {
             buf.append("&#171;");
             buf.append(stereotype);
             buf.append("&#187;\\n");
         }
 
-        if (node.containingPackage() == pkg) {
-            buf.append(node.name());
+        if (node.getContainingPackage() == pkg) {
+            buf.append(node.getName());
         } else {
-            String name = node.qualifiedName();
+            String name = node.getQualifiedName();
             int dotIndex = name.lastIndexOf('.');
             if (dotIndex < 0) {
                 buf.append(name);
@@ -823,7 +917,7 @@ public class ClassDocGraph {
         return buf.toString();
     }
 
-    private static String escape(String text) {
+    static String escape(String text) {
         // Escape some characters to prevent syntax errors.
         if (text != null) {
             text = text.replaceAll("" +
@@ -832,13 +926,13 @@ public class ClassDocGraph {
         return text;
     }
 
-    private static String getPath(PackageDoc pkg, ClassDoc node) {
+    private static String getPath(ApiPackage pkg, ApiClass node) {
         if (!node.isIncluded()) {
             return null;
         }
 
-        String sourcePath = pkg.name().replace('.', '/');
-        String targetPath = node.qualifiedName().replace('.', '/') + ".html";
+        String sourcePath = pkg.getName().replace('.', '/');
+        String targetPath = node.getQualifiedName().replace('.', '/') + ".html";
         String[] sourcePathElements = sourcePath.split("[\\/\\\\]+");
         String[] targetPathElements = targetPath.split("[\\/\\\\]+");
 
@@ -861,4 +955,26 @@ public class ClassDocGraph {
         }
         return buf.substring(1);
     }
+
+    /**
+     * Collects the nodes and the sorted edges of a range of classes.
+     */
+    private static final class Chunk implements Callable<Chunk> {
+        private final List<ApiClass> classes;
+        final Map<String, ApiClass> nodes = new HashMap<String, ApiClass>();
+        Edge[] edges;
+
+        Chunk(List<ApiClass> classes) {
+            this.classes = classes;
+        }
+
+        public Chunk call() {
+            List<Edge> edges = new ArrayList<Edge>();
+            for (ApiClass node: classes) {
+                addNode(nodes, edges, node, true);
+            }
+            this.edges = DenseGraph.sortUnique(edges);
+            return this;
+        }
+    }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.PrintStream;
+
+import com.sun.javadoc.DocErrorReporter;
+import com.sun.javadoc.SourcePosition;
+
+/**
+ * Reports the messages of the tools which run without javadoc to the
+ * console, the same way javadoc does.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class ConsoleReporter implements DocErrorReporter {
+
+    private final PrintStream out;
+    private final PrintStream err;
+    private int errors;
+    private int warnings;
+
+    public ConsoleReporter() {
+        this(System.out, System.err);
+    }
+
+    public ConsoleReporter(PrintStream out, PrintStream err) {
+        if (out == null) {
+            throw new NullPointerException("out");
+        }
+        if (err == null) {
+            throw new NullPointerException("err");
+        }
+        this.out = out;
+        this.err = err;
+    }
+
+    public synchronized void printError(String msg) {
+        printError(null, msg);
+    }
+
+    public synchronized void printError(SourcePosition pos, String msg) {
+        errors ++;
+        err.println(format(pos, "error: " + msg));
+    }
+
+    public synchronized void printWarning(String msg) {
+        printWarning(null, msg);
+    }
+
+    public synchronized void printWarning(SourcePosition pos, String msg) {
+        warnings ++;
+        err.println(format(pos, "warning: " + msg));
+    }
+
+    public synchronized void printNotice(String msg) {
+        printNotice(null, msg);
+    }
+
+    public synchronized void printNotice(SourcePosition pos, String msg) {
+        out.println(format(pos, msg));
+    }
+
+    public synchronized int getErrorCount() {
+        return errors;
+    }
+
+    public synchronized int getWarningCount() {
+        return warnings;
+    }
+
+    private static String format(SourcePosition pos, String msg) {
+        if (pos == null) {
+            return msg;
+        }
+        return pos + ": " + msg;
+    }
+}
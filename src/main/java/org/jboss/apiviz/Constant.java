@@ -54,6 +54,35 @@ public class Constant {
     /* apiviz.inherit */
     public static final String TAG_INHERIT = TAG_PREFIX + "inherit";
 
+    public static final String OPTION_PREFIX = "-apiviz.";
+
+    /* -apiviz.threads <number of concurrent Graphviz processes> */
+    public static final String OPTION_THREADS = OPTION_PREFIX + "threads";
+    /* -apiviz.batch (keep one long-lived Graphviz process per thread) */
+    public static final String OPTION_BATCH = OPTION_PREFIX + "batch";
+    /* -apiviz.cachedir <directory to keep the rendered diagrams in> */
+    public static final String OPTION_CACHE_DIR = OPTION_PREFIX + "cachedir";
+    /* -apiviz.cachesize <maximum cache size in megabytes> */
+    public static final String OPTION_CACHE_SIZE = OPTION_PREFIX + "cachesize";
+    /* -apiviz.manifest <file to record the inputs of each diagram in> */
+    public static final String OPTION_MANIFEST = OPTION_PREFIX + "manifest";
+    /* -apiviz.format <png|svg|inline-svg> */
+    public static final String OPTION_FORMAT = OPTION_PREFIX + "format";
+    /* -apiviz.timeout <seconds to wait for Graphviz to render a diagram, 0 for no limit> */
+    public static final String OPTION_TIMEOUT = OPTION_PREFIX + "timeout";
+    /* -apiviz.draft (lay out the diagrams with the least effort) */
+    public static final String OPTION_DRAFT = OPTION_PREFIX + "draft";
+    /* -apiviz.layoutthreshold <maximum number of nodes to lay out without Graphviz> */
+    public static final String OPTION_LAYOUT_THRESHOLD = OPTION_PREFIX + "layoutthreshold";
+    /* -apiviz.snapshot <file to save the class graph in> */
+    public static final String OPTION_SNAPSHOT = OPTION_PREFIX + "snapshot";
+    /* -apiviz.lazy (leave the class diagrams to DiagramServer, requires -apiviz.snapshot) */
+    public static final String OPTION_LAZY = OPTION_PREFIX + "lazy";
+    /* -apiviz.port <port for DiagramServer to listen to, 0 for any free port> */
+    public static final String OPTION_PORT = OPTION_PREFIX + "port";
+    /* -apiviz.memorycachesize <maximum size of the images DiagramServer keeps in memory, in megabytes> */
+    public static final String OPTION_MEMORY_CACHE_SIZE = OPTION_PREFIX + "memorycachesize";
+
     private Constant() {
         // Unused
     }
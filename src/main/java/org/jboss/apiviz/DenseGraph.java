@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable class graph with dense integer IDs.  Safe for concurrent
+ * reads.
+ * <p>
+ * The vertices are numbered in the order of their qualified names, the
+ * nodes of the graph first and then the classes which appear only as the
+ * target of an edge, such as the target of an {@code @apiviz.uses} tag.
+ * The edges are numbered in their natural order without duplicates, and
+ * their attributes are kept in parallel arrays.  The outgoing and incoming
+ * edges of each vertex are kept in compressed sparse row form, in the
+ * natural order of the edges.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class DenseGraph {
+
+    private static final Comparator<ApiClass> NAME_ORDER = new Comparator<ApiClass>() {
+        public int compare(ApiClass a, ApiClass b) {
+            return a.getQualifiedName().compareTo(b.getQualifiedName());
+        }
+    };
+
+    private final ApiClass[] vertices;
+    private final int nodeCount;
+    private final Map<String, Integer> ids;
+
+    private final Edge[] edges;
+    private final EdgeType[] types;
+    private final int[] sources;
+    private final int[] targets;
+
+    private final int[] outStart;
+    private final int[] outEdges;
+    private final int[] inStart;
+    private final int[] inEdges;
+
+    /**
+     * @param nodes the nodes with unique qualified names
+     * @param edges the edges, possibly with duplicates
+     */
+    public DenseGraph(Collection<ApiClass> nodes, Collection<Edge> edges) {
+        this(nodes, sortUnique(edges));
+    }
+
+    /**
+     * @param nodes       the nodes with unique qualified names
+     * @param sortedEdges the edges in their natural order without
+     *                    duplicates, as returned by
+     *                    {@link #sortUnique(Collection)}
+     */
+    DenseGraph(Collection<ApiClass> nodes, Edge[] sortedEdges) {
+        ApiClass[] sortedNodes = nodes.toArray(new ApiClass[nodes.size()]);
+        Arrays.sort(sortedNodes, NAME_ORDER);
+        int edgeCount = sortedEdges.length;
+
+        // Assign the IDs of the nodes first and then the rest.
+        ids = new HashMap<String, Integer>(sortedNodes.length * 2);
+        for (ApiClass n: sortedNodes) {
+            ids.put(n.getQualifiedName(), Integer.valueOf(ids.size()));
+        }
+        nodeCount = ids.size();
+
+        Map<String, ApiClass> others = new TreeMap<String, ApiClass>();
+        for (int i = 0; i < edgeCount; i ++) {
+            addOther(others, (ApiClass) sortedEdges[i].getSource());
+            addOther(others, (ApiClass) sortedEdges[i].getTarget());
+        }
+        vertices = new ApiClass[nodeCount + others.size()];
+        System.arraycopy(sortedNodes, 0, vertices, 0, nodeCount);
+        for (ApiClass o: others.values()) {
+            vertices[ids.size()] = o;
+            ids.put(o.getQualifiedName(), Integer.valueOf(ids.size()));
+        }
+
+        this.edges = new Edge[edgeCount];
+        System.arraycopy(sortedEdges, 0, this.edges, 0, edgeCount);
+        types = new EdgeType[edgeCount];
+        sources = new int[edgeCount];
+        targets = new int[edgeCount];
+        for (int i = 0; i < edgeCount; i ++) {
+            Edge e = this.edges[i];
+            types[i] = e.getType();
+            sources[i] = getId(e.getSource());
+            targets[i] = getId(e.getTarget());
+        }
+
+        outStart = new int[vertices.length + 1];
+        outEdges = new int[edgeCount];
+        group(sources, outStart, outEdges);
+        inStart = new int[vertices.length + 1];
+        inEdges = new int[edgeCount];
+        group(targets, inStart, inEdges);
+    }
+
+    /**
+     * Returns the specified edges in their natural order without
+     * duplicates.
+     */
+    static Edge[] sortUnique(Collection<Edge> edges) {
+        Edge[] sortedEdges = edges.toArray(new Edge[edges.size()]);
+        Arrays.sort(sortedEdges);
+        int edgeCount = 0;
+        for (Edge e: sortedEdges) {
+            if (edgeCount == 0 || sortedEdges[edgeCount - 1].compareTo(e) != 0) {
+                sortedEdges[edgeCount ++] = e;
+            }
+        }
+        if (edgeCount == sortedEdges.length) {
+            return sortedEdges;
+        }
+        Edge[] uniqueEdges = new Edge[edgeCount];
+        System.arraycopy(sortedEdges, 0, uniqueEdges, 0, edgeCount);
+        return uniqueEdges;
+    }
+
+    /**
+     * Merges two arrays returned by {@link #sortUnique(Collection)} into
+     * one, keeping the edge of {@code a} if both have the same edge.
+     */
+    static Edge[] mergeUnique(Edge[] a, Edge[] b) {
+        Edge[] merged = new Edge[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < a.length && j < b.length) {
+            int v = a[i].compareTo(b[j]);
+            if (v < 0) {
+                merged[k ++] = a[i ++];
+            } else if (v > 0) {
+                merged[k ++] = b[j ++];
+            } else {
+                merged[k ++] = a[i ++];
+                j ++;
+            }
+        }
+        while (i < a.length) {
+            merged[k ++] = a[i ++];
+        }
+        while (j < b.length) {
+            merged[k ++] = b[j ++];
+        }
+        if (k == merged.length) {
+            return merged;
+        }
+        Edge[] uniqueEdges = new Edge[k];
+        System.arraycopy(merged, 0, uniqueEdges, 0, k);
+        return uniqueEdges;
+    }
+
+    private void addOther(Map<String, ApiClass> others, ApiClass cls) {
+        String name = cls.getQualifiedName();
+        if (!ids.containsKey(name) && !others.containsKey(name)) {
+            others.put(name, cls);
+        }
+    }
+
+    /**
+     * Sorts the edge IDs by their vertex IDs in {@code keys}, keeping the
+     * natural order of the edges of the same vertex.
+     */
+    private static void group(int[] keys, int[] start, int[] order) {
+        for (int k: keys) {
+            start[k + 1] ++;
+        }
+        for (int i = 1; i < start.length; i ++) {
+            start[i] += start[i - 1];
+        }
+        int[] next = new int[start.length - 1];
+        System.arraycopy(start, 0, next, 0, next.length);
+        for (int i = 0; i < keys.length; i ++) {
+            order[next[keys[i]] ++] = i;
+        }
+    }
+
+    /**
+     * Returns the number of the nodes, whose IDs precede the IDs of the
+     * other vertices.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getVertexCount() {
+        return vertices.length;
+    }
+
+    public ApiClass getVertex(int id) {
+        return vertices[id];
+    }
+
+    /**
+     * Returns the ID of the specified class, or {@code -1} if the class is
+     * not a vertex of this graph.
+     */
+    public int getId(ApiElement doc) {
+        if (!(doc instanceof ApiClass)) {
+            return -1;
+        }
+        Integer id = ids.get(doc.getQualifiedName());
+        return id == null? -1 : id.intValue();
+    }
+
+    public int getEdgeCount() {
+        return edges.length;
+    }
+
+    public Edge getEdge(int id) {
+        return edges[id];
+    }
+
+    public EdgeType getType(int id) {
+        return types[id];
+    }
+
+    public int getSource(int id) {
+        return sources[id];
+    }
+
+    public int getTarget(int id) {
+        return targets[id];
+    }
+
+    public int getOutgoingEdgeCount(int vertex) {
+        return outStart[vertex + 1] - outStart[vertex];
+    }
+
+    /**
+     * Returns the ID of the {@code index}-th outgoing edge of the specified
+     * vertex.
+     */
+    public int getOutgoingEdge(int vertex, int index) {
+        return outEdges[outStart[vertex] + index];
+    }
+
+    public int getIncomingEdgeCount(int vertex) {
+        return inStart[vertex + 1] - inStart[vertex];
+    }
+
+    /**
+     * Returns the ID of the {@code index}-th incoming edge of the specified
+     * vertex.
+     */
+    public int getIncomingEdge(int vertex, int index) {
+        return inEdges[inStart[vertex] + index];
+    }
+}
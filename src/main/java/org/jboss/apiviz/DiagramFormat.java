@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+/**
+ * How a diagram is rendered and placed into its page.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public enum DiagramFormat {
+    /**
+     * A PNG image with a client-side image map.
+     */
+    PNG("png", null),
+    /**
+     * An SVG image referred to by an {@code OBJECT} element.  The links
+     * are opened in the page which contains the image.
+     */
+    SVG("svg", "_parent"),
+    /**
+     * An SVG image inlined into the page.
+     */
+    INLINE_SVG("svg", null);
+
+    private final String extension;
+    private final String linkTarget;
+
+    private DiagramFormat(String extension, String linkTarget) {
+        this.extension = extension;
+        this.linkTarget = linkTarget;
+    }
+
+    /**
+     * Returns the file name extension of the image, without a dot.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Returns the browsing context the links of an SVG image are opened
+     * in, or {@code null} for the one the image is displayed in.
+     */
+    public String getLinkTarget() {
+        return linkTarget;
+    }
+
+    /**
+     * Parses the value of the {@code -apiviz.format} option, such as
+     * {@code png}, {@code svg} or {@code inline-svg}.
+     *
+     * @return {@code null} if the value is not a known format
+     */
+    public static DiagramFormat parse(String value) {
+        for (DiagramFormat f: values()) {
+            if (f.name().replace('_', '-').equalsIgnoreCase(value)) {
+                return f;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import static org.jboss.apiviz.Constant.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.javadoc.DocErrorReporter;
+
+/**
+ * Generates the diagrams of a javadoc run and inserts them into the HTML
+ * pages generated by the standard doclet.
+ * <p>
+ * The DOT source of each diagram is streamed into the renderer on the
+ * worker pool, followed by the HTML instrumentation.  The graph touches
+ * only its {@link ApiModel}, so the workers generate the DOT source of
+ * their diagrams concurrently.  The pages are looked
+ * up in a {@link PageIndex} of the output directory, and the diagrams whose
+ * page is missing are skipped and reported by
+ * {@link #getUnplacedDiagrams()}.
+ * <p>
+ * A diagram is a PNG image with a client-side image map, or an SVG image
+ * whose nodes link to their pages natively, depending on the
+ * {@link DiagramFormat}.  An inlined SVG image is read back from its file,
+ * so that the reused diagrams are inlined the same way.
+ * <p>
+ * A diagram which fails to render, e.g. because Graphviz exceeded its time
+ * limit, is rendered once more with the draft {@link LayoutPolicy}.  The
+ * degraded and failed diagrams are reported by {@link #getDegradedDiagrams()}
+ * and {@link #getFailedDiagrams()} instead of failing the whole run.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class DiagramGenerator {
+
+    static final String DIAGRAM_START = "<!-- APIviz diagram -->";
+    private static final String DIAGRAM_END = "<!-- /APIviz diagram -->";
+
+    /**
+     * Matches the diagram injected by a previous run, which is replaced, or
+     * the point to insert the diagram at.  The pages are injected again
+     * when they are not regenerated, e.g. by {@link GraphAggregator}.
+     */
+    static final Pattern INSERTION_POINT_PATTERN = Pattern.compile(
+            "(" + Pattern.quote(DIAGRAM_START) + ".*?" +
+            Pattern.quote(DIAGRAM_END + NEWLINE + NEWLINE) + ")|" +
+            "((<\\/PRE>)(?=\\s*<P>)|(?=<TABLE BORDER=\"1\"))", Pattern.DOTALL);
+
+    private final DocErrorReporter reporter;
+    private final ClassDocGraph graph;
+    private final File outputDirectory;
+    private final DiagramWorkerPool pool;
+    private final DiagramRenderer renderer;
+    private final DiagramManifest manifest;
+    private final DiagramFormat format;
+    private final PageIndex pages;
+    private final PerformanceReport report;
+    private final List<String> unplacedDiagrams = new ArrayList<String>();
+    private final List<String> degradedDiagrams =
+        Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> failedDiagrams =
+        Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * @param manifest the manifest of the previous run, or {@code null}
+     *                 to regenerate all diagrams
+     */
+    public DiagramGenerator(
+            DocErrorReporter reporter, ClassDocGraph graph, File outputDirectory,
+            DiagramWorkerPool pool, DiagramRenderer renderer,
+            DiagramManifest manifest, DiagramFormat format) {
+        this(reporter, graph, outputDirectory, pool, renderer, manifest, format,
+             new PerformanceReport());
+    }
+
+    /**
+     * @param manifest the manifest of the previous run, or {@code null}
+     *                 to regenerate all diagrams
+     * @param report   the report to record the statistics of each diagram
+     *                 and the time spent in each phase into
+     */
+    public DiagramGenerator(
+            DocErrorReporter reporter, ClassDocGraph graph, File outputDirectory,
+            DiagramWorkerPool pool, DiagramRenderer renderer,
+            DiagramManifest manifest, DiagramFormat format,
+            PerformanceReport report) {
+        if (report == null) {
+            throw new NullPointerException("report");
+        }
+        this.reporter = reporter;
+        this.graph = graph;
+        this.outputDirectory = outputDirectory;
+        this.pool = pool;
+        this.renderer = renderer;
+        this.manifest = manifest;
+        this.format = format;
+        this.report = report;
+        pages = new PageIndex(outputDirectory);
+    }
+
+    public void generateOverviewSummary() throws IOException {
+        instrumentDiagram("overview", pages.getOverviewPage(), new Diagram() {
+            @Override
+            Map<String, String> generateInputs() {
+                return graph.getOverviewSummaryInputs();
+            }
+
+            @Override
+            void generateDiagram(Appendable out, LayoutPolicy policy) throws IOException {
+                graph.writeOverviewSummaryDiagram(out, policy);
+            }
+        });
+    }
+
+    public void generatePackageSummaries() throws IOException {
+        for (final ApiPackage p: graph.getModel().getPackages()) {
+            instrumentDiagram(
+                    p.getName(), pages.getPage(p),
+                    new Diagram() {
+                        @Override
+                        Map<String, String> generateInputs() {
+                            return graph.getPackageSummaryInputs(p);
+                        }
+
+                        @Override
+                        void generateDiagram(Appendable out, LayoutPolicy policy) throws IOException {
+                            graph.writePackageSummaryDiagram(p, out, policy);
+                        }
+                    });
+        }
+    }
+
+    public void generateClassDiagrams() throws IOException {
+        for (final ApiClass c: graph.getModel().getClasses()) {
+            instrumentDiagram(
+                    c.getQualifiedName(), pages.getPage(c),
+                    new Diagram() {
+                        @Override
+                        Map<String, String> generateInputs() {
+                            return graph.getClassDiagramInputs(c);
+                        }
+
+                        @Override
+                        void generateDiagram(Appendable out, LayoutPolicy policy) throws IOException {
+                            graph.writeClassDiagram(c, out, policy);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Returns the names of the diagrams which were skipped because the
+     * standard doclet did not generate their pages.
+     */
+    public List<String> getUnplacedDiagrams() {
+        return Collections.unmodifiableList(unplacedDiagrams);
+    }
+
+    public PerformanceReport getReport() {
+        return report;
+    }
+
+    /**
+     * Returns the names of the diagrams which were rendered with the draft
+     * layout policy after the first attempt failed, with the reason.
+     */
+    public List<String> getDegradedDiagrams() {
+        synchronized (degradedDiagrams) {
+            return new ArrayList<String>(degradedDiagrams);
+        }
+    }
+
+    /**
+     * Returns the names of the diagrams which could not be rendered or
+     * placed into their pages, with the reason.
+     */
+    public List<String> getFailedDiagrams() {
+        synchronized (failedDiagrams) {
+            return new ArrayList<String>(failedDiagrams);
+        }
+    }
+
+    private void instrumentDiagram(final String name, String filename, final Diagram diagram) throws IOException {
+        if (filename == null) {
+            unplacedDiagrams.add(name);
+            return;
+        }
+
+        File imageFile = new File(
+                outputDirectory, filename + '.' + format.getExtension());
+
+        final String finalFilename = filename;
+        final Map<String, String> inputs;
+        final String fingerprint;
+        if (manifest != null) {
+            inputs = diagram.getInputs();
+            fingerprint = manifest.getFingerprint(inputs);
+            final String map = manifest.getMap(filename, fingerprint);
+            if (map != null &&
+                pages.hasImage(filename + '.' + format.getExtension())) {
+                reporter.printNotice("Reusing " + imageFile + "...");
+                pool.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        long startTime = System.nanoTime();
+                        PerformanceReport.Diagram stats =
+                            new PerformanceReport.Diagram(name, finalFilename);
+                        stats.setStatus("reused");
+                        try {
+                            if (!injectDiagram(finalFilename, map, stats)) {
+                                return null;
+                            }
+                            manifest.put(finalFilename, fingerprint, inputs, map);
+                            return null;
+                        } finally {
+                            addDiagram(stats, startTime);
+                        }
+                    }
+                });
+                return;
+            }
+        } else {
+            inputs = null;
+            fingerprint = null;
+        }
+
+        reporter.printNotice("Generating " + imageFile + "...");
+
+        pool.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                long startTime = System.nanoTime();
+                PerformanceReport.Diagram stats =
+                    new PerformanceReport.Diagram(name, finalFilename);
+                try {
+                    String map = renderDiagram(name, finalFilename, diagram, stats);
+                    if (map != null && manifest != null) {
+                        manifest.put(finalFilename, fingerprint, inputs, map);
+                    }
+                    return null;
+                } finally {
+                    addDiagram(stats, startTime);
+                }
+            }
+        });
+    }
+
+    /**
+     * Renders a diagram and injects it into its page.  A diagram which
+     * fails or times out is rendered once more with the draft layout
+     * policy.  The failure is recorded instead of thrown, so that the
+     * other diagrams are still generated.
+     *
+     * @return the image map, or {@code null} if the diagram failed
+     */
+    private String renderDiagram(
+            String name, String filename, Diagram diagram,
+            PerformanceReport.Diagram stats) {
+        String mapContent;
+        try {
+            mapContent = renderImage(filename, diagram, stats);
+        } catch (Exception e) {
+            try {
+                mapContent = renderImage(
+                        filename, diagram.withPolicy(graph.getLayoutPolicy().toDraft()),
+                        stats);
+                degradedDiagrams.add(name + " (" + e + ")");
+                stats.setStatus("degraded");
+            } catch (Exception e2) {
+                new File(outputDirectory, filename + '.' + format.getExtension()).delete();
+                failedDiagrams.add(name + " (" + e2 + ")");
+                stats.setStatus("failed");
+                return null;
+            }
+        }
+
+        return injectDiagram(filename, mapContent, stats)? mapContent : null;
+    }
+
+    private String renderImage(
+            String filename, final DiagramSource diagram,
+            final PerformanceReport.Diagram stats) throws IOException {
+
+        // Measure the DOT source on its way into the renderer.
+        DiagramSource source = new DiagramSource() {
+            public void writeDiagram(Appendable out) throws IOException {
+                long startTime = System.nanoTime();
+                DotStatistics dot = new DotStatistics(out);
+                diagram.writeDiagram(dot);
+                stats.addDot(dot, System.nanoTime() - startTime);
+            }
+        };
+
+        // Includes the failed attempts, unlike RenderResult.getRenderTime().
+        long startTime = System.nanoTime();
+        RenderResult result;
+        try {
+            if (format == DiagramFormat.PNG) {
+                result = renderer.writeImageAndMap(source, outputDirectory, filename);
+            } else {
+                result = renderer.writeSvg(
+                        source, outputDirectory, filename, format.getLinkTarget());
+            }
+        } finally {
+            stats.addRenderTime(System.nanoTime() - startTime);
+        }
+        if (result.isCached()) {
+            stats.setStatus("cached");
+        }
+        return result.getMapAsString();
+    }
+
+    /**
+     * Injects a diagram into its page and records its output size, or
+     * records the failure.
+     *
+     * @return {@code true} if the diagram has been injected
+     */
+    private boolean injectDiagram(
+            String filename, String mapContent, PerformanceReport.Diagram stats) {
+        long startTime = System.nanoTime();
+        try {
+            injectDiagram(filename, mapContent);
+        } catch (Exception e) {
+            failedDiagrams.add(stats.getName() + " (" + e + ")");
+            stats.setStatus("failed");
+            return false;
+        } finally {
+            stats.addInjectTime(System.nanoTime() - startTime);
+        }
+
+        File imageFile = new File(
+                outputDirectory, filename + '.' + format.getExtension());
+        stats.setOutputBytes(imageFile.length() + mapContent.length());
+        return true;
+    }
+
+    private void addDiagram(PerformanceReport.Diagram stats, long startTime) {
+        stats.setWallTime(System.nanoTime() - startTime);
+        report.addDiagram(stats);
+        report.addPhase(PerformanceReport.PHASE_DOT_GENERATION, stats.getDotTime());
+        report.addPhase(PerformanceReport.PHASE_RENDERING, stats.getRenderTime());
+        report.addPhase(PerformanceReport.PHASE_HTML_INJECTION, stats.getInjectTime());
+    }
+
+    private void injectDiagram(String filename, String mapContent) throws IOException {
+        File htmlFile = new File(outputDirectory, filename + ".html");
+        File imageFile = new File(
+                outputDirectory, filename + '.' + format.getExtension());
+
+        String svg = null;
+        if (format == DiagramFormat.INLINE_SVG) {
+            svg = FileUtil.readFile(imageFile);
+        }
+        String insertion = getInsertion(format, imageFile.getName(), mapContent, svg);
+        if (!HtmlInjector.injectOrReplace(htmlFile, INSERTION_POINT_PATTERN, insertion)) {
+            throw new IllegalStateException(
+                    "Failed to find an insertion point.");
+        }
+    }
+
+    /**
+     * Returns the HTML which shows a diagram in its page, marked so that a
+     * later run can replace it.
+     *
+     * @param imageName  the name of the image relative to the page
+     * @param svg        the SVG image to inline, or {@code null} unless the
+     *                   format is {@link DiagramFormat#INLINE_SVG}
+     */
+    static String getInsertion(DiagramFormat format, String imageName, String mapContent, String svg) {
+        String insertion;
+        switch (format) {
+        case SVG:
+            insertion =
+                "<CENTER><OBJECT DATA=\"" + imageName +
+                "\" TYPE=\"image/svg+xml\"></OBJECT></CENTER>" +
+                NEWLINE + NEWLINE;
+            break;
+        case INLINE_SVG:
+            // Strip the XML declaration and the DOCTYPE.
+            int start = svg.indexOf("<svg");
+            if (start < 0) {
+                throw new IllegalStateException(
+                        "Not an SVG image: " + imageName);
+            }
+            insertion =
+                "<CENTER>" + svg.substring(start).trim() + "</CENTER>" +
+                NEWLINE + NEWLINE;
+            break;
+        default:
+            insertion =
+                mapContent + NEWLINE +
+                "<CENTER><IMG SRC=\"" + imageName +
+                "\" USEMAP=\"#APIVIZ\" BORDER=\"0\"></CENTER>" +
+                NEWLINE + NEWLINE;
+        }
+        return DIAGRAM_START + NEWLINE + insertion + DIAGRAM_END + NEWLINE + NEWLINE;
+    }
+
+    /**
+     * Inserts the specified HTML into a page held in memory.
+     *
+     * @return the new page, or {@code null} if the page has a diagram
+     *         already or has no insertion point
+     */
+    static String insertDiagram(String page, String insertion) {
+        Matcher m = INSERTION_POINT_PATTERN.matcher(page);
+        if (!m.find() || m.start(1) >= 0) {
+            return null;
+        }
+        return page.substring(0, m.end()) + insertion + page.substring(m.end());
+    }
+
+    /**
+     * Generates the DOT source of a diagram and the inputs it depends on
+     * only when they are needed.
+     */
+    private abstract class Diagram implements DiagramSource {
+        Map<String, String> getInputs() {
+            return generateInputs();
+        }
+
+        public void writeDiagram(Appendable out) throws IOException {
+            generateDiagram(out, graph.getLayoutPolicy());
+        }
+
+        /**
+         * Returns the source of this diagram with the layout parameters
+         * chosen by the specified policy.
+         */
+        DiagramSource withPolicy(final LayoutPolicy policy) {
+            return new DiagramSource() {
+                public void writeDiagram(Appendable out) throws IOException {
+                    generateDiagram(out, policy);
+                }
+            };
+        }
+
+        abstract Map<String, String> generateInputs();
+        abstract void generateDiagram(Appendable out, LayoutPolicy policy) throws IOException;
+    }
+}
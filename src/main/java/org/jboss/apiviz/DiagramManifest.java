@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records which inputs each generated diagram depends on, so that the next
+ * run regenerates only the diagrams whose inputs changed.
+ * <p>
+ * The inputs of a diagram are the fingerprints of the classes and packages
+ * in its neighbourhood (see {@link ClassDocGraph#getClassDiagramInputs}),
+ * which cover their {@code @apiviz.*} tags and relationships.  The manifest
+ * is an append-only journal with one line per rendered diagram, so an
+ * interrupted run can be resumed from the diagrams it has finished.  A
+ * complete run compacts the journal.
+ * <p>
+ * Each line consists of the following tab-separated fields: the diagram
+ * file name, the diagram fingerprint, the space-separated names of its
+ * inputs, the escaped client-side image map and the SHA-1 hash of the
+ * other fields.  The image map is kept because the standard doclet
+ * regenerates every HTML page.  A line without a matching hash, such as
+ * the one cut off by an interrupted run, is ignored, and the incomplete
+ * tail of the journal is truncated before the next run appends to it.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class DiagramManifest {
+
+    /**
+     * Increase whenever the generated diagrams change for the same input.
+     */
+    private static final String VERSION = "1";
+
+    private final File file;
+    private final String graphvizVersion;
+    private final Map<String, String[]> previousEntries;
+    private final Map<String, String> currentEntries = new TreeMap<String, String>();
+    private Writer journal;
+
+    public DiagramManifest(File file, String graphvizVersion) throws IOException {
+        this.file = file;
+        this.graphvizVersion = graphvizVersion == null? "" : graphvizVersion;
+        previousEntries = load(file);
+        journal = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+    }
+
+    public int getPreviousDiagramCount() {
+        return previousEntries.size();
+    }
+
+    /**
+     * Returns the fingerprint of a diagram with the specified inputs.
+     */
+    public String getFingerprint(Map<String, String> inputs) {
+        StringBuilder buf = new StringBuilder(inputs.size() * 64);
+        for (Map.Entry<String, String> e: inputs.entrySet()) {
+            buf.append(e.getKey());
+            buf.append('=');
+            buf.append(e.getValue());
+            buf.append('\n');
+        }
+        return DigestUtil.sha1(VERSION, graphvizVersion, buf.toString());
+    }
+
+    /**
+     * Returns the image map recorded for the specified diagram if its
+     * fingerprint did not change, or {@code null} otherwise.
+     */
+    public synchronized String getMap(String filename, String fingerprint) {
+        String[] entry = previousEntries.get(filename);
+        if (entry == null || !entry[1].equals(fingerprint)) {
+            return null;
+        }
+        return unescape(entry[3]);
+    }
+
+    /**
+     * Records a generated diagram.  The record is flushed immediately so
+     * that it survives an interrupted run.
+     */
+    public synchronized void put(
+            String filename, String fingerprint,
+            Map<String, String> inputs, String map) throws IOException {
+
+        StringBuilder buf = new StringBuilder(1024);
+        buf.append(filename);
+        buf.append('\t');
+        buf.append(fingerprint);
+        buf.append('\t');
+        boolean first = true;
+        for (String name: inputs.keySet()) {
+            if (first) {
+                first = false;
+            } else {
+                buf.append(' ');
+            }
+            buf.append(name.replace(' ', '+'));
+        }
+        buf.append('\t');
+        buf.append(escape(map));
+        buf.append('\t');
+        buf.append(DigestUtil.sha1(buf.toString()));
+        buf.append('\n');
+
+        String line = buf.toString();
+        currentEntries.put(filename, line);
+        journal.write(line);
+        journal.flush();
+    }
+
+    /**
+     * Closes the journal.  If the run was complete, the manifest is
+     * rewritten with the diagrams of this run only.
+     */
+    public synchronized void close(boolean complete) throws IOException {
+        journal.close();
+        if (!complete) {
+            return;
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        Writer out = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+        try {
+            for (String line: currentEntries.values()) {
+                out.write(line);
+            }
+        } finally {
+            out.close();
+        }
+
+        file.delete();
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Failed to rename " + tmp + " to " + file);
+        }
+    }
+
+    /**
+     * Loads the complete records of the journal, and truncates the journal
+     * after its last complete line so that the next record is not appended
+     * to a line cut off by an interrupted run.
+     */
+    private static Map<String, String[]> load(File file) throws IOException {
+        Map<String, String[]> entries = new HashMap<String, String[]>();
+        if (!file.isFile()) {
+            return entries;
+        }
+
+        byte[] content = FileUtil.readBytes(file);
+        int length = content.length;
+        while (length > 0 && content[length - 1] != '\n') {
+            length --;
+        }
+        if (length < content.length) {
+            RandomAccessFile out = new RandomAccessFile(file, "rw");
+            try {
+                out.setLength(length);
+            } finally {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Ignore.
+                }
+            }
+        }
+
+        for (String line: new String(content, 0, length, "UTF-8").split("\n")) {
+            String[] entry = line.split("\t", -1);
+            // Ignore the line cut off or garbled by an interrupted run.
+            if (entry.length == 5 &&
+                entry[4].equals(DigestUtil.sha1(line.substring(0, line.lastIndexOf('\t') + 1)))) {
+                entries.put(entry[0], entry);
+            }
+        }
+        return entries;
+    }
+
+    private static String escape(String text) {
+        StringBuilder buf = new StringBuilder(text.length() + 64);
+        for (int i = 0; i < text.length(); i ++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '\\':
+                buf.append("\\\\");
+                break;
+            case '\t':
+                buf.append("\\t");
+                break;
+            case '\r':
+                buf.append("\\r");
+                break;
+            case '\n':
+                buf.append("\\n");
+                break;
+            default:
+                buf.append(c);
+            }
+        }
+        return buf.toString();
+    }
+
+    private static String unescape(String text) {
+        StringBuilder buf = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i ++) {
+            char c = text.charAt(i);
+            if (c != '\\' || i + 1 == text.length()) {
+                buf.append(c);
+                continue;
+            }
+
+            c = text.charAt(++ i);
+            switch (c) {
+            case 't':
+                buf.append('\t');
+                break;
+            case 'r':
+                buf.append('\r');
+                break;
+            case 'n':
+                buf.append('\n');
+                break;
+            default:
+                buf.append(c);
+            }
+        }
+        return buf.toString();
+    }
+}
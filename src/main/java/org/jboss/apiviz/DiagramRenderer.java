@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Renders the DOT source of a diagram into {@code <filename>.png} and
+ * returns the client-side image map in memory, or into
+ * {@code <filename>.svg}.  Implementations must be thread-safe.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public interface DiagramRenderer {
+
+    /**
+     * Renders with a new Graphviz process per diagram.
+     */
+    DiagramRenderer GRAPHVIZ = new DiagramRenderer() {
+        public RenderResult writeImageAndMap(String diagram, File outputDirectory,
+                String filename) throws IOException {
+            return Graphviz.writeImageAndMap(diagram, outputDirectory, filename);
+        }
+
+        public RenderResult writeImageAndMap(DiagramSource source, File outputDirectory,
+                String filename) throws IOException {
+            return Graphviz.writeImageAndMap(source, outputDirectory, filename);
+        }
+
+        public RenderResult writeSvg(DiagramSource source, File outputDirectory,
+                String filename, String linkTarget) throws IOException {
+            return Graphviz.writeSvg(source, outputDirectory, filename, linkTarget);
+        }
+
+        public void close() {
+            // Nothing to release.
+        }
+    };
+
+    RenderResult writeImageAndMap(String diagram, File outputDirectory, String filename) throws IOException;
+
+    /**
+     * Renders the diagram written by the specified source, streaming it if
+     * possible.  The source is invoked on the calling thread, possibly more
+     * than once.
+     */
+    RenderResult writeImageAndMap(DiagramSource source, File outputDirectory, String filename) throws IOException;
+
+    /**
+     * Renders the diagram written by the specified source into an SVG
+     * image.  See {@link Graphviz#writeSvg} for the link target.
+     */
+    RenderResult writeSvg(DiagramSource source, File outputDirectory, String filename, String linkTarget) throws IOException;
+
+    /**
+     * Releases the resources held by this renderer.
+     */
+    void close();
+}
@@ -0,0 +1,503 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import static org.jboss.apiviz.Constant.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.javadoc.DocErrorReporter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a javadoc directory to the local host and renders the class
+ * diagrams when their pages are first requested, instead of rendering all
+ * of them up front.  The javadoc is generated with {@code -apiviz.lazy}
+ * and {@code -apiviz.snapshot}, and the server loads the saved graph:
+ * <pre>
+ * java -cp apiviz.jar org.jboss.apiviz.DiagramServer \
+ *      -d &lt;javadoc directory&gt; [-apiviz.port &lt;port&gt;] [-apiviz.&lt;option&gt; ...] \
+ *      &lt;snapshot&gt; ...
+ * </pre>
+ * More than one snapshot is merged by {@link GraphAggregator}, so the
+ * modules which were documented separately can be served together.
+ * <p>
+ * A rendered image is kept in an {@link ImageCache} in memory, which is
+ * bounded by {@code -apiviz.memorycachesize}, and in a {@link RenderCache}
+ * on disk, which is bounded by {@code -apiviz.cachesize}, so a diagram
+ * evicted from memory or rendered before a restart is not laid out again.
+ * The concurrent requests for the same diagram wait for a single
+ * rendering.  The pages which have a diagram already are served as they
+ * are.
+ * <p>
+ * Unlike the doclet, the server requires Java 6 or above because it uses
+ * the HTTP server of the JDK.  Starting the server sets the system property
+ * {@code sun.net.httpserver.nodelay} to {@code true} unless it is set.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class DiagramServer {
+
+    private static final long DEFAULT_MEMORY_CACHE_SIZE = 64;
+    private static final String DEFAULT_CACHE_DIR = "apiviz-cache";
+    private static final int TRIM_INTERVAL = 64;
+    private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final RenderSetup setup;
+    private final ClassDocGraph graph;
+    private final ImageCache images;
+    private final File directory;
+    private final DiagramFormat format;
+    private final Map<String, ApiClass> classes = new HashMap<String, ApiClass>();
+    private final File workDirectory;
+    private final AtomicInteger renders = new AtomicInteger();
+    private final AtomicInteger attempts = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param setup  the renderer and the options to serve the diagrams with
+     * @param graph  the graph of the classes in the javadoc directory
+     * @param images the cache to keep the rendered images in
+     */
+    public DiagramServer(RenderSetup setup, ClassDocGraph graph, ImageCache images) throws IOException {
+        if (setup == null) {
+            throw new NullPointerException("setup");
+        }
+        if (graph == null) {
+            throw new NullPointerException("graph");
+        }
+        if (images == null) {
+            throw new NullPointerException("images");
+        }
+        this.setup = setup;
+        this.graph = graph;
+        this.images = images;
+        directory = setup.getOutputDirectory();
+        format = setup.getFormat();
+
+        PageIndex pages = new PageIndex(directory);
+        for (ApiClass c: graph.getModel().getClasses()) {
+            String page = pages.getPage(c);
+            if (page != null) {
+                classes.put(page.replace(File.separatorChar, '/'), c);
+            }
+        }
+
+        workDirectory = File.createTempFile("apiviz-", ".tmp");
+        if (!workDirectory.delete() || !workDirectory.mkdir()) {
+            throw new IOException("Failed to create a directory: " + workDirectory);
+        }
+    }
+
+    /**
+     * Starts to listen to the specified port of the loopback address.
+     *
+     * @param port the port, or {@code 0} for any free port
+     */
+    public synchronized void start(int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("started already");
+        }
+
+        // The headers and the body are written separately, so a response
+        // waits for the delayed acknowledgement of the headers otherwise.
+        // Read when the first server is created.
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+        server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getByName(null), port), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        executor = Executors.newFixedThreadPool(setup.getThreads());
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Returns the port the server listens to.
+     */
+    public synchronized int getPort() {
+        if (server == null) {
+            throw new IllegalStateException("not started");
+        }
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server and deletes the files it rendered the diagrams
+     * into.  The images on disk are trimmed to the size of the cache.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+            server = null;
+            executor = null;
+        }
+        if (setup.getCache() != null) {
+            setup.getCache().trim();
+        }
+        File[] files = workDirectory.listFiles();
+        if (files != null) {
+            for (File f: files) {
+                f.delete();
+            }
+        }
+        workDirectory.delete();
+    }
+
+    /**
+     * Returns the number of the diagrams rendered or copied from the cache
+     * on disk so far.
+     */
+    public int getRenderCount() {
+        return renders.get();
+    }
+
+    /**
+     * Returns the number of the diagrams which could not be rendered even
+     * with the draft layout policy.
+     */
+    public int getFailureCount() {
+        return failures.get();
+    }
+
+    public ImageCache getImageCache() {
+        return images;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (!method.equals("GET") && !method.equals("HEAD")) {
+            sendError(exchange, 405, "Method Not Allowed");
+            return;
+        }
+
+        String path = exchange.getRequestURI().getPath();
+        if (path == null || !path.startsWith("/") || path.indexOf("..") >= 0) {
+            sendError(exchange, 400, "Bad Request");
+            return;
+        }
+        path = path.substring(1);
+        if (path.length() == 0 || path.endsWith("/")) {
+            path += "index.html";
+        }
+
+        byte[] content;
+        try {
+            content = getContent(path);
+        } catch (Exception e) {
+            setup.getReporter().printWarning(
+                    "Failed to serve " + path + ": " + e);
+            sendError(exchange, 500, "Internal Server Error");
+            return;
+        }
+        if (content == null) {
+            sendError(exchange, 404, "Not Found");
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", getContentType(path));
+        if (method.equals("HEAD")) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, content.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(content);
+        out.flush();
+    }
+
+    /**
+     * Returns the content of the specified path, with the diagram of a
+     * class rendered if needed.
+     *
+     * @return the content, or {@code null} if not found
+     */
+    private byte[] getContent(String path) throws IOException {
+        File file = new File(directory, path.replace('/', File.separatorChar));
+        if (path.endsWith(".html")) {
+            if (!file.isFile()) {
+                return null;
+            }
+            String page = FileUtil.readFile(file);
+            ApiClass cls = classes.get(path.substring(0, path.length() - 5));
+            if (cls != null) {
+                String newPage = injectDiagram(page, cls, file.getName());
+                if (newPage != null) {
+                    page = newPage;
+                }
+            }
+            return page.getBytes("ISO-8859-1");
+        }
+
+        if (file.isFile()) {
+            return FileUtil.readBytes(file);
+        }
+
+        // The image of a class which was not rendered yet.
+        String suffix = '.' + format.getExtension();
+        if (path.endsWith(suffix)) {
+            ApiClass cls = classes.get(path.substring(0, path.length() - suffix.length()));
+            if (cls != null) {
+                return getImage(cls).getData();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Inserts the diagram of the specified class into its page, unless
+     * the page has a diagram already.  A diagram which could not be
+     * rendered is left out, so that the page is still served.
+     *
+     * @return the new page, or {@code null} if not inserted
+     */
+    private String injectDiagram(String page, ApiClass cls, String pageName) {
+        String imageName =
+            pageName.substring(0, pageName.length() - 5) + '.' + format.getExtension();
+        String insertion;
+        try {
+            switch (format) {
+            case SVG:
+                // The image is rendered when the browser asks for it.
+                insertion = DiagramGenerator.getInsertion(format, imageName, "", null);
+                break;
+            case INLINE_SVG:
+                insertion = DiagramGenerator.getInsertion(
+                        format, imageName, "", decode(getImage(cls).getData()));
+                break;
+            default:
+                insertion = DiagramGenerator.getInsertion(
+                        format, imageName, getImage(cls).getMap(), null);
+            }
+        } catch (Exception e) {
+            setup.getReporter().printWarning(
+                    "Serving " + pageName + " without the diagram of " +
+                    cls.getQualifiedName() + ": " + e);
+            return null;
+        }
+        return DiagramGenerator.insertDiagram(page, insertion);
+    }
+
+    private ImageCache.Image getImage(final ApiClass cls) throws IOException {
+        return images.get(cls.getQualifiedName(), new Callable<ImageCache.Image>() {
+            public ImageCache.Image call() throws Exception {
+                return render(cls);
+            }
+        });
+    }
+
+    /**
+     * Renders the diagram of the specified class, once more with the draft
+     * layout policy if the first attempt fails, like
+     * {@link DiagramGenerator} does.
+     */
+    private ImageCache.Image render(ApiClass cls) throws IOException {
+        ImageCache.Image image;
+        try {
+            image = render(cls, graph.getLayoutPolicy());
+        } catch (Exception e) {
+            setup.getReporter().printWarning(
+                    "Rendering the diagram of " + cls.getQualifiedName() +
+                    " with the draft layout policy: " + e);
+            try {
+                image = render(cls, graph.getLayoutPolicy().toDraft());
+            } catch (Exception e2) {
+                failures.incrementAndGet();
+                if (e2 instanceof IOException) {
+                    throw (IOException) e2;
+                }
+                IOException ioe = new IOException(e2.toString());
+                ioe.initCause(e2);
+                throw ioe;
+            }
+        }
+
+        if (renders.incrementAndGet() % TRIM_INTERVAL == 0 &&
+            setup.getCache() != null) {
+            setup.getCache().trim();
+        }
+        return image;
+    }
+
+    private ImageCache.Image render(final ApiClass cls, final LayoutPolicy policy) throws IOException {
+        DiagramSource source = new DiagramSource() {
+            public void writeDiagram(Appendable out) throws IOException {
+                graph.writeClassDiagram(cls, out, policy);
+            }
+        };
+
+        // Each attempt has its own file, as an evicted diagram may be
+        // rendered again while the previous attempt is being read.
+        String filename = "d" + attempts.incrementAndGet();
+        RenderResult result;
+        if (format == DiagramFormat.PNG) {
+            result = setup.getRenderer().writeImageAndMap(source, workDirectory, filename);
+        } else {
+            result = setup.getRenderer().writeSvg(
+                    source, workDirectory, filename, format.getLinkTarget());
+        }
+        try {
+            return new ImageCache.Image(
+                    FileUtil.readBytes(result.getImageFile()),
+                    result.getMapAsString());
+        } finally {
+            result.getImageFile().delete();
+        }
+    }
+
+    private static String decode(byte[] data) {
+        try {
+            return new String(data, "ISO-8859-1");
+        } catch (UnsupportedEncodingException e) {
+            throw new Error(e);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] content = message.getBytes("ISO-8859-1");
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(status, content.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(content);
+        out.flush();
+    }
+
+    private static String getContentType(String path) {
+        if (path.endsWith(".html")) {
+            return "text/html";
+        }
+        if (path.endsWith(".css")) {
+            return "text/css";
+        }
+        if (path.endsWith(".js")) {
+            return "text/javascript";
+        }
+        if (path.endsWith(".png")) {
+            return "image/png";
+        }
+        if (path.endsWith(".gif")) {
+            return "image/gif";
+        }
+        if (path.endsWith(".svg")) {
+            return "image/svg+xml";
+        }
+        return "application/octet-stream";
+    }
+
+    public static void main(String[] args) {
+        if (!run(args, new ConsoleReporter())) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Loads the snapshots and starts the server as specified by the command
+     * line arguments.
+     */
+    static boolean run(String[] args, DocErrorReporter reporter) {
+        List<File> files = new ArrayList<File>();
+        String[][] options = RenderSetup.parseArguments(args, files, reporter);
+        if (options == null || files.isEmpty()) {
+            printUsage(reporter);
+            return false;
+        }
+        if (!APIviz.checkOptions(options, reporter)) {
+            return false;
+        }
+
+        // Keep the rendered images on disk even when not specified.
+        if (RenderSetup.getOption(options, OPTION_CACHE_DIR) == null) {
+            String[][] newOptions = new String[options.length + 1][];
+            System.arraycopy(options, 0, newOptions, 0, options.length);
+            newOptions[options.length] = new String[] {
+                    OPTION_CACHE_DIR,
+                    new File(System.getProperty("java.io.tmpdir"), DEFAULT_CACHE_DIR).getPath() };
+            options = newOptions;
+        }
+
+        final RenderSetup setup = new RenderSetup(options, reporter);
+        try {
+            reporter.printNotice("Loading " + files.size() + " graph snapshot(s)...");
+            ClassDocGraph graph = new GraphAggregator(
+                    setup.getLayoutPolicy(), setup.getThreads()).aggregate(files);
+
+            String memoryCacheSize = RenderSetup.getOption(options, OPTION_MEMORY_CACHE_SIZE);
+            final DiagramServer server = new DiagramServer(
+                    setup, graph,
+                    new ImageCache((memoryCacheSize != null?
+                            Long.parseLong(memoryCacheSize) : DEFAULT_MEMORY_CACHE_SIZE) * 1048576));
+            String port = RenderSetup.getOption(options, OPTION_PORT);
+            server.start(port != null? Integer.parseInt(port) : 0);
+
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    server.stop();
+                    setup.close();
+                }
+            });
+            reporter.printNotice(
+                    "Serving " + setup.getOutputDirectory() +
+                    " at http://localhost:" + server.getPort() + "/");
+        } catch (Throwable t) {
+            reporter.printError(
+                    "An error occurred while starting the server: " + t.toString());
+            t.printStackTrace();
+            setup.close();
+            return false;
+        }
+        return true;
+    }
+
+    private static void printUsage(DocErrorReporter reporter) {
+        reporter.printNotice(
+                "Usage: java " + DiagramServer.class.getName() +
+                " -d <javadoc directory> [-apiviz.<option> ...] <snapshot> ...");
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs diagram rendering tasks on a bounded number of worker threads.
+ * <p>
+ * The tasks must not touch the doclet API, which is not thread-safe - a
+ * {@link ClassDocGraph} built from an {@link ApiModel} is safe to use
+ * instead.  The first task that fails cancels all pending tasks, and the
+ * failure is rethrown from {@link #submit(Callable)} or {@link #finish()}.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class DiagramWorkerPool {
+
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private volatile Throwable failure;
+
+    public DiagramWorkerPool(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads: " + threads);
+        }
+
+        // Allow a few diagrams to queue up so that the workers never wait
+        // for the DOT generation, but don't keep every diagram in memory.
+        maxInFlight = threads * 2;
+        inFlight = new Semaphore(maxInFlight);
+        executor = new ThreadPoolExecutor(
+                threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new WorkerThreadFactory());
+    }
+
+    public void submit(final Callable<?> task) throws IOException {
+        rethrowFailure();
+
+        for (;;) {
+            try {
+                inFlight.acquire();
+                break;
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+        }
+
+        // Check again - the failure might have occurred while we were waiting.
+        if (failure != null) {
+            inFlight.release();
+            rethrowFailure();
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (failure == null) {
+                            task.call();
+                        }
+                    } catch (Throwable t) {
+                        fail(t);
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down by a failed task in the meantime.
+            inFlight.release();
+            rethrowFailure();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until all submitted tasks are finished and shuts the pool down.
+     */
+    public void finish() throws IOException {
+        for (;;) {
+            try {
+                inFlight.acquire(maxInFlight);
+                inFlight.release(maxInFlight);
+                break;
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+        }
+
+        shutdown();
+        rethrowFailure();
+    }
+
+    /**
+     * Discards all pending tasks and waits for the running ones to finish.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        for (;;) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private synchronized void fail(Throwable t) {
+        if (failure == null) {
+            failure = t;
+            // Stop accepting new work; the running tasks see the failure
+            // and the queued ones become no-ops.
+            executor.shutdown();
+        }
+    }
+
+    private void rethrowFailure() throws IOException {
+        Throwable t = failure;
+        if (t == null) {
+            return;
+        }
+
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new IllegalStateException(
+                "An error occurred during diagram generation", t);
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger nextId = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "APIviz-worker-" + nextId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class DigestUtil {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Returns the hexadecimal SHA-1 hash of the UTF-8 encoded parts,
+     * separated by a NUL character.
+     */
+    public static String sha1(String... parts) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e);
+        }
+
+        try {
+            for (int i = 0; i < parts.length; i ++) {
+                if (i > 0) {
+                    md.update((byte) 0);
+                }
+                md.update(parts[i].getBytes("UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new Error(e);
+        }
+
+        return toHex(md.digest());
+    }
+
+    /**
+     * Returns the hexadecimal SHA-1 hash of the UTF-8 encoded prefix and
+     * diagram, separated by a NUL character.  Same with
+     * {@code sha1(prefix, diagram)}, but the diagram is streamed through
+     * the digest.
+     */
+    public static String sha1(String prefix, DiagramSource diagram) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e);
+        }
+
+        md.update(prefix.getBytes("UTF-8"));
+        md.update((byte) 0);
+
+        Writer out = new OutputStreamWriter(
+                new DigestOutputStream(new NullOutputStream(), md), "UTF-8");
+        diagram.writeDiagram(out);
+        out.close();
+
+        return toHex(md.digest());
+    }
+
+    private static String toHex(byte[] digest) {
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i ++) {
+            hex[i * 2] = HEX[(digest[i] & 0xF0) >>> 4];
+            hex[i * 2 + 1] = HEX[digest[i] & 0x0F];
+        }
+        return new String(hex);
+    }
+
+    private DigestUtil() {
+        // Unused
+    }
+
+    private static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            // Discard.
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            // Discard.
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import static org.jboss.apiviz.Constant.*;
+import static org.jboss.apiviz.EdgeType.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.sun.javadoc.DocErrorReporter;
+
+/**
+ * The {@code @apiviz.*} tags of a class or a package, parsed once when the
+ * {@link ApiModel} is extracted.  Invalid tags are reported with their
+ * source position and ignored.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class DocMetadata {
+
+    private static final Pattern[] NO_PATTERNS = new Pattern[0];
+
+    private final boolean hidden;
+    private final boolean inherit;
+    private final boolean landmark;
+    private final boolean deprecated;
+    private final String stereotype;
+    private final Pattern[] excludes;
+    private final List<Edge> relationships;
+    private final String tagText;
+
+    /**
+     * @param model     the model to resolve the relationship targets in
+     * @param reporter  the reporter of the invalid tags
+     */
+    DocMetadata(ApiElement doc, ApiModel model, DocErrorReporter reporter) {
+        boolean hidden = false;
+        boolean inherit = false;
+        boolean landmark = false;
+        boolean deprecated = false;
+        String stereotypeTag = null;
+        List<Pattern> excludes = null;
+        List<Edge> relationships = null;
+        StringBuilder tagText = new StringBuilder();
+
+        for (ApiTag t: doc.getTags()) {
+            String name = t.getName();
+            if (name.equals("@deprecated")) {
+                deprecated = true;
+            } else if (!name.startsWith(TAG_PREFIX)) {
+                continue;
+            }
+
+            tagText.append(name);
+            tagText.append(' ');
+            tagText.append(t.getText());
+            tagText.append('\n');
+
+            if (name.equals(TAG_HIDDEN)) {
+                hidden = true;
+            } else if (name.equals(TAG_INHERIT)) {
+                inherit = true;
+            } else if (name.equals(TAG_LANDMARK)) {
+                landmark = true;
+            } else if (name.equals(TAG_STEREOTYPE)) {
+                if (stereotypeTag == null) {
+                    stereotypeTag = t.getText();
+                }
+            } else if (name.equals(TAG_EXCLUDE)) {
+                try {
+                    Pattern p = Pattern.compile(t.getText().trim());
+                    if (excludes == null) {
+                        excludes = new ArrayList<Pattern>();
+                    }
+                    excludes.add(p);
+                } catch (PatternSyntaxException e) {
+                    reporter.printError(
+                            t.getPosition(),
+                            "Invalid regular expression in " + name + ": " +
+                            e.getMessage());
+                }
+            } else if (doc instanceof ApiClass) {
+                EdgeType type = getRelationshipType(name);
+                if (type == null) {
+                    continue;
+                }
+
+                try {
+                    Edge.Spec spec = Edge.parseSpec(t.getText());
+                    Edge edge = spec.newEdge(
+                            type, doc, model.findClass(spec.targetName));
+                    if (relationships == null) {
+                        relationships = new ArrayList<Edge>();
+                    }
+                    relationships.add(edge);
+                } catch (IllegalArgumentException e) {
+                    reporter.printError(t.getPosition(), e.getMessage() + " in " + name);
+                }
+            }
+        }
+
+        this.hidden = hidden;
+        this.inherit = inherit;
+        this.landmark = landmark;
+        this.deprecated = deprecated;
+        this.excludes = excludes == null?
+                NO_PATTERNS : excludes.toArray(new Pattern[excludes.size()]);
+        this.relationships = relationships == null?
+                Collections.<Edge>emptyList() : relationships;
+        this.tagText = tagText.toString();
+
+        if (doc instanceof ApiClass) {
+            stereotype = getStereotype((ApiClass) doc, stereotypeTag);
+        } else {
+            stereotype = null;
+        }
+    }
+
+    static EdgeType getRelationshipType(String tagName) {
+        if (tagName.equals(TAG_USES)) {
+            return DEPENDENCY;
+        }
+        if (tagName.equals(TAG_HAS)) {
+            return NAVIGABILITY;
+        }
+        if (tagName.equals(TAG_OWNS)) {
+            return AGGREGATION;
+        }
+        if (tagName.equals(TAG_COMPOSED_OF)) {
+            return COMPOSITION;
+        }
+        return null;
+    }
+
+    private static String getStereotype(ApiClass node, String stereotypeTag) {
+        String stereotype = node.isInterface()? "interface" : null;
+        if (node.isException()) {
+            stereotype = "exception";
+        } else if (node.isAnnotationType()) {
+            stereotype = "annotation";
+        } else if (node.isEnum()) {
+            stereotype = "enum";
+        } else if (node.isStaticType()) {
+            stereotype = "static";
+        }
+
+        if (stereotypeTag != null) {
+            stereotype = stereotypeTag;
+        }
+
+        return ClassDocGraph.escape(stereotype);
+    }
+
+    /**
+     * Returns {@code true} if the class has the {@code @apiviz.hidden} tag.
+     */
+    public boolean isHidden() {
+        return hidden;
+    }
+
+    /**
+     * Returns {@code true} if the class has the {@code @apiviz.inherit} tag.
+     */
+    public boolean isInherit() {
+        return inherit;
+    }
+
+    public boolean isLandmark() {
+        return landmark;
+    }
+
+    public boolean isDeprecated() {
+        return deprecated;
+    }
+
+    /**
+     * Returns the escaped stereotype of the class, or {@code null} if the
+     * class has no stereotype or this metadata belongs to a package.
+     */
+    public String getStereotype() {
+        return stereotype;
+    }
+
+    /**
+     * Returns {@code true} if any {@code @apiviz.exclude} pattern matches
+     * the specified qualified class name.
+     */
+    public boolean isExcluded(String qualifiedName) {
+        for (Pattern p: excludes) {
+            if (p.matcher(qualifiedName).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasExcludes() {
+        return excludes.length > 0;
+    }
+
+    /**
+     * Returns the edges specified with the {@code @apiviz.uses},
+     * {@code @apiviz.has}, {@code @apiviz.owns} and
+     * {@code @apiviz.composedOf} tags, with their targets resolved.
+     */
+    public List<Edge> getRelationships() {
+        return relationships;
+    }
+
+    /**
+     * Returns the names and the text of all {@code @apiviz.*} and
+     * {@code @deprecated} tags, one tag per line.
+     */
+    public String getTagText() {
+        return tagText;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A directed graph parsed from the subset of the DOT language generated by
+ * {@link ClassDocGraph}: graph attributes ({@code rankdir=TB;}), default
+ * node and edge attributes ({@code node [...];}), node statements and
+ * single edge statements ({@code a -> b [...];}).  The default attributes
+ * are merged into the attributes of the nodes and edges which follow them,
+ * and a node which appears only in an edge statement is added with the
+ * default attributes.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class DotGraph {
+
+    private final String name;
+    private final Map<String, String> attributes = new HashMap<String, String>();
+    private final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+    private final List<Arc> arcs = new ArrayList<Arc>();
+
+    private DotGraph(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the specified graph attribute, or {@code defaultValue} if not
+     * specified.
+     */
+    public String getAttribute(String key, String defaultValue) {
+        String value = attributes.get(key);
+        return value == null? defaultValue : value;
+    }
+
+    /**
+     * Returns the nodes in the order of their first appearance.
+     */
+    public List<Node> getNodes() {
+        return Collections.unmodifiableList(new ArrayList<Node>(nodes.values()));
+    }
+
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns the edges in the order of their appearance.
+     */
+    public List<Arc> getArcs() {
+        return Collections.unmodifiableList(arcs);
+    }
+
+    /**
+     * Parses the specified DOT source.
+     *
+     * @throws IllegalArgumentException if the source is not in the
+     *                                  supported subset of the language
+     */
+    public static DotGraph parse(String source) {
+        return new Parser(source).parse();
+    }
+
+    /**
+     * A node and its attributes.
+     */
+    public static class Node {
+        private final String id;
+        private final Map<String, String> attributes;
+
+        Node(String id, Map<String, String> attributes) {
+            this.id = id;
+            this.attributes = attributes;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getAttribute(String key, String defaultValue) {
+            String value = attributes.get(key);
+            return value == null? defaultValue : value;
+        }
+
+        @Override
+        public String toString() {
+            return id;
+        }
+    }
+
+    /**
+     * An edge and its attributes.
+     */
+    public static class Arc {
+        private final Node source;
+        private final Node target;
+        private final Map<String, String> attributes;
+
+        Arc(Node source, Node target, Map<String, String> attributes) {
+            this.source = source;
+            this.target = target;
+            this.attributes = attributes;
+        }
+
+        public Node getSource() {
+            return source;
+        }
+
+        public Node getTarget() {
+            return target;
+        }
+
+        public String getAttribute(String key, String defaultValue) {
+            String value = attributes.get(key);
+            return value == null? defaultValue : value;
+        }
+
+        @Override
+        public String toString() {
+            return source + " -> " + target;
+        }
+    }
+
+    private static class Parser {
+        private final String source;
+        private int pos;
+        private final Map<String, String> nodeDefaults = new HashMap<String, String>();
+        private final Map<String, String> edgeDefaults = new HashMap<String, String>();
+
+        Parser(String source) {
+            this.source = source;
+        }
+
+        DotGraph parse() {
+            if (!"digraph".equals(nextToken())) {
+                throw fail("digraph expected");
+            }
+            String name = nextToken();
+            if ("{".equals(name)) {
+                name = "";
+            } else {
+                expect("{");
+            }
+
+            DotGraph graph = new DotGraph(name);
+            for (;;) {
+                String token = nextToken();
+                if (token == null) {
+                    throw fail("} expected");
+                }
+                if (token.equals("}")) {
+                    break;
+                }
+                if (token.equals(";")) {
+                    continue;
+                }
+
+                String next = peekToken();
+                if (token.equals("node") && "[".equals(next)) {
+                    parseAttributes(nodeDefaults);
+                } else if (token.equals("edge") && "[".equals(next)) {
+                    parseAttributes(edgeDefaults);
+                } else if (token.equals("graph") && "[".equals(next)) {
+                    parseAttributes(graph.attributes);
+                } else if ("=".equals(next)) {
+                    nextToken();
+                    graph.attributes.put(token, value(nextToken()));
+                } else if ("->".equals(next)) {
+                    nextToken();
+                    Node source = getNode(graph, token);
+                    Node target = getNode(graph, value(nextToken()));
+                    Map<String, String> attrs = new HashMap<String, String>(edgeDefaults);
+                    if ("[".equals(peekToken())) {
+                        parseAttributes(attrs);
+                    }
+                    graph.arcs.add(new Arc(source, target, attrs));
+                } else {
+                    Node node = getNode(graph, value(token));
+                    if ("[".equals(peekToken())) {
+                        parseAttributes(node.attributes);
+                    }
+                }
+            }
+            return graph;
+        }
+
+        private Node getNode(DotGraph graph, String id) {
+            Node node = graph.nodes.get(id);
+            if (node == null) {
+                node = new Node(id, new HashMap<String, String>(nodeDefaults));
+                graph.nodes.put(id, node);
+            }
+            return node;
+        }
+
+        private void parseAttributes(Map<String, String> attrs) {
+            expect("[");
+            for (;;) {
+                String key = nextToken();
+                if (key == null) {
+                    throw fail("] expected");
+                }
+                if (key.equals("]")) {
+                    break;
+                }
+                if (key.equals(",") || key.equals(";")) {
+                    continue;
+                }
+                expect("=");
+                attrs.put(key, value(nextToken()));
+            }
+        }
+
+        private String value(String token) {
+            if (token == null) {
+                throw fail("value expected");
+            }
+            if (token.length() > 1 && token.charAt(0) == '"') {
+                // Unescape the quotes only - the other escape sequences
+                // such as \n are interpreted by the renderer.
+                return token.substring(1, token.length() - 1).replace("\\\"", "\"");
+            }
+            return token;
+        }
+
+        private void expect(String expected) {
+            String token = nextToken();
+            if (!expected.equals(token)) {
+                throw fail(expected + " expected but " + token + " found");
+            }
+        }
+
+        private String peekToken() {
+            int oldPos = pos;
+            String token = nextToken();
+            pos = oldPos;
+            return token;
+        }
+
+        /**
+         * Returns the next token, or {@code null} at the end of the source.
+         * A quoted string is returned with its quotes.
+         */
+        private String nextToken() {
+            int length = source.length();
+            while (pos < length && Character.isWhitespace(source.charAt(pos))) {
+                pos ++;
+            }
+            if (pos >= length) {
+                return null;
+            }
+
+            int start = pos;
+            char c = source.charAt(pos);
+            if (c == '"') {
+                pos ++;
+                while (pos < length && source.charAt(pos) != '"') {
+                    if (source.charAt(pos) == '\\') {
+                        pos ++;
+                    }
+                    pos ++;
+                }
+                if (pos >= length) {
+                    throw fail("unterminated string");
+                }
+                pos ++;
+            } else if (c == '-' && pos + 1 < length && source.charAt(pos + 1) == '>') {
+                pos += 2;
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '-') {
+                while (pos < length) {
+                    c = source.charAt(pos);
+                    if (!Character.isLetterOrDigit(c) && c != '_' && c != '.' &&
+                        !(c == '-' && (pos + 1 >= length || source.charAt(pos + 1) != '>'))) {
+                        break;
+                    }
+                    pos ++;
+                }
+            } else {
+                pos ++;
+            }
+            return source.substring(start, pos);
+        }
+
+        private IllegalArgumentException fail(String message) {
+            return new IllegalArgumentException(
+                    "Unsupported DOT source at offset " + pos + ": " + message);
+        }
+    }
+}
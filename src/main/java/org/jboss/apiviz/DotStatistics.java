@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.IOException;
+
+/**
+ * An {@link Appendable} which counts the UTF-8 bytes, the nodes and the
+ * edges of the DOT source passing through it.  {@link ClassDocGraph} writes
+ * one statement per line, so a line with {@code ->} is an edge and any
+ * other line with an attribute list, except the default attributes, is a
+ * node.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class DotStatistics implements Appendable {
+
+    private final Appendable out;
+    private final StringBuilder line = new StringBuilder(256);
+    private long bytes;
+    private int nodes;
+    private int edges;
+
+    public DotStatistics(Appendable out) {
+        if (out == null) {
+            throw new NullPointerException("out");
+        }
+        this.out = out;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public int getNodeCount() {
+        return nodes;
+    }
+
+    public int getEdgeCount() {
+        return edges;
+    }
+
+    public Appendable append(CharSequence csq) throws IOException {
+        if (csq == null) {
+            csq = "null";
+        }
+        return append(csq, 0, csq.length());
+    }
+
+    public Appendable append(CharSequence csq, int start, int end) throws IOException {
+        if (csq == null) {
+            csq = "null";
+        }
+        for (int i = start; i < end; i ++) {
+            count(csq.charAt(i));
+        }
+        out.append(csq, start, end);
+        return this;
+    }
+
+    public Appendable append(char c) throws IOException {
+        count(c);
+        out.append(c);
+        return this;
+    }
+
+    private void count(char c) {
+        if (c < 0x80) {
+            bytes ++;
+        } else if (c < 0x800 || c >= '\uD800' && c <= '\uDFFF') {
+            // A surrogate pair is encoded into 4 bytes.
+            bytes += 2;
+        } else {
+            bytes += 3;
+        }
+
+        if (c == '\n') {
+            countStatement();
+            line.setLength(0);
+        } else {
+            line.append(c);
+        }
+    }
+
+    private void countStatement() {
+        int bracket = line.indexOf(" [");
+        if (bracket <= 0) {
+            return;
+        }
+        String head = line.substring(0, bracket);
+        if (head.indexOf(" -> ") > 0) {
+            edges ++;
+        } else if (!head.equals("node") && !head.equals("edge") && !head.equals("graph")) {
+            nodes ++;
+        }
+    }
+}
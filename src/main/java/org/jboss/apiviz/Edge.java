@@ -17,9 +17,7 @@
  */
 package org.jboss.apiviz;
 
-import com.sun.javadoc.ClassDoc;
-import com.sun.javadoc.Doc;
-import com.sun.javadoc.RootDoc;
+import java.util.regex.Pattern;
 
 /**
  * @author The APIviz Project (http://apiviz.googlecode.com/)
@@ -29,16 +27,19 @@ import com.sun.javadoc.RootDoc;
  *
  */
 public class Edge implements Comparable<Edge> {
+
+    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+
     private final EdgeType type;
-    private final Doc source;
-    private final Doc target;
+    private final ApiElement source;
+    private final ApiElement target;
     private final String sourceLabel;
     private final String targetLabel;
     private final String edgeLabel;
     private final boolean oneway;
     private final int hashCode;
 
-    public Edge(EdgeType type, Doc source, Doc target) {
+    public Edge(EdgeType type, ApiElement source, ApiElement target) {
         this.type = type;
         this.source = source;
         this.target = target;
@@ -54,44 +55,60 @@ public class Edge implements Comparable<Edge> {
     }
 
     private String getSourceName() {
-        if (source instanceof ClassDoc) {
-            return ((ClassDoc) source).qualifiedName();
-        } else {
-            return source.name();
-        }
+        return source.getQualifiedName();
     }
 
     private String getTargetName() {
-        if (target instanceof ClassDoc) {
-            return ((ClassDoc) target).qualifiedName();
-        } else {
-            return target.name();
-        }
+        return target.getQualifiedName();
     }
 
-    public Edge(RootDoc rootDoc, EdgeType type, Doc source, String spec) {
+    public Edge(EdgeType type, ApiElement source, ApiElement target,
+                String sourceLabel, String targetLabel, String edgeLabel,
+                boolean oneway) {
+        this.type = type;
+        this.source = source;
+        this.target = target;
+        this.sourceLabel = sourceLabel;
+        this.targetLabel = targetLabel;
+        this.edgeLabel = edgeLabel;
+        this.oneway = oneway;
+        hashCode = calculateHashCode();
+    }
+
+    public Edge(ApiModel model, EdgeType type, ApiElement source, String spec) {
+        this(type, source, parseSpec(spec), model);
+    }
+
+    private Edge(EdgeType type, ApiElement source, Spec spec, ApiModel model) {
+        this(type, source, spec.resolveTarget(model.findClass(spec.targetName)),
+             spec.sourceLabel, spec.targetLabel, spec.edgeLabel, spec.oneway);
+    }
+
+    /**
+     * Parses the text of a relationship tag such as {@code @apiviz.uses}.
+     */
+    static Spec parseSpec(String spec) {
         if (spec == null) {
             spec = "";
         }
 
-        this.type = type;
-        this.source = source;
-
-        String[] args = spec.replaceAll("\\s+", " ").trim().split(" ");
+        String[] args = WHITESPACES.split(spec.trim());
         for (int i = 1; i < Math.min(4, args.length); i ++) {
             if (args[i].equals("-")) {
                 args[i] = "";
             }
         }
 
+        String sourceLabel;
+        String targetLabel;
+        String edgeLabel;
+        boolean oneway;
         if (args.length == 1) {
-            target = rootDoc.classNamed(args[0]);
             sourceLabel = "";
             targetLabel = "";
             edgeLabel = "";
             oneway = true;
         } else if (args.length >= 3) {
-            target = rootDoc.classNamed(args[0]);
             if (args.length > 3) {
                 int startIndex;
                 if (args[1].equalsIgnoreCase("oneway")) {
@@ -126,24 +143,18 @@ public class Edge implements Comparable<Edge> {
             throw new IllegalArgumentException("Invalid relationship syntax: " + spec);
         }
 
-        if (target == null) {
-            throw new IllegalArgumentException(
-                    "Invalid relationship syntax: " + spec +
-                    " (Unknown package or class name)");
-        }
-
-        hashCode = calculateHashCode();
+        return new Spec(spec, args[0], sourceLabel, targetLabel, edgeLabel, oneway);
     }
 
     public EdgeType getType() {
         return type;
     }
 
-    public Doc getSource() {
+    public ApiElement getSource() {
         return source;
     }
 
-    public Doc getTarget() {
+    public ApiElement getTarget() {
         return target;
     }
 
@@ -186,6 +197,13 @@ public class Edge implements Comparable<Edge> {
                targetLabel.equals(that.targetLabel);
     }
 
+    @Override
+    public String toString() {
+        return type + " " + getSourceName() + " -> " + getTargetName() +
+               (oneway? " oneway" : "") + " [" + sourceLabel + "|" +
+               targetLabel + "|" + edgeLabel + "]";
+    }
+
     public int compareTo(Edge that) {
         int v;
 
@@ -222,4 +240,42 @@ public class Edge implements Comparable<Edge> {
         v = targetLabel.compareTo(that.targetLabel);
         return v;
     }
+
+    /**
+     * A parsed relationship tag whose target class is not resolved yet.
+     */
+    static final class Spec {
+        final String text;
+        final String targetName;
+        final String sourceLabel;
+        final String targetLabel;
+        final String edgeLabel;
+        final boolean oneway;
+
+        Spec(String text, String targetName,
+             String sourceLabel, String targetLabel, String edgeLabel,
+             boolean oneway) {
+            this.text = text;
+            this.targetName = targetName;
+            this.sourceLabel = sourceLabel;
+            this.targetLabel = targetLabel;
+            this.edgeLabel = edgeLabel;
+            this.oneway = oneway;
+        }
+
+        ApiClass resolveTarget(ApiClass target) {
+            if (target == null) {
+                throw new IllegalArgumentException(
+                        "Invalid relationship syntax: " + text +
+                        " (Unknown package or class name)");
+            }
+            return target;
+        }
+
+        Edge newEdge(EdgeType type, ApiElement source, ApiClass target) {
+            return new Edge(
+                    type, source, resolveTarget(target),
+                    sourceLabel, targetLabel, edgeLabel, oneway);
+        }
+    }
 }
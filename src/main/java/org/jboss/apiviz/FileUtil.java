@@ -18,9 +18,11 @@
 package org.jboss.apiviz;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
 /**
  * @author The APIviz Project (http://apiviz.googlecode.com/)
@@ -32,6 +34,10 @@ import java.io.RandomAccessFile;
 public class FileUtil {
 
     public static String readFile(File file) throws IOException {
+        return new String(readBytes(file), "ISO-8859-1");
+    }
+
+    public static byte[] readBytes(File file) throws IOException {
         byte[] byteContent;
         RandomAccessFile in = new RandomAccessFile(file, "r");
         try {
@@ -45,13 +51,17 @@ public class FileUtil {
             }
         }
 
-        return new String(byteContent, "ISO-8859-1");
+        return byteContent;
     }
 
     public static void writeFile(File file, String content) throws IOException {
+        writeBytes(file, content.getBytes("ISO-8859-1"));
+    }
+
+    public static void writeBytes(File file, byte[] content) throws IOException {
         FileOutputStream out = new FileOutputStream(file);
         try {
-            out.write(content.getBytes("ISO-8859-1"));
+            out.write(content);
         } finally {
             try {
                 out.close();
@@ -61,6 +71,32 @@ public class FileUtil {
         }
     }
 
+    public static void copyFile(File src, File dst) throws IOException {
+        FileChannel in = new FileInputStream(src).getChannel();
+        try {
+            FileChannel out = new FileOutputStream(dst).getChannel();
+            try {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            } finally {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Ignore.
+                }
+            }
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+        }
+    }
+
     private FileUtil() {
         // Unused
     }
@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import static org.jboss.apiviz.Constant.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.sun.javadoc.DocErrorReporter;
+
+/**
+ * Merges the class graphs of the modules which were documented separately
+ * into the graph of the whole product, without running javadoc again.
+ * Each module saves its graph fragment with {@code -apiviz.snapshot}, and
+ * the fragments are stitched together by the qualified names of their
+ * classes:
+ * <pre>
+ * java -cp apiviz.jar org.jboss.apiviz.GraphAggregator \
+ *      -d &lt;aggregated javadoc directory&gt; [-apiviz.&lt;option&gt; ...] \
+ *      &lt;module1.snapshot&gt; &lt;module2.snapshot&gt; ...
+ * </pre>
+ * The overview and package diagrams of the merged graph are injected into
+ * the pages of the output directory, which contains the javadoc of all
+ * modules.  The class diagrams of each module are generated by its own
+ * run.  With {@code -apiviz.manifest}, only the diagrams affected by the
+ * changed modules are rendered again.
+ * <p>
+ * A class from another module is only referred to by the fragment of a
+ * module, so the copy from the module which documents the class is kept.
+ * The names which could not be resolved in a module, such as the target
+ * of an {@code @apiviz.uses} tag in a module it doesn't depend on, are
+ * resolved again against the merged classes, and the tags are parsed
+ * again against the merged model.
+ * <p>
+ * The merge itself is not incremental: when any fragment changed, all
+ * fragments are loaded and merged again, because a class of one module
+ * may be merged with its copies in the others.  With
+ * {@code -apiviz.snapshot}, the merged graph is saved along with the list
+ * of the fragments it was merged from, and a later run whose fragments
+ * did not change loads the merged graph instead of merging them again.
+ * The incremental work of a run in which a module changed comes from
+ * {@code -apiviz.manifest} only.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class GraphAggregator {
+
+    private static final String FRAGMENT_LIST_SUFFIX = ".fragments";
+
+    private final LayoutPolicy policy;
+    private final int threads;
+
+    /**
+     * @param policy   chooses the layout parameters of each diagram
+     * @param threads  the number of threads to build the merged graph with
+     */
+    public GraphAggregator(LayoutPolicy policy, int threads) {
+        if (policy == null) {
+            throw new NullPointerException("policy");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads: " + threads);
+        }
+        this.policy = policy;
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the merged graph of the specified fragments.
+     */
+    public ClassDocGraph aggregate(List<File> files) throws IOException {
+        if (files == null) {
+            throw new NullPointerException("files");
+        }
+
+        List<ApiModel> models = new ArrayList<ApiModel>(files.size());
+        for (File f: files) {
+            if (!f.isFile()) {
+                throw new FileNotFoundException(f.getPath());
+            }
+            models.add(GraphSnapshot.open(f).toUnparsedModel());
+        }
+        return new ClassDocGraph(merge(models, threads), policy, threads);
+    }
+
+    /**
+     * Returns {@code true} if the specified snapshot was merged from the
+     * specified fragments, and none of them was modified since then.
+     */
+    public static boolean isUpToDate(File snapshot, List<File> files) throws IOException {
+        File list = getFragmentListFile(snapshot);
+        if (!snapshot.isFile() || !list.isFile()) {
+            return false;
+        }
+        return FileUtil.readFile(list).equals(getFragmentList(files));
+    }
+
+    /**
+     * Records that the specified snapshot was merged from the specified
+     * fragments.  {@link #invalidate(File)} must be called before the
+     * snapshot is written, so that an interrupted run is not mistaken for
+     * an up-to-date one.
+     */
+    public static void writeFragmentList(File snapshot, List<File> files) throws IOException {
+        FileUtil.writeFile(getFragmentListFile(snapshot), getFragmentList(files));
+    }
+
+    /**
+     * Forgets which fragments the specified snapshot was merged from.
+     */
+    public static void invalidate(File snapshot) {
+        getFragmentListFile(snapshot).delete();
+    }
+
+    private static File getFragmentListFile(File snapshot) {
+        return new File(snapshot.getPath() + FRAGMENT_LIST_SUFFIX);
+    }
+
+    /**
+     * Returns the list of the fragments with their sizes and modification
+     * times, one per line.
+     */
+    private static String getFragmentList(List<File> files) {
+        StringBuilder buf = new StringBuilder(files.size() * 64);
+        for (File f: files) {
+            buf.append(f.length());
+            buf.append(' ');
+            buf.append(f.lastModified());
+            buf.append(' ');
+            buf.append(f.getAbsolutePath());
+            buf.append('\n');
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Merges the models of the specified fragments.  The fragments are
+     * left intact; the merged model has its own copy of each element.
+     * When a class is documented by more than one fragment, the first one
+     * wins.
+     *
+     * @param threads  the number of threads to parse the tags with
+     */
+    public static ApiModel merge(List<ApiModel> fragments, int threads) {
+        if (fragments == null) {
+            throw new NullPointerException("fragments");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads: " + threads);
+        }
+
+        // Choose the copy of each element to keep.
+        Map<String, ApiPackage> packageSources = new HashMap<String, ApiPackage>();
+        Map<String, ApiClass> classSources = new HashMap<String, ApiClass>();
+        for (ApiModel m: fragments) {
+            for (ApiClass c: m.getClassNames().values()) {
+                if (c == null) {
+                    continue;
+                }
+                ApiClass source = classSources.get(c.getQualifiedName());
+                if (source == null || getRank(c) > getRank(source)) {
+                    classSources.put(c.getQualifiedName(), c);
+                }
+                addPackageSource(packageSources, c.getContainingPackage());
+                for (ApiPackage p: c.getImportedPackages()) {
+                    addPackageSource(packageSources, p);
+                }
+            }
+        }
+
+        Map<String, ApiPackage> packages = new HashMap<String, ApiPackage>();
+        for (ApiPackage p: packageSources.values()) {
+            packages.put(p.getName(), new ApiPackage(
+                    p.getName(), p.isIncluded(), p.getPosition(), p.getTags()));
+        }
+        Map<String, ApiClass> classes = new HashMap<String, ApiClass>();
+        for (ApiClass c: classSources.values()) {
+            classes.put(c.getQualifiedName(), new ApiClass(
+                    packages.get(c.getContainingPackage().getName()),
+                    c.getName(), c.getQualifiedName(), c.getFlags(), c.isIncluded(),
+                    c.getPosition(), c.getTags()));
+        }
+        for (ApiClass c: classSources.values()) {
+            List<ApiPackage> importedPackages = new ArrayList<ApiPackage>();
+            for (ApiPackage p: c.getImportedPackages()) {
+                importedPackages.add(packages.get(p.getName()));
+            }
+            classes.get(c.getQualifiedName()).setRelations(
+                    c.getSuperclass() == null?
+                            null : classes.get(c.getSuperclass().getQualifiedName()),
+                    getClasses(classes, c.getInterfaces()),
+                    getClasses(classes, c.getSeeAlso()),
+                    getClasses(classes, c.getMemberTypes()),
+                    importedPackages,
+                    getClasses(classes, c.getImportedClasses()));
+        }
+
+        // A name resolves to the first class any fragment resolved it to,
+        // or to the merged class of the same qualified name.
+        Map<String, ApiClass> names = new HashMap<String, ApiClass>(classes);
+        for (ApiModel m: fragments) {
+            for (Map.Entry<String, ApiClass> e: m.getClassNames().entrySet()) {
+                String name = e.getKey();
+                if (e.getValue() != null) {
+                    if (names.get(name) == null) {
+                        names.put(name, classes.get(e.getValue().getQualifiedName()));
+                    }
+                } else if (!names.containsKey(name)) {
+                    names.put(name, null);
+                }
+            }
+        }
+
+        List<ApiClass> includedClasses = new ArrayList<ApiClass>();
+        Set<String> includedNames = new HashSet<String>();
+        for (ApiModel m: fragments) {
+            for (ApiClass c: m.getClasses()) {
+                if (includedNames.add(c.getQualifiedName())) {
+                    includedClasses.add(classes.get(c.getQualifiedName()));
+                }
+            }
+        }
+
+        // The invalid tags have been reported by the run of each module.
+        ApiModel model = new ApiModel(includedClasses, names);
+        List<ApiElement> elements = new ArrayList<ApiElement>(packages.size() + classes.size());
+        elements.addAll(packages.values());
+        elements.addAll(classes.values());
+        ApiModelExtractor.parseTags(elements, model, new GraphSnapshot.SilentReporter(), threads);
+        return model;
+    }
+
+    /**
+     * Ranks the copies of a class: the one documented in its own module
+     * first, and then the ones whose tags were copied.
+     */
+    private static int getRank(ApiClass c) {
+        if (c.isIncluded()) {
+            return 2;
+        }
+        return c.getTags().isEmpty()? 0 : 1;
+    }
+
+    private static void addPackageSource(Map<String, ApiPackage> packageSources, ApiPackage p) {
+        ApiPackage source = packageSources.get(p.getName());
+        if (source == null || p.isIncluded() && !source.isIncluded()) {
+            packageSources.put(p.getName(), p);
+        }
+    }
+
+    private static List<ApiClass> getClasses(Map<String, ApiClass> classes, List<ApiClass> sources) {
+        List<ApiClass> list = new ArrayList<ApiClass>(sources.size());
+        for (ApiClass c: sources) {
+            list.add(classes.get(c.getQualifiedName()));
+        }
+        return list;
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, new ConsoleReporter())? 0 : 1);
+    }
+
+    /**
+     * Merges the fragments and generates the overview and package diagrams
+     * as specified by the command line arguments.
+     */
+    static boolean run(String[] args, DocErrorReporter reporter) {
+        List<File> files = new ArrayList<File>();
+        String[][] options = RenderSetup.parseArguments(args, files, reporter);
+        if (options == null || files.isEmpty()) {
+            printUsage(reporter);
+            return false;
+        }
+        if (!APIviz.checkOptions(options, reporter)) {
+            return false;
+        }
+
+        RenderSetup setup = new RenderSetup(options, reporter);
+        PerformanceReport report = new PerformanceReport();
+        DiagramManifest manifest = null;
+        boolean complete = false;
+        try {
+            manifest = setup.openManifest();
+
+            long startTime = System.nanoTime();
+            String snapshotFile = RenderSetup.getOption(options, OPTION_SNAPSHOT);
+            File snapshot = snapshotFile != null? new File(snapshotFile) : null;
+            ClassDocGraph graph;
+            if (snapshot != null && isUpToDate(snapshot, files)) {
+                reporter.printNotice(
+                        "Loading the merged graph from " + snapshot +
+                        " as no fragment has changed...");
+                graph = GraphSnapshot.open(snapshot).toGraph(setup.getLayoutPolicy());
+                report.addPhase(
+                        PerformanceReport.PHASE_GRAPH_AGGREGATION,
+                        System.nanoTime() - startTime);
+            } else {
+                reporter.printNotice("Merging " + files.size() + " graph fragment(s)...");
+                graph = new GraphAggregator(
+                        setup.getLayoutPolicy(), setup.getThreads()).aggregate(files);
+                report.addPhase(
+                        PerformanceReport.PHASE_GRAPH_AGGREGATION,
+                        System.nanoTime() - startTime);
+                if (snapshot != null) {
+                    invalidate(snapshot);
+                    setup.writeSnapshot(graph, report);
+                    writeFragmentList(snapshot, files);
+                }
+            }
+
+            startTime = System.nanoTime();
+            DiagramGenerator generator = setup.newGenerator(graph, manifest, report);
+            generator.generateOverviewSummary();
+            generator.generatePackageSummaries();
+            setup.getPool().finish();
+            complete = true;
+            report.addPhase(
+                    PerformanceReport.PHASE_DIAGRAM_GENERATION,
+                    System.nanoTime() - startTime);
+            setup.printSummary(generator);
+        } catch(Throwable t) {
+            reporter.printError(
+                    "An error occurred during diagram generation: " +
+                    t.toString());
+            t.printStackTrace();
+            return false;
+        } finally {
+            setup.close();
+            if (manifest != null) {
+                try {
+                    manifest.close(complete);
+                } catch (IOException e) {
+                    reporter.printWarning("Failed to write the manifest: " + e);
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void printUsage(DocErrorReporter reporter) {
+        reporter.printNotice(
+                "Usage: java " + GraphAggregator.class.getName() +
+                " -d <javadoc directory> [-apiviz.<option> ...] <snapshot> ...");
+    }
+}
@@ -0,0 +1,911 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.sun.javadoc.DocErrorReporter;
+import com.sun.javadoc.SourcePosition;
+
+/**
+ * A {@link ClassDocGraph} saved into a compact binary file, so that it
+ * can be used without running javadoc again.  The file is memory-mapped
+ * and decoded lazily - looking up a class or walking the edges of a vertex
+ * touches only the records involved, so opening even a large graph takes
+ * little time and heap.  {@link #toGraph(LayoutPolicy)} decodes the whole
+ * graph to generate diagrams from it.
+ * <p>
+ * All numbers are big-endian 32-bit integers, and a string or a record is
+ * referred to by its index.  The file starts with a header of the
+ * {@linkplain #MAGIC magic number}, the {@linkplain #VERSION format
+ * version}, the offsets of the following sections and the length of the
+ * file:
+ * <ol>
+ * <li>strings - the count, the offset of each string and the end of the
+ *     last string relative to the UTF-8 bytes that follow, padded to four
+ *     bytes</li>
+ * <li>packages - the count and the records of the packages sorted by
+ *     name: the name, the flags, the first tag, the number of tags and the
+ *     position</li>
+ * <li>classes - the count and the records of the classes sorted by
+ *     qualified name: the qualified name, the name, the package, the
+ *     flags, the first tag, the number of tags, the position, the
+ *     superclass, the offset of the relationships and the vertex</li>
+ * <li>tags - the count and the records of the tags: the name, the text
+ *     and the position</li>
+ * <li>relationships - the count and the relationships of each documented
+ *     class: the numbers of its interfaces, {@code @see} classes, member
+ *     types, imported packages and imported classes, followed by their
+ *     indexes</li>
+ * <li>names - the count and the names which resolve to another class or
+ *     to none, such as the targets of the {@code @apiviz.uses} tags</li>
+ * <li>model - the count and the documented classes in the order of the
+ *     {@link ApiModel}</li>
+ * <li>vertices - the numbers of the vertices and the nodes, and the class
+ *     of each vertex</li>
+ * <li>edges - the count and the records of the edges in their natural
+ *     order: the type, the source vertex, the target vertex, the source,
+ *     target and edge labels and the oneway flag</li>
+ * <li>adjacency - the outgoing and then the incoming edges of each vertex
+ *     in compressed sparse row form, as in {@link DenseGraph}</li>
+ * </ol>
+ * A position is stored as the file name, the line and the column, or
+ * three {@code -1}s if unknown.  A missing string or record is
+ * {@code -1}.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class GraphSnapshot {
+
+    public static final int MAGIC = 0x4150565A; // "APVZ"
+
+    /**
+     * Increase whenever the format, {@link EdgeType} or the flags of
+     * {@link ApiClass} change.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The flag of the packages and the classes documented in their run.
+     */
+    private static final int INCLUDED = 0x10000;
+
+    private static final int STRINGS = 0;
+    private static final int PACKAGES = 1;
+    private static final int CLASSES = 2;
+    private static final int TAGS = 3;
+    private static final int RELATIONS = 4;
+    private static final int NAMES = 5;
+    private static final int MODEL = 6;
+    private static final int VERTICES = 7;
+    private static final int EDGES = 8;
+    private static final int ADJACENCY = 9;
+    private static final int SECTION_COUNT = 10;
+    private static final int HEADER_SIZE = (2 + SECTION_COUNT + 1) * 4;
+
+    private static final int PACKAGE_RECORD = 7;
+    private static final int CLASS_RECORD = 12;
+    private static final int TAG_RECORD = 5;
+    private static final int EDGE_RECORD = 7;
+
+    private static final EdgeType[] EDGE_TYPES = EdgeType.values();
+
+    private final File file;
+    private final ByteBuffer buf;
+    private final int[] sections = new int[SECTION_COUNT];
+    private final int stringCount;
+    private final int stringData;
+    private final int packageCount;
+    private final int classCount;
+    private final int vertexCount;
+    private final int nodeCount;
+    private final int edgeCount;
+    private final int outStart;
+    private final int outEdges;
+    private final int inStart;
+    private final int inEdges;
+
+    /**
+     * Maps the specified snapshot into memory.  Nothing but the header is
+     * read until the snapshot is queried.
+     */
+    public static GraphSnapshot open(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel ch = in.getChannel();
+            // The mapping stays valid after the channel is closed.
+            return new GraphSnapshot(file, ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+        }
+    }
+
+    private GraphSnapshot(File file, ByteBuffer buf) throws IOException {
+        this.file = file;
+        this.buf = buf;
+        if (buf.capacity() < HEADER_SIZE || buf.getInt(0) != MAGIC) {
+            throw new IOException("Not a graph snapshot: " + file);
+        }
+        if (buf.getInt(4) != VERSION) {
+            throw new IOException(
+                    "Unsupported graph snapshot version " + buf.getInt(4) +
+                    " (expected: " + VERSION + "): " + file);
+        }
+        if (buf.getInt(HEADER_SIZE - 4) != buf.capacity()) {
+            throw new IOException("Truncated graph snapshot: " + file);
+        }
+        for (int i = 0; i < SECTION_COUNT; i ++) {
+            sections[i] = buf.getInt(8 + i * 4);
+            if (sections[i] < HEADER_SIZE || sections[i] > buf.capacity() - 4) {
+                throw new IOException("Corrupt graph snapshot: " + file);
+            }
+        }
+
+        stringCount = buf.getInt(sections[STRINGS]);
+        stringData = sections[STRINGS] + 4 + (stringCount + 1) * 4;
+        packageCount = buf.getInt(sections[PACKAGES]);
+        classCount = buf.getInt(sections[CLASSES]);
+        vertexCount = buf.getInt(sections[VERTICES]);
+        nodeCount = buf.getInt(sections[VERTICES] + 4);
+        edgeCount = buf.getInt(sections[EDGES]);
+        outStart = sections[ADJACENCY];
+        outEdges = outStart + (vertexCount + 1) * 4;
+        inStart = outEdges + edgeCount * 4;
+        inEdges = inStart + (vertexCount + 1) * 4;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getPackageCount() {
+        return packageCount;
+    }
+
+    public String getPackageName(int pkg) {
+        return getString(getPackageField(pkg, 0));
+    }
+
+    public boolean isPackageIncluded(int pkg) {
+        return (getPackageField(pkg, 1) & INCLUDED) != 0;
+    }
+
+    public List<ApiTag> getPackageTags(int pkg) {
+        return getTags(getPackageField(pkg, 2), getPackageField(pkg, 3));
+    }
+
+    /**
+     * Returns the index of the package of the specified name, or
+     * {@code -1} if there's no such package.
+     */
+    public int findPackage(String name) {
+        int low = 0;
+        int high = packageCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int v = getPackageName(mid).compareTo(name);
+            if (v < 0) {
+                low = mid + 1;
+            } else if (v > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    public String getClassName(int cls) {
+        return getString(getClassField(cls, 0));
+    }
+
+    public int getClassPackage(int cls) {
+        return getClassField(cls, 2);
+    }
+
+    /**
+     * Returns the flags of the class, such as {@link ApiClass#INTERFACE}.
+     */
+    public int getClassFlags(int cls) {
+        return getClassField(cls, 3) & ~INCLUDED;
+    }
+
+    public boolean isClassIncluded(int cls) {
+        return (getClassField(cls, 3) & INCLUDED) != 0;
+    }
+
+    public List<ApiTag> getClassTags(int cls) {
+        return getTags(getClassField(cls, 4), getClassField(cls, 5));
+    }
+
+    /**
+     * Returns the vertex of the class, or {@code -1} if the class is not a
+     * vertex of the graph.
+     */
+    public int getClassVertex(int cls) {
+        return getClassField(cls, 11);
+    }
+
+    /**
+     * Returns the index of the class of the specified qualified name, or
+     * {@code -1} if there's no such class.
+     */
+    public int findClass(String qualifiedName) {
+        int low = 0;
+        int high = classCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int v = getClassName(mid).compareTo(qualifiedName);
+            if (v < 0) {
+                low = mid + 1;
+            } else if (v > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of the vertices of the graph, the same as
+     * {@link DenseGraph#getVertexCount()}.
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getVertexClass(int vertex) {
+        return getInt(sections[VERTICES] + 8, vertex, vertexCount);
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public EdgeType getEdgeType(int edge) {
+        return EDGE_TYPES[getEdgeField(edge, 0)];
+    }
+
+    public int getEdgeSource(int edge) {
+        return getEdgeField(edge, 1);
+    }
+
+    public int getEdgeTarget(int edge) {
+        return getEdgeField(edge, 2);
+    }
+
+    public int getOutgoingEdgeCount(int vertex) {
+        return getInt(outStart, vertex + 1, vertexCount + 1) - getInt(outStart, vertex, vertexCount + 1);
+    }
+
+    /**
+     * Returns the index of the {@code index}-th outgoing edge of the
+     * specified vertex.
+     */
+    public int getOutgoingEdge(int vertex, int index) {
+        return buf.getInt(outEdges + (getInt(outStart, vertex, vertexCount + 1) + index) * 4);
+    }
+
+    public int getIncomingEdgeCount(int vertex) {
+        return getInt(inStart, vertex + 1, vertexCount + 1) - getInt(inStart, vertex, vertexCount + 1);
+    }
+
+    /**
+     * Returns the index of the {@code index}-th incoming edge of the
+     * specified vertex.
+     */
+    public int getIncomingEdge(int vertex, int index) {
+        return buf.getInt(inEdges + (getInt(inStart, vertex, vertexCount + 1) + index) * 4);
+    }
+
+    /**
+     * Decodes the whole {@link ApiModel}.  The tags are parsed again
+     * without reporting the invalid ones, which have been reported when
+     * the snapshot was taken.
+     */
+    public ApiModel toModel() {
+        return new Decoder().decodeModel(true);
+    }
+
+    /**
+     * Decodes the whole {@link ApiModel} without parsing the tags, for
+     * {@link GraphAggregator} which parses them against the merged model.
+     */
+    ApiModel toUnparsedModel() {
+        return new Decoder().decodeModel(false);
+    }
+
+    /**
+     * Decodes the whole graph, without building it again from the model.
+     *
+     * @param policy  chooses the layout parameters of each diagram
+     */
+    public ClassDocGraph toGraph(LayoutPolicy policy) {
+        return new Decoder().decodeGraph(policy);
+    }
+
+    private int getPackageField(int pkg, int field) {
+        return getInt(sections[PACKAGES] + 4 + field * 4, pkg * PACKAGE_RECORD, packageCount * PACKAGE_RECORD);
+    }
+
+    private int getClassField(int cls, int field) {
+        return getInt(sections[CLASSES] + 4 + field * 4, cls * CLASS_RECORD, classCount * CLASS_RECORD);
+    }
+
+    private int getEdgeField(int edge, int field) {
+        return getInt(sections[EDGES] + 4 + field * 4, edge * EDGE_RECORD, edgeCount * EDGE_RECORD);
+    }
+
+    private int getTagField(int tag, int field) {
+        return buf.getInt(sections[TAGS] + 4 + (tag * TAG_RECORD + field) * 4);
+    }
+
+    private int getInt(int offset, int index, int count) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return buf.getInt(offset + index * 4);
+    }
+
+    private String getString(int index) {
+        if (index < 0) {
+            return null;
+        }
+        int start = getInt(sections[STRINGS] + 4, index, stringCount + 1);
+        int end = buf.getInt(sections[STRINGS] + 4 + (index + 1) * 4);
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i ++) {
+            bytes[i] = buf.get(stringData + start + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new Error(e);
+        }
+    }
+
+    private List<ApiTag> getTags(int start, int count) {
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<ApiTag> tags = new ArrayList<ApiTag>(count);
+        for (int i = start; i < start + count; i ++) {
+            tags.add(new ApiTag(
+                    getString(getTagField(i, 0)), getString(getTagField(i, 1)),
+                    getPosition(getTagField(i, 2), getTagField(i, 3), getTagField(i, 4))));
+        }
+        return tags;
+    }
+
+    private ApiPosition getPosition(int file, int line, int column) {
+        if (line < 0) {
+            return null;
+        }
+        String path = getString(file);
+        return new ApiPosition(path == null? null : new File(path), line, column);
+    }
+
+    /**
+     * Decodes the whole snapshot into the objects of an {@link ApiModel}.
+     */
+    private final class Decoder {
+        private final ApiPackage[] packages = new ApiPackage[packageCount];
+        private final ApiClass[] classes = new ApiClass[classCount];
+
+        ApiModel decodeModel(boolean parseTags) {
+            for (int i = 0; i < packageCount; i ++) {
+                packages[i] = new ApiPackage(
+                        getPackageName(i), isPackageIncluded(i),
+                        getPosition(getPackageField(i, 4), getPackageField(i, 5), getPackageField(i, 6)),
+                        getPackageTags(i));
+            }
+
+            Map<String, ApiClass> names = new HashMap<String, ApiClass>(classCount * 2);
+            for (int i = 0; i < classCount; i ++) {
+                classes[i] = new ApiClass(
+                        packages[getClassPackage(i)],
+                        getString(getClassField(i, 1)), getClassName(i),
+                        getClassFlags(i), isClassIncluded(i),
+                        getPosition(getClassField(i, 6), getClassField(i, 7), getClassField(i, 8)),
+                        getClassTags(i));
+                names.put(classes[i].getQualifiedName(), classes[i]);
+            }
+
+            for (int i = 0; i < classCount; i ++) {
+                int offset = getClassField(i, 10);
+                if (offset >= 0) {
+                    decodeRelations(classes[i], getClassField(i, 9), offset);
+                }
+            }
+
+            int offset = sections[NAMES];
+            int count = buf.getInt(offset);
+            for (int i = 0; i < count; i ++) {
+                int cls = buf.getInt(offset + 8 + i * 8);
+                names.put(
+                        getString(buf.getInt(offset + 4 + i * 8)),
+                        cls < 0? null : classes[cls]);
+            }
+
+            offset = sections[MODEL];
+            count = buf.getInt(offset);
+            List<ApiClass> modelClasses = new ArrayList<ApiClass>(count);
+            for (int i = 0; i < count; i ++) {
+                modelClasses.add(classes[buf.getInt(offset + 4 + i * 4)]);
+            }
+
+            ApiModel model = new ApiModel(modelClasses, names);
+            if (parseTags) {
+                List<ApiElement> elements = new ArrayList<ApiElement>(packageCount + classCount);
+                Collections.addAll(elements, packages);
+                Collections.addAll(elements, classes);
+                ApiModelExtractor.parseTags(elements, model, new SilentReporter(), 1);
+            }
+            return model;
+        }
+
+        private void decodeRelations(ApiClass cls, int superclass, int offset) {
+            int base = sections[RELATIONS] + 4 + offset * 4;
+            int[] counts = new int[5];
+            for (int i = 0; i < counts.length; i ++) {
+                counts[i] = buf.getInt(base + i * 4);
+            }
+            int next = base + counts.length * 4;
+            List<ApiClass> interfaces = decodeClasses(next, counts[0]);
+            next += counts[0] * 4;
+            List<ApiClass> seeAlso = decodeClasses(next, counts[1]);
+            next += counts[1] * 4;
+            List<ApiClass> memberTypes = decodeClasses(next, counts[2]);
+            next += counts[2] * 4;
+            List<ApiPackage> importedPackages = new ArrayList<ApiPackage>(counts[3]);
+            for (int i = 0; i < counts[3]; i ++) {
+                importedPackages.add(packages[buf.getInt(next + i * 4)]);
+            }
+            next += counts[3] * 4;
+            List<ApiClass> importedClasses = decodeClasses(next, counts[4]);
+
+            cls.setRelations(
+                    superclass < 0? null : classes[superclass],
+                    interfaces, seeAlso, memberTypes, importedPackages, importedClasses);
+        }
+
+        private List<ApiClass> decodeClasses(int offset, int count) {
+            List<ApiClass> list = new ArrayList<ApiClass>(count);
+            for (int i = 0; i < count; i ++) {
+                list.add(classes[buf.getInt(offset + i * 4)]);
+            }
+            return list;
+        }
+
+        ClassDocGraph decodeGraph(LayoutPolicy policy) {
+            ApiModel model = decodeModel(true);
+            ApiClass[] vertices = new ApiClass[vertexCount];
+            for (int i = 0; i < vertexCount; i ++) {
+                vertices[i] = classes[getVertexClass(i)];
+            }
+            List<ApiClass> nodes = new ArrayList<ApiClass>(nodeCount);
+            for (int i = 0; i < nodeCount; i ++) {
+                nodes.add(vertices[i]);
+            }
+
+            Map<Integer, String> labels = new HashMap<Integer, String>();
+            Edge[] edges = new Edge[edgeCount];
+            for (int i = 0; i < edgeCount; i ++) {
+                edges[i] = new Edge(
+                        getEdgeType(i),
+                        vertices[getEdgeSource(i)], vertices[getEdgeTarget(i)],
+                        getLabel(labels, getEdgeField(i, 3)),
+                        getLabel(labels, getEdgeField(i, 4)),
+                        getLabel(labels, getEdgeField(i, 5)),
+                        getEdgeField(i, 6) != 0);
+            }
+            return new ClassDocGraph(model, new DenseGraph(nodes, edges), policy);
+        }
+
+        /**
+         * Decodes a label once, as most edges have the same labels.
+         */
+        private String getLabel(Map<Integer, String> labels, int index) {
+            Integer key = Integer.valueOf(index);
+            String label = labels.get(key);
+            if (label == null) {
+                label = getString(index);
+                labels.put(key, label);
+            }
+            return label;
+        }
+    }
+
+    /**
+     * Writes the specified graph into the specified file.  The file is
+     * replaced only when the snapshot is complete.
+     */
+    public static void write(ClassDocGraph graph, File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+        try {
+            new Encoder(graph).write(out);
+        } finally {
+            out.close();
+        }
+
+        file.delete();
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Failed to rename " + tmp + " to " + file);
+        }
+    }
+
+    /**
+     * Assigns the indexes of the strings and the records of a graph and
+     * writes its sections.
+     */
+    private static final class Encoder {
+        private final ApiModel model;
+        private final DenseGraph graph;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+        private final List<String> stringList = new ArrayList<String>();
+        private final Map<ApiPackage, Integer> packageIds = new HashMap<ApiPackage, Integer>();
+        private final Map<ApiClass, Integer> classIds = new HashMap<ApiClass, Integer>();
+        private final List<ApiPackage> packages;
+        private final List<ApiClass> classes;
+
+        Encoder(ClassDocGraph classDocGraph) {
+            model = classDocGraph.getModel();
+            graph = classDocGraph.getGraph();
+
+            // Find every element the model and the graph refer to.
+            Map<String, ApiClass> classMap = new TreeMap<String, ApiClass>();
+            Map<String, ApiPackage> packageMap = new TreeMap<String, ApiPackage>();
+            for (ApiClass c: model.getClasses()) {
+                addClass(classMap, c);
+                addClass(classMap, c.getSuperclass());
+                addClasses(classMap, c.getInterfaces());
+                addClasses(classMap, c.getSeeAlso());
+                addClasses(classMap, c.getMemberTypes());
+                addClasses(classMap, c.getImportedClasses());
+                for (ApiPackage p: c.getImportedPackages()) {
+                    packageMap.put(p.getName(), p);
+                }
+            }
+            addClasses(classMap, model.getClassNames().values());
+            for (int i = 0; i < graph.getVertexCount(); i ++) {
+                addClass(classMap, graph.getVertex(i));
+            }
+            for (ApiClass c: classMap.values()) {
+                packageMap.put(c.getContainingPackage().getName(), c.getContainingPackage());
+            }
+
+            packages = new ArrayList<ApiPackage>(packageMap.values());
+            for (ApiPackage p: packages) {
+                packageIds.put(p, Integer.valueOf(packageIds.size()));
+            }
+            classes = new ArrayList<ApiClass>(classMap.values());
+            for (ApiClass c: classes) {
+                classIds.put(c, Integer.valueOf(classIds.size()));
+            }
+        }
+
+        private static void addClasses(Map<String, ApiClass> classMap, Iterable<ApiClass> classes) {
+            for (ApiClass c: classes) {
+                addClass(classMap, c);
+            }
+        }
+
+        private static void addClass(Map<String, ApiClass> classMap, ApiClass c) {
+            if (c != null) {
+                classMap.put(c.getQualifiedName(), c);
+            }
+        }
+
+        void write(OutputStream out) throws IOException {
+            ByteArrayOutputStream[] sections = new ByteArrayOutputStream[SECTION_COUNT];
+            for (int i = 0; i < SECTION_COUNT; i ++) {
+                sections[i] = new ByteArrayOutputStream();
+            }
+
+            // The strings are written last, as the other sections add them.
+            writeRecords(
+                    new DataOutputStream(sections[PACKAGES]),
+                    new DataOutputStream(sections[CLASSES]),
+                    new DataOutputStream(sections[TAGS]),
+                    new DataOutputStream(sections[RELATIONS]));
+            writeNames(new DataOutputStream(sections[NAMES]));
+            writeModel(new DataOutputStream(sections[MODEL]));
+            writeVertices(new DataOutputStream(sections[VERTICES]));
+            writeEdges(new DataOutputStream(sections[EDGES]));
+            writeAdjacency(new DataOutputStream(sections[ADJACENCY]));
+            writeStrings(new DataOutputStream(sections[STRINGS]));
+
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            int offset = HEADER_SIZE;
+            for (ByteArrayOutputStream s: sections) {
+                header.writeInt(offset);
+                offset += s.size();
+            }
+            header.writeInt(offset);
+            for (ByteArrayOutputStream s: sections) {
+                s.writeTo(header);
+            }
+            header.flush();
+        }
+
+        private int getString(String s) {
+            if (s == null) {
+                return -1;
+            }
+            Integer index = strings.get(s);
+            if (index == null) {
+                index = Integer.valueOf(stringList.size());
+                strings.put(s, index);
+                stringList.add(s);
+            }
+            return index.intValue();
+        }
+
+        private int getId(ApiClass c) {
+            return c == null? -1 : classIds.get(c).intValue();
+        }
+
+        private void writeRecords(
+                DataOutputStream packageOut, DataOutputStream classOut,
+                DataOutputStream tagOut, DataOutputStream relationOut) throws IOException {
+            ByteArrayOutputStream tagBuf = new ByteArrayOutputStream();
+            DataOutputStream tagRecords = new DataOutputStream(tagBuf);
+            int tagCount = 0;
+            ByteArrayOutputStream relationBuf = new ByteArrayOutputStream();
+            DataOutputStream relationRecords = new DataOutputStream(relationBuf);
+            int relationCount = 0;
+
+            packageOut.writeInt(packages.size());
+            for (ApiPackage p: packages) {
+                packageOut.writeInt(getString(p.getName()));
+                packageOut.writeInt(p.isIncluded()? INCLUDED : 0);
+                packageOut.writeInt(tagCount);
+                packageOut.writeInt(p.getTags().size());
+                writePosition(packageOut, p.getPosition());
+                tagCount += writeTags(tagRecords, p.getTags());
+            }
+
+            classOut.writeInt(classes.size());
+            for (ApiClass c: classes) {
+                classOut.writeInt(getString(c.getQualifiedName()));
+                classOut.writeInt(getString(c.getName()));
+                classOut.writeInt(packageIds.get(c.getContainingPackage()).intValue());
+                classOut.writeInt(c.getFlags() | (c.isIncluded()? INCLUDED : 0));
+                classOut.writeInt(tagCount);
+                classOut.writeInt(c.getTags().size());
+                writePosition(classOut, c.getPosition());
+                classOut.writeInt(getId(c.getSuperclass()));
+                if (hasRelations(c)) {
+                    classOut.writeInt(relationCount);
+                    relationCount += writeRelations(relationRecords, c);
+                } else {
+                    classOut.writeInt(-1);
+                }
+                classOut.writeInt(graph.getId(c));
+                tagCount += writeTags(tagRecords, c.getTags());
+            }
+
+            tagOut.writeInt(tagCount);
+            tagRecords.flush();
+            tagBuf.writeTo(tagOut);
+            relationOut.writeInt(relationCount);
+            relationRecords.flush();
+            relationBuf.writeTo(relationOut);
+        }
+
+        private static boolean hasRelations(ApiClass c) {
+            return !c.getInterfaces().isEmpty() || !c.getSeeAlso().isEmpty() ||
+                   !c.getMemberTypes().isEmpty() || !c.getImportedPackages().isEmpty() ||
+                   !c.getImportedClasses().isEmpty();
+        }
+
+        private int writeRelations(DataOutputStream out, ApiClass c) throws IOException {
+            out.writeInt(c.getInterfaces().size());
+            out.writeInt(c.getSeeAlso().size());
+            out.writeInt(c.getMemberTypes().size());
+            out.writeInt(c.getImportedPackages().size());
+            out.writeInt(c.getImportedClasses().size());
+            writeClasses(out, c.getInterfaces());
+            writeClasses(out, c.getSeeAlso());
+            writeClasses(out, c.getMemberTypes());
+            for (ApiPackage p: c.getImportedPackages()) {
+                out.writeInt(packageIds.get(p).intValue());
+            }
+            writeClasses(out, c.getImportedClasses());
+            return 5 + c.getInterfaces().size() + c.getSeeAlso().size() +
+                   c.getMemberTypes().size() + c.getImportedPackages().size() +
+                   c.getImportedClasses().size();
+        }
+
+        private void writeClasses(DataOutputStream out, List<ApiClass> classes) throws IOException {
+            for (ApiClass c: classes) {
+                out.writeInt(getId(c));
+            }
+        }
+
+        private int writeTags(DataOutputStream out, List<ApiTag> tags) throws IOException {
+            for (ApiTag t: tags) {
+                out.writeInt(getString(t.getName()));
+                out.writeInt(getString(t.getText()));
+                writePosition(out, t.getPosition());
+            }
+            return tags.size();
+        }
+
+        private void writePosition(DataOutputStream out, SourcePosition position) throws IOException {
+            if (position == null) {
+                out.writeInt(-1);
+                out.writeInt(-1);
+                out.writeInt(-1);
+            } else {
+                out.writeInt(position.file() == null? -1 : getString(position.file().getPath()));
+                out.writeInt(Math.max(0, position.line()));
+                out.writeInt(position.column());
+            }
+        }
+
+        private void writeNames(DataOutputStream out) throws IOException {
+            // The qualified names of the classes resolve to themselves.
+            List<Map.Entry<String, ApiClass>> names = new ArrayList<Map.Entry<String, ApiClass>>();
+            for (Map.Entry<String, ApiClass> e: new TreeMap<String, ApiClass>(model.getClassNames()).entrySet()) {
+                ApiClass c = e.getValue();
+                if (c == null || !c.getQualifiedName().equals(e.getKey())) {
+                    names.add(e);
+                }
+            }
+            out.writeInt(names.size());
+            for (Map.Entry<String, ApiClass> e: names) {
+                out.writeInt(getString(e.getKey()));
+                out.writeInt(getId(e.getValue()));
+            }
+        }
+
+        private void writeModel(DataOutputStream out) throws IOException {
+            out.writeInt(model.getClasses().size());
+            writeClasses(out, model.getClasses());
+        }
+
+        private void writeVertices(DataOutputStream out) throws IOException {
+            out.writeInt(graph.getVertexCount());
+            out.writeInt(graph.getNodeCount());
+            for (int i = 0; i < graph.getVertexCount(); i ++) {
+                out.writeInt(getId(graph.getVertex(i)));
+            }
+        }
+
+        private void writeEdges(DataOutputStream out) throws IOException {
+            out.writeInt(graph.getEdgeCount());
+            for (int i = 0; i < graph.getEdgeCount(); i ++) {
+                Edge e = graph.getEdge(i);
+                out.writeInt(e.getType().ordinal());
+                out.writeInt(graph.getSource(i));
+                out.writeInt(graph.getTarget(i));
+                out.writeInt(getString(e.getSourceLabel()));
+                out.writeInt(getString(e.getTargetLabel()));
+                out.writeInt(getString(e.getEdgeLabel()));
+                out.writeInt(e.isOneway()? 1 : 0);
+            }
+        }
+
+        private void writeAdjacency(DataOutputStream out) throws IOException {
+            int start = 0;
+            for (int i = 0; i < graph.getVertexCount(); i ++) {
+                out.writeInt(start);
+                start += graph.getOutgoingEdgeCount(i);
+            }
+            out.writeInt(start);
+            for (int i = 0; i < graph.getVertexCount(); i ++) {
+                for (int j = 0; j < graph.getOutgoingEdgeCount(i); j ++) {
+                    out.writeInt(graph.getOutgoingEdge(i, j));
+                }
+            }
+
+            start = 0;
+            for (int i = 0; i < graph.getVertexCount(); i ++) {
+                out.writeInt(start);
+                start += graph.getIncomingEdgeCount(i);
+            }
+            out.writeInt(start);
+            for (int i = 0; i < graph.getVertexCount(); i ++) {
+                for (int j = 0; j < graph.getIncomingEdgeCount(i); j ++) {
+                    out.writeInt(graph.getIncomingEdge(i, j));
+                }
+            }
+        }
+
+        private void writeStrings(DataOutputStream out) throws IOException {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            out.writeInt(stringList.size());
+            for (String s: stringList) {
+                out.writeInt(data.size());
+                data.write(s.getBytes("UTF-8"));
+            }
+            out.writeInt(data.size());
+            while (data.size() % 4 != 0) {
+                data.write(0);
+            }
+            data.writeTo(out);
+        }
+    }
+
+    /**
+     * Discards the errors of the tags, which have been reported when the
+     * snapshot was taken.
+     */
+    static final class SilentReporter implements DocErrorReporter {
+        public void printError(String msg) {
+            // Ignore.
+        }
+
+        public void printError(SourcePosition pos, String msg) {
+            // Ignore.
+        }
+
+        public void printWarning(String msg) {
+            // Ignore.
+        }
+
+        public void printWarning(SourcePosition pos, String msg) {
+            // Ignore.
+        }
+
+        public void printNotice(String msg) {
+            // Ignore.
+        }
+
+        public void printNotice(SourcePosition pos, String msg) {
+            // Ignore.
+        }
+    }
+}
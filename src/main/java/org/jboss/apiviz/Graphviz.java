@@ -18,14 +18,24 @@
 package org.jboss.apiviz;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
 
 /**
+ * Runs Graphviz.  The location of the executable is resolved once, and the
+ * installation is probed for its capabilities only once per JVM.
+ *
  * @author The APIviz Project (http://apiviz.googlecode.com/)
  * @author Trustin Lee (http://gleamynode.net/)
  *
@@ -34,52 +44,186 @@ import java.io.Writer;
  */
 public class Graphviz {
 
+    /**
+     * The formats whose renderers are probed, i.e. the formats APIviz
+     * generates.
+     */
+    private static final String[] PROBED_FORMATS = { "png", "svg" };
+
+    private static final File HOME = findHome();
+    private static final String EXECUTABLE = findExecutable(HOME);
+
+    private static boolean probed;
+    private static GraphvizCapabilities capabilities;
+    private static volatile long timeout;
+
+    /**
+     * Returns the time limit of rendering a diagram in milliseconds, or
+     * {@code 0} if there's no limit.
+     */
+    public static long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the time limit of rendering a diagram.  A Graphviz process
+     * which exceeds the limit is destroyed, and the rendering fails with an
+     * {@link InterruptedIOException}.  The same limit applies to each run
+     * which probes the capabilities of Graphviz, and Graphviz is considered
+     * not available if one of them exceeds it.
+     *
+     * @param timeout the time limit in milliseconds, or {@code 0} for no
+     *                limit
+     */
+    public static void setTimeout(long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout: " + timeout);
+        }
+        Graphviz.timeout = timeout;
+    }
+
     public static boolean isAvailable() {
-        String executable = Graphviz.getExecutable();
-        File home = Graphviz.getHome();
+        return getCapabilities() != null;
+    }
+
+    /**
+     * Returns the version string printed by {@code dot -V}, or {@code null}
+     * if Graphviz is not available.
+     */
+    public static String getVersion() {
+        GraphvizCapabilities c = getCapabilities();
+        return c == null? null : c.getVersion();
+    }
+
+    /**
+     * Returns the capabilities of Graphviz, or {@code null} if Graphviz is
+     * not available.
+     */
+    public static GraphvizCapabilities getCapabilities() {
+        return getCapabilities(null);
+    }
+
+    /**
+     * Returns the capabilities of Graphviz, or {@code null} if Graphviz is
+     * not available.  The capabilities are loaded from the specified cache
+     * file if the executable has not changed since they were stored, and
+     * probed and stored otherwise.
+     *
+     * @param cacheFile the cache file, or {@code null} to always probe
+     */
+    public static synchronized GraphvizCapabilities getCapabilities(File cacheFile) {
+        if (probed) {
+            return capabilities;
+        }
+
+        File executableFile = resolveExecutable();
+        if (cacheFile != null) {
+            capabilities = GraphvizCapabilities.load(cacheFile, executableFile);
+        }
+        if (capabilities == null) {
+            try {
+                capabilities = probe(executableFile);
+            } catch (InterruptedIOException e) {
+                // Graphviz hangs, so it's not usable.
+            }
+            if (capabilities != null && cacheFile != null) {
+                try {
+                    capabilities.store(cacheFile);
+                } catch (IOException e) {
+                    // The cache is best-effort.
+                }
+            }
+        }
+        probed = true;
+        return capabilities;
+    }
+
+    private static GraphvizCapabilities probe(File executableFile) throws InterruptedIOException {
+        String output = run("-V");
+        if (output == null) {
+            return null;
+        }
+
+        String version = null;
+        for (String line: output.split("\\r?\\n")) {
+            // 'Graphviz' in older versions, 'graphviz' in newer ones.
+            if (line.toLowerCase(Locale.ENGLISH).indexOf("graphviz") >= 0) {
+                version = line.trim();
+                break;
+            }
+        }
+        if (version == null) {
+            return null;
+        }
+
+        Set<String> layoutEngines = parseChoices(run("-K?"));
+        Set<String> outputFormats = parseChoices(run("-T?"));
+        for (String format: PROBED_FORMATS) {
+            if (!outputFormats.contains(format)) {
+                continue;
+            }
+            // Renderers are listed as <format>:<renderer>:<plugin library>.
+            for (String r: parseChoices(run("-T" + format + ":?"))) {
+                String[] parts = r.split(":");
+                if (parts.length >= 2) {
+                    outputFormats.add(parts[0] + ':' + parts[1]);
+                }
+            }
+        }
 
-        ProcessBuilder pb = new ProcessBuilder(executable, "-V");
+        return new GraphvizCapabilities(
+                executableFile, version, layoutEngines, outputFormats);
+    }
+
+    /**
+     * Parses the choices Graphviz lists after an unknown option value,
+     * such as {@code Use one of: circo dot fdp neato}.
+     */
+    private static Set<String> parseChoices(String output) {
+        if (output == null) {
+            return new TreeSet<String>();
+        }
+        int idx = output.indexOf("one of:");
+        if (idx < 0) {
+            return new TreeSet<String>();
+        }
+        return GraphvizCapabilities.split(output.substring(idx + 7));
+    }
+
+    /**
+     * Runs Graphviz with the specified arguments and returns its standard
+     * output and error, or {@code null} if Graphviz could not be run.
+     *
+     * @throws InterruptedIOException if Graphviz exceeded the
+     *         {@linkplain #getTimeout() time limit}
+     */
+    private static String run(String... args) throws InterruptedIOException {
+        String[] command = new String[args.length + 1];
+        command[0] = EXECUTABLE;
+        System.arraycopy(args, 0, command, 1, args.length);
+        ProcessBuilder pb = new ProcessBuilder(command);
         pb.redirectErrorStream(true);
-        if (home != null) {
-            System.out.println("Graphviz Home: " + home);
-            pb.directory(home);
+        if (HOME != null) {
+            pb.directory(HOME);
         }
-        System.out.println("Graphviz Executable: " + executable);
 
         Process p;
         try {
             p = pb.start();
         } catch (IOException e) {
-            return false;
+            return null;
         }
 
-        BufferedReader in = new BufferedReader(
-                new InputStreamReader(p.getInputStream()));
-        OutputStream out = p.getOutputStream();
+        ProcessWatchdog watchdog = new ProcessWatchdog(p, timeout);
+        OutputCollector outputCollector = new OutputCollector(p.getInputStream());
+        outputCollector.start();
+        boolean expired;
         try {
-            out.close();
-
-            String line = null;
-            while((line = in.readLine()) != null) {
-                if (line.indexOf("Graphviz") >= 0) {
-                    return true;
-                }
-            }
-            return false;
+            p.getOutputStream().close();
         } catch (IOException e) {
-            return false;
+            // Graphviz exited already.
         } finally {
-            try {
-                out.close();
-            } catch (IOException e) {
-                // Shouldn't happen.
-            }
-
-            try {
-                in.close();
-            } catch (IOException e) {
-                // Shouldn't happen.
-            }
+            watchdog.join(outputCollector);
 
             for (;;) {
                 try {
@@ -89,40 +233,133 @@ public class Graphviz {
                     // Ignore
                 }
             }
+            expired = watchdog.stop();
+        }
+
+        if (expired) {
+            throw watchdog.newTimeoutException();
+        }
+        try {
+            return new String(outputCollector.getOutput(), "ISO-8859-1");
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds the executable file the system would run, or returns
+     * {@code null} if it's not found.
+     */
+    private static File resolveExecutable() {
+        File file = new File(EXECUTABLE);
+        if (file.isAbsolute()) {
+            return file.isFile()? file : null;
+        }
+
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return null;
+        }
+        for (String dir: path.split(Pattern.quote(File.pathSeparator))) {
+            if (dir.length() == 0) {
+                continue;
+            }
+            file = new File(dir, EXECUTABLE);
+            if (file.isFile()) {
+                return file;
+            }
         }
+        return null;
     }
 
-    public static void writeImageAndMap(
-            String diagram, File outputDirectory, String filename) throws IOException {
+    public static RenderResult writeImageAndMap(
+            final String diagram, File outputDirectory, String filename) throws IOException {
+        return writeImageAndMap(new DiagramSource() {
+            public void writeDiagram(Appendable out) throws IOException {
+                out.append(diagram);
+            }
+        }, outputDirectory, filename);
+    }
 
-        File pngFile = new File(outputDirectory, filename + ".png");
-        File mapFile = new File(outputDirectory, filename + ".map");
+    /**
+     * Streams the DOT source into the standard input of Graphviz, which
+     * writes the image into {@code <filename>.png} and the client-side image
+     * map into its standard output.  Both outputs of Graphviz are read by
+     * other threads meanwhile, so that neither side blocks on a full pipe.
+     */
+    public static RenderResult writeImageAndMap(
+            DiagramSource source, File outputDirectory, String filename) throws IOException {
 
+        long startTime = System.nanoTime();
+        File pngFile = new File(outputDirectory, filename + ".png");
         pngFile.delete();
-        mapFile.delete();
 
-        ProcessBuilder pb = new ProcessBuilder(
-                Graphviz.getExecutable(),
-                "-Tcmapx", "-o", mapFile.getAbsolutePath(),
-                "-Tpng",   "-o", pngFile.getAbsolutePath());
-        pb.redirectErrorStream(true);
+        byte[] map = render(
+                source, Graphviz.getExecutable(),
+                "-Tpng", "-o", pngFile.getAbsolutePath(),
+                "-Tcmapx");
+        return new RenderResult(
+                map, pngFile, System.nanoTime() - startTime, false);
+    }
+
+    /**
+     * Streams the DOT source into the standard input of Graphviz, which
+     * writes the image into {@code <filename>.svg}.  The hyperlinks of the
+     * nodes become native SVG links.  The returned result has an empty map.
+     *
+     * @param linkTarget the browsing context the links are opened in, such
+     *                   as {@code _parent}, or {@code null} for the one
+     *                   the image is displayed in
+     */
+    public static RenderResult writeSvg(
+            DiagramSource source, File outputDirectory, String filename,
+            String linkTarget) throws IOException {
+
+        long startTime = System.nanoTime();
+        File svgFile = new File(outputDirectory, filename + ".svg");
+        svgFile.delete();
+
+        if (linkTarget == null) {
+            render(source, Graphviz.getExecutable(),
+                   "-Tsvg", "-o", svgFile.getAbsolutePath());
+        } else {
+            render(source, Graphviz.getExecutable(),
+                   "-Tsvg", "-o", svgFile.getAbsolutePath(),
+                   "-Ntarget=" + linkTarget);
+        }
+        return new RenderResult(
+                new byte[0], svgFile, System.nanoTime() - startTime, false);
+    }
+
+    /**
+     * Runs the specified command with the DOT source as its standard input
+     * and returns its standard output.  The process is destroyed if it
+     * exceeds the {@linkplain #getTimeout() time limit}.
+     */
+    private static byte[] render(DiagramSource source, String... command) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(command);
         File home = Graphviz.getHome();
         if (home != null) {
             pb.directory(home);
         }
 
         Process p = pb.start();
-        BufferedReader in = new BufferedReader(
-                new InputStreamReader(p.getInputStream()));
-        Writer out = new OutputStreamWriter(p.getOutputStream(), "UTF-8");
+        ProcessWatchdog watchdog = new ProcessWatchdog(p, timeout);
+        Thread errorForwarder = forwardOutput(p.getErrorStream(), "APIviz-dot-stderr");
+        OutputCollector outputCollector = new OutputCollector(p.getInputStream());
+        outputCollector.start();
+        Writer out = new BufferedWriter(
+                new OutputStreamWriter(p.getOutputStream(), "UTF-8"));
+        int result;
+        boolean expired;
         try {
-            out.write(diagram);
+            source.writeDiagram(out);
             out.close();
-
-            String line = null;
-            while((line = in.readLine()) != null) {
-                System.err.println(line);
+        } catch (IOException e) {
+            if (watchdog.isExpired()) {
+                throw watchdog.newTimeoutException();
             }
+            throw e;
         } finally {
             try {
                 out.close();
@@ -130,35 +367,75 @@ public class Graphviz {
                 // Shouldn't happen.
             }
 
-            try {
-                in.close();
-            } catch (IOException e) {
-                // Shouldn't happen.
-            }
+            watchdog.join(errorForwarder);
+            watchdog.join(outputCollector);
 
             for (;;) {
                 try {
-                    int result = p.waitFor();
-                    if (result != 0) {
-                        throw new IllegalStateException("Graphviz exited with a non-zero return value: " + result);
-                    }
+                    result = p.waitFor();
                     break;
                 } catch (InterruptedException e) {
                     // Ignore
                 }
             }
+            expired = watchdog.stop();
+        }
+
+        if (expired) {
+            throw watchdog.newTimeoutException();
+        }
+        if (result != 0) {
+            throw new IllegalStateException("Graphviz exited with a non-zero return value: " + result);
         }
+        return outputCollector.getOutput();
+    }
+
+    /**
+     * Starts a daemon thread which forwards the lines of the output of a
+     * Graphviz process to {@link System#err} until the process terminates.
+     */
+    static Thread forwardOutput(InputStream output, String threadName) {
+        final BufferedReader in = new BufferedReader(new InputStreamReader(output));
+        Thread t = new Thread(threadName) {
+            @Override
+            public void run() {
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        System.err.println(line);
+                    }
+                } catch (IOException e) {
+                    // Process terminated.
+                } finally {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        // Ignore.
+                    }
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    static String getExecutable() {
+        return EXECUTABLE;
+    }
+
+    static File getHome() {
+        return HOME;
     }
 
-    private static String getExecutable() {
+    private static String findExecutable(File home) {
         String command = "dot";
 
         try {
             String osName = System.getProperty("os.name");
             if (osName != null && osName.indexOf("Windows") >= 0) {
-                File path = Graphviz.getHome();
-                if (path != null) {
-                    command = path.getAbsolutePath() + File.separator
+                if (home != null) {
+                    command = home.getAbsolutePath() + File.separator
                             + "dot.exe";
                 } else {
                     command = "dot.exe";
@@ -170,7 +447,7 @@ public class Graphviz {
         return command;
     }
 
-    private static File getHome() {
+    private static File findHome() {
         File graphvizDir = null;
         try {
             String graphvizHome = System.getProperty("graphviz.home");
@@ -189,4 +466,50 @@ public class Graphviz {
     private Graphviz() {
         // Unused
     }
+
+    /**
+     * Reads the whole output of a Graphviz process into memory.
+     */
+    private static class OutputCollector extends Thread {
+        private final InputStream in;
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream(4096);
+        private IOException cause;
+
+        OutputCollector(InputStream in) {
+            super("APIviz-dot-stdout");
+            this.in = in;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            byte[] buf = new byte[8192];
+            try {
+                int n;
+                while ((n = in.read(buf)) >= 0) {
+                    output.write(buf, 0, n);
+                }
+            } catch (IOException e) {
+                cause = e;
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignore.
+                }
+            }
+        }
+
+        /**
+         * Returns the output read so far.  Call after {@link #join()}.
+         */
+        byte[] getOutput() throws IOException {
+            if (cause != null) {
+                IOException e = new IOException("Failed to read the output of Graphviz");
+                e.initCause(cause);
+                throw e;
+            }
+            return output.toByteArray();
+        }
+    }
 }
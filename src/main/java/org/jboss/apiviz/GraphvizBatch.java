@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import static org.jboss.apiviz.Constant.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Renders many diagrams through a few long-lived Graphviz processes.
+ * <p>
+ * {@code dot} reads any number of graphs from its standard input and writes
+ * the requested formats of each graph to its standard output, one after
+ * another.  This class keeps such processes running and splits their output
+ * back into the image map and the PNG image of each diagram, which saves the
+ * process startup and font configuration cost of {@link Graphviz}.
+ * <p>
+ * The parser of {@code dot} needs to see the first token of the next graph
+ * before it renders the current one, so every diagram is followed by a tiny
+ * sentinel graph whose output is discarded.  Each diagram is also renamed to
+ * a unique graph name so that a skipped graph can be detected from the image
+ * map.  Whenever a process gets out of sync or dies, it is restarted and the
+ * affected diagram is rendered with {@link Graphviz#writeImageAndMap} instead.
+ * <p>
+ * This class is thread-safe; each calling thread borrows one process.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class GraphvizBatch implements DiagramRenderer {
+
+    private static final String GRAPH_HEADER = "digraph APIVIZ {";
+    private static final String GRAPH_NAME = "APIVIZ";
+    private static final String SENTINEL_NAME = GRAPH_NAME + "_SYNC";
+    private static final String SENTINEL =
+        "digraph " + SENTINEL_NAME + " {}" + NEWLINE;
+
+    private static final byte[] MAP_END = bytes("</map>");
+    private static final byte[] PNG_SIGNATURE = {
+        (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+    private final BlockingQueue<DotProcess> idleProcesses;
+    private final List<DotProcess> processes = new ArrayList<DotProcess>();
+
+    public GraphvizBatch(int processes) {
+        if (processes <= 0) {
+            throw new IllegalArgumentException("processes: " + processes);
+        }
+
+        idleProcesses = new LinkedBlockingQueue<DotProcess>();
+        for (int i = 0; i < processes; i ++) {
+            DotProcess p = new DotProcess();
+            this.processes.add(p);
+            idleProcesses.add(p);
+        }
+    }
+
+    /**
+     * Has the same contract with {@link Graphviz#writeImageAndMap}.
+     */
+    public RenderResult writeImageAndMap(
+            String diagram, File outputDirectory, String filename) throws IOException {
+
+        if (!diagram.startsWith(GRAPH_HEADER)) {
+            throw new IllegalArgumentException(
+                    "Not an APIviz diagram: " + diagram);
+        }
+
+        long startTime = System.nanoTime();
+        File pngFile = new File(outputDirectory, filename + ".png");
+
+        DotProcess p = borrow();
+        try {
+            byte[] map;
+            try {
+                map = p.render(diagram, pngFile);
+            } catch (InterruptedIOException e) {
+                // Timed out - rendering it again would take as long.
+                p.destroy();
+                throw e;
+            } catch (IOException e) {
+                // Out of sync or crashed - start over with a fresh process
+                // and render this diagram on its own.
+                p.destroy();
+                return Graphviz.writeImageAndMap(diagram, outputDirectory, filename);
+            }
+
+            return new RenderResult(
+                    map, pngFile, System.nanoTime() - startTime, false);
+        } finally {
+            idleProcesses.add(p);
+        }
+    }
+
+    /**
+     * Builds the diagram in memory first, because it has to be renamed and
+     * may be rendered again by {@link Graphviz} if the process gets out of
+     * sync.
+     */
+    public RenderResult writeImageAndMap(
+            DiagramSource source, File outputDirectory, String filename) throws IOException {
+        StringBuilder buf = new StringBuilder(16384);
+        source.writeDiagram(buf);
+        return writeImageAndMap(buf.toString(), outputDirectory, filename);
+    }
+
+    /**
+     * Renders with {@link Graphviz#writeSvg}, one process per diagram.  The
+     * batched output is only split into image maps and PNG images.
+     */
+    public RenderResult writeSvg(
+            DiagramSource source, File outputDirectory, String filename,
+            String linkTarget) throws IOException {
+        return Graphviz.writeSvg(source, outputDirectory, filename, linkTarget);
+    }
+
+    /**
+     * Terminates all processes.  Waits for the diagrams being rendered.
+     */
+    public void close() {
+        for (int i = processes.size(); i > 0; i --) {
+            borrow().close();
+        }
+    }
+
+    private DotProcess borrow() {
+        for (;;) {
+            try {
+                return idleProcesses.take();
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        try {
+            return s.getBytes("US-ASCII");
+        } catch (IOException e) {
+            throw new Error(e);
+        }
+    }
+
+    private static class DotProcess {
+        private Process process;
+        private Writer in;
+        private InputStream out;
+        private boolean sentinelPending;
+        private int nextGraphId;
+
+        DotProcess() {
+            super();
+        }
+
+        byte[] render(String diagram, File pngFile) throws IOException {
+            if (process == null) {
+                start();
+            }
+
+            ProcessWatchdog watchdog = new ProcessWatchdog(process, Graphviz.getTimeout());
+            try {
+                return render(diagram, pngFile, GRAPH_NAME + '_' + nextGraphId ++);
+            } catch (IOException e) {
+                if (watchdog.isExpired()) {
+                    throw watchdog.newTimeoutException();
+                }
+                throw e;
+            } finally {
+                watchdog.stop();
+            }
+        }
+
+        private byte[] render(String diagram, File pngFile, String graphName) throws IOException {
+            in.write("digraph ");
+            in.write(graphName);
+            in.write(diagram, "digraph APIVIZ".length(),
+                     diagram.length() - "digraph APIVIZ".length());
+            in.write(SENTINEL);
+            in.flush();
+
+            // The output of the previous sentinel is available now.
+            if (sentinelPending) {
+                readMap(SENTINEL_NAME);
+                readPng(null);
+            }
+            sentinelPending = true;
+
+            byte[] map = readMap(graphName);
+            pngFile.delete();
+            OutputStream pngOut =
+                new BufferedOutputStream(new FileOutputStream(pngFile));
+            try {
+                readPng(pngOut);
+            } finally {
+                try {
+                    pngOut.close();
+                } catch (IOException e) {
+                    // Ignore.
+                }
+            }
+            return map;
+        }
+
+        private void start() throws IOException {
+            ProcessBuilder pb = new ProcessBuilder(
+                    Graphviz.getExecutable(), "-Tcmapx", "-Tpng");
+            File home = Graphviz.getHome();
+            if (home != null) {
+                pb.directory(home);
+            }
+
+            process = pb.start();
+            in = new OutputStreamWriter(
+                    new BufferedOutputStream(process.getOutputStream()),
+                    "UTF-8");
+            out = new BufferedInputStream(process.getInputStream());
+            sentinelPending = false;
+            nextGraphId = 0;
+
+            // Forward the error messages so that they are not lost and
+            // the process never blocks on a full stderr pipe.
+            Graphviz.forwardOutput(process.getErrorStream(), "APIviz-dot-stderr");
+        }
+
+        /**
+         * Reads one client side image map, verifies its name and renames it
+         * back to the name the HTML pages refer to.
+         */
+        private byte[] readMap(String expectedName) throws IOException {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream(1024);
+            int matched = 0;
+            while (matched < MAP_END.length) {
+                int b = out.read();
+                if (b < 0) {
+                    throw new EOFException("Graphviz terminated unexpectedly.");
+                }
+                buf.write(b);
+                if (b == MAP_END[matched]) {
+                    matched ++;
+                } else {
+                    matched = b == MAP_END[0]? 1 : 0;
+                }
+            }
+
+            // Consume the trailing newline.
+            out.mark(2);
+            int b = out.read();
+            if (b == '\r') {
+                b = out.read();
+            }
+            if (b == '\n') {
+                buf.write('\n');
+            } else {
+                out.reset();
+            }
+
+            String map = buf.toString("UTF-8");
+            String expectedStart =
+                "<map id=\"" + expectedName + "\" name=\"" + expectedName + "\">";
+            if (!map.startsWith(expectedStart)) {
+                throw new IOException("Graphviz output out of sync: " +
+                        map.substring(0, Math.min(map.length(), 64)));
+            }
+
+            return ("<map id=\"" + GRAPH_NAME + "\" name=\"" + GRAPH_NAME + "\">" +
+                    map.substring(expectedStart.length())).getBytes("UTF-8");
+        }
+
+        /**
+         * Copies one PNG image chunk by chunk until its {@code IEND} chunk.
+         */
+        private void readPng(OutputStream dst) throws IOException {
+            int b;
+            do {
+                b = read();
+            } while (b == '\r' || b == '\n');
+
+            byte[] header = new byte[8];
+            header[0] = (byte) b;
+            readFully(header, 1, 7);
+            for (int i = 0; i < PNG_SIGNATURE.length; i ++) {
+                if (header[i] != PNG_SIGNATURE[i]) {
+                    throw new IOException("Graphviz output out of sync: not a PNG");
+                }
+            }
+            write(dst, header, 8);
+
+            byte[] buf = new byte[8192];
+            for (;;) {
+                readFully(header, 0, 8);
+                write(dst, header, 8);
+
+                long length =
+                    (header[0] & 0xFFL) << 24 | (header[1] & 0xFF) << 16 |
+                    (header[2] & 0xFF) << 8 | header[3] & 0xFF;
+                boolean end =
+                    header[4] == 'I' && header[5] == 'E' &&
+                    header[6] == 'N' && header[7] == 'D';
+
+                // Chunk data and CRC
+                for (long remaining = length + 4; remaining > 0;) {
+                    int n = (int) Math.min(buf.length, remaining);
+                    readFully(buf, 0, n);
+                    write(dst, buf, n);
+                    remaining -= n;
+                }
+
+                if (end) {
+                    break;
+                }
+            }
+        }
+
+        private int read() throws IOException {
+            int b = out.read();
+            if (b < 0) {
+                throw new EOFException("Graphviz terminated unexpectedly.");
+            }
+            return b;
+        }
+
+        private void readFully(byte[] buf, int offset, int length) throws IOException {
+            while (length > 0) {
+                int n = out.read(buf, offset, length);
+                if (n < 0) {
+                    throw new EOFException("Graphviz terminated unexpectedly.");
+                }
+                offset += n;
+                length -= n;
+            }
+        }
+
+        private static void write(OutputStream dst, byte[] buf, int length) throws IOException {
+            if (dst != null) {
+                dst.write(buf, 0, length);
+            }
+        }
+
+        void close() {
+            if (process == null) {
+                return;
+            }
+
+            try {
+                in.close();
+                // Discard the output of the last sentinel.
+                byte[] buf = new byte[8192];
+                while (out.read(buf) >= 0) {
+                    continue;
+                }
+            } catch (IOException e) {
+                // Ignore.
+            }
+
+            for (;;) {
+                try {
+                    process.waitFor();
+                    break;
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+            }
+            destroy();
+        }
+
+        void destroy() {
+            if (process == null) {
+                return;
+            }
+
+            process.destroy();
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+            process = null;
+            in = null;
+            out = null;
+        }
+    }
+}
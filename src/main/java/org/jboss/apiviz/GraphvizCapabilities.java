@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The version, the layout engines and the output formats of the Graphviz
+ * installation, as reported by {@code dot -V}, {@code dot -K?} and
+ * {@code dot -T?}.  An output format is listed both alone, such as
+ * {@code png}, and with each of its renderers, such as {@code png:cairo}.
+ * <p>
+ * The capabilities can be stored in a properties file along with the path,
+ * the size and the last modification time of the executable, and loaded
+ * from it as long as the executable is unchanged.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class GraphvizCapabilities {
+
+    private static final String KEY_EXECUTABLE = "executable";
+    private static final String KEY_LAST_MODIFIED = "lastModified";
+    private static final String KEY_LENGTH = "length";
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_LAYOUT_ENGINES = "layoutEngines";
+    private static final String KEY_OUTPUT_FORMATS = "outputFormats";
+
+    private final File executable;
+    private final String version;
+    private final Set<String> layoutEngines;
+    private final Set<String> outputFormats;
+
+    /**
+     * @param executable the resolved path of the executable, or
+     *                   {@code null} if it's not known
+     */
+    public GraphvizCapabilities(
+            File executable, String version,
+            Set<String> layoutEngines, Set<String> outputFormats) {
+        if (version == null) {
+            throw new NullPointerException("version");
+        }
+        if (layoutEngines == null) {
+            throw new NullPointerException("layoutEngines");
+        }
+        if (outputFormats == null) {
+            throw new NullPointerException("outputFormats");
+        }
+        this.executable = executable;
+        this.version = version;
+        this.layoutEngines = Collections.unmodifiableSet(new TreeSet<String>(layoutEngines));
+        this.outputFormats = Collections.unmodifiableSet(new TreeSet<String>(outputFormats));
+    }
+
+    /**
+     * Returns the resolved path of the executable, or {@code null} if it
+     * was not found in the path.
+     */
+    public File getExecutable() {
+        return executable;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public Set<String> getLayoutEngines() {
+        return layoutEngines;
+    }
+
+    public Set<String> getOutputFormats() {
+        return outputFormats;
+    }
+
+    public boolean hasLayoutEngine(String name) {
+        return layoutEngines.contains(name);
+    }
+
+    /**
+     * @param format a format such as {@code svg}, optionally followed by a
+     *               renderer such as {@code png:cairo}
+     */
+    public boolean hasOutputFormat(String format) {
+        return outputFormats.contains(format);
+    }
+
+    /**
+     * Loads the capabilities stored by {@link #store(File)}.
+     *
+     * @return {@code null} if the file is missing or unreadable, or the
+     *         executable has changed since the capabilities were stored
+     */
+    public static GraphvizCapabilities load(File file, File executable) {
+        if (executable == null || !file.exists()) {
+            return null;
+        }
+
+        Properties props = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            props.load(in);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignore.
+                }
+            }
+        }
+
+        String version = props.getProperty(KEY_VERSION);
+        if (version == null ||
+            !executable.getAbsolutePath().equals(props.getProperty(KEY_EXECUTABLE)) ||
+            !String.valueOf(executable.lastModified()).equals(props.getProperty(KEY_LAST_MODIFIED)) ||
+            !String.valueOf(executable.length()).equals(props.getProperty(KEY_LENGTH))) {
+            return null;
+        }
+
+        return new GraphvizCapabilities(
+                executable, version,
+                split(props.getProperty(KEY_LAYOUT_ENGINES, "")),
+                split(props.getProperty(KEY_OUTPUT_FORMATS, "")));
+    }
+
+    /**
+     * Stores the capabilities with the identity of the executable.  Does
+     * nothing if the executable is not known.
+     */
+    public void store(File file) throws IOException {
+        if (executable == null) {
+            return;
+        }
+
+        Properties props = new Properties();
+        props.setProperty(KEY_EXECUTABLE, executable.getAbsolutePath());
+        props.setProperty(KEY_LAST_MODIFIED, String.valueOf(executable.lastModified()));
+        props.setProperty(KEY_LENGTH, String.valueOf(executable.length()));
+        props.setProperty(KEY_VERSION, version);
+        props.setProperty(KEY_LAYOUT_ENGINES, join(layoutEngines));
+        props.setProperty(KEY_OUTPUT_FORMATS, join(outputFormats));
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        File tmp = File.createTempFile(file.getName() + '.', ".tmp", parent);
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                props.store(out, "Graphviz capabilities detected by APIviz");
+            } finally {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Ignore.
+                }
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Failed to rename " + tmp + " to " + file);
+                }
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    static Set<String> split(String value) {
+        Set<String> result = new TreeSet<String>();
+        for (String s: value.trim().split("\\s+")) {
+            if (s.length() > 0) {
+                result.add(s);
+            }
+        }
+        return result;
+    }
+
+    private static String join(Set<String> values) {
+        StringBuilder buf = new StringBuilder();
+        for (String v: values) {
+            if (buf.length() > 0) {
+                buf.append(' ');
+            }
+            buf.append(v);
+        }
+        return buf.toString();
+    }
+
+    @Override
+    public String toString() {
+        return version + " (layouts: " + join(layoutEngines) +
+               "; formats: " + join(outputFormats) + ')';
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Inserts a text into an HTML page generated by the standard doclet, or
+ * replaces the text a previous run inserted.
+ * <p>
+ * The page is read only as far as the insertion point, and the rest of the
+ * page is copied with {@link FileChannel#transferTo}.  The new page is
+ * written to a temporary file in the same directory and then renamed over
+ * the old page, so a crash never leaves a half-written page behind.  Pages
+ * can be processed in parallel.  Like {@link FileUtil#readFile}, the page
+ * is treated as ISO-8859-1, which maps every byte to a character.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class HtmlInjector {
+
+    private static final int INITIAL_SCAN_SIZE = 8192;
+
+    /**
+     * Inserts the specified text at the end of the first match of the
+     * specified pattern.
+     *
+     * @return {@code false} if the pattern was not found and the page was
+     *         left unchanged
+     */
+    public static boolean inject(File htmlFile, Pattern insertionPoint, String text) throws IOException {
+        return inject(htmlFile, insertionPoint, text, false);
+    }
+
+    /**
+     * Replaces the text matched by group 1 of the first match of the
+     * specified pattern, such as the text inserted by a previous run, with
+     * the specified text.  If group 1 did not match, the text is inserted
+     * at the end of the match instead.
+     *
+     * @return {@code false} if the pattern was not found and the page was
+     *         left unchanged
+     */
+    public static boolean injectOrReplace(File htmlFile, Pattern pattern, String text) throws IOException {
+        return inject(htmlFile, pattern, text, true);
+    }
+
+    private static boolean inject(File htmlFile, Pattern pattern, String text, boolean replace) throws IOException {
+        FileChannel in = new FileInputStream(htmlFile).getChannel();
+        try {
+            long size = in.size();
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(size, INITIAL_SCAN_SIZE));
+            int start;
+            int end;
+            for (;;) {
+                while (head.hasRemaining() && in.read(head) >= 0) {
+                    continue;
+                }
+
+                boolean eof = head.position() == size || head.hasRemaining();
+                Matcher m = pattern.matcher(
+                        new Latin1Sequence(head.array(), head.position()));
+                if (m.find() && (eof || !m.hitEnd())) {
+                    end = m.end();
+                    start = replace && m.start(1) >= 0? m.start(1) : end;
+                    break;
+                }
+                if (eof) {
+                    return false;
+                }
+
+                // The match might need more input - read twice as much.
+                ByteBuffer newHead = ByteBuffer.allocate(
+                        (int) Math.min(size, head.capacity() * 2L));
+                head.flip();
+                newHead.put(head);
+                head = newHead;
+            }
+
+            File tmp = File.createTempFile(htmlFile.getName() + '.', ".tmp", htmlFile.getParentFile());
+            boolean success = false;
+            try {
+                FileChannel out = new FileOutputStream(tmp).getChannel();
+                try {
+                    write(out, ByteBuffer.wrap(head.array(), 0, start));
+                    write(out, ByteBuffer.wrap(text.getBytes("ISO-8859-1")));
+                    long position = end;
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                } finally {
+                    out.close();
+                }
+
+                if (!tmp.renameTo(htmlFile)) {
+                    // Some platforms don't replace an existing file.
+                    htmlFile.delete();
+                    if (!tmp.renameTo(htmlFile)) {
+                        throw new IOException("Failed to rename " + tmp + " to " + htmlFile);
+                    }
+                }
+                success = true;
+            } finally {
+                if (!success) {
+                    tmp.delete();
+                }
+            }
+            return true;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+        }
+    }
+
+    private static void write(FileChannel out, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+
+    private HtmlInjector() {
+        // Unused
+    }
+
+    /**
+     * A view of ISO-8859-1 encoded bytes as characters.
+     */
+    private static class Latin1Sequence implements CharSequence {
+        private final byte[] bytes;
+        private final int offset;
+        private final int length;
+
+        Latin1Sequence(byte[] bytes, int length) {
+            this(bytes, 0, length);
+        }
+
+        private Latin1Sequence(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public char charAt(int index) {
+            return (char) (bytes[offset + index] & 0xFF);
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            return new Latin1Sequence(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            try {
+                return new String(bytes, offset, length, "ISO-8859-1");
+            } catch (IOException e) {
+                throw new Error(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the most recently used images in memory, up to a maximum total
+ * size.  An image which is not in memory is loaded only once however many
+ * threads ask for it at the same time: the first thread loads it and the
+ * others wait for its result.  A failure is passed to all waiting threads
+ * but not kept, so the next request tries again.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class ImageCache {
+
+    private final long maxSize;
+    private final LinkedHashMap<String, Image> images =
+        new LinkedHashMap<String, Image>(16, 0.75f, true);
+    private final ConcurrentMap<String, FutureTask<Image>> pending =
+        new ConcurrentHashMap<String, FutureTask<Image>>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private long size;
+
+    /**
+     * @param maxSize the maximum total size of the images, in bytes
+     */
+    public ImageCache(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the image of the specified key, loading it with the
+     * specified loader if it is not in memory.
+     */
+    public Image get(final String key, final Callable<Image> loader) throws IOException {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+        if (loader == null) {
+            throw new NullPointerException("loader");
+        }
+
+        Image image = getCached(key);
+        if (image != null) {
+            hits.incrementAndGet();
+            return image;
+        }
+
+        FutureTask<Image> task = new FutureTask<Image>(new Callable<Image>() {
+            public Image call() throws Exception {
+                try {
+                    // Loaded by another thread since the first look-up.
+                    Image image = getCached(key);
+                    if (image == null) {
+                        misses.incrementAndGet();
+                        image = loader.call();
+                        put(key, image);
+                    }
+                    return image;
+                } finally {
+                    pending.remove(key);
+                }
+            }
+        });
+        FutureTask<Image> existingTask = pending.putIfAbsent(key, task);
+        if (existingTask != null) {
+            // Wait for the thread which is loading the image already.
+            hits.incrementAndGet();
+            task = existingTask;
+        } else {
+            task.run();
+        }
+        return getResult(task);
+    }
+
+    public int getHitCount() {
+        return hits.get();
+    }
+
+    public int getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the total size of the images in memory, in bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    private synchronized Image getCached(String key) {
+        return images.get(key);
+    }
+
+    /**
+     * Keeps the specified image and evicts the least recently used images
+     * until the cache fits in its maximum size.  An image larger than the
+     * cache is not kept at all.
+     */
+    private synchronized void put(String key, Image image) {
+        if (image.getSize() > maxSize) {
+            return;
+        }
+
+        Image oldImage = images.put(key, image);
+        if (oldImage != null) {
+            size -= oldImage.getSize();
+        }
+        size += image.getSize();
+        for (Iterator<Image> i = images.values().iterator(); size > maxSize;) {
+            size -= i.next().getSize();
+            i.remove();
+        }
+    }
+
+    private static Image getResult(FutureTask<Image> task) throws IOException {
+        for (;;) {
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                // Ignore
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                IOException ioe = new IOException(cause.toString());
+                ioe.initCause(cause);
+                throw ioe;
+            }
+        }
+    }
+
+    /**
+     * A rendered image and its client-side image map.
+     */
+    public static final class Image {
+        private final byte[] data;
+        private final String map;
+
+        /**
+         * @param map the client-side image map, or an empty string for an
+         *            SVG image
+         */
+        public Image(byte[] data, String map) {
+            if (data == null) {
+                throw new NullPointerException("data");
+            }
+            if (map == null) {
+                throw new NullPointerException("map");
+            }
+            this.data = data;
+            this.map = map;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public String getMap() {
+            return map;
+        }
+
+        /**
+         * Returns the approximate number of bytes this image occupies.
+         */
+        long getSize() {
+            return data.length + map.length() * 2L;
+        }
+    }
+
+    /**
+     * Returns the statistics for a log message.
+     */
+    @Override
+    public synchronized String toString() {
+        return images.size() + " image(s), " + size + " bytes, " +
+               getHitCount() + " hit(s), " + getMissCount() + " miss(es)";
+    }
+}
@@ -0,0 +1,725 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Lays out a directed graph in layers in the style of Sugiyama et al.,
+ * like the {@code dot} layout of Graphviz:
+ * <ol>
+ * <li>the cycles are broken by reversing the back edges of a depth-first
+ *     search,</li>
+ * <li>each node is assigned to the layer after its longest path from a
+ *     source, and a source is moved down next to its successors,</li>
+ * <li>the edges which span several layers are split by dummy nodes,</li>
+ * <li>the crossings are reduced with alternating barycenter sweeps and
+ *     swaps of adjacent nodes, keeping the best order seen, and</li>
+ * <li>the horizontal coordinates are pulled towards the neighbours of each
+ *     node with a weighted isotonic regression per layer, which keeps the
+ *     nodes apart and favours straight long edges.</li>
+ * </ol>
+ * The coordinates are in points, with the origin at the top left corner of
+ * the bounding box.  The layout is computed by the constructor.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class LayeredLayout {
+
+    private static final int ORDERING_ITERATIONS = 24;
+    private static final int TRANSPOSE_LIMIT = 2000;
+    private static final int POSITIONING_ITERATIONS = 8;
+    private static final double SELF_LOOP_SIZE = 16;
+
+    private final int nodeCount;
+    private final boolean leftToRight;
+    private final double rankSeparation;
+    private final double nodeSeparation;
+
+    // Sizes and coordinates in the top-to-bottom orientation, with the
+    // dummy nodes after the real nodes.
+    private double[] widths;
+    private double[] heights;
+    private double[] x;
+    private double[] y;
+    private int vertexCount;
+
+    private int[] layer;
+    private int[][] layers;
+    private int[] position;
+    private int[][] upper;
+    private int[][] lower;
+
+    private final int[] sources;
+    private final int[] targets;
+    private boolean[] reversed;
+    private int[][] chains;
+
+    private double width;
+    private double height;
+
+    /**
+     * @param widths         the widths of the nodes
+     * @param heights        the heights of the nodes
+     * @param sources        the source node of each edge
+     * @param targets        the target node of each edge
+     * @param leftToRight    {@code true} to put the layers from left to
+     *                       right instead of from top to bottom
+     * @param rankSeparation the gap between two layers
+     * @param nodeSeparation the gap between two nodes in the same layer
+     */
+    public LayeredLayout(
+            double[] widths, double[] heights, int[] sources, int[] targets,
+            boolean leftToRight, double rankSeparation, double nodeSeparation) {
+
+        if (widths.length != heights.length) {
+            throw new IllegalArgumentException("widths and heights differ in length");
+        }
+        if (sources.length != targets.length) {
+            throw new IllegalArgumentException("sources and targets differ in length");
+        }
+
+        nodeCount = widths.length;
+        this.leftToRight = leftToRight;
+        this.rankSeparation = rankSeparation;
+        this.nodeSeparation = nodeSeparation;
+        this.sources = sources;
+        this.targets = targets;
+
+        // Lay out from top to bottom and swap the axes at the end.
+        this.widths = (leftToRight? heights : widths).clone();
+        this.heights = (leftToRight? widths : heights).clone();
+
+        removeCycles();
+        assignLayers();
+        insertDummies();
+        orderLayers();
+        assignCoordinates();
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public double getWidth() {
+        return leftToRight? height : width;
+    }
+
+    public double getHeight() {
+        return leftToRight? width : height;
+    }
+
+    /**
+     * Returns the horizontal center of the specified node.
+     */
+    public double getX(int node) {
+        return leftToRight? y[node] : x[node];
+    }
+
+    /**
+     * Returns the vertical center of the specified node.
+     */
+    public double getY(int node) {
+        return leftToRight? x[node] : y[node];
+    }
+
+    /**
+     * Returns the route of the specified edge as {@code x0, y0, x1, y1, ...}
+     * from the border of its source to the border of its target.
+     */
+    public double[] getRoute(int edge) {
+        int source = sources[edge];
+        int target = targets[edge];
+        double[] route;
+        if (source == target) {
+            double right = x[source] + widths[source] / 2;
+            double top = y[source] - heights[source] / 4;
+            double bottom = y[source] + heights[source] / 4;
+            route = new double[] {
+                    right, top,
+                    right + SELF_LOOP_SIZE, top,
+                    right + SELF_LOOP_SIZE, bottom,
+                    right, bottom };
+        } else {
+            int[] chain = chains[edge];
+            route = new double[chain.length * 2];
+            for (int i = 0; i < chain.length; i ++) {
+                int v = reversed[edge]? chain[chain.length - 1 - i] : chain[i];
+                route[i * 2] = x[v];
+                route[i * 2 + 1] = y[v];
+            }
+            clip(route, 0, 2, source);
+            clip(route, route.length - 2, route.length - 4, target);
+        }
+
+        if (leftToRight) {
+            for (int i = 0; i < route.length; i += 2) {
+                double tmp = route[i];
+                route[i] = route[i + 1];
+                route[i + 1] = tmp;
+            }
+        }
+        return route;
+    }
+
+    /**
+     * Moves the point at {@code index} from the center of the node to its
+     * border, towards the point at {@code towards}.
+     */
+    private void clip(double[] route, int index, int towards, int node) {
+        double dx = route[towards] - route[index];
+        double dy = route[towards + 1] - route[index + 1];
+        double t = Double.MAX_VALUE;
+        if (dx != 0) {
+            t = Math.min(t, widths[node] / 2 / Math.abs(dx));
+        }
+        if (dy != 0) {
+            t = Math.min(t, heights[node] / 2 / Math.abs(dy));
+        }
+        if (t < 1) {
+            route[index] += dx * t;
+            route[index + 1] += dy * t;
+        }
+    }
+
+    /**
+     * Reverses the edges which close a cycle in a depth-first search, so
+     * that the remaining graph is acyclic.
+     */
+    private void removeCycles() {
+        reversed = new boolean[sources.length];
+        int[][] out = adjacency(nodeCount, sources, targets, null);
+
+        int[] state = new int[nodeCount]; // 0: new, 1: on stack, 2: done
+        int[] stack = new int[nodeCount];
+        int[] next = new int[nodeCount];
+        for (int root = 0; root < nodeCount; root ++) {
+            if (state[root] != 0) {
+                continue;
+            }
+            int depth = 0;
+            stack[0] = root;
+            state[root] = 1;
+            while (depth >= 0) {
+                int v = stack[depth];
+                if (next[v] < out[v].length) {
+                    int e = out[v][next[v] ++];
+                    int w = targets[e];
+                    if (state[w] == 0) {
+                        state[w] = 1;
+                        stack[++ depth] = w;
+                    } else if (state[w] == 1 && w != v) {
+                        reversed[e] = true;
+                    }
+                } else {
+                    state[v] = 2;
+                    depth --;
+                }
+            }
+        }
+    }
+
+    private int getFrom(int edge) {
+        return reversed[edge]? targets[edge] : sources[edge];
+    }
+
+    private int getTo(int edge) {
+        return reversed[edge]? sources[edge] : targets[edge];
+    }
+
+    /**
+     * Assigns the longest path layering and moves each source down to the
+     * layer above its nearest successor.
+     */
+    private void assignLayers() {
+        layer = new int[nodeCount];
+        int[] inDegree = new int[nodeCount];
+        int[][] out = new int[nodeCount][];
+        int[] outCount = new int[nodeCount];
+        for (int e = 0; e < sources.length; e ++) {
+            if (sources[e] != targets[e]) {
+                outCount[getFrom(e)] ++;
+                inDegree[getTo(e)] ++;
+            }
+        }
+        for (int v = 0; v < nodeCount; v ++) {
+            out[v] = new int[outCount[v]];
+            outCount[v] = 0;
+        }
+        for (int e = 0; e < sources.length; e ++) {
+            if (sources[e] != targets[e]) {
+                int from = getFrom(e);
+                out[from][outCount[from] ++] = getTo(e);
+            }
+        }
+
+        // Kahn's algorithm in node order.
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        int[] remaining = inDegree.clone();
+        for (int v = 0; v < nodeCount; v ++) {
+            if (remaining[v] == 0) {
+                queue[tail ++] = v;
+            }
+        }
+        while (head < tail) {
+            int v = queue[head ++];
+            for (int w: out[v]) {
+                layer[w] = Math.max(layer[w], layer[v] + 1);
+                if (-- remaining[w] == 0) {
+                    queue[tail ++] = w;
+                }
+            }
+        }
+
+        for (int v = 0; v < nodeCount; v ++) {
+            if (inDegree[v] == 0 && out[v].length > 0) {
+                int minLayer = Integer.MAX_VALUE;
+                for (int w: out[v]) {
+                    minLayer = Math.min(minLayer, layer[w]);
+                }
+                layer[v] = minLayer - 1;
+            }
+        }
+    }
+
+    /**
+     * Splits the edges which span more than one layer with dummy nodes and
+     * builds the adjacency of the layered graph.
+     */
+    private void insertDummies() {
+        int dummies = 0;
+        for (int e = 0; e < sources.length; e ++) {
+            if (sources[e] != targets[e]) {
+                dummies += layer[getTo(e)] - layer[getFrom(e)] - 1;
+            }
+        }
+
+        vertexCount = nodeCount + dummies;
+        widths = grow(widths, vertexCount);
+        heights = grow(heights, vertexCount);
+        int[] newLayer = new int[vertexCount];
+        System.arraycopy(layer, 0, newLayer, 0, nodeCount);
+        layer = newLayer;
+
+        // Every segment connects two consecutive layers.
+        int segmentCount = 0;
+        chains = new int[sources.length][];
+        int nextDummy = nodeCount;
+        for (int e = 0; e < sources.length; e ++) {
+            if (sources[e] == targets[e]) {
+                continue;
+            }
+            int from = getFrom(e);
+            int to = getTo(e);
+            int[] chain = new int[layer[to] - layer[from] + 1];
+            chain[0] = from;
+            for (int i = 1; i < chain.length - 1; i ++) {
+                chain[i] = nextDummy ++;
+                layer[chain[i]] = layer[from] + i;
+            }
+            chain[chain.length - 1] = to;
+            chains[e] = chain;
+            segmentCount += chain.length - 1;
+        }
+
+        int[] segmentFrom = new int[segmentCount];
+        int[] segmentTo = new int[segmentCount];
+        int s = 0;
+        for (int[] chain: chains) {
+            if (chain == null) {
+                continue;
+            }
+            for (int i = 1; i < chain.length; i ++) {
+                segmentFrom[s] = chain[i - 1];
+                segmentTo[s] = chain[i];
+                s ++;
+            }
+        }
+        lower = adjacency(vertexCount, segmentFrom, segmentTo, segmentTo);
+        upper = adjacency(vertexCount, segmentTo, segmentFrom, segmentFrom);
+
+        int layerCount = 0;
+        for (int l: layer) {
+            layerCount = Math.max(layerCount, l + 1);
+        }
+        int[] layerSizes = new int[layerCount];
+        for (int l: layer) {
+            layerSizes[l] ++;
+        }
+        layers = new int[layerCount][];
+        for (int l = 0; l < layerCount; l ++) {
+            layers[l] = new int[layerSizes[l]];
+            layerSizes[l] = 0;
+        }
+        position = new int[vertexCount];
+        for (int v = 0; v < vertexCount; v ++) {
+            int l = layer[v];
+            position[v] = layerSizes[l];
+            layers[l][layerSizes[l] ++] = v;
+        }
+    }
+
+    /**
+     * Reduces the crossings between consecutive layers.
+     */
+    private void orderLayers() {
+        int[][] best = copy(layers);
+        long bestCrossings = countCrossings();
+        boolean transpose = vertexCount <= TRANSPOSE_LIMIT;
+        for (int i = 0; i < ORDERING_ITERATIONS && bestCrossings > 0; i ++) {
+            if (i % 2 == 0) {
+                for (int l = 1; l < layers.length; l ++) {
+                    sortByBarycenter(layers[l], upper);
+                }
+            } else {
+                for (int l = layers.length - 2; l >= 0; l --) {
+                    sortByBarycenter(layers[l], lower);
+                }
+            }
+            if (transpose) {
+                transpose();
+            }
+
+            long crossings = countCrossings();
+            if (crossings < bestCrossings) {
+                bestCrossings = crossings;
+                best = copy(layers);
+            }
+        }
+
+        layers = best;
+        for (int[] l: layers) {
+            updatePositions(l);
+        }
+    }
+
+    private void sortByBarycenter(int[] vertices, int[][] neighbours) {
+        final double[] barycenters = new double[vertexCount];
+        Integer[] order = new Integer[vertices.length];
+        for (int i = 0; i < vertices.length; i ++) {
+            int v = vertices[i];
+            order[i] = Integer.valueOf(v);
+            int[] n = neighbours[v];
+            if (n.length == 0) {
+                // Keep the place of a node without neighbours.
+                barycenters[v] = position[v];
+                continue;
+            }
+            double sum = 0;
+            for (int w: n) {
+                sum += position[w];
+            }
+            barycenters[v] = sum / n.length;
+        }
+
+        // A stable sort keeps the order of the ties.
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(barycenters[a.intValue()], barycenters[b.intValue()]);
+            }
+        });
+        for (int i = 0; i < vertices.length; i ++) {
+            vertices[i] = order[i].intValue();
+        }
+        updatePositions(vertices);
+    }
+
+    /**
+     * Swaps the adjacent nodes whose swap reduces the crossings, until no
+     * such nodes are left.
+     */
+    private void transpose() {
+        boolean improved = true;
+        for (int round = 0; improved && round < layers.length + 4; round ++) {
+            improved = false;
+            for (int[] vertices: layers) {
+                for (int i = 0; i + 1 < vertices.length; i ++) {
+                    int v = vertices[i];
+                    int w = vertices[i + 1];
+                    int before = countCrossings(v, w, upper) + countCrossings(v, w, lower);
+                    int after = countCrossings(w, v, upper) + countCrossings(w, v, lower);
+                    if (after < before) {
+                        vertices[i] = w;
+                        vertices[i + 1] = v;
+                        position[w] = i;
+                        position[v] = i + 1;
+                        improved = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the crossings between the edges of {@code v} and {@code w} in
+     * the specified direction when {@code v} is on the left of {@code w}.
+     */
+    private int countCrossings(int v, int w, int[][] neighbours) {
+        int crossings = 0;
+        for (int a: neighbours[v]) {
+            for (int b: neighbours[w]) {
+                if (position[a] > position[b]) {
+                    crossings ++;
+                }
+            }
+        }
+        return crossings;
+    }
+
+    /**
+     * Counts the crossings between all consecutive layers by counting the
+     * inversions of the lower ends of the segments with a Fenwick tree.
+     */
+    private long countCrossings() {
+        long crossings = 0;
+        for (int l = 0; l + 1 < layers.length; l ++) {
+            int[] tree = new int[layers[l + 1].length + 1];
+            int count = 0;
+            for (int v: layers[l]) {
+                // The lower ends of the segments of a node in position
+                // order, so that they don't count as crossing each other.
+                int[] ends = new int[lower[v].length];
+                for (int i = 0; i < ends.length; i ++) {
+                    ends[i] = position[lower[v][i]];
+                }
+                Arrays.sort(ends);
+                for (int p: ends) {
+                    // Count the segments so far with a greater lower end.
+                    int notGreater = 0;
+                    for (int i = p + 1; i > 0; i -= i & -i) {
+                        notGreater += tree[i];
+                    }
+                    crossings += count - notGreater;
+                    count ++;
+                }
+                for (int p: ends) {
+                    for (int i = p + 1; i < tree.length; i += i & -i) {
+                        tree[i] ++;
+                    }
+                }
+            }
+        }
+        return crossings;
+    }
+
+    private void assignCoordinates() {
+        x = new double[vertexCount];
+        y = new double[vertexCount];
+
+        // Vertical: each layer is as tall as its tallest node.
+        double top = 0;
+        for (int[] vertices: layers) {
+            double layerHeight = 0;
+            for (int v: vertices) {
+                layerHeight = Math.max(layerHeight, heights[v]);
+            }
+            for (int v: vertices) {
+                y[v] = top + layerHeight / 2;
+            }
+            top += layerHeight + rankSeparation;
+        }
+        height = Math.max(0, top - rankSeparation);
+
+        // Horizontal: start packed to the left and pull towards the
+        // neighbours.
+        for (int[] vertices: layers) {
+            double left = 0;
+            for (int i = 0; i < vertices.length; i ++) {
+                int v = vertices[i];
+                if (i > 0) {
+                    left += getSeparation(vertices[i - 1], v);
+                } else {
+                    left = widths[v] / 2;
+                }
+                x[v] = left;
+            }
+        }
+        for (int i = 0; i < POSITIONING_ITERATIONS; i ++) {
+            boolean last = i == POSITIONING_ITERATIONS - 1;
+            for (int l = 1; l < layers.length; l ++) {
+                placeLayer(layers[l], upper, last? lower : null);
+            }
+            for (int l = layers.length - 2; l >= 0; l --) {
+                placeLayer(layers[l], lower, last? upper : null);
+            }
+        }
+
+        double minX = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        for (int v = 0; v < vertexCount; v ++) {
+            minX = Math.min(minX, x[v] - widths[v] / 2);
+            maxX = Math.max(maxX, x[v] + widths[v] / 2);
+        }
+        for (int e = 0; e < sources.length; e ++) {
+            if (sources[e] == targets[e]) {
+                int v = sources[e];
+                maxX = Math.max(maxX, x[v] + widths[v] / 2 + SELF_LOOP_SIZE);
+            }
+        }
+        if (vertexCount == 0) {
+            minX = maxX = 0;
+        }
+        for (int v = 0; v < vertexCount; v ++) {
+            x[v] -= minX;
+        }
+        width = maxX - minX;
+    }
+
+    private double getSeparation(int left, int right) {
+        double gap = nodeSeparation;
+        if (left >= nodeCount || right >= nodeCount) {
+            gap /= 2;
+        }
+        return (widths[left] + widths[right]) / 2 + gap;
+    }
+
+    /**
+     * Moves the nodes of a layer as close as possible to the weighted mean
+     * of their neighbours while keeping them apart, with the pool adjacent
+     * violators algorithm.
+     */
+    private void placeLayer(int[] vertices, int[][] neighbours, int[][] otherNeighbours) {
+        int n = vertices.length;
+        double[] offsets = new double[n];
+        double[] desired = new double[n];
+        double[] weights = new double[n];
+        for (int i = 0; i < n; i ++) {
+            int v = vertices[i];
+            if (i > 0) {
+                offsets[i] = offsets[i - 1] + getSeparation(vertices[i - 1], v);
+            }
+
+            double sum = 0;
+            double weight = 0;
+            for (int w: neighbours[v]) {
+                double segmentWeight = getWeight(v, w);
+                sum += x[w] * segmentWeight;
+                weight += segmentWeight;
+            }
+            if (otherNeighbours != null) {
+                for (int w: otherNeighbours[v]) {
+                    double segmentWeight = getWeight(v, w);
+                    sum += x[w] * segmentWeight;
+                    weight += segmentWeight;
+                }
+            }
+            if (weight == 0) {
+                // Follow the others without pulling them.
+                weight = 0.01;
+                sum = x[v] * weight;
+            }
+            desired[i] = sum / weight - offsets[i];
+            weights[i] = weight;
+        }
+
+        // Blocks of the solution on a stack.
+        double[] blockWeight = new double[n];
+        double[] blockSum = new double[n];
+        int[] blockSize = new int[n];
+        int blocks = 0;
+        for (int i = 0; i < n; i ++) {
+            blockWeight[blocks] = weights[i];
+            blockSum[blocks] = weights[i] * desired[i];
+            blockSize[blocks] = 1;
+            blocks ++;
+            while (blocks > 1 &&
+                   blockSum[blocks - 2] / blockWeight[blocks - 2] >
+                   blockSum[blocks - 1] / blockWeight[blocks - 1]) {
+                blockWeight[blocks - 2] += blockWeight[blocks - 1];
+                blockSum[blocks - 2] += blockSum[blocks - 1];
+                blockSize[blocks - 2] += blockSize[blocks - 1];
+                blocks --;
+            }
+        }
+
+        int i = 0;
+        for (int b = 0; b < blocks; b ++) {
+            double value = blockSum[b] / blockWeight[b];
+            for (int j = 0; j < blockSize[b]; j ++, i ++) {
+                x[vertices[i]] = value + offsets[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the weight of a segment, which is greater between dummy nodes
+     * to keep the long edges straight.
+     */
+    private double getWeight(int v, int w) {
+        boolean dummyV = v >= nodeCount;
+        boolean dummyW = w >= nodeCount;
+        if (dummyV && dummyW) {
+            return 8;
+        }
+        if (dummyV || dummyW) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private void updatePositions(int[] vertices) {
+        for (int i = 0; i < vertices.length; i ++) {
+            position[vertices[i]] = i;
+        }
+    }
+
+    /**
+     * Returns the outgoing edges of each vertex, or their {@code values} if
+     * specified.
+     */
+    private static int[][] adjacency(int vertexCount, int[] from, int[] to, int[] values) {
+        int[] counts = new int[vertexCount];
+        for (int i = 0; i < from.length; i ++) {
+            if (from[i] != to[i]) {
+                counts[from[i]] ++;
+            }
+        }
+        int[][] result = new int[vertexCount][];
+        for (int v = 0; v < vertexCount; v ++) {
+            result[v] = new int[counts[v]];
+            counts[v] = 0;
+        }
+        for (int i = 0; i < from.length; i ++) {
+            if (from[i] != to[i]) {
+                result[from[i]][counts[from[i]] ++] = values == null? i : values[i];
+            }
+        }
+        return result;
+    }
+
+    private static double[] grow(double[] a, int length) {
+        double[] b = new double[length];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+
+    private static int[][] copy(int[][] a) {
+        int[][] b = new int[a.length][];
+        for (int i = 0; i < a.length; i ++) {
+            b[i] = a[i].clone();
+        }
+        return b;
+    }
+}
@@ -0,0 +1,965 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import static org.jboss.apiviz.Constant.*;
+
+import java.awt.AWTError;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.HeadlessException;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A {@link DiagramRenderer} which lays out and draws small diagrams in the
+ * JVM with a {@link LayeredLayout}, saving the cost of starting Graphviz.
+ * The DOT source is parsed into a {@link DotGraph} and drawn with the same
+ * attributes as Graphviz would: the labels, fonts and colors of the nodes,
+ * the arrow shapes and line styles of the {@link EdgeType}s, the edge
+ * labels and the links.  The PNG image comes with a client-side image map
+ * in the format of {@code -Tcmapx}.
+ * <p>
+ * A diagram with more nodes than the threshold is passed to the fallback
+ * renderer, such as {@link DiagramRenderer#GRAPHVIZ}.  Without a fallback
+ * renderer, all diagrams are rendered in the JVM, which is how the diagrams
+ * are generated when Graphviz is not installed.
+ * <p>
+ * Unlike Graphviz, both arrows of an edge are drawn unless its {@code dir}
+ * attribute says otherwise, because the arrows of the UML relationships are
+ * specified as {@code arrowtail} of reversed edges.  The edges are drawn as
+ * polylines, and the edge labels don't take part in the layout.
+ * <p>
+ * The text is measured and the PNG image is drawn with AWT.  On a system
+ * without a display, AWT may have to be told not to look for one by
+ * running javadoc with {@code -J-Djava.awt.headless=true}, which AWT
+ * assumes on Linux without a display from Java 8.  The renderer does not
+ * set the property itself because javadoc may be running in the JVM of an
+ * IDE or a build tool.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class LayeredRenderer implements DiagramRenderer {
+
+    /**
+     * Identifies the output of this renderer in the render cache and the
+     * manifest, like the version of Graphviz does.
+     */
+    public static final String VERSION = "APIviz layered layout 1";
+
+    private static final double POINTS_PER_INCH = 72;
+    private static final double PAD = 4;
+    private static final double NODE_MARGIN_X = 8;
+    private static final double NODE_MARGIN_Y = 4;
+    private static final double MIN_NODE_SIZE = 0.1 * POINTS_PER_INCH;
+    private static final double LINE_SPACING = 1.2;
+    private static final double ARROW_LENGTH = 10;
+    private static final double ARROW_WIDTH = 7;
+    private static final double LABEL_DISTANCE = 10;
+
+    private static final Pattern ENTITY_PATTERN =
+        Pattern.compile("&(#[0-9]+|#[xX][0-9a-fA-F]+|amp|lt|gt|quot|apos);");
+    private static final Pattern LINE_WIDTH_PATTERN =
+        Pattern.compile("setlinewidth\\(([0-9.]+)\\)");
+
+    private static final FontRenderContext FONT_CONTEXT =
+        new FontRenderContext(null, true, true);
+
+    private final DiagramRenderer fallback;
+    private final int maxNodes;
+
+    /**
+     * @param fallback the renderer of the diagrams with more than
+     *                 {@code maxNodes} nodes, or {@code null} to render all
+     *                 diagrams in the JVM
+     */
+    public LayeredRenderer(DiagramRenderer fallback, int maxNodes) {
+        if (maxNodes < 0) {
+            throw new IllegalArgumentException("maxNodes: " + maxNodes);
+        }
+        this.fallback = fallback;
+        this.maxNodes = maxNodes;
+    }
+
+    public RenderResult writeImageAndMap(
+            String diagram, File outputDirectory, String filename) throws IOException {
+        long startTime = System.nanoTime();
+        DotGraph graph = DotGraph.parse(diagram);
+        if (fallback != null && graph.getNodeCount() > maxNodes) {
+            return fallback.writeImageAndMap(diagram, outputDirectory, filename);
+        }
+
+        try {
+            Scene scene = new Scene(graph);
+            File pngFile = new File(outputDirectory, filename + ".png");
+            scene.writePng(pngFile);
+            return new RenderResult(
+                    scene.getImageMap().getBytes("UTF-8"), pngFile,
+                    System.nanoTime() - startTime, false);
+        } catch (AWTError e) {
+            throw newDisplayException(e);
+        } catch (HeadlessException e) {
+            throw newDisplayException(e);
+        } catch (LinkageError e) {
+            // AWT failed to load its native libraries.
+            throw newDisplayException(e);
+        }
+    }
+
+    /**
+     * Builds the diagram in memory first, because the size of the diagram
+     * decides the renderer.
+     */
+    public RenderResult writeImageAndMap(
+            DiagramSource source, File outputDirectory, String filename) throws IOException {
+        return writeImageAndMap(toString(source), outputDirectory, filename);
+    }
+
+    public RenderResult writeSvg(
+            DiagramSource source, File outputDirectory, String filename,
+            String linkTarget) throws IOException {
+        long startTime = System.nanoTime();
+        final String diagram = toString(source);
+        DotGraph graph = DotGraph.parse(diagram);
+        if (fallback != null && graph.getNodeCount() > maxNodes) {
+            return fallback.writeSvg(new DiagramSource() {
+                public void writeDiagram(Appendable out) throws IOException {
+                    out.append(diagram);
+                }
+            }, outputDirectory, filename, linkTarget);
+        }
+
+        try {
+            Scene scene = new Scene(graph);
+            File svgFile = new File(outputDirectory, filename + ".svg");
+            scene.writeSvg(svgFile, linkTarget);
+            return new RenderResult(
+                    new byte[0], svgFile, System.nanoTime() - startTime, false);
+        } catch (AWTError e) {
+            throw newDisplayException(e);
+        } catch (HeadlessException e) {
+            throw newDisplayException(e);
+        } catch (LinkageError e) {
+            // AWT failed to load its native libraries.
+            throw newDisplayException(e);
+        }
+    }
+
+    public void close() {
+        if (fallback != null) {
+            fallback.close();
+        }
+    }
+
+    /**
+     * Reports that AWT could not be initialized, which fails every diagram
+     * alike, with the way to run without a display.
+     */
+    private static IOException newDisplayException(Throwable cause) {
+        IOException e = new IOException(
+                "AWT is not available (" + cause +
+                "); run javadoc with -J-Djava.awt.headless=true");
+        e.initCause(cause);
+        return e;
+    }
+
+    private static String toString(DiagramSource source) throws IOException {
+        StringBuilder buf = new StringBuilder(16384);
+        source.writeDiagram(buf);
+        return buf.toString();
+    }
+
+    /**
+     * Splits a label into its lines and decodes its character entities.
+     */
+    static String[] decodeLabel(String label) {
+        List<String> lines = new ArrayList<String>();
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < label.length(); i ++) {
+            char c = label.charAt(i);
+            if (c == '\\' && i + 1 < label.length()) {
+                char next = label.charAt(++ i);
+                if (next == 'n' || next == 'l' || next == 'r') {
+                    lines.add(decodeEntities(line.toString()));
+                    line.setLength(0);
+                } else {
+                    line.append(next);
+                }
+            } else {
+                line.append(c);
+            }
+        }
+        if (line.length() > 0 || lines.isEmpty()) {
+            lines.add(decodeEntities(line.toString()));
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    private static String decodeEntities(String text) {
+        if (text.indexOf('&') < 0) {
+            return text;
+        }
+
+        Matcher m = ENTITY_PATTERN.matcher(text);
+        StringBuffer buf = new StringBuffer(text.length());
+        while (m.find()) {
+            String entity = m.group(1);
+            char c;
+            if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                c = (char) Integer.parseInt(entity.substring(2), 16);
+            } else if (entity.startsWith("#")) {
+                c = (char) Integer.parseInt(entity.substring(1));
+            } else if (entity.equals("amp")) {
+                c = '&';
+            } else if (entity.equals("lt")) {
+                c = '<';
+            } else if (entity.equals("gt")) {
+                c = '>';
+            } else if (entity.equals("quot")) {
+                c = '"';
+            } else {
+                c = '\'';
+            }
+            m.appendReplacement(buf, Matcher.quoteReplacement(String.valueOf(c)));
+        }
+        m.appendTail(buf);
+        return buf.toString();
+    }
+
+    static Color parseColor(String name) {
+        if (name == null) {
+            return Color.BLACK;
+        }
+        if (name.startsWith("#") && name.length() == 7) {
+            try {
+                return new Color(Integer.parseInt(name.substring(1), 16));
+            } catch (NumberFormatException e) {
+                // Fall through
+            }
+        }
+        Color color = ColorTable.COLORS.get(name.toLowerCase(Locale.ENGLISH));
+        return color == null? Color.BLACK : color;
+    }
+
+    private static Font getFont(String name, double size) {
+        int style = Font.PLAIN;
+        String lowerName = name.toLowerCase(Locale.ENGLISH);
+        if (lowerName.indexOf("oblique") >= 0 || lowerName.indexOf("italic") >= 0) {
+            style |= Font.ITALIC;
+        }
+        if (lowerName.indexOf("bold") >= 0) {
+            style |= Font.BOLD;
+        }
+        return new Font("SansSerif", style, 1).deriveFont((float) size);
+    }
+
+    private static double parseDouble(String value, double defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static double getLineWidth(String style) {
+        Matcher m = LINE_WIDTH_PATTERN.matcher(style);
+        return m.find()? parseDouble(m.group(1), 1) : 1;
+    }
+
+    private static boolean hasStyle(String style, String name) {
+        for (String s: style.split(",")) {
+            if (s.trim().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String toHex(Color color) {
+        String hex = Integer.toHexString(color.getRGB() & 0xFFFFFF);
+        return "#000000".substring(0, 7 - hex.length()) + hex;
+    }
+
+    private static String escapeXml(String text) {
+        StringBuilder buf = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < text.length(); i ++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '&':
+                buf.append("&amp;");
+                break;
+            case '<':
+                buf.append("&lt;");
+                break;
+            case '>':
+                buf.append("&gt;");
+                break;
+            case '"':
+                buf.append("&quot;");
+                break;
+            default:
+                if (c > 0x7E) {
+                    buf.append("&#");
+                    buf.append((int) c);
+                    buf.append(';');
+                } else {
+                    buf.append(c);
+                }
+            }
+        }
+        return buf.toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ENGLISH, "%.2f", Double.valueOf(value));
+    }
+
+    /**
+     * A node with its attributes and its box after the layout.
+     */
+    private static class SceneNode {
+        String[] lines;
+        Font font;
+        double lineHeight;
+        Color fillColor;
+        Color lineColor;
+        Color fontColor;
+        double lineWidth;
+        boolean dotted;
+        String href;
+        String tooltip;
+        double x;
+        double y;
+        double width;
+        double height;
+
+        SceneNode() {
+            super();
+        }
+    }
+
+    /**
+     * An edge with its attributes and its route after the layout.
+     */
+    private static class SceneEdge {
+        double[] route;
+        String arrowHead;
+        String arrowTail;
+        Color lineColor;
+        Color fontColor;
+        Font font;
+        double lineWidth;
+        boolean dashed;
+        boolean dotted;
+        String label;
+        String headLabel;
+        String tailLabel;
+
+        SceneEdge() {
+            super();
+        }
+    }
+
+    /**
+     * The laid out diagram, which can be drawn as PNG and SVG.
+     */
+    private static class Scene {
+        private final String name;
+        private final List<SceneNode> nodes = new ArrayList<SceneNode>();
+        private final List<SceneEdge> edges = new ArrayList<SceneEdge>();
+        private final double width;
+        private final double height;
+
+        Scene(DotGraph graph) {
+            name = graph.getName();
+
+            List<DotGraph.Node> graphNodes = graph.getNodes();
+            Map<DotGraph.Node, Integer> ids = new HashMap<DotGraph.Node, Integer>();
+            double[] widths = new double[graphNodes.size()];
+            double[] heights = new double[graphNodes.size()];
+            for (DotGraph.Node n: graphNodes) {
+                SceneNode node = newNode(n);
+                widths[nodes.size()] = node.width;
+                heights[nodes.size()] = node.height;
+                ids.put(n, Integer.valueOf(nodes.size()));
+                nodes.add(node);
+            }
+
+            List<DotGraph.Arc> arcs = graph.getArcs();
+            int[] sources = new int[arcs.size()];
+            int[] targets = new int[arcs.size()];
+            for (int i = 0; i < arcs.size(); i ++) {
+                DotGraph.Arc a = arcs.get(i);
+                sources[i] = ids.get(a.getSource()).intValue();
+                targets[i] = ids.get(a.getTarget()).intValue();
+                edges.add(newEdge(a));
+            }
+
+            LayeredLayout layout = new LayeredLayout(
+                    widths, heights, sources, targets,
+                    "LR".equalsIgnoreCase(graph.getAttribute("rankdir", "TB")),
+                    parseDouble(graph.getAttribute("ranksep", null), 0.5) * POINTS_PER_INCH,
+                    parseDouble(graph.getAttribute("nodesep", null), 0.25) * POINTS_PER_INCH);
+
+            for (int i = 0; i < nodes.size(); i ++) {
+                SceneNode node = nodes.get(i);
+                node.x = layout.getX(i) + PAD;
+                node.y = layout.getY(i) + PAD;
+            }
+            for (int i = 0; i < edges.size(); i ++) {
+                double[] route = layout.getRoute(i);
+                for (int j = 0; j < route.length; j ++) {
+                    route[j] += PAD;
+                }
+                edges.get(i).route = route;
+            }
+            width = Math.ceil(layout.getWidth() + PAD * 2);
+            height = Math.ceil(layout.getHeight() + PAD * 2);
+        }
+
+        private static SceneNode newNode(DotGraph.Node n) {
+            SceneNode node = new SceneNode();
+            String style = n.getAttribute("style", "");
+            double fontSize = parseDouble(n.getAttribute("fontsize", null), 14);
+            node.font = getFont(n.getAttribute("fontname", "Times-Roman"), fontSize);
+            node.lineHeight = fontSize * LINE_SPACING;
+            node.lines = decodeLabel(n.getAttribute("label", n.getId()));
+            node.lineColor = parseColor(n.getAttribute("color", "black"));
+            node.fontColor = parseColor(n.getAttribute("fontcolor", "black"));
+            if (hasStyle(style, "filled")) {
+                node.fillColor = parseColor(
+                        n.getAttribute("fillcolor", n.getAttribute("color", "lightgray")));
+            }
+            node.lineWidth = getLineWidth(style);
+            node.dotted = hasStyle(style, "dotted");
+            node.href = n.getAttribute("href", n.getAttribute("URL", null));
+            node.tooltip = n.getAttribute("tooltip", null);
+            if (node.tooltip == null) {
+                StringBuilder buf = new StringBuilder();
+                for (String line: node.lines) {
+                    if (buf.length() > 0) {
+                        buf.append(' ');
+                    }
+                    buf.append(line);
+                }
+                node.tooltip = buf.toString();
+            } else {
+                node.tooltip = decodeEntities(node.tooltip);
+            }
+
+            double textWidth = 0;
+            for (String line: node.lines) {
+                textWidth = Math.max(
+                        textWidth, node.font.getStringBounds(line, FONT_CONTEXT).getWidth());
+            }
+            node.width = Math.max(
+                    MIN_NODE_SIZE,
+                    parseDouble(n.getAttribute("width", null), 0) * POINTS_PER_INCH);
+            node.width = Math.ceil(Math.max(node.width, textWidth + NODE_MARGIN_X * 2));
+            node.height = Math.max(
+                    MIN_NODE_SIZE,
+                    parseDouble(n.getAttribute("height", null), 0) * POINTS_PER_INCH);
+            node.height = Math.ceil(Math.max(
+                    node.height, node.lines.length * node.lineHeight + NODE_MARGIN_Y * 2));
+            return node;
+        }
+
+        private static SceneEdge newEdge(DotGraph.Arc a) {
+            SceneEdge edge = new SceneEdge();
+            String style = a.getAttribute("style", "");
+            String dir = a.getAttribute("dir", "both");
+            edge.arrowHead = dir.equals("both") || dir.equals("forward")?
+                    a.getAttribute("arrowhead", "normal") : "none";
+            edge.arrowTail = dir.equals("both") || dir.equals("back")?
+                    a.getAttribute("arrowtail", "none") : "none";
+            edge.lineColor = parseColor(a.getAttribute("color", "black"));
+            edge.fontColor = parseColor(a.getAttribute("fontcolor", "black"));
+            edge.font = getFont(
+                    a.getAttribute("fontname", "Times-Roman"),
+                    parseDouble(a.getAttribute("fontsize", null), 14));
+            edge.lineWidth = getLineWidth(style);
+            edge.dashed = hasStyle(style, "dashed");
+            edge.dotted = hasStyle(style, "dotted");
+            edge.label = getLabel(a, "label");
+            edge.headLabel = getLabel(a, "headlabel");
+            edge.tailLabel = getLabel(a, "taillabel");
+            return edge;
+        }
+
+        private static String getLabel(DotGraph.Arc a, String key) {
+            String label = a.getAttribute(key, "");
+            if (label.trim().length() == 0) {
+                return null;
+            }
+            StringBuilder buf = new StringBuilder();
+            for (String line: decodeLabel(label)) {
+                if (buf.length() > 0) {
+                    buf.append(' ');
+                }
+                buf.append(line);
+            }
+            return buf.toString();
+        }
+
+        /**
+         * Returns the client-side image map of the nodes with a link, in
+         * the format of Graphviz.
+         */
+        String getImageMap() {
+            StringBuilder buf = new StringBuilder(1024);
+            buf.append("<map id=\"" + name + "\" name=\"" + name + "\">" + "\n");
+            for (int i = 0; i < nodes.size(); i ++) {
+                SceneNode node = nodes.get(i);
+                if (node.href == null) {
+                    continue;
+                }
+                buf.append("<area shape=\"rect\" id=\"node");
+                buf.append(i + 1);
+                buf.append("\" href=\"");
+                buf.append(escapeXml(node.href));
+                buf.append("\" title=\"");
+                buf.append(escapeXml(node.tooltip));
+                buf.append("\" alt=\"\" coords=\"");
+                buf.append(Math.round(node.x - node.width / 2));
+                buf.append(',');
+                buf.append(Math.round(node.y - node.height / 2));
+                buf.append(',');
+                buf.append(Math.round(node.x + node.width / 2));
+                buf.append(',');
+                buf.append(Math.round(node.y + node.height / 2));
+                buf.append("\"/>\n");
+            }
+            buf.append("</map>\n");
+            return buf.toString();
+        }
+
+        void writePng(File file) throws IOException {
+            BufferedImage image = new BufferedImage(
+                    (int) width, (int) height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+                g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, (int) width, (int) height);
+
+                // outputorder=edgesfirst
+                for (SceneEdge edge: edges) {
+                    paint(g, edge);
+                }
+                for (SceneNode node: nodes) {
+                    paint(g, node);
+                }
+            } finally {
+                g.dispose();
+            }
+
+            file.delete();
+            if (!ImageIO.write(image, "png", file)) {
+                throw new IOException("No PNG image writer available");
+            }
+        }
+
+        private static void paint(Graphics2D g, SceneNode node) {
+            Rectangle2D box = new Rectangle2D.Double(
+                    node.x - node.width / 2, node.y - node.height / 2,
+                    node.width, node.height);
+            if (node.fillColor != null) {
+                g.setColor(node.fillColor);
+                g.fill(box);
+            }
+            g.setColor(node.lineColor);
+            g.setStroke(newStroke(node.lineWidth, false, node.dotted));
+            g.draw(box);
+
+            g.setColor(node.fontColor);
+            g.setFont(node.font);
+            for (int i = 0; i < node.lines.length; i ++) {
+                String line = node.lines[i];
+                double textWidth = node.font.getStringBounds(line, FONT_CONTEXT).getWidth();
+                g.drawString(
+                        line,
+                        (float) (node.x - textWidth / 2),
+                        (float) getBaseline(node, i));
+            }
+        }
+
+        private static double getBaseline(SceneNode node, int line) {
+            LineMetrics metrics = node.font.getLineMetrics("Xg", FONT_CONTEXT);
+            double top = node.y - node.lines.length * node.lineHeight / 2;
+            return top + line * node.lineHeight +
+                   (node.lineHeight + metrics.getAscent() - metrics.getDescent()) / 2;
+        }
+
+        private static void paint(Graphics2D g, SceneEdge edge) {
+            double[] route = edge.route.clone();
+            double[] head = shortenForArrow(route, route.length - 2, route.length - 4, edge.arrowHead);
+            double[] tail = shortenForArrow(route, 0, 2, edge.arrowTail);
+
+            GeneralPath path = new GeneralPath();
+            path.moveTo((float) route[0], (float) route[1]);
+            for (int i = 2; i < route.length; i += 2) {
+                path.lineTo((float) route[i], (float) route[i + 1]);
+            }
+            g.setColor(edge.lineColor);
+            g.setStroke(newStroke(edge.lineWidth, edge.dashed, edge.dotted));
+            g.draw(path);
+
+            g.setStroke(newStroke(edge.lineWidth, false, false));
+            paintArrow(g, head, edge.arrowHead, edge.lineColor);
+            paintArrow(g, tail, edge.arrowTail, edge.lineColor);
+
+            g.setColor(edge.fontColor);
+            g.setFont(edge.font);
+            double[][] labels = getLabelPositions(edge);
+            String[] texts = { edge.label, edge.headLabel, edge.tailLabel };
+            for (int i = 0; i < texts.length; i ++) {
+                if (texts[i] != null) {
+                    g.drawString(texts[i], (float) labels[i][0], (float) labels[i][1]);
+                }
+            }
+        }
+
+        private static void paintArrow(Graphics2D g, double[] polygon, String shape, Color color) {
+            if (polygon == null) {
+                return;
+            }
+            GeneralPath path = new GeneralPath();
+            path.moveTo((float) polygon[0], (float) polygon[1]);
+            for (int i = 2; i < polygon.length; i += 2) {
+                path.lineTo((float) polygon[i], (float) polygon[i + 1]);
+            }
+            path.closePath();
+            g.setColor(isHollow(shape)? Color.WHITE : color);
+            g.fill(path);
+            g.setColor(color);
+            g.draw(path);
+        }
+
+        private static BasicStroke newStroke(double width, boolean dashed, boolean dotted) {
+            float[] dash = null;
+            if (dashed) {
+                dash = new float[] { 5, 2 };
+            } else if (dotted) {
+                dash = new float[] { 1, 2 };
+            }
+            return new BasicStroke(
+                    (float) width, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND,
+                    10, dash, 0);
+        }
+
+        /**
+         * Returns the positions of the label, the head label and the tail
+         * label of an edge.
+         */
+        private static double[][] getLabelPositions(SceneEdge edge) {
+            double[] route = edge.route;
+            int middle = route.length / 4 * 2;
+            double mx;
+            double my;
+            if (route.length / 2 % 2 == 0) {
+                mx = (route[middle - 2] + route[middle]) / 2;
+                my = (route[middle - 1] + route[middle + 1]) / 2;
+            } else {
+                mx = route[middle];
+                my = route[middle + 1];
+            }
+            return new double[][] {
+                    { mx + 4, my },
+                    pointNear(route, route.length - 2, route.length - 4),
+                    pointNear(route, 0, 2) };
+        }
+
+        private static double[] pointNear(double[] route, int end, int towards) {
+            double dx = route[towards] - route[end];
+            double dy = route[towards + 1] - route[end + 1];
+            double length = Math.max(1e-9, Math.sqrt(dx * dx + dy * dy));
+            double t = Math.min(1, LABEL_DISTANCE / length);
+            return new double[] { route[end] + dx * t + 4, route[end + 1] + dy * t };
+        }
+
+        /**
+         * Moves the end of a route back by the length of its arrow, and
+         * returns the polygon of the arrow or {@code null} if none.
+         */
+        private static double[] shortenForArrow(double[] route, int end, int towards, String shape) {
+            if (shape == null || shape.equals("none")) {
+                return null;
+            }
+
+            double tipX = route[end];
+            double tipY = route[end + 1];
+            double dx = tipX - route[towards];
+            double dy = tipY - route[towards + 1];
+            double length = Math.sqrt(dx * dx + dy * dy);
+            if (length < 1e-9) {
+                return null;
+            }
+            // The unit vector along the edge, and its normal.
+            double ux = dx / length;
+            double uy = dy / length;
+            double nx = -uy * ARROW_WIDTH / 2;
+            double ny = ux * ARROW_WIDTH / 2;
+
+            String baseShape = getBaseShape(shape);
+            double[] polygon;
+            double arrowLength;
+            if (baseShape.equals("diamond")) {
+                arrowLength = ARROW_LENGTH * 1.2;
+                double mx = tipX - ux * arrowLength / 2;
+                double my = tipY - uy * arrowLength / 2;
+                polygon = new double[] {
+                        tipX, tipY, mx + nx, my + ny,
+                        tipX - ux * arrowLength, tipY - uy * arrowLength,
+                        mx - nx, my - ny };
+            } else if (baseShape.equals("vee")) {
+                arrowLength = ARROW_LENGTH;
+                double bx = tipX - ux * arrowLength;
+                double by = tipY - uy * arrowLength;
+                polygon = new double[] {
+                        tipX, tipY, bx + nx, by + ny,
+                        tipX - ux * arrowLength * 0.6, tipY - uy * arrowLength * 0.6,
+                        bx - nx, by - ny };
+            } else {
+                arrowLength = ARROW_LENGTH;
+                double bx = tipX - ux * arrowLength;
+                double by = tipY - uy * arrowLength;
+                polygon = new double[] {
+                        tipX, tipY, bx + nx, by + ny, bx - nx, by - ny };
+            }
+
+            double shorten = Math.min(arrowLength, length);
+            route[end] = tipX - ux * shorten;
+            route[end + 1] = tipY - uy * shorten;
+            return polygon;
+        }
+
+        /**
+         * Returns {@code triangle}, {@code diamond} or {@code vee} for an
+         * arrow shape such as {@code enormal}, {@code odiamond} or
+         * {@code open}.
+         */
+        private static String getBaseShape(String shape) {
+            if (shape.equals("open") || shape.endsWith("vee")) {
+                return "vee";
+            }
+            if (shape.endsWith("diamond")) {
+                return "diamond";
+            }
+            return "triangle";
+        }
+
+        private static boolean isHollow(String shape) {
+            if (shape.equals("open") || shape.equals("empty")) {
+                return shape.equals("empty");
+            }
+            return shape.startsWith("o") || shape.startsWith("e");
+        }
+
+        void writeSvg(File file, String linkTarget) throws IOException {
+            file.delete();
+            Writer out = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+            try {
+                writeSvg(out, linkTarget);
+            } finally {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Ignore.
+                }
+            }
+        }
+
+        private void writeSvg(Writer out, String linkTarget) throws IOException {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>" + NEWLINE);
+            out.write("<svg width=\"" + (int) width + "pt\" height=\"" + (int) height +
+                      "pt\" viewBox=\"0.00 0.00 " + format(width) + ' ' + format(height) +
+                      "\" xmlns=\"http://www.w3.org/2000/svg\"" +
+                      " xmlns:xlink=\"http://www.w3.org/1999/xlink\">" + NEWLINE);
+            out.write("<g id=\"graph0\" class=\"graph\">" + NEWLINE);
+            out.write("<title>" + escapeXml(name) + "</title>" + NEWLINE);
+            out.write("<rect x=\"0\" y=\"0\" width=\"" + format(width) +
+                      "\" height=\"" + format(height) +
+                      "\" fill=\"white\" stroke=\"none\"/>" + NEWLINE);
+
+            for (SceneEdge edge: edges) {
+                writeSvg(out, edge);
+            }
+            for (int i = 0; i < nodes.size(); i ++) {
+                writeSvg(out, nodes.get(i), i + 1, linkTarget);
+            }
+            out.write("</g>" + NEWLINE);
+            out.write("</svg>" + NEWLINE);
+        }
+
+        private static void writeSvg(Writer out, SceneNode node, int id, String linkTarget) throws IOException {
+            out.write("<g id=\"node" + id + "\" class=\"node\">" + NEWLINE);
+            if (node.href != null) {
+                out.write("<a xlink:href=\"" + escapeXml(node.href) +
+                          "\" xlink:title=\"" + escapeXml(node.tooltip) + '"');
+                if (linkTarget != null) {
+                    out.write(" target=\"" + escapeXml(linkTarget) + '"');
+                }
+                out.write(">" + NEWLINE);
+            }
+
+            out.write("<rect x=\"" + format(node.x - node.width / 2) +
+                      "\" y=\"" + format(node.y - node.height / 2) +
+                      "\" width=\"" + format(node.width) +
+                      "\" height=\"" + format(node.height) +
+                      "\" fill=\"" + (node.fillColor == null? "none" : toHex(node.fillColor)) +
+                      "\" stroke=\"" + toHex(node.lineColor) +
+                      "\" stroke-width=\"" + format(node.lineWidth) + '"' +
+                      (node.dotted? " stroke-dasharray=\"1,2\"" : "") + "/>" + NEWLINE);
+            for (int i = 0; i < node.lines.length; i ++) {
+                writeText(out, node.lines[i], node.font, node.fontColor,
+                          node.x, getBaseline(node, i), "middle");
+            }
+
+            if (node.href != null) {
+                out.write("</a>" + NEWLINE);
+            }
+            out.write("</g>" + NEWLINE);
+        }
+
+        private static void writeSvg(Writer out, SceneEdge edge) throws IOException {
+            double[] route = edge.route.clone();
+            double[] head = shortenForArrow(route, route.length - 2, route.length - 4, edge.arrowHead);
+            double[] tail = shortenForArrow(route, 0, 2, edge.arrowTail);
+            String color = toHex(edge.lineColor);
+
+            out.write("<g class=\"edge\">" + NEWLINE);
+            out.write("<path fill=\"none\" stroke=\"" + color +
+                      "\" stroke-width=\"" + format(edge.lineWidth) + '"');
+            if (edge.dashed) {
+                out.write(" stroke-dasharray=\"5,2\"");
+            } else if (edge.dotted) {
+                out.write(" stroke-dasharray=\"1,2\"");
+            }
+            out.write(" d=\"M");
+            for (int i = 0; i < route.length; i += 2) {
+                out.write(i == 0? "" : " L");
+                out.write(format(route[i]) + ',' + format(route[i + 1]));
+            }
+            out.write("\"/>" + NEWLINE);
+
+            writeArrow(out, head, edge.arrowHead, color, edge.lineWidth);
+            writeArrow(out, tail, edge.arrowTail, color, edge.lineWidth);
+
+            double[][] labels = getLabelPositions(edge);
+            String[] texts = { edge.label, edge.headLabel, edge.tailLabel };
+            for (int i = 0; i < texts.length; i ++) {
+                if (texts[i] != null) {
+                    writeText(out, texts[i], edge.font, edge.fontColor,
+                              labels[i][0], labels[i][1], "start");
+                }
+            }
+            out.write("</g>" + NEWLINE);
+        }
+
+        private static void writeArrow(
+                Writer out, double[] polygon, String shape, String color,
+                double lineWidth) throws IOException {
+            if (polygon == null) {
+                return;
+            }
+            out.write("<polygon fill=\"" + (isHollow(shape)? "white" : color) +
+                      "\" stroke=\"" + color +
+                      "\" stroke-width=\"" + format(lineWidth) + "\" points=\"");
+            for (int i = 0; i < polygon.length; i += 2) {
+                if (i > 0) {
+                    out.write(' ');
+                }
+                out.write(format(polygon[i]) + ',' + format(polygon[i + 1]));
+            }
+            out.write("\"/>" + NEWLINE);
+        }
+
+        private static void writeText(
+                Writer out, String text, Font font, Color color,
+                double x, double y, String anchor) throws IOException {
+            out.write("<text text-anchor=\"" + anchor +
+                      "\" x=\"" + format(x) + "\" y=\"" + format(y) +
+                      "\" font-family=\"Helvetica,sans-Serif\"");
+            if (font.isItalic()) {
+                out.write(" font-style=\"italic\"");
+            }
+            if (font.isBold()) {
+                out.write(" font-weight=\"bold\"");
+            }
+            out.write(" font-size=\"" + format(font.getSize2D()) +
+                      "\" fill=\"" + toHex(color) + "\">" +
+                      escapeXml(text) + "</text>" + NEWLINE);
+        }
+    }
+
+    /**
+     * The colors known by name.  Kept apart so that loading the renderer
+     * does not initialize AWT, which fails in some environments without a
+     * display; the first diagram reports the failure instead.
+     */
+    private static final class ColorTable {
+        static final Map<String, Color> COLORS = new HashMap<String, Color>();
+        static {
+            COLORS.put("black", Color.BLACK);
+            COLORS.put("white", Color.WHITE);
+            COLORS.put("gray", new Color(0xC0C0C0));
+            COLORS.put("grey", new Color(0xC0C0C0));
+            COLORS.put("gray30", new Color(0x4D4D4D));
+            COLORS.put("grey30", new Color(0x4D4D4D));
+            COLORS.put("khaki1", new Color(0xFFF68F));
+            COLORS.put("red", Color.RED);
+            COLORS.put("green", Color.GREEN);
+            COLORS.put("blue", Color.BLUE);
+            COLORS.put("yellow", Color.YELLOW);
+            COLORS.put("lightgray", new Color(0xD3D3D3));
+            COLORS.put("lightgrey", new Color(0xD3D3D3));
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import static org.jboss.apiviz.Constant.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Chooses the layout parameters of a diagram from the number of its nodes
+ * and edges.  Crossing minimization in {@code dot} grows much faster than
+ * the size of a graph, so the effort is reduced step by step:
+ * <ul>
+ * <li>{@link Effort#FULL} - the exhaustive search used for all diagrams
+ *     before, which is fast enough for small diagrams,</li>
+ * <li>{@link Effort#REDUCED} - fewer crossing minimization passes and
+ *     parallel edges merged by {@code concentrate},</li>
+ * <li>{@link Effort#MINIMAL} - a single pass, a bounded network simplex
+ *     and straight edges,</li>
+ * <li>{@link Effort#FORCE_DIRECTED} - {@code sfdp} or {@code neato}
+ *     instead of {@code dot}, if either is installed.</li>
+ * </ul>
+ * The draft profile starts with {@link Effort#MINIMAL} for a faster
+ * developer build.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class LayoutPolicy {
+
+    /**
+     * The full effort for all diagrams, without a force-directed layout
+     * engine.
+     */
+    public static final LayoutPolicy DEFAULT =
+        new LayoutPolicy(false, Collections.<String>emptySet());
+
+    private static final int REDUCED_NODES = 150;
+    private static final int REDUCED_EDGES = 300;
+    private static final int MINIMAL_NODES = 500;
+    private static final int MINIMAL_EDGES = 1500;
+    private static final int FORCE_DIRECTED_NODES = 2000;
+    private static final int FORCE_DIRECTED_EDGES = 6000;
+    private static final int DRAFT_FORCE_DIRECTED_NODES = 500;
+    private static final int DRAFT_FORCE_DIRECTED_EDGES = 1500;
+
+    /**
+     * How hard the layout engine tries to produce a tidy diagram.
+     */
+    public enum Effort {
+        FULL,
+        REDUCED,
+        MINIMAL,
+        FORCE_DIRECTED
+    }
+
+    private final boolean draft;
+    private final String forceDirectedEngine;
+
+    /**
+     * @param draft          {@code true} to choose the least effort for
+     *                       all diagrams
+     * @param layoutEngines  the layout engines Graphviz provides, as
+     *                       reported by {@link GraphvizCapabilities}
+     */
+    public LayoutPolicy(boolean draft, Set<String> layoutEngines) {
+        this.draft = draft;
+        if (layoutEngines.contains("sfdp")) {
+            forceDirectedEngine = "sfdp";
+        } else if (layoutEngines.contains("neato")) {
+            forceDirectedEngine = "neato";
+        } else {
+            forceDirectedEngine = null;
+        }
+    }
+
+    public boolean isDraft() {
+        return draft;
+    }
+
+    /**
+     * Returns the draft profile with the same layout engines, which is
+     * used to render a diagram again after it failed or timed out.
+     */
+    public LayoutPolicy toDraft() {
+        if (draft) {
+            return this;
+        }
+        return new LayoutPolicy(
+                true,
+                forceDirectedEngine == null?
+                        Collections.<String>emptySet() :
+                        Collections.singleton(forceDirectedEngine));
+    }
+
+    /**
+     * Returns the effort for a diagram of the specified size.
+     */
+    public Effort getEffort(int nodes, int edges) {
+        if (forceDirectedEngine != null) {
+            if (draft) {
+                if (nodes > DRAFT_FORCE_DIRECTED_NODES || edges > DRAFT_FORCE_DIRECTED_EDGES) {
+                    return Effort.FORCE_DIRECTED;
+                }
+            } else if (nodes > FORCE_DIRECTED_NODES || edges > FORCE_DIRECTED_EDGES) {
+                return Effort.FORCE_DIRECTED;
+            }
+        }
+        if (draft || nodes > MINIMAL_NODES || edges > MINIMAL_EDGES) {
+            return Effort.MINIMAL;
+        }
+        if (nodes > REDUCED_NODES || edges > REDUCED_EDGES) {
+            return Effort.REDUCED;
+        }
+        return Effort.FULL;
+    }
+
+    /**
+     * Writes the graph attributes of a diagram of the specified size.
+     *
+     * @param rankdir  {@code TB} or {@code LR}
+     * @param mclimit  the crossing minimization limit for
+     *                 {@link Effort#FULL}
+     */
+    public void writeGraphAttributes(
+            Appendable buf, String rankdir, int mclimit,
+            int nodes, int edges) throws IOException {
+
+        Effort effort = getEffort(nodes, edges);
+        if (effort == Effort.FORCE_DIRECTED) {
+            buf.append(
+                    "layout=" + forceDirectedEngine + ";" + NEWLINE +
+                    "overlap=" + ("sfdp".equals(forceDirectedEngine)? "prism" : "false") + ";" + NEWLINE +
+                    "splines=line;" + NEWLINE +
+                    "outputorder=edgesfirst;" + NEWLINE +
+                    "center=1;" + NEWLINE);
+            return;
+        }
+
+        buf.append(
+                "rankdir=" + rankdir + ";" + NEWLINE +
+                "ranksep=0.3;" + NEWLINE +
+                "nodesep=0.3;" + NEWLINE);
+        switch (effort) {
+        case FULL:
+            buf.append(
+                    "mclimit=" + mclimit + ";" + NEWLINE +
+                    "outputorder=edgesfirst;" + NEWLINE +
+                    "center=1;" + NEWLINE +
+                    "remincross=true;" + NEWLINE +
+                    "searchsize=65536;" + NEWLINE);
+            break;
+        case REDUCED:
+            buf.append(
+                    "mclimit=4;" + NEWLINE +
+                    "outputorder=edgesfirst;" + NEWLINE +
+                    "center=1;" + NEWLINE +
+                    "concentrate=true;" + NEWLINE +
+                    "searchsize=1000;" + NEWLINE);
+            break;
+        default:
+            buf.append(
+                    "mclimit=1;" + NEWLINE +
+                    "nslimit=2;" + NEWLINE +
+                    "nslimit1=2;" + NEWLINE +
+                    "outputorder=edgesfirst;" + NEWLINE +
+                    "center=1;" + NEWLINE +
+                    "splines=line;" + NEWLINE);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (draft? "draft" : "default") +
+               (forceDirectedEngine == null? "" : ", " + forceDirectedEngine);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * The HTML pages and the images in the output directory, listed once so
+ * that the page of a class or a package is found without touching the file
+ * system again.  The names are relative to the output directory and use
+ * {@link File#separatorChar}.  The names of the pages have no extension.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class PageIndex {
+
+    private static final String OVERVIEW_SUMMARY = "overview-summary";
+    private static final String PACKAGE_SUMMARY = "package-summary";
+
+    private final Set<String> pages = new HashSet<String>();
+    private final Set<String> images = new HashSet<String>();
+
+    public PageIndex(File outputDirectory) {
+        scan(outputDirectory, "");
+    }
+
+    private void scan(File directory, String prefix) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File f: files) {
+            String name = f.getName();
+            if (name.endsWith(".html")) {
+                pages.add(prefix + name.substring(0, name.length() - 5));
+            } else if (name.endsWith(".png") || name.endsWith(".svg")) {
+                images.add(prefix + name);
+            } else if (f.isDirectory()) {
+                scan(f, prefix + name + File.separatorChar);
+            }
+        }
+    }
+
+    public boolean hasPage(String name) {
+        return pages.contains(name);
+    }
+
+    /**
+     * Returns {@code true} if the image existed when the output directory
+     * was scanned.
+     *
+     * @param name the name of the image with its extension
+     */
+    public boolean hasImage(String name) {
+        return images.contains(name);
+    }
+
+    /**
+     * Returns the page of the overview summary, or {@code null} if there's
+     * no such page.
+     */
+    public String getOverviewPage() {
+        return hasPage(OVERVIEW_SUMMARY)? OVERVIEW_SUMMARY : null;
+    }
+
+    /**
+     * Returns the summary page of the specified package, or {@code null}
+     * if there's no such page.
+     */
+    public String getPage(ApiPackage pkg) {
+        String name = getPackagePath(pkg) + PACKAGE_SUMMARY;
+        return hasPage(name)? name : null;
+    }
+
+    /**
+     * Returns the page of the specified class, or {@code null} if there's
+     * no such page.  The page of a nested class is named after its
+     * enclosing classes, such as {@code Outer.Inner.html}.
+     */
+    public String getPage(ApiClass cls) {
+        String name = getPackagePath(cls.getContainingPackage()) + cls.getName();
+        if (hasPage(name)) {
+            return name;
+        }
+
+        // Fall back to joining the trailing parts of the qualified name
+        // with dots one by one.
+        name = cls.getQualifiedName().replace('.', File.separatorChar);
+        for (;;) {
+            if (hasPage(name)) {
+                return name;
+            }
+            int idx = name.lastIndexOf(File.separatorChar);
+            if (idx <= 0) {
+                return null;
+            }
+            name = name.substring(0, idx) + '.' + name.substring(idx + 1);
+        }
+    }
+
+    private static String getPackagePath(ApiPackage pkg) {
+        String name = pkg.getName();
+        if (name.length() == 0) {
+            return "";
+        }
+        return name.replace('.', File.separatorChar) + File.separatorChar;
+    }
+}
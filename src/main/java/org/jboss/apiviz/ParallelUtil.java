@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the chunks of a computation on a short-lived thread pool.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class ParallelUtil {
+
+    /**
+     * Returns the size of the chunks to split the specified number of
+     * elements into, so that each thread gets a few chunks to balance the
+     * load, but no chunk is smaller than {@code minChunkSize}.
+     */
+    public static int getChunkSize(int elements, int threads, int minChunkSize) {
+        return Math.max(minChunkSize, (elements + threads * 4 - 1) / (threads * 4));
+    }
+
+    /**
+     * Runs the specified tasks on up to the specified number of threads and
+     * returns their results in the order of the tasks.  The tasks run on the
+     * calling thread if {@code threads} is {@code 1}.  The first failure is
+     * rethrown as is if it is unchecked.
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads: " + threads);
+        }
+
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (threads == 1 || tasks.size() <= 1) {
+            for (Callable<T> t: tasks) {
+                try {
+                    results.add(t.call());
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new Error(e);
+                }
+            }
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(threads, tasks.size()));
+        try {
+            List<Future<T>> futures;
+            for (;;) {
+                try {
+                    futures = executor.invokeAll(tasks);
+                    break;
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+            }
+            for (Future<T> f: futures) {
+                results.add(getResult(f));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return results;
+    }
+
+    private static <T> T getResult(Future<T> future) {
+        for (;;) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                // Ignore
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new Error(cause);
+            }
+        }
+    }
+
+    private ParallelUtil() {
+        // Unused
+    }
+}
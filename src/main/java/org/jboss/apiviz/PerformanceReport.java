@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The time spent in each phase of a javadoc run and the statistics of each
+ * diagram, which are written as {@code apiviz-report.json} and
+ * {@code apiviz-report.csv} next to the documentation.
+ * <p>
+ * The phases run by the worker threads, such as the DOT generation and
+ * the Graphviz execution, are the sums of the time spent by all workers,
+ * so they can exceed the wall time of the run.  The DOT source is streamed
+ * into Graphviz, so the DOT generation time of a diagram is also part of
+ * its render time.  This class is thread-safe.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class PerformanceReport {
+
+    public static final String JSON_FILE = "apiviz-report.json";
+    public static final String CSV_FILE = "apiviz-report.csv";
+
+    public static final String PHASE_STANDARD_DOCLET = "standard doclet";
+    public static final String PHASE_MODEL_EXTRACTION = "API model extraction";
+    public static final String PHASE_GRAPH_CONSTRUCTION = "graph construction";
+    public static final String PHASE_GRAPH_SNAPSHOT = "graph snapshot";
+    public static final String PHASE_GRAPH_AGGREGATION = "graph aggregation";
+    public static final String PHASE_DIAGRAM_GENERATION = "diagram generation";
+    public static final String PHASE_DOT_GENERATION = "DOT generation";
+    public static final String PHASE_RENDERING = "rendering";
+    public static final String PHASE_HTML_INJECTION = "HTML injection";
+
+    private static final String[] CSV_HEADER = {
+        "name", "file", "status", "nodes", "edges", "dotBytes",
+        "dotMillis", "renderMillis", "injectMillis", "wallMillis", "outputBytes" };
+
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+    private final List<Diagram> diagrams = new ArrayList<Diagram>();
+
+    /**
+     * Adds the specified time to a phase.
+     *
+     * @param time the elapsed time in nanoseconds
+     */
+    public synchronized void addPhase(String name, long time) {
+        Long oldTime = phases.get(name);
+        phases.put(name, Long.valueOf(oldTime == null? time : oldTime.longValue() + time));
+    }
+
+    /**
+     * Returns the time spent in each phase in nanoseconds, in the order of
+     * their first appearance.
+     */
+    public synchronized Map<String, Long> getPhases() {
+        return new LinkedHashMap<String, Long>(phases);
+    }
+
+    public synchronized void addDiagram(Diagram diagram) {
+        diagrams.add(diagram);
+    }
+
+    public synchronized List<Diagram> getDiagrams() {
+        return new ArrayList<Diagram>(diagrams);
+    }
+
+    /**
+     * Returns the diagrams which took the longest wall time.
+     */
+    public List<Diagram> getSlowestDiagrams(int count) {
+        List<Diagram> result = getDiagrams();
+        Collections.sort(result, new Comparator<Diagram>() {
+            public int compare(Diagram a, Diagram b) {
+                return a.wallTime < b.wallTime? 1 : a.wallTime > b.wallTime? -1 : 0;
+            }
+        });
+        return result.subList(0, Math.min(count, result.size()));
+    }
+
+    /**
+     * Writes {@link #JSON_FILE} and {@link #CSV_FILE} into the specified
+     * directory.
+     */
+    public void write(File directory) throws IOException {
+        FileUtil.writeFile(new File(directory, JSON_FILE), toJson());
+        FileUtil.writeFile(new File(directory, CSV_FILE), toCsv());
+    }
+
+    public String toJson() {
+        StringBuilder buf = new StringBuilder(65536);
+        buf.append("{\n  \"phases\": [");
+        boolean first = true;
+        for (Map.Entry<String, Long> e: getPhases().entrySet()) {
+            buf.append(first? "\n" : ",\n");
+            first = false;
+            buf.append("    {\"name\": ");
+            appendJsonString(buf, e.getKey());
+            buf.append(", \"millis\": ");
+            buf.append(toMillis(e.getValue().longValue()));
+            buf.append('}');
+        }
+        buf.append("\n  ],\n  \"diagrams\": [");
+        first = true;
+        for (Diagram d: getDiagrams()) {
+            buf.append(first? "\n" : ",\n");
+            first = false;
+            buf.append("    {");
+            Object[] values = d.getValues();
+            for (int i = 0; i < values.length; i ++) {
+                if (i > 0) {
+                    buf.append(", ");
+                }
+                appendJsonString(buf, CSV_HEADER[i]);
+                buf.append(": ");
+                if (values[i] instanceof String) {
+                    appendJsonString(buf, (String) values[i]);
+                } else {
+                    buf.append(values[i]);
+                }
+            }
+            buf.append('}');
+        }
+        buf.append("\n  ]\n}\n");
+        return buf.toString();
+    }
+
+    public String toCsv() {
+        StringBuilder buf = new StringBuilder(65536);
+        appendCsvLine(buf, CSV_HEADER);
+        for (Diagram d: getDiagrams()) {
+            appendCsvLine(buf, d.getValues());
+        }
+        return buf.toString();
+    }
+
+    private static void appendCsvLine(StringBuilder buf, Object[] values) {
+        for (int i = 0; i < values.length; i ++) {
+            if (i > 0) {
+                buf.append(',');
+            }
+            String value = String.valueOf(values[i]);
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 ||
+                value.indexOf('\n') >= 0) {
+                buf.append('"');
+                buf.append(value.replace("\"", "\"\""));
+                buf.append('"');
+            } else {
+                buf.append(value);
+            }
+        }
+        buf.append("\r\n");
+    }
+
+    private static void appendJsonString(StringBuilder buf, String value) {
+        buf.append('"');
+        for (int i = 0; i < value.length(); i ++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                buf.append("\\\"");
+                break;
+            case '\\':
+                buf.append("\\\\");
+                break;
+            case '\n':
+                buf.append("\\n");
+                break;
+            case '\r':
+                buf.append("\\r");
+                break;
+            case '\t':
+                buf.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    buf.append(String.format("\\u%04x", Integer.valueOf(c)));
+                } else {
+                    buf.append(c);
+                }
+            }
+        }
+        buf.append('"');
+    }
+
+    static String toMillis(long nanos) {
+        return String.format(Locale.ENGLISH, "%.1f", Double.valueOf(nanos / 1000000.0));
+    }
+
+    /**
+     * The statistics of a diagram.  The times are in nanoseconds, and the
+     * numbers which are not known, such as the nodes of a reused diagram,
+     * are {@code -1}.
+     */
+    public static class Diagram {
+        private final String name;
+        private final String file;
+        private String status = "generated";
+        private int nodes = -1;
+        private int edges = -1;
+        private long dotBytes = -1;
+        private long dotTime;
+        private long renderTime;
+        private long injectTime;
+        private long wallTime;
+        private long outputBytes = -1;
+
+        public Diagram(String name, String file) {
+            this.name = name;
+            this.file = file;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        /**
+         * Returns {@code generated}, {@code cached}, {@code reused},
+         * {@code degraded} or {@code failed}.
+         */
+        public String getStatus() {
+            return status;
+        }
+
+        public void setStatus(String status) {
+            this.status = status;
+        }
+
+        public int getNodeCount() {
+            return nodes;
+        }
+
+        public int getEdgeCount() {
+            return edges;
+        }
+
+        public long getDotBytes() {
+            return dotBytes;
+        }
+
+        /**
+         * Adds the statistics of a generated DOT source.  A diagram which is
+         * rendered again after a failure is generated twice.
+         */
+        public void addDot(DotStatistics stats, long time) {
+            nodes = stats.getNodeCount();
+            edges = stats.getEdgeCount();
+            dotBytes = stats.getBytes();
+            dotTime += time;
+        }
+
+        public long getDotTime() {
+            return dotTime;
+        }
+
+        public long getRenderTime() {
+            return renderTime;
+        }
+
+        public void addRenderTime(long renderTime) {
+            this.renderTime += renderTime;
+        }
+
+        public long getInjectTime() {
+            return injectTime;
+        }
+
+        public void addInjectTime(long injectTime) {
+            this.injectTime += injectTime;
+        }
+
+        public long getWallTime() {
+            return wallTime;
+        }
+
+        public void setWallTime(long wallTime) {
+            this.wallTime = wallTime;
+        }
+
+        public long getOutputBytes() {
+            return outputBytes;
+        }
+
+        public void setOutputBytes(long outputBytes) {
+            this.outputBytes = outputBytes;
+        }
+
+        Object[] getValues() {
+            return new Object[] {
+                    name, file, status,
+                    Integer.valueOf(nodes), Integer.valueOf(edges), Long.valueOf(dotBytes),
+                    new BigDecimal(toMillis(dotTime)), new BigDecimal(toMillis(renderTime)),
+                    new BigDecimal(toMillis(injectTime)), new BigDecimal(toMillis(wallTime)),
+                    Long.valueOf(outputBytes) };
+        }
+    }
+}
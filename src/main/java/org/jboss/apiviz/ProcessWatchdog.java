@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Destroys a Graphviz process which does not finish within a time limit.
+ * Destroying the process closes its pipes, so the threads blocked on them
+ * fail with an {@link java.io.IOException}, and the caller replaces that
+ * failure with {@link #newTimeoutException()} if {@link #stop()} reports
+ * the expiry.  All watchdogs share a single daemon timer thread.
+ * <p>
+ * {@code dot} may be a wrapper script on some systems, so the descendants
+ * of the process are destroyed first where the JVM can enumerate them
+ * (Java 9 or later).  Otherwise an orphaned child might keep the pipes
+ * open, which is why the readers of the output should give up waiting
+ * {@linkplain #join(Thread) shortly after} the expiry.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class ProcessWatchdog {
+
+    private static final Timer TIMER = new Timer("APIviz-watchdog", true);
+    private static final long JOIN_GRACE_PERIOD = 5000;
+    /**
+     * A cancelled task stays in the queue of the timer until it is due, so
+     * the queue is purged every {@link #PURGE_INTERVAL} cancellations.
+     */
+    private static final int PURGE_INTERVAL = 1024;
+    private static final AtomicInteger CANCELLATIONS = new AtomicInteger();
+
+    private final long timeout;
+    private final Task task;
+
+    /**
+     * Starts watching the specified process.
+     *
+     * @param timeout the time limit in milliseconds, or {@code 0} to never
+     *                destroy the process
+     */
+    public ProcessWatchdog(Process process, long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout: " + timeout);
+        }
+
+        this.timeout = timeout;
+        if (timeout == 0) {
+            task = null;
+            return;
+        }
+
+        task = new Task(process);
+        TIMER.schedule(task, timeout);
+    }
+
+    /**
+     * Stops watching the process.
+     *
+     * @return {@code true} if the process has been destroyed because it
+     *         exceeded the time limit
+     */
+    public boolean stop() {
+        if (task == null) {
+            return false;
+        }
+        task.process = null;
+        task.cancel();
+        if (CANCELLATIONS.incrementAndGet() % PURGE_INTERVAL == 0) {
+            TIMER.purge();
+        }
+        return task.expired;
+    }
+
+    public boolean isExpired() {
+        return task != null && task.expired;
+    }
+
+    /**
+     * Waits for a thread which reads the output of the process, but no
+     * longer than a few seconds after the expiry.
+     */
+    public void join(Thread t) {
+        long deadline = 0;
+        for (;;) {
+            try {
+                t.join(1000);
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+            if (!t.isAlive()) {
+                return;
+            }
+            if (isExpired()) {
+                long now = System.currentTimeMillis();
+                if (deadline == 0) {
+                    deadline = now + JOIN_GRACE_PERIOD;
+                } else if (now >= deadline) {
+                    return;
+                }
+            }
+        }
+    }
+
+    public InterruptedIOException newTimeoutException() {
+        return new InterruptedIOException(
+                "Graphviz did not finish within " + timeout + " ms.");
+    }
+
+    /**
+     * Destroys the descendants of the specified process with the
+     * {@code ProcessHandle} API, which can't be linked directly because
+     * APIviz runs on older JVMs too.
+     */
+    private static void destroyDescendants(Process process) {
+        try {
+            Class<?> streamClass = Class.forName("java.util.stream.Stream");
+            Class<?> handleClass = Class.forName("java.lang.ProcessHandle");
+            Object descendants = Process.class.getMethod("descendants").invoke(process);
+            Object[] handles = (Object[]) streamClass.getMethod("toArray").invoke(descendants);
+            Method destroy = handleClass.getMethod("destroyForcibly");
+            for (Object h: handles) {
+                destroy.invoke(h);
+            }
+        } catch (Exception e) {
+            // Not supported by this JVM.
+        }
+    }
+
+    /**
+     * Destroys the process when due.  The process is released when the
+     * watchdog is stopped, as the cancelled task stays in the queue of the
+     * timer for a while.
+     */
+    private static final class Task extends TimerTask {
+        volatile Process process;
+        volatile boolean expired;
+
+        Task(Process process) {
+            this.process = process;
+        }
+
+        @Override
+        public void run() {
+            Process process = this.process;
+            if (process == null) {
+                return;
+            }
+            expired = true;
+            destroyDescendants(process);
+            process.destroy();
+        }
+    }
+}
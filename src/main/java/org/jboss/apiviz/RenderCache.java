@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link DiagramRenderer} which keeps the rendered image and image map in
+ * a directory, keyed by the SHA-1 hash of the DOT source and the Graphviz
+ * version.  A diagram whose DOT source did not change since the last run is
+ * copied from the cache instead of being rendered again.
+ * <p>
+ * The cache directory can be shared by several builds.  Entries are written
+ * to a temporary file first and then renamed, so a concurrent reader never
+ * sees a partially written entry.  An entry is touched whenever it is used,
+ * and the least recently used entries are evicted on {@link #close()} until
+ * the cache fits in its maximum size.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class RenderCache implements DiagramRenderer {
+
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+    /**
+     * A temporary file lives only while an entry is copied into the cache,
+     * so the one older than this was abandoned by a killed build.
+     */
+    private static final long STALE_TEMPORARY_FILE_AGE = 3600000;
+
+    private final DiagramRenderer renderer;
+    private final File directory;
+    private final long maxSize;
+    private final String graphvizVersion;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public RenderCache(DiagramRenderer renderer, File directory, long maxSize, String graphvizVersion) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize: " + maxSize);
+        }
+
+        this.renderer = renderer;
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.graphvizVersion = graphvizVersion == null? "" : graphvizVersion;
+    }
+
+    public RenderResult writeImageAndMap(String diagram, File outputDirectory, String filename) throws IOException {
+        String key = DigestUtil.sha1(graphvizVersion, diagram);
+        RenderResult result = fetch(key, outputDirectory, filename, "png");
+        if (result == null) {
+            result = renderer.writeImageAndMap(diagram, outputDirectory, filename);
+            store(key, result, "png");
+        }
+        return result;
+    }
+
+    /**
+     * Streams the diagram through the digest first, and then into the
+     * underlying renderer if the diagram is not cached.
+     */
+    public RenderResult writeImageAndMap(DiagramSource source, File outputDirectory, String filename) throws IOException {
+        String key = DigestUtil.sha1(graphvizVersion, source);
+        RenderResult result = fetch(key, outputDirectory, filename, "png");
+        if (result == null) {
+            result = renderer.writeImageAndMap(source, outputDirectory, filename);
+            store(key, result, "png");
+        }
+        return result;
+    }
+
+    /**
+     * Caches the SVG images separately for each link target.
+     */
+    public RenderResult writeSvg(DiagramSource source, File outputDirectory, String filename, String linkTarget) throws IOException {
+        String key = DigestUtil.sha1(graphvizVersion + " -Tsvg " + linkTarget, source);
+        RenderResult result = fetch(key, outputDirectory, filename, "svg");
+        if (result == null) {
+            result = renderer.writeSvg(source, outputDirectory, filename, linkTarget);
+            store(key, result, "svg");
+        }
+        return result;
+    }
+
+    private RenderResult fetch(String key, File outputDirectory, String filename, String extension) {
+        long startTime = System.nanoTime();
+        File bucket = new File(directory, key.substring(0, 2));
+        File cachedImageFile = new File(bucket, key + '.' + extension);
+        File cachedMapFile = new File(bucket, key + ".map");
+
+        if (cachedImageFile.exists() && cachedMapFile.exists()) {
+            try {
+                byte[] map = FileUtil.readBytes(cachedMapFile);
+                File imageFile = new File(outputDirectory, filename + '.' + extension);
+                FileUtil.copyFile(cachedImageFile, imageFile);
+                long now = System.currentTimeMillis();
+                cachedImageFile.setLastModified(now);
+                cachedMapFile.setLastModified(now);
+                hits.incrementAndGet();
+                return new RenderResult(
+                        map, imageFile, System.nanoTime() - startTime, true);
+            } catch (IOException e) {
+                // Evicted by another build in the meantime - render again.
+            }
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private void store(String key, RenderResult result, String extension) {
+        File bucket = new File(directory, key.substring(0, 2));
+        bucket.mkdirs();
+        // The map goes first so that the presence of the image marks a
+        // complete entry.  An SVG image has an empty map.
+        File mapTmp = null;
+        try {
+            mapTmp = newTemporaryFile(bucket, key + ".map");
+            FileUtil.writeBytes(mapTmp, result.getMap());
+            commit(mapTmp, new File(bucket, key + ".map"));
+        } catch (IOException e) {
+            // The cache is best-effort.
+            if (mapTmp != null) {
+                mapTmp.delete();
+            }
+            return;
+        }
+        File imageTmp = null;
+        try {
+            imageTmp = newTemporaryFile(bucket, key + '.' + extension);
+            FileUtil.copyFile(result.getImageFile(), imageTmp);
+            commit(imageTmp, new File(bucket, key + '.' + extension));
+        } catch (IOException e) {
+            if (imageTmp != null) {
+                imageTmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries and closes the underlying
+     * renderer.
+     */
+    public void close() {
+        try {
+            trim();
+        } finally {
+            renderer.close();
+        }
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Creates a temporary file whose name is unique across the builds
+     * sharing the cache, unlike a thread ID.
+     */
+    private static File newTemporaryFile(File bucket, String name) throws IOException {
+        return File.createTempFile(name + '.', TEMPORARY_FILE_SUFFIX, bucket);
+    }
+
+    private static void commit(File tmp, File dst) {
+        if (!tmp.renameTo(dst)) {
+            // Stored by another build in the meantime.
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache fits in its
+     * maximum size.  A long-running user such as {@link DiagramServer}
+     * calls this from time to time, as {@link #close()} may never be called.
+     * <p>
+     * An image and its map are evicted together.  The temporary files are
+     * left to the builds writing them, unless they were abandoned long ago.
+     */
+    public void trim() {
+        File[] buckets = directory.listFiles();
+        if (buckets == null) {
+            return;
+        }
+
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        long size = 0;
+        long staleTime = System.currentTimeMillis() - STALE_TEMPORARY_FILE_AGE;
+        for (File bucket: buckets) {
+            File[] files = bucket.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File f: files) {
+                String name = f.getName();
+                if (name.endsWith(TEMPORARY_FILE_SUFFIX)) {
+                    if (f.lastModified() < staleTime) {
+                        f.delete();
+                    }
+                    continue;
+                }
+
+                // Named <key>.map and <key>.<extension>.
+                int idx = name.indexOf('.');
+                String key = idx < 0? name : name.substring(0, idx);
+                Entry e = entries.get(key);
+                if (e == null) {
+                    e = new Entry();
+                    entries.put(key, e);
+                }
+                long length = f.length();
+                e.files.add(f);
+                e.size += length;
+                e.lastModified = Math.max(e.lastModified, f.lastModified());
+                size += length;
+            }
+        }
+
+        if (size <= maxSize) {
+            return;
+        }
+
+        Entry[] sortedEntries = entries.values().toArray(new Entry[entries.size()]);
+        Arrays.sort(sortedEntries, new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                long v = a.lastModified - b.lastModified;
+                return v < 0? -1 : v > 0? 1 : 0;
+            }
+        });
+
+        for (Entry e: sortedEntries) {
+            if (size <= maxSize) {
+                break;
+            }
+            // The image goes first, as its presence marks a complete entry.
+            for (File f: e.files) {
+                if (!f.getName().endsWith(".map")) {
+                    f.delete();
+                }
+            }
+            for (File f: e.files) {
+                if (f.getName().endsWith(".map")) {
+                    f.delete();
+                }
+            }
+            size -= e.size;
+        }
+    }
+
+    /**
+     * The files of a cache entry, i.e. an image and its map.
+     */
+    private static final class Entry {
+        final List<File> files = new ArrayList<File>(2);
+        long size;
+        long lastModified;
+    }
+}
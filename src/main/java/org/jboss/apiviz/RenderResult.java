@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * The outcome of rendering a diagram: the image written to its final
+ * location and the client-side image map kept in memory.  SVG images have
+ * no image map.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class RenderResult {
+
+    private final byte[] map;
+    private final File imageFile;
+    private final long renderTime;
+    private final boolean cached;
+
+    /**
+     * @param renderTime the time spent on rendering, in nanoseconds
+     * @param cached     {@code true} if the diagram was not rendered but
+     *                   copied from a cache
+     */
+    public RenderResult(byte[] map, File imageFile, long renderTime, boolean cached) {
+        if (map == null) {
+            throw new NullPointerException("map");
+        }
+        if (imageFile == null) {
+            throw new NullPointerException("imageFile");
+        }
+        this.map = map;
+        this.imageFile = imageFile;
+        this.renderTime = renderTime;
+        this.cached = cached;
+    }
+
+    /**
+     * Returns the client-side image map as generated by Graphviz, or an
+     * empty array for an SVG image.
+     */
+    public byte[] getMap() {
+        return map;
+    }
+
+    /**
+     * Returns the client-side image map decoded as ISO-8859-1, the same
+     * way {@link FileUtil#readFile} decodes the HTML pages.
+     */
+    public String getMapAsString() {
+        try {
+            return new String(map, "ISO-8859-1");
+        } catch (UnsupportedEncodingException e) {
+            throw new Error(e);
+        }
+    }
+
+    public File getImageFile() {
+        return imageFile;
+    }
+
+    /**
+     * Returns the time spent on rendering or copying the diagram, in
+     * nanoseconds.
+     */
+    public long getRenderTime() {
+        return renderTime;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+}
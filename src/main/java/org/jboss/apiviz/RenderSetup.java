@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import static org.jboss.apiviz.Constant.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.sun.javadoc.DocErrorReporter;
+
+/**
+ * The renderer, the worker pool and the other settings of a run, configured
+ * from the {@code -apiviz.*} options, so that the doclet and the other
+ * tools render the diagrams the same way.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class RenderSetup {
+
+    private static final long DEFAULT_CACHE_SIZE = 256;
+    private static final String GRAPHVIZ_CAPABILITIES_FILE = "graphviz.properties";
+    private static final long DEFAULT_TIMEOUT = 600;
+    private static final int SLOWEST_DIAGRAMS = 10;
+
+    private final String[][] options;
+    private final DocErrorReporter reporter;
+    private final File outputDirectory;
+    private final DiagramFormat format;
+    private final int threads;
+    private final LayoutPolicy policy;
+    private final DiagramWorkerPool pool;
+    private final DiagramRenderer renderer;
+    private final String rendererVersion;
+    private final RenderCache cache;
+
+    /**
+     * Finds Graphviz and configures the renderer.  The options must have
+     * been validated by {@link APIviz#validOptions(String[][], DocErrorReporter)}.
+     * {@link #close()} must be called when the diagrams are generated.
+     */
+    public RenderSetup(String[][] options, DocErrorReporter reporter) {
+        this.options = options;
+        this.reporter = reporter;
+        outputDirectory = getOutputDirectory(options);
+
+        // The time limit applies to probing Graphviz as well.
+        String timeout = getOption(options, OPTION_TIMEOUT);
+        Graphviz.setTimeout(
+                (timeout != null? Long.parseLong(timeout) : DEFAULT_TIMEOUT) * 1000);
+        String cacheDirectory = getOption(options, OPTION_CACHE_DIR);
+        GraphvizCapabilities capabilities = Graphviz.getCapabilities(
+                getCapabilitiesFile(cacheDirectory));
+        format = getFormat(options);
+        threads = getThreadCount(options);
+        pool = new DiagramWorkerPool(threads);
+        DiagramRenderer renderer;
+        String rendererVersion;
+        Set<String> layoutEngines = Collections.emptySet();
+        if (capabilities == null) {
+            reporter.printWarning("Graphviz is not found in the system path.");
+            reporter.printWarning("Laying out the diagrams without Graphviz.");
+            renderer = new LayeredRenderer(null, Integer.MAX_VALUE);
+            rendererVersion = LayeredRenderer.VERSION;
+        } else if (!isSupported(capabilities, format)) {
+            reporter.printWarning(
+                    "Graphviz does not support the " +
+                    (format == DiagramFormat.PNG? "PNG and CMAPX formats." : "SVG format."));
+            reporter.printWarning("Laying out the diagrams without Graphviz.");
+            renderer = new LayeredRenderer(null, Integer.MAX_VALUE);
+            rendererVersion = LayeredRenderer.VERSION;
+        } else {
+            reporter.printNotice("Graphviz: " + capabilities.getVersion());
+            renderer = DiagramRenderer.GRAPHVIZ;
+            rendererVersion = capabilities.getVersion();
+            layoutEngines = capabilities.getLayoutEngines();
+            if (hasOption(options, OPTION_BATCH)) {
+                renderer = new GraphvizBatch(threads);
+            }
+
+            String layoutThreshold = getOption(options, OPTION_LAYOUT_THRESHOLD);
+            if (layoutThreshold != null) {
+                // Which renderer draws a diagram depends on the threshold.
+                renderer = new LayeredRenderer(renderer, Integer.parseInt(layoutThreshold));
+                rendererVersion += "; " + LayeredRenderer.VERSION +
+                                   " up to " + layoutThreshold + " nodes";
+            }
+        }
+
+        policy = new LayoutPolicy(hasOption(options, OPTION_DRAFT), layoutEngines);
+        if (policy.isDraft()) {
+            // The draft diagrams must not be mistaken for the final ones.
+            rendererVersion += " draft";
+        }
+
+        if (cacheDirectory != null) {
+            String cacheSize = getOption(options, OPTION_CACHE_SIZE);
+            cache = new RenderCache(
+                    renderer, new File(cacheDirectory),
+                    (cacheSize != null? Long.parseLong(cacheSize) : DEFAULT_CACHE_SIZE) * 1048576,
+                    rendererVersion);
+            renderer = cache;
+        } else {
+            cache = null;
+        }
+
+        this.renderer = renderer;
+        this.rendererVersion = rendererVersion;
+    }
+
+    public String[][] getOptions() {
+        return options;
+    }
+
+    public DocErrorReporter getReporter() {
+        return reporter;
+    }
+
+    public File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public DiagramFormat getFormat() {
+        return format;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public LayoutPolicy getLayoutPolicy() {
+        return policy;
+    }
+
+    public DiagramWorkerPool getPool() {
+        return pool;
+    }
+
+    public DiagramRenderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * Returns the version of the renderer, which changes whenever the
+     * rendered images may change.
+     */
+    public String getRendererVersion() {
+        return rendererVersion;
+    }
+
+    /**
+     * Returns the cache the renderer keeps the images in, or {@code null}
+     * if {@code -apiviz.cachedir} is not specified.
+     */
+    public RenderCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Loads the manifest specified by {@code -apiviz.manifest}.
+     *
+     * @return the manifest, or {@code null} if not specified
+     */
+    public DiagramManifest openManifest() throws IOException {
+        String manifestFile = getOption(options, OPTION_MANIFEST);
+        if (manifestFile == null) {
+            return null;
+        }
+
+        // The diagrams of a different format can't be reused.
+        DiagramManifest manifest = new DiagramManifest(
+                new File(manifestFile),
+                format == DiagramFormat.PNG?
+                        rendererVersion : rendererVersion + ' ' + format);
+        reporter.printNotice(
+                "Loaded the manifest of " +
+                manifest.getPreviousDiagramCount() + " diagram(s)");
+        return manifest;
+    }
+
+    /**
+     * Saves the graph into the file specified by {@code -apiviz.snapshot},
+     * if any.
+     */
+    public void writeSnapshot(ClassDocGraph graph, PerformanceReport report) throws IOException {
+        String snapshotFile = getOption(options, OPTION_SNAPSHOT);
+        if (snapshotFile == null) {
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        reporter.printNotice("Saving the class graph to " + snapshotFile + "...");
+        GraphSnapshot.write(graph, new File(snapshotFile));
+        report.addPhase(
+                PerformanceReport.PHASE_GRAPH_SNAPSHOT,
+                System.nanoTime() - startTime);
+    }
+
+    public DiagramGenerator newGenerator(
+            ClassDocGraph graph, DiagramManifest manifest, PerformanceReport report) {
+        return new DiagramGenerator(
+                reporter, graph, outputDirectory, pool, renderer, manifest,
+                format, report);
+    }
+
+    /**
+     * Reports the diagrams which could not be generated as usual, the
+     * statistics of the cache and the time spent, and writes the report
+     * into the output directory.
+     */
+    public void printSummary(DiagramGenerator generator) throws IOException {
+        List<String> unplacedDiagrams = generator.getUnplacedDiagrams();
+        if (!unplacedDiagrams.isEmpty()) {
+            reporter.printWarning(
+                    "Skipped " + unplacedDiagrams.size() +
+                    " diagram(s) without a page:");
+            for (String name: unplacedDiagrams) {
+                reporter.printWarning("  " + name);
+            }
+        }
+        List<String> degradedDiagrams = generator.getDegradedDiagrams();
+        if (!degradedDiagrams.isEmpty()) {
+            reporter.printWarning(
+                    "Rendered " + degradedDiagrams.size() +
+                    " diagram(s) with the draft layout after a failure:");
+            for (String name: degradedDiagrams) {
+                reporter.printWarning("  " + name);
+            }
+        }
+        List<String> failedDiagrams = generator.getFailedDiagrams();
+        if (!failedDiagrams.isEmpty()) {
+            reporter.printWarning(
+                    "Failed to generate " + failedDiagrams.size() +
+                    " diagram(s):");
+            for (String name: failedDiagrams) {
+                reporter.printWarning("  " + name);
+            }
+        }
+        printCacheStatistics();
+        printReport(generator.getReport());
+        generator.getReport().write(outputDirectory);
+    }
+
+    public void printCacheStatistics() {
+        if (cache != null) {
+            reporter.printNotice(
+                    "Diagram cache: " + cache.getHits() + " hit(s), " +
+                    cache.getMisses() + " miss(es)");
+        }
+    }
+
+    private void printReport(PerformanceReport report) {
+        StringBuilder buf = new StringBuilder("Time spent:");
+        for (Map.Entry<String, Long> e: report.getPhases().entrySet()) {
+            buf.append(' ');
+            buf.append(e.getKey());
+            buf.append(' ');
+            buf.append(PerformanceReport.toMillis(e.getValue().longValue()));
+            buf.append(" ms,");
+        }
+        buf.setLength(buf.length() - 1);
+        reporter.printNotice(buf.toString());
+
+        List<PerformanceReport.Diagram> slowest =
+            report.getSlowestDiagrams(SLOWEST_DIAGRAMS);
+        if (slowest.isEmpty()) {
+            return;
+        }
+        reporter.printNotice("Slowest diagrams:");
+        for (PerformanceReport.Diagram d: slowest) {
+            reporter.printNotice(
+                    "  " + PerformanceReport.toMillis(d.getWallTime()) + " ms " +
+                    d.getName() + " (" + d.getStatus() + ", " +
+                    d.getNodeCount() + " nodes, " + d.getEdgeCount() + " edges, " +
+                    d.getDotBytes() + " DOT bytes)");
+        }
+    }
+
+    /**
+     * Shuts the worker pool and the renderer down.
+     */
+    public void close() {
+        pool.shutdown();
+        renderer.close();
+    }
+
+    /**
+     * Parses the command line arguments of a tool which runs without
+     * javadoc into the options, i.e. {@code -d} and the {@code -apiviz.*}
+     * options, and the files.
+     *
+     * @return the options, or {@code null} if an argument is invalid
+     */
+    static String[][] parseArguments(String[] args, List<File> files, DocErrorReporter reporter) {
+        List<String[]> options = new ArrayList<String[]>();
+        for (int i = 0; i < args.length;) {
+            int length = args[i].equals("-d")? 2 : APIviz.getOptionLength(args[i]);
+            if (length == 0) {
+                if (args[i].startsWith("-")) {
+                    reporter.printError("Unknown option: " + args[i]);
+                    return null;
+                }
+                files.add(new File(args[i ++]));
+                continue;
+            }
+            if (i + length > args.length) {
+                reporter.printError(args[i] + " requires an argument.");
+                return null;
+            }
+            String[] option = new String[length];
+            System.arraycopy(args, i, option, 0, length);
+            options.add(option);
+            i += length;
+        }
+        return options.toArray(new String[options.size()][]);
+    }
+
+    static String getOption(String[][] options, String name) {
+        for (String[] o: options) {
+            if (o[0].equals(name)) {
+                return o[1];
+            }
+        }
+        return null;
+    }
+
+    static boolean hasOption(String[][] options, String name) {
+        for (String[] o: options) {
+            if (o[0].equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static File getOutputDirectory(String[][] options) {
+        for (String[] o: options) {
+            if (o[0].equals("-d")) {
+                return new File(o[1]);
+            }
+        }
+
+        // Fall back to the current working directory.
+        return new File(System.getProperty("user.dir", "."));
+    }
+
+    /**
+     * Returns the file to keep the capabilities of Graphviz in, which is in
+     * the cache directory if specified, or in the user's home directory.
+     */
+    private static File getCapabilitiesFile(String cacheDirectory) {
+        if (cacheDirectory != null) {
+            return new File(cacheDirectory, GRAPHVIZ_CAPABILITIES_FILE);
+        }
+        String home = System.getProperty("user.home");
+        if (home == null) {
+            return null;
+        }
+        return new File(new File(home, ".apiviz"), GRAPHVIZ_CAPABILITIES_FILE);
+    }
+
+    private static DiagramFormat getFormat(String[][] options) {
+        String format = getOption(options, OPTION_FORMAT);
+        if (format == null) {
+            return DiagramFormat.PNG;
+        }
+        return DiagramFormat.parse(format);
+    }
+
+    private static boolean isSupported(GraphvizCapabilities capabilities, DiagramFormat format) {
+        if (format == DiagramFormat.PNG) {
+            return capabilities.hasOutputFormat("png") && capabilities.hasOutputFormat("cmapx");
+        }
+        return capabilities.hasOutputFormat("svg");
+    }
+
+    private static int getThreadCount(String[][] options) {
+        for (String[] o: options) {
+            if (o[0].equals(OPTION_THREADS)) {
+                return Integer.parseInt(o[1]);
+            }
+        }
+
+        // Fall back to one Graphviz process per processor.
+        return Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes the edges of a dependency graph which are implied by a longer
+ * path, so that a diagram shows the same reachability with fewer edges.
+ * <p>
+ * The graph is first condensed into its strongly connected components,
+ * i.e. the package cycles.  Between two components, an edge is removed if
+ * the target component is reachable through another component, which is
+ * decided with a reachability bitset per component in topological order.
+ * Of several edges between the same two components, only the last one in
+ * iteration order is kept.  Within a component, the edges are visited in
+ * iteration order and removed while they can be replaced by a longer path
+ * of the component.  This is the same result as removing redundant edges
+ * one by one in iteration order, which is unique for an acyclic graph.
+ * <p>
+ * The graph must not have more than one edge between the same pair of
+ * nodes.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class TransitiveReduction {
+
+    /**
+     * Removes the redundant edges from the specified set.
+     */
+    public static void reduce(Set<Edge> edges) {
+        Edge[] edgeArray = edges.toArray(new Edge[edges.size()]);
+        int edgeCount = edgeArray.length;
+        if (edgeCount == 0) {
+            return;
+        }
+
+        // Assign a dense ID to each node.
+        Map<ApiElement, Integer> ids = new HashMap<ApiElement, Integer>();
+        int[] sources = new int[edgeCount];
+        int[] targets = new int[edgeCount];
+        for (int i = 0; i < edgeCount; i ++) {
+            sources[i] = getId(ids, edgeArray[i].getSource());
+            targets[i] = getId(ids, edgeArray[i].getTarget());
+        }
+        int nodeCount = ids.size();
+
+        // Group the outgoing edges by their source nodes, in iteration order.
+        int[] outStart = new int[nodeCount + 1];
+        int[] outEdges = new int[edgeCount];
+        group(sources, nodeCount, outStart, outEdges);
+
+        int[] components = findComponents(nodeCount, outStart, outEdges, targets);
+
+        boolean[] keep = new boolean[edgeCount];
+        reduceComponents(components, outStart, outEdges, targets, keep);
+        reduceCycles(components, sources, targets, outStart, outEdges, keep);
+
+        Iterator<Edge> it = edges.iterator();
+        for (int i = 0; it.hasNext(); i ++) {
+            it.next();
+            if (!keep[i]) {
+                it.remove();
+            }
+        }
+    }
+
+    private static int getId(Map<ApiElement, Integer> ids, ApiElement node) {
+        Integer id = ids.get(node);
+        if (id == null) {
+            id = Integer.valueOf(ids.size());
+            ids.put(node, id);
+        }
+        return id.intValue();
+    }
+
+    /**
+     * Sorts the indexes of {@code keys} by their values, keeping the
+     * original order of the same keys.
+     */
+    private static void group(int[] keys, int keyCount, int[] start, int[] order) {
+        for (int k: keys) {
+            start[k + 1] ++;
+        }
+        for (int i = 0; i < keyCount; i ++) {
+            start[i + 1] += start[i];
+        }
+        int[] next = new int[keyCount];
+        System.arraycopy(start, 0, next, 0, keyCount);
+        for (int i = 0; i < keys.length; i ++) {
+            order[next[keys[i]] ++] = i;
+        }
+    }
+
+    /**
+     * Finds the strongly connected components with Tarjan's algorithm.  The
+     * components are numbered in reverse topological order, i.e. an edge
+     * never goes from a component to a component with a greater number.
+     */
+    private static int[] findComponents(
+            int nodeCount, int[] outStart, int[] outEdges, int[] targets) {
+
+        int[] components = new int[nodeCount];
+        int[] index = new int[nodeCount];
+        int[] lowLink = new int[nodeCount];
+        boolean[] onStack = new boolean[nodeCount];
+        int[] stack = new int[nodeCount];
+        int[] callStack = new int[nodeCount];
+        int[] nextEdge = new int[nodeCount];
+        Arrays.fill(index, -1);
+
+        int nextIndex = 0;
+        int nextComponent = 0;
+        int stackSize = 0;
+        for (int root = 0; root < nodeCount; root ++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+
+            int depth = 0;
+            callStack[0] = root;
+            index[root] = lowLink[root] = nextIndex ++;
+            nextEdge[root] = outStart[root];
+            stack[stackSize ++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int v = callStack[depth];
+                if (nextEdge[v] < outStart[v + 1]) {
+                    int w = targets[outEdges[nextEdge[v] ++]];
+                    if (index[w] < 0) {
+                        index[w] = lowLink[w] = nextIndex ++;
+                        nextEdge[w] = outStart[w];
+                        stack[stackSize ++] = w;
+                        onStack[w] = true;
+                        callStack[++ depth] = w;
+                    } else if (onStack[w] && index[w] < lowLink[v]) {
+                        lowLink[v] = index[w];
+                    }
+                    continue;
+                }
+
+                if (lowLink[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[-- stackSize];
+                        onStack[w] = false;
+                        components[w] = nextComponent;
+                    } while (w != v);
+                    nextComponent ++;
+                }
+
+                depth --;
+                if (depth >= 0) {
+                    int u = callStack[depth];
+                    if (lowLink[v] < lowLink[u]) {
+                        lowLink[u] = lowLink[v];
+                    }
+                }
+            }
+        }
+
+        return components;
+    }
+
+    /**
+     * Keeps the edges of the transitive reduction of the condensed graph.
+     */
+    private static void reduceComponents(
+            int[] components, int[] outStart, int[] outEdges, int[] targets,
+            boolean[] keep) {
+
+        int componentCount = 0;
+        for (int c: components) {
+            componentCount = Math.max(componentCount, c + 1);
+        }
+
+        int[] memberStart = new int[componentCount + 1];
+        int[] members = new int[components.length];
+        group(components, componentCount, memberStart, members);
+
+        BitSet[] reachable = new BitSet[componentCount];
+        int[] lastEdge = new int[componentCount];
+        Arrays.fill(lastEdge, -1);
+        BitSet successors = new BitSet(componentCount);
+
+        // Successors have smaller numbers, so they are done first.
+        for (int c = 0; c < componentCount; c ++) {
+            successors.clear();
+            for (int i = memberStart[c]; i < memberStart[c + 1]; i ++) {
+                int v = members[i];
+                for (int j = outStart[v]; j < outStart[v + 1]; j ++) {
+                    int e = outEdges[j];
+                    int d = components[targets[e]];
+                    if (d != c) {
+                        successors.set(d);
+                        lastEdge[d] = Math.max(lastEdge[d], e);
+                    }
+                }
+            }
+
+            // Visit the successors in topological order so that a successor
+            // reachable through another successor is always seen already.
+            BitSet r = new BitSet(c);
+            for (int d = successors.length() - 1; d >= 0; d --) {
+                if (!successors.get(d)) {
+                    continue;
+                }
+                if (!r.get(d)) {
+                    keep[lastEdge[d]] = true;
+                    r.set(d);
+                    r.or(reachable[d]);
+                }
+                lastEdge[d] = -1;
+            }
+            reachable[c] = r;
+        }
+    }
+
+    /**
+     * Keeps the edges within each component which cannot be replaced by a
+     * longer path of the component.
+     */
+    private static void reduceCycles(
+            int[] components, int[] sources, int[] targets,
+            int[] outStart, int[] outEdges, boolean[] keep) {
+
+        boolean[] removed = new boolean[sources.length];
+        int[] visited = new int[components.length];
+        int[] queue = new int[components.length];
+        int visit = 0;
+
+        for (int e = 0; e < sources.length; e ++) {
+            int source = sources[e];
+            int target = targets[e];
+            int c = components[source];
+            if (components[target] != c) {
+                continue;
+            }
+
+            // Search for the target from the other successors of the source.
+            visit ++;
+            visited[source] = visit;
+            int head = 0;
+            int tail = 0;
+            for (int i = outStart[source]; i < outStart[source + 1]; i ++) {
+                int w = targets[outEdges[i]];
+                if (removed[outEdges[i]] || w == target ||
+                    components[w] != c || visited[w] == visit) {
+                    continue;
+                }
+                visited[w] = visit;
+                queue[tail ++] = w;
+            }
+
+            boolean found = false;
+            while (head < tail && !found) {
+                int v = queue[head ++];
+                for (int i = outStart[v]; i < outStart[v + 1]; i ++) {
+                    int w = targets[outEdges[i]];
+                    if (removed[outEdges[i]] || components[w] != c) {
+                        continue;
+                    }
+                    if (w == target) {
+                        found = true;
+                        break;
+                    }
+                    if (visited[w] != visit) {
+                        visited[w] = visit;
+                        queue[tail ++] = w;
+                    }
+                }
+            }
+
+            if (found) {
+                removed[e] = true;
+            } else {
+                keep[e] = true;
+            }
+        }
+    }
+
+    private TransitiveReduction() {
+        // Unused
+    }
+}
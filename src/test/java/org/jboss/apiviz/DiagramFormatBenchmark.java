@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the rendering time and the output size of PNG images with
+ * client-side image maps and of SVG images, for the same class diagrams
+ * and for package summaries of 50 to 400 classes.  Requires Graphviz.
+ * <pre>
+ * java org.jboss.apiviz.DiagramFormatBenchmark [diagrams]
+ * </pre>
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class DiagramFormatBenchmark {
+
+    private static final int[] SUMMARY_SIZES = { 50, 100, 200, 400 };
+
+    public static void main(String[] args) throws Exception {
+        int diagrams = args.length > 0? Integer.parseInt(args[0]) : 100;
+
+        if (!Graphviz.isAvailable()) {
+            System.err.println("Graphviz is not found in the system path.");
+            return;
+        }
+
+        Random random = new Random(42);
+        List<String> classDiagrams = new ArrayList<String>();
+        for (int i = 0; i < diagrams; i ++) {
+            classDiagrams.add(GraphvizBatchBenchmark.newClassDiagram(random, i));
+        }
+
+        File dir = File.createTempFile("apiviz-benchmark", "");
+        dir.delete();
+        dir.mkdirs();
+
+        // Warm up the file system cache and the font configuration.
+        run(classDiagrams.subList(0, Math.min(10, diagrams)), dir, false);
+        run(classDiagrams.subList(0, Math.min(10, diagrams)), dir, true);
+
+        System.out.println("Format       Diagrams      Time        Size");
+        report("Class/PNG", diagrams, run(classDiagrams, dir, false));
+        report("Class/SVG", diagrams, run(classDiagrams, dir, true));
+        for (int nodes: SUMMARY_SIZES) {
+            List<String> summary = new ArrayList<String>();
+            summary.add(GraphvizBatchBenchmark.newDiagram(random, nodes, nodes));
+            report(nodes + "/PNG", 1, run(summary, dir, false));
+            report(nodes + "/SVG", 1, run(summary, dir, true));
+        }
+
+        for (File f: dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * Renders the diagrams one by one and returns the elapsed time in
+     * milliseconds and the total size of the images and maps in bytes.
+     */
+    private static long[] run(List<String> workload, File dir, boolean svg) throws IOException {
+        long time = 0;
+        long size = 0;
+        for (int i = 0; i < workload.size(); i ++) {
+            final String diagram = workload.get(i);
+            DiagramSource source = new DiagramSource() {
+                public void writeDiagram(Appendable out) throws IOException {
+                    out.append(diagram);
+                }
+            };
+
+            RenderResult result;
+            if (svg) {
+                result = Graphviz.writeSvg(source, dir, "d" + i, "_parent");
+            } else {
+                result = Graphviz.writeImageAndMap(source, dir, "d" + i);
+            }
+            time += result.getRenderTime();
+            size += result.getImageFile().length() + result.getMap().length;
+        }
+        return new long[] { time / 1000000, size };
+    }
+
+    private static void report(String name, int diagrams, long[] result) {
+        System.out.println(String.format(
+                "%-12s %8d %6d ms %8d KiB",
+                name, diagrams, result[0], result[1] / 1024));
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import static org.jboss.apiviz.Constant.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jboss.apiviz.FakeDocletModel.Shape;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.RootDoc;
+
+/**
+ * Measures the latency of the class pages served by {@link DiagramServer}:
+ * the first request which renders the diagram, the same request from many
+ * clients at once, which must render it only once, and the later requests
+ * served from memory and, after a restart, from the cache on disk.
+ * Requires Graphviz.
+ * <pre>
+ * java org.jboss.apiviz.DiagramServerBenchmark [classes] [clients]
+ * </pre>
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class DiagramServerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int classes = args.length > 0? Integer.parseInt(args[0]) : 200;
+        int clients = args.length > 1? Integer.parseInt(args[1]) : 16;
+
+        if (!Graphviz.isAvailable()) {
+            System.err.println("Graphviz is not found in the system path.");
+            return;
+        }
+
+        File dir = newTempDirectory();
+        File cacheDir = newTempDirectory();
+        File snapshot = new File(dir, "apiviz.snapshot");
+        RootDoc root = FakeDocletModel.newRootDoc(Shape.MIXED, classes, 42);
+        List<String> pages = new ArrayList<String>();
+        for (ClassDoc c: root.classes()) {
+            String page = c.containingPackage().name().replace('.', '/') + '/' + c.name() + ".html";
+            File f = new File(dir, page);
+            f.getParentFile().mkdirs();
+            FileUtil.writeFile(f, "<HTML>" + NEWLINE + "<PRE>" + c.name() + "</PRE>" + NEWLINE + "<P>" + NEWLINE + "</HTML>" + NEWLINE);
+            pages.add(page);
+        }
+        GraphSnapshot.write(new ClassDocGraph(ApiModelExtractor.extract(root)), snapshot);
+
+        String[][] options = {
+                { "-d", dir.getPath() },
+                { OPTION_CACHE_DIR, cacheDir.getPath() },
+                { OPTION_THREADS, String.valueOf(clients) } };
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            for (int run = 0; run < 2; run ++) {
+                RenderSetup setup = new RenderSetup(options, new ConsoleReporter());
+                DiagramServer server = new DiagramServer(
+                        setup,
+                        new GraphAggregator(setup.getLayoutPolicy(), 1).aggregate(
+                                Collections.singletonList(snapshot)),
+                        new ImageCache(64 * 1048576));
+                try {
+                    server.start(0);
+                    String base = "http://localhost:" + server.getPort() + '/';
+
+                    long concurrent = getConcurrently(executor, base + pages.get(0), clients);
+                    int concurrentRenders = server.getRenderCount();
+                    long cold = 0;
+                    for (String p: pages.subList(1, pages.size())) {
+                        cold += get(base + p);
+                    }
+                    long warm = 0;
+                    for (String p: pages) {
+                        warm += get(base + p);
+                    }
+
+                    System.out.println(run == 0? "Empty disk cache:" : "After a restart:");
+                    System.out.println("  " + clients + " clients, 1 page: " + concurrent / 1000 +
+                            " us (" + concurrentRenders + " rendering(s))");
+                    System.out.println("  First request:     " +
+                            cold / 1000 / Math.max(1, pages.size() - 1) + " us/page");
+                    System.out.println("  Later requests:    " +
+                            warm / 1000 / pages.size() + " us/page");
+                } finally {
+                    server.stop();
+                    setup.close();
+                }
+            }
+        } finally {
+            executor.shutdown();
+            delete(dir);
+            delete(cacheDir);
+        }
+    }
+
+    private static long getConcurrently(ExecutorService executor, final String url, int clients) throws Exception {
+        long startTime = System.nanoTime();
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        for (int i = 0; i < clients; i ++) {
+            futures.add(executor.submit(new Callable<Long>() {
+                public Long call() throws Exception {
+                    return get(url);
+                }
+            }));
+        }
+        for (Future<Long> f: futures) {
+            f.get();
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    /**
+     * Reads the specified URL and returns the time spent, in nanoseconds.
+     */
+    private static long get(String url) throws IOException {
+        long startTime = System.nanoTime();
+        InputStream in = new URL(url).openStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            for (;;) {
+                int length = in.read(buf);
+                if (length < 0) {
+                    break;
+                }
+                out.write(buf, 0, length);
+            }
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    private static File newTempDirectory() throws IOException {
+        File dir = File.createTempFile("apiviz-benchmark", "");
+        dir.delete();
+        dir.mkdirs();
+        return dir;
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f: files) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+}
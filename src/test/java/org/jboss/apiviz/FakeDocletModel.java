@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.FieldDoc;
+import com.sun.javadoc.MethodDoc;
+import com.sun.javadoc.PackageDoc;
+import com.sun.javadoc.Parameter;
+import com.sun.javadoc.RootDoc;
+import com.sun.javadoc.SeeTag;
+import com.sun.javadoc.Tag;
+
+/**
+ * Generates an in-memory {@link RootDoc} of a synthetic API, so that
+ * {@link ClassDocGraph} can be measured without running javadoc.  The
+ * doclet objects are {@link Proxy dynamic proxies} which answer only what
+ * APIviz asks for; like javadoc, they return a new array on each call.
+ * The same shape, size and seed always generate the same API.
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class FakeDocletModel {
+
+    private static final int CLASSES_PER_PACKAGE = 25;
+    private static final String[] RELATION_TAGS = {
+        "@apiviz.uses", "@apiviz.has", "@apiviz.owns", "@apiviz.composedOf" };
+
+    /**
+     * The kinds of APIs which make {@link ClassDocGraph} work hard.
+     */
+    public enum Shape {
+        /** Long chains of subclasses. */
+        DEEP_HIERARCHY(12, 1, 1, 0, 2),
+        /** Classes which implement many interfaces. */
+        WIDE_INTERFACES(1, 16, 1, 0, 2),
+        /** Many {@code @apiviz.*} relationships and {@code @see} tags. */
+        HEAVY_TAGS(2, 2, 12, 6, 4),
+        /** A bit of everything, like a typical library. */
+        MIXED(4, 3, 3, 1, 3);
+
+        final int depth;
+        final int interfaces;
+        final int relations;
+        final int seeTags;
+        final int members;
+
+        private Shape(int depth, int interfaces, int relations, int seeTags, int members) {
+            this.depth = depth;
+            this.interfaces = interfaces;
+            this.relations = relations;
+            this.seeTags = seeTags;
+            this.members = members;
+        }
+    }
+
+    /**
+     * Generates a synthetic API of the specified shape.
+     *
+     * @param classes  the number of the included classes and interfaces
+     */
+    public static RootDoc newRootDoc(Shape shape, int classes, long seed) {
+        if (shape == null) {
+            throw new NullPointerException("shape");
+        }
+        if (classes <= 0) {
+            throw new IllegalArgumentException("classes: " + classes);
+        }
+        return new FakeDocletModel(shape, classes, seed, 0, 1).root;
+    }
+
+    /**
+     * Generates the part of a synthetic API which is documented in the
+     * specified module, as if the API was split into modules by package.
+     * The other classes of the API are referred to but not included, and
+     * are the same for all modules.
+     *
+     * @param classes  the number of the classes and interfaces of all
+     *                 modules
+     * @param module   the index of the module, less than {@code modules}
+     */
+    public static RootDoc newModuleRootDoc(Shape shape, int classes, long seed, int module, int modules) {
+        if (shape == null) {
+            throw new NullPointerException("shape");
+        }
+        if (classes <= 0) {
+            throw new IllegalArgumentException("classes: " + classes);
+        }
+        if (modules <= 0) {
+            throw new IllegalArgumentException("modules: " + modules);
+        }
+        if (module < 0 || module >= modules) {
+            throw new IllegalArgumentException("module: " + module);
+        }
+        return new FakeDocletModel(shape, classes, seed, module, modules).root;
+    }
+
+    private final Random random;
+    private final Map<String, ClassDoc> classMap = new LinkedHashMap<String, ClassDoc>();
+    private final Map<String, PackageDoc> packageMap = new LinkedHashMap<String, PackageDoc>();
+    private final RootDoc root;
+
+    private FakeDocletModel(Shape shape, int classCount, long seed, int module, int modules) {
+        random = new Random(seed);
+
+        ClassDoc object = newExternalClass("java.lang.Object", false);
+        ClassDoc serializable = newExternalClass("java.io.Serializable", true);
+        newExternalClass("java.util.List", true);
+
+        // One in five types is an interface.
+        int packageCount = (classCount + CLASSES_PER_PACKAGE - 1) / CLASSES_PER_PACKAGE;
+        List<PackageDoc> packages = new ArrayList<PackageDoc>();
+        List<ClassDoc> classes = new ArrayList<ClassDoc>();
+        List<ClassDoc> interfaces = new ArrayList<ClassDoc>();
+        List<ClassDoc> concreteClasses = new ArrayList<ClassDoc>();
+        List<PackageDoc> includedPackages = new ArrayList<PackageDoc>();
+        List<ClassDoc> includedClasses = new ArrayList<ClassDoc>();
+        for (int i = 0; i < packageCount; i ++) {
+            boolean included = i % modules == module;
+            PackageDoc pkg = newPackage("org.example." + (i % 4 == 0? "core" : "ext" + i % 4) + ".p" + i, included);
+            packages.add(pkg);
+            if (included) {
+                includedPackages.add(pkg);
+            }
+            List<ClassDoc> members = new ArrayList<ClassDoc>();
+            for (int j = 0; j < CLASSES_PER_PACKAGE && classes.size() < classCount; j ++) {
+                boolean iface = classes.size() % 5 == 0;
+                ClassDoc c = newClass(pkg, (iface? "I" : "C") + j, iface, included);
+                members.add(c);
+                classes.add(c);
+                (iface? interfaces : concreteClasses).add(c);
+                if (included) {
+                    includedClasses.add(c);
+                }
+            }
+            handler(pkg).set("allClasses", members.toArray(new ClassDoc[members.size()]));
+        }
+
+        // Subclasses form chains of the specified depth.
+        for (int i = 0; i < concreteClasses.size(); i ++) {
+            ClassDoc c = concreteClasses.get(i);
+            handler(c).set(
+                    "superclass",
+                    i % shape.depth == 0? object : concreteClasses.get(i - 1));
+        }
+
+        for (ClassDoc c: classes) {
+            Handler h = handler(c);
+
+            List<ClassDoc> superInterfaces = new ArrayList<ClassDoc>();
+            int count = c.isInterface()? random.nextInt(2) : shape.interfaces;
+            for (int i = 0; i < count; i ++) {
+                ClassDoc i2 = interfaces.get(random.nextInt(interfaces.size()));
+                if (i2 != c && !superInterfaces.contains(i2)) {
+                    superInterfaces.add(i2);
+                }
+            }
+            if (random.nextInt(10) == 0) {
+                superInterfaces.add(serializable);
+            }
+            h.set("interfaces", superInterfaces.toArray(new ClassDoc[superInterfaces.size()]));
+
+            List<Tag> tags = new ArrayList<Tag>();
+            for (int i = 0; i < shape.relations; i ++) {
+                ClassDoc target = classes.get(random.nextInt(classes.size()));
+                String name = RELATION_TAGS[random.nextInt(RELATION_TAGS.length)];
+                String text = target.qualifiedName();
+                switch (random.nextInt(3)) {
+                case 0:
+                    text += " 1 * owns";
+                    break;
+                case 1:
+                    text += " oneway - 0..1 uses";
+                    break;
+                }
+                tags.add(newTag(name, text));
+            }
+            switch (random.nextInt(20)) {
+            case 0:
+                tags.add(newTag("@apiviz.landmark", ""));
+                break;
+            case 1:
+                tags.add(newTag("@apiviz.stereotype", "service"));
+                break;
+            case 2:
+                tags.add(newTag("@deprecated", "Use something else."));
+                break;
+            }
+            h.set("tags", tags.toArray(new Tag[tags.size()]));
+
+            List<SeeTag> seeTags = new ArrayList<SeeTag>();
+            for (int i = 0; i < shape.seeTags; i ++) {
+                ClassDoc target = classes.get(random.nextInt(classes.size()));
+                Handler sh = new Handler("@see");
+                sh.set("name", "@see");
+                sh.set("text", target.qualifiedName());
+                sh.set("referencedClass", target);
+                seeTags.add(newProxy(SeeTag.class, sh));
+            }
+            h.set("seeTags", seeTags.toArray(new SeeTag[seeTags.size()]));
+
+            List<FieldDoc> fields = new ArrayList<FieldDoc>();
+            List<MethodDoc> methods = new ArrayList<MethodDoc>();
+            for (int i = 0; i < shape.members; i ++) {
+                Handler fh = new Handler("f" + i);
+                fh.set("name", "f" + i);
+                fh.set("type", classes.get(random.nextInt(classes.size())));
+                fields.add(newProxy(FieldDoc.class, fh));
+
+                Handler ph = new Handler("p" + i);
+                ph.set("name", "p" + i);
+                ph.set("type", classes.get(random.nextInt(classes.size())));
+                Handler mh = new Handler("m" + i);
+                mh.set("name", "m" + i);
+                mh.set("returnType", classes.get(random.nextInt(classes.size())));
+                mh.set("parameters", new Parameter[] { newProxy(Parameter.class, ph) });
+                methods.add(newProxy(MethodDoc.class, mh));
+            }
+            h.set("fields", fields.toArray(new FieldDoc[fields.size()]));
+            h.set("methods", methods.toArray(new MethodDoc[methods.size()]));
+            h.set("importedPackages", new PackageDoc[] {
+                    packages.get(random.nextInt(packages.size())) });
+        }
+
+        for (PackageDoc pkg: packages) {
+            if (random.nextInt(4) == 0) {
+                handler(pkg).set("tags", new Tag[] { newTag("@apiviz.landmark", "") });
+            }
+        }
+
+        Handler rh = new Handler("root");
+        rh.set("classes", includedClasses.toArray(new ClassDoc[includedClasses.size()]));
+        rh.set("specifiedPackages", includedPackages.toArray(new PackageDoc[includedPackages.size()]));
+        rh.set("options", new String[0][]);
+        root = newProxy(RootDoc.class, rh);
+    }
+
+    private PackageDoc newPackage(String name, boolean included) {
+        Handler h = new Handler(name);
+        h.set("name", name);
+        h.set("isIncluded", Boolean.valueOf(included));
+        PackageDoc pkg = newProxy(PackageDoc.class, h);
+        packageMap.put(name, pkg);
+        return pkg;
+    }
+
+    private ClassDoc newClass(PackageDoc pkg, String name, boolean iface, boolean included) {
+        String qualifiedName = pkg.name() + '.' + name;
+        Handler h = new Handler(qualifiedName);
+        h.set("name", name);
+        h.set("qualifiedName", qualifiedName);
+        h.set("typeName", name);
+        h.set("qualifiedTypeName", qualifiedName);
+        h.set("simpleTypeName", name);
+        h.set("containingPackage", pkg);
+        h.set("isIncluded", Boolean.valueOf(included));
+        h.set("isInterface", Boolean.valueOf(iface));
+        h.set("isAbstract", Boolean.valueOf(iface));
+        h.set("isClass", Boolean.valueOf(!iface));
+        h.set("isOrdinaryClass", Boolean.valueOf(!iface));
+        h.set("isPublic", Boolean.TRUE);
+        ClassDoc c = newProxy(ClassDoc.class, h);
+        h.set("asClassDoc", c);
+        classMap.put(qualifiedName, c);
+        return c;
+    }
+
+    private ClassDoc newExternalClass(String qualifiedName, boolean iface) {
+        String packageName = qualifiedName.substring(0, qualifiedName.lastIndexOf('.'));
+        PackageDoc pkg = packageMap.get(packageName);
+        if (pkg == null) {
+            pkg = newPackage(packageName, false);
+        }
+        return newClass(pkg, qualifiedName.substring(packageName.length() + 1), iface, false);
+    }
+
+    private Tag newTag(String name, String text) {
+        Handler h = new Handler(name);
+        h.set("name", name);
+        h.set("kind", name);
+        h.set("text", text);
+        return newProxy(Tag.class, h);
+    }
+
+    private static <T> T newProxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(
+                FakeDocletModel.class.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+
+    private static Handler handler(Object proxy) {
+        return (Handler) Proxy.getInvocationHandler(proxy);
+    }
+
+    /**
+     * Answers the calls to a doclet object from its properties, or returns
+     * {@code false}, {@code 0}, an empty string or an empty array if the
+     * property is not set.
+     */
+    private final class Handler implements InvocationHandler {
+
+        private final String id;
+        private final Map<String, Object> properties = new HashMap<String, Object>();
+
+        Handler(String id) {
+            this.id = id;
+        }
+
+        void set(String name, Object value) {
+            properties.put(name, value);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            int arity = args == null? 0 : args.length;
+            if (arity == 1) {
+                if (name.equals("equals")) {
+                    return Boolean.valueOf(proxy == args[0]);
+                }
+                if (name.equals("compareTo")) {
+                    return Integer.valueOf(id.compareTo(handler(args[0]).id));
+                }
+                if (name.equals("classNamed")) {
+                    return classMap.get(args[0]);
+                }
+                if (name.equals("packageNamed")) {
+                    return packageMap.get(args[0]);
+                }
+                if (name.equals("tags")) {
+                    return getTags((String) args[0]);
+                }
+            }
+            if (name.equals("hashCode")) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            }
+            if (name.equals("toString")) {
+                return id;
+            }
+            if (name.startsWith("print")) {
+                return null;
+            }
+
+            Object value = properties.get(name);
+            Class<?> type = method.getReturnType();
+            if (value == null) {
+                if (type == boolean.class) {
+                    return Boolean.FALSE;
+                }
+                if (type == int.class) {
+                    return Integer.valueOf(0);
+                }
+                if (type == String.class) {
+                    return "";
+                }
+                if (type.isArray()) {
+                    return Array.newInstance(type.getComponentType(), 0);
+                }
+                return null;
+            }
+            if (value instanceof Object[]) {
+                return ((Object[]) value).clone();
+            }
+            return value;
+        }
+
+        private Tag[] getTags(String tagName) {
+            Tag[] tags = (Tag[]) properties.get("tags");
+            List<Tag> result = new ArrayList<Tag>();
+            if (tags != null) {
+                String name = tagName.startsWith("@")? tagName : "@" + tagName;
+                for (Tag t: tags) {
+                    if (t.name().equals(name)) {
+                        result.add(t);
+                    }
+                }
+            }
+            return result.toArray(new Tag[result.size()]);
+        }
+    }
+}
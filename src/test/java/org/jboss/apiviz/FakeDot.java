@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * A stand-in for the {@code dot} executable of Graphviz, which answers the
+ * capability probes of {@link Graphviz} and renders every graph into a
+ * 1x1 PNG image, a client side image map with one area per linked node, or
+ * a tiny SVG document, after waiting for a fixed latency.  Like
+ * {@code dot}, it reads any number of graphs from its standard input, so
+ * it also works with {@link GraphvizBatch}.  {@link ScalingBenchmark}
+ * uses it to measure the overhead of APIviz itself.
+ * <pre>
+ * java -Dapiviz.fakedot.latency=&lt;milliseconds&gt; org.jboss.apiviz.FakeDot -Tcmapx -Tpng
+ * </pre>
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class FakeDot {
+
+    public static final String LATENCY_PROPERTY = "apiviz.fakedot.latency";
+
+    private static final Pattern GRAPH_NAME = Pattern.compile("digraph\\s+(\\w+)");
+    private static final Pattern URL = Pattern.compile("URL=\"([^\"]*)\"");
+
+    public static void main(String[] args) throws Exception {
+        for (String a: args) {
+            if (a.equals("-V")) {
+                System.err.println("dot - graphviz version 2.26.3 (APIviz stand-in)");
+                return;
+            }
+            if (a.equals("-K?")) {
+                notRecognized("?", "circo dot fdp neato");
+                return;
+            }
+            if (a.equals("-T?")) {
+                notRecognized("?", "cmapx png svg");
+                return;
+            }
+            if (a.equals("-Tpng:?") || a.equals("-Tsvg:?")) {
+                String format = a.substring(2, 5);
+                notRecognized(
+                        format + ":?",
+                        format + ":cairo:cairo " + format + ":gd:gd");
+                return;
+            }
+        }
+
+        // -o applies to the preceding -T.
+        List<String> formats = new ArrayList<String>();
+        List<String> outputs = new ArrayList<String>();
+        for (int i = 0; i < args.length; i ++) {
+            String a = args[i];
+            if (a.startsWith("-T")) {
+                formats.add(a.substring(2));
+                outputs.add(null);
+            } else if (a.equals("-o") && i + 1 < args.length && !outputs.isEmpty()) {
+                outputs.set(outputs.size() - 1, args[++ i]);
+            } else if (a.startsWith("-o") && !outputs.isEmpty()) {
+                outputs.set(outputs.size() - 1, a.substring(2));
+            }
+        }
+
+        long latency = Long.getLong(LATENCY_PROPERTY, 0).longValue();
+        InputStream in = new BufferedInputStream(System.in);
+        OutputStream out = new BufferedOutputStream(System.out);
+        String graph;
+        while ((graph = readGraph(in)) != null) {
+            Matcher m = GRAPH_NAME.matcher(graph);
+            String name = m.find()? m.group(1) : "G";
+
+            // An empty graph, such as the sentinel of GraphvizBatch, is
+            // rendered immediately.
+            if (latency > 0 && graph.indexOf(';') >= 0) {
+                Thread.sleep(latency);
+            }
+
+            for (int i = 0; i < formats.size(); i ++) {
+                byte[] data = render(formats.get(i), name, graph);
+                String output = outputs.get(i);
+                if (output == null) {
+                    out.write(data);
+                } else {
+                    OutputStream f = new FileOutputStream(output);
+                    try {
+                        f.write(data);
+                    } finally {
+                        f.close();
+                    }
+                }
+            }
+            out.flush();
+        }
+        out.flush();
+    }
+
+    private static void notRecognized(String value, String choices) {
+        System.err.println(
+                "Format: \"" + value + "\" not recognized. Use one of: " + choices);
+        System.exit(1);
+    }
+
+    /**
+     * Reads the next graph, or returns {@code null} at the end of the
+     * input.  A brace in a quoted string does not count.
+     */
+    private static String readGraph(InputStream in) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(4096);
+        int depth = 0;
+        boolean quoted = false;
+        boolean escaped = false;
+        boolean started = false;
+        for (;;) {
+            int b = in.read();
+            if (b < 0) {
+                return null;
+            }
+            buf.write(b);
+            if (quoted) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    quoted = false;
+                }
+            } else if (b == '"') {
+                quoted = true;
+            } else if (b == '{') {
+                depth ++;
+                started = true;
+            } else if (b == '}') {
+                depth --;
+                if (started && depth == 0) {
+                    return buf.toString("UTF-8");
+                }
+            }
+        }
+    }
+
+    private static byte[] render(String format, String name, String graph) throws UnsupportedEncodingException {
+        if (format.equals("cmapx")) {
+            StringBuilder buf = new StringBuilder();
+            buf.append("<map id=\"" + name + "\" name=\"" + name + "\">\n");
+            Matcher m = URL.matcher(graph);
+            for (int i = 0; m.find(); i ++) {
+                buf.append(
+                        "<area shape=\"rect\" href=\"" + m.group(1) +
+                        "\" alt=\"\" coords=\"" + i * 10 + ",0," + (i * 10 + 9) + ",9\"/>\n");
+            }
+            buf.append("</map>\n");
+            return buf.toString().getBytes("UTF-8");
+        }
+        if (format.startsWith("svg")) {
+            StringBuilder buf = new StringBuilder();
+            buf.append(
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n" +
+                    "<svg width=\"1pt\" height=\"1pt\" xmlns=\"http://www.w3.org/2000/svg\"" +
+                    " xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n" +
+                    "<g id=\"" + name + "\">\n");
+            Matcher m = URL.matcher(graph);
+            while (m.find()) {
+                buf.append("<a xlink:href=\"" + m.group(1) + "\"></a>\n");
+            }
+            buf.append("</g>\n</svg>\n");
+            return buf.toString().getBytes("UTF-8");
+        }
+        if (format.startsWith("png")) {
+            return newPng();
+        }
+        return new byte[0];
+    }
+
+    /**
+     * Returns a 1x1 grayscale PNG image.
+     */
+    private static byte[] newPng() {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(64);
+        buf.write(0x89);
+        buf.write('P');
+        buf.write('N');
+        buf.write('G');
+        buf.write('\r');
+        buf.write('\n');
+        buf.write(0x1A);
+        buf.write('\n');
+        writeChunk(buf, "IHDR", new byte[] { 0, 0, 0, 1, 0, 0, 0, 1, 8, 0, 0, 0, 0 });
+        // A zlib stream of the filter byte and one black pixel.
+        writeChunk(buf, "IDAT", new byte[] { 0x78, (byte) 0x9C, 0x63, 0x60, 0x00, 0x00, 0x00, 0x02, 0x00, 0x01 });
+        writeChunk(buf, "IEND", new byte[0]);
+        return buf.toByteArray();
+    }
+
+    private static void writeChunk(ByteArrayOutputStream buf, String type, byte[] data) {
+        writeInt(buf, data.length);
+        byte[] typeBytes = new byte[4];
+        for (int i = 0; i < 4; i ++) {
+            typeBytes[i] = (byte) type.charAt(i);
+        }
+        buf.write(typeBytes, 0, 4);
+        buf.write(data, 0, data.length);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        writeInt(buf, (int) crc.getValue());
+    }
+
+    private static void writeInt(ByteArrayOutputStream buf, int value) {
+        buf.write(value >>> 24);
+        buf.write(value >>> 16);
+        buf.write(value >>> 8);
+        buf.write(value);
+    }
+}
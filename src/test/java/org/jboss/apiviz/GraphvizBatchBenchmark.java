@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import static org.jboss.apiviz.Constant.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Compares the throughput of {@link Graphviz} (one process per diagram) and
+ * {@link GraphvizBatch} (long-lived processes) for diagrams shaped like the
+ * output of {@link ClassDocGraph#getClassDiagram}.  Requires Graphviz.
+ * <pre>
+ * java org.jboss.apiviz.GraphvizBatchBenchmark [diagrams] [processes]
+ * </pre>
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class GraphvizBatchBenchmark {
+
+    private static final String[] EDGE_STYLES = {
+        "arrowhead=\"none\", arrowtail=\"enormal\", style=\"solid",
+        "arrowhead=\"none\", arrowtail=\"enormal\", style=\"dashed",
+        "arrowhead=\"none\", arrowtail=\"open\", style=\"dashed",
+        "arrowhead=\"open\", arrowtail=\"ediamond\", style=\"solid",
+    };
+
+    public static void main(String[] args) throws Exception {
+        int diagrams = args.length > 0? Integer.parseInt(args[0]) : 200;
+        int processes = args.length > 1? Integer.parseInt(args[1]) : 1;
+
+        if (!Graphviz.isAvailable()) {
+            System.err.println("Graphviz is not found in the system path.");
+            return;
+        }
+
+        List<String> workload = new ArrayList<String>();
+        Random random = new Random(42);
+        for (int i = 0; i < diagrams; i ++) {
+            workload.add(newClassDiagram(random, i));
+        }
+
+        File dir = File.createTempFile("apiviz-benchmark", "");
+        dir.delete();
+        dir.mkdirs();
+
+        // Warm up the file system cache and the font configuration.
+        run(DiagramRenderer.GRAPHVIZ, workload.subList(0, Math.min(10, diagrams)), dir, 1);
+
+        // Both renderers get the same number of concurrent dot processes.
+        long perProcess = run(DiagramRenderer.GRAPHVIZ, workload, dir, processes);
+        GraphvizBatch batch = new GraphvizBatch(processes);
+        long batched;
+        try {
+            batched = run(batch, workload, dir, processes);
+        } finally {
+            batch.close();
+        }
+
+        System.out.println("Diagrams:    " + diagrams);
+        System.out.println("Processes:   " + processes);
+        System.out.println("Per-process: " + perProcess + " ms (" +
+                diagrams * 1000L / Math.max(1, perProcess) + " diagrams/s)");
+        System.out.println("Batched:     " + batched + " ms (" +
+                diagrams * 1000L / Math.max(1, batched) + " diagrams/s)");
+
+        for (File f: dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private static long run(final DiagramRenderer renderer, List<String> workload, final File dir, int threads) throws Exception {
+        long startTime = System.nanoTime();
+        DiagramWorkerPool pool = new DiagramWorkerPool(threads);
+        for (int i = 0; i < workload.size(); i ++) {
+            final String diagram = workload.get(i);
+            final String filename = "d" + i;
+            pool.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    renderer.writeImageAndMap(diagram, dir, filename);
+                    return null;
+                }
+            });
+        }
+        pool.finish();
+        return (System.nanoTime() - startTime) / 1000000;
+    }
+
+    /**
+     * Generates a class diagram with 3 to 15 nodes.
+     */
+    static String newClassDiagram(Random random, int id) {
+        return newDiagram(random, id, 3 + random.nextInt(13));
+    }
+
+    /**
+     * Generates a diagram with the specified number of nodes, with the same
+     * graph attributes and node/edge styles as {@link ClassDocGraph}.
+     */
+    static String newDiagram(Random random, int id, int nodes) {
+        StringBuilder buf = new StringBuilder(4096);
+        buf.append(
+                "digraph APIVIZ {" + NEWLINE +
+                "rankdir=TB;" + NEWLINE +
+                "ranksep=0.3;" + NEWLINE +
+                "nodesep=0.3;" + NEWLINE +
+                "mclimit=128;" + NEWLINE +
+                "outputorder=edgesfirst;" + NEWLINE +
+                "center=1;" + NEWLINE +
+                "remincross=true;" + NEWLINE +
+                "searchsize=65536;" + NEWLINE +
+                "edge [fontsize=10, fontname=\"" + NORMAL_FONT + "\", " +
+                "style=\"setlinewidth(0.6)\"]; " + NEWLINE +
+                "node [shape=box, fontsize=10, fontname=\"" + NORMAL_FONT + "\", " +
+                "width=0.1, height=0.1, style=\"setlinewidth(0.6)\"]; " + NEWLINE);
+
+        for (int i = 0; i < nodes; i ++) {
+            buf.append("org_example_p" + id + "_Type" + i);
+            buf.append(" [label=\"&#171;interface&#187;\\nType" + i +
+                       "\\n(org.example.p" + id + ")\", tooltip=\"Type" + i +
+                       "\", style=\"filled\", color=\"" + (i == 0? "black" : "gray") +
+                       "\", fontcolor=\"black\", fillcolor=\"" +
+                       (i == 0? "khaki1" : "white") +
+                       "\", href=\"Type" + i + ".html\"];" + NEWLINE);
+        }
+        for (int i = 1; i < nodes; i ++) {
+            int source = random.nextInt(i);
+            buf.append("org_example_p" + id + "_Type" + source + " -> " +
+                       "org_example_p" + id + "_Type" + i + " [" +
+                       EDGE_STYLES[random.nextInt(EDGE_STYLES.length)] +
+                       "\", color=\"black\", fontcolor=\"black\", " +
+                       "label=\"\", headlabel=\"\", taillabel=\"\" ];" + NEWLINE);
+        }
+
+        buf.append("}" + NEWLINE);
+        return buf.toString();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the time it takes to render diagrams of 5 to 200 nodes in the
+ * JVM with {@link LayeredRenderer} and with one Graphviz process per
+ * diagram.  Graphviz is skipped if it is not found in the system path.
+ * <pre>
+ * java org.jboss.apiviz.LayeredRendererBenchmark [diagrams]
+ * </pre>
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class LayeredRendererBenchmark {
+
+    private static final int[] SIZES = { 5, 10, 15, 25, 50, 100, 200 };
+
+    public static void main(String[] args) throws Exception {
+        int diagrams = args.length > 0? Integer.parseInt(args[0]) : 20;
+        boolean graphviz = Graphviz.isAvailable();
+        if (!graphviz) {
+            System.err.println("Graphviz is not found in the system path.");
+        }
+
+        File dir = File.createTempFile("apiviz-benchmark", "");
+        dir.delete();
+        dir.mkdirs();
+
+        DiagramRenderer layered = new LayeredRenderer(null, Integer.MAX_VALUE);
+        Random random = new Random(42);
+
+        // Warm up the JIT compiler and the font configuration.
+        List<String> warmUp = newWorkload(random, diagrams, 10);
+        run(layered, warmUp, dir);
+        if (graphviz) {
+            run(DiagramRenderer.GRAPHVIZ, warmUp, dir);
+        }
+
+        System.out.println("Nodes  Diagrams   Layered  Graphviz");
+        for (int nodes: SIZES) {
+            List<String> workload = newWorkload(random, diagrams, nodes);
+            long layeredTime = run(layered, workload, dir);
+            long graphvizTime = graphviz? run(DiagramRenderer.GRAPHVIZ, workload, dir) : -1;
+            System.out.println(String.format(
+                    "%5d %9d %6d ms %6s ms",
+                    nodes, diagrams, layeredTime,
+                    graphvizTime < 0? "-" : String.valueOf(graphvizTime)));
+        }
+
+        layered.close();
+        for (File f: dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private static List<String> newWorkload(Random random, int diagrams, int nodes) {
+        List<String> workload = new ArrayList<String>();
+        for (int i = 0; i < diagrams; i ++) {
+            workload.add(GraphvizBatchBenchmark.newDiagram(random, i, nodes));
+        }
+        return workload;
+    }
+
+    /**
+     * Renders the diagrams one by one and returns the elapsed time in
+     * milliseconds.
+     */
+    private static long run(DiagramRenderer renderer, List<String> workload, File dir) throws IOException {
+        long startTime = System.nanoTime();
+        for (int i = 0; i < workload.size(); i ++) {
+            renderer.writeImageAndMap(workload.get(i), dir, "d" + i);
+        }
+        return (System.nanoTime() - startTime) / 1000000;
+    }
+}
@@ -0,0 +1,562 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs the whole doclet on synthetic Java source trees of increasing size
+ * and reports the elapsed time, the peak heap usage, the number of the
+ * generated files and the number of the pages a diagram was placed into.
+ * A failed diagram does not fail the run, so the diagrams the
+ * {@linkplain PerformanceReport report} marks as failed are counted too,
+ * and a row with any failure is flagged.  Each run is a fresh JVM which
+ * runs javadoc with {@link APIviz} in-process.  {@link FakeDot} stands in
+ * for Graphviz with a fixed latency per diagram, so that the results
+ * reflect the overhead of APIviz itself and don't depend on the Graphviz
+ * installation.  The time spent in each phase of a run is found in the
+ * report of its output directory.
+ * <p>
+ * The stand-in is launched by a shell script, so a POSIX shell is
+ * required, and the JVM must provide the {@code com.sun.javadoc} API
+ * (JDK 12 or earlier).
+ * <pre>
+ * java org.jboss.apiviz.ScalingBenchmark [-sizes 1000,10000,50000]
+ *      [-packagesize &lt;classes&gt;] [-fanout &lt;subpackages&gt;]
+ *      [-tagdensity &lt;tags per class&gt;] [-latency &lt;ms&gt;] [-seed &lt;seed&gt;]
+ *      [-xmx &lt;heap&gt;] [-workdir &lt;dir&gt;] [-keep] [-- &lt;javadoc options&gt;]
+ * </pre>
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class ScalingBenchmark {
+
+    private static final String RUN_JAVADOC = "-runjavadoc";
+    private static final String RESULT_PREFIX = "APIVIZ-SCALING-RESULT ";
+    private static final String ROOT_PACKAGE = "org.example";
+    private static final long HEAP_SAMPLING_INTERVAL = 10;
+    private static final String FAILED_STATUS = "\"status\": \"failed\"";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals(RUN_JAVADOC)) {
+            runJavadoc(Arrays.asList(args).subList(1, args.length));
+            return;
+        }
+
+        int[] sizes = { 1000, 10000, 50000 };
+        int packageSize = 25;
+        int fanout = 4;
+        double tagDensity = 1.0;
+        long latency = 20;
+        long seed = 42;
+        String maxHeap = null;
+        File workDir = null;
+        boolean keep = false;
+        List<String> javadocOptions = new ArrayList<String>();
+        for (int i = 0; i < args.length; i ++) {
+            String a = args[i];
+            if (a.equals("--")) {
+                javadocOptions.addAll(Arrays.asList(args).subList(i + 1, args.length));
+                break;
+            } else if (a.equals("-keep")) {
+                keep = true;
+                continue;
+            }
+
+            if (i + 1 >= args.length) {
+                usage();
+                return;
+            }
+            String v = args[++ i];
+            if (a.equals("-sizes")) {
+                String[] values = v.split(",");
+                sizes = new int[values.length];
+                for (int j = 0; j < values.length; j ++) {
+                    sizes[j] = Integer.parseInt(values[j].trim());
+                }
+            } else if (a.equals("-packagesize")) {
+                packageSize = Integer.parseInt(v);
+            } else if (a.equals("-fanout")) {
+                fanout = Integer.parseInt(v);
+            } else if (a.equals("-tagdensity")) {
+                tagDensity = Double.parseDouble(v);
+            } else if (a.equals("-latency")) {
+                latency = Long.parseLong(v);
+            } else if (a.equals("-seed")) {
+                seed = Long.parseLong(v);
+            } else if (a.equals("-xmx")) {
+                maxHeap = v;
+            } else if (a.equals("-workdir")) {
+                workDir = new File(v);
+            } else {
+                usage();
+                return;
+            }
+        }
+        if (packageSize <= 0 || fanout <= 0 || tagDensity < 0 || latency < 0) {
+            usage();
+            return;
+        }
+
+        if (workDir == null) {
+            workDir = File.createTempFile("apiviz-scaling", "");
+            workDir.delete();
+        }
+        workDir.mkdirs();
+        File binDir = new File(workDir, "bin");
+        writeFakeDot(binDir, latency);
+
+        System.out.println(String.format(
+                "Package size: %d, fan-out: %d, tag density: %.2f, dot latency: %d ms",
+                packageSize, fanout, tagDensity, latency));
+        System.out.println(" Classes Packages  Seconds  Peak heap  Files   HTML Diagrams Failed  Exit");
+        for (int classes: sizes) {
+            File runDir = new File(workDir, String.valueOf(classes));
+            File srcDir = new File(runDir, "src");
+            File outDir = new File(runDir, "doc");
+            deleteRecursively(runDir);
+
+            int packages = generateSources(
+                    srcDir, classes, packageSize, fanout, tagDensity, new Random(seed));
+            long[] result = runChild(
+                    binDir, srcDir, outDir, new File(runDir, "javadoc.log"),
+                    maxHeap, javadocOptions);
+            int[] counts = new int[3];
+            countFiles(outDir, counts);
+            int failed = countFailedDiagrams(outDir);
+
+            System.out.println(String.format(
+                    "%8d %8d %8.1f %7d MB %6d %6d %8d %6d %5d%s",
+                    classes, packages, result[1] / 1000000000.0,
+                    result[2] / 1048576, counts[0], counts[1], counts[2], failed, result[0],
+                    failed != 0 || result[0] != 0? "  FAILED" : ""));
+            if (!keep) {
+                deleteRecursively(srcDir);
+                deleteRecursively(outDir);
+            }
+        }
+
+        if (!keep) {
+            deleteRecursively(workDir);
+        } else {
+            System.out.println("Work directory: " + workDir);
+        }
+    }
+
+    private static void usage() {
+        System.err.println(
+                "Usage: java " + ScalingBenchmark.class.getName() +
+                " [-sizes 1000,10000,50000] [-packagesize <classes>]" +
+                " [-fanout <subpackages>] [-tagdensity <tags per class>]" +
+                " [-latency <ms>] [-seed <seed>] [-xmx <heap>]" +
+                " [-workdir <dir>] [-keep] [-- <javadoc options>]");
+    }
+
+    /**
+     * Writes the {@code dot} script which launches {@link FakeDot}.
+     */
+    private static void writeFakeDot(File binDir, long latency) throws IOException {
+        binDir.mkdirs();
+        File script = new File(binDir, "dot");
+        FileUtil.writeFile(
+                script,
+                "#!/bin/sh\n" +
+                "exec " + quote(getJavaExecutable()) +
+                " -cp " + quote(getClassPath()) +
+                " -D" + FakeDot.LATENCY_PROPERTY + "=" + latency +
+                " " + FakeDot.class.getName() + " \"$@\"\n");
+        Process p = Runtime.getRuntime().exec(
+                new String[] { "chmod", "+x", script.getAbsolutePath() });
+        for (;;) {
+            try {
+                if (p.waitFor() != 0) {
+                    throw new IOException("chmod failed: " + script);
+                }
+                break;
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * Returns the class path of this JVM with absolute paths, which works
+     * in any directory.
+     */
+    private static String getClassPath() {
+        StringBuilder buf = new StringBuilder();
+        for (String e: System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (e.length() == 0) {
+                continue;
+            }
+            if (buf.length() > 0) {
+                buf.append(File.pathSeparatorChar);
+            }
+            buf.append(new File(e).getAbsolutePath());
+        }
+        return buf.toString();
+    }
+
+    private static String getJavaExecutable() {
+        return System.getProperty("java.home") + File.separator + "bin" +
+               File.separator + "java";
+    }
+
+    /**
+     * Generates the source tree of a synthetic API whose packages form a
+     * tree with the specified fan-out under {@link #ROOT_PACKAGE}.  A type
+     * extends or implements only the types generated before it, so there
+     * is no cyclic inheritance, while its members and {@code @apiviz.*}
+     * tags refer to any type.
+     *
+     * @return the number of the generated packages
+     */
+    private static int generateSources(
+            File srcDir, int classes, int packageSize, int fanout,
+            double tagDensity, Random random) throws IOException {
+
+        List<String> packages = new ArrayList<String>();
+        LinkedList<String> queue = new LinkedList<String>();
+        queue.add(ROOT_PACKAGE);
+        int packageCount = (classes + packageSize - 1) / packageSize;
+        while (packages.size() < packageCount) {
+            String pkg = queue.removeFirst();
+            packages.add(pkg);
+            for (int i = 0; i < fanout; i ++) {
+                queue.add(pkg + ".p" + (packages.size() - 1) + "_" + i);
+            }
+        }
+
+        // One in five types is an interface.
+        String[] names = new String[classes];
+        boolean[] abstractClasses = new boolean[classes];
+        for (int i = 0; i < classes; i ++) {
+            names[i] = packages.get(i / packageSize) + (i % 5 == 0? ".I" : ".C") + i;
+        }
+
+        for (int i = 0; i < classes; i ++) {
+            boolean iface = i % 5 == 0;
+            String name = names[i];
+            String pkg = name.substring(0, name.lastIndexOf('.'));
+            String simpleName = name.substring(pkg.length() + 1);
+
+            StringBuilder buf = new StringBuilder(4096);
+            buf.append("package " + pkg + ";\n\n");
+            buf.append("/**\n * Synthetic type " + i + ".\n");
+            int tags = (int) tagDensity + (random.nextDouble() < tagDensity % 1? 1 : 0);
+            for (int j = 0; j < tags; j ++) {
+                String target = names[random.nextInt(classes)];
+                switch (random.nextInt(5)) {
+                case 0:
+                    buf.append(" * @apiviz.has " + target + " oneway - 0..* contains\n");
+                    break;
+                case 1:
+                    buf.append(" * @apiviz.owns " + target + " 1 *\n");
+                    break;
+                case 2:
+                    buf.append(" * @apiviz.composedOf " + target + "\n");
+                    break;
+                case 3:
+                    buf.append(" * @see " + target + "\n");
+                    break;
+                default:
+                    buf.append(" * @apiviz.uses " + target + "\n");
+                }
+            }
+            if (random.nextInt(50) == 0) {
+                buf.append(" * @apiviz.landmark\n");
+            }
+            buf.append(" */\n");
+
+            List<String> superInterfaces = new ArrayList<String>();
+            for (int j = random.nextInt(3); j > 0 && i >= 5; j --) {
+                String s = names[random.nextInt(i / 5) * 5];
+                if (!superInterfaces.contains(s)) {
+                    superInterfaces.add(s);
+                }
+            }
+
+            if (iface) {
+                buf.append("public interface " + simpleName);
+                appendList(buf, " extends ", superInterfaces);
+            } else {
+                int superclass = -1;
+                if (i > 1 && random.nextInt(10) < 7) {
+                    do {
+                        superclass = random.nextInt(i);
+                    } while (superclass % 5 == 0);
+                }
+
+                // A class which implements an interface doesn't implement
+                // its methods.
+                abstractClasses[i] =
+                    !superInterfaces.isEmpty() ||
+                    superclass >= 0 && abstractClasses[superclass];
+                buf.append("public " + (abstractClasses[i]? "abstract " : "") +
+                           "class " + simpleName);
+                if (superclass >= 0) {
+                    buf.append(" extends " + names[superclass]);
+                }
+                appendList(buf, " implements ", superInterfaces);
+            }
+            buf.append(" {\n");
+
+            for (int j = random.nextInt(4); j > 0; j --) {
+                String returnType = names[random.nextInt(classes)];
+                String paramType = names[random.nextInt(classes)];
+                buf.append("    /** Method " + j + ". */\n");
+                buf.append("    " + (iface? "" : "public ") + returnType + " m" + i + "_" + j +
+                           "(" + paramType + " p)" + (iface? ";\n" : " { return null; }\n"));
+            }
+            if (!iface) {
+                for (int j = random.nextInt(3); j > 0; j --) {
+                    buf.append("    /** Field " + j + ". */\n");
+                    buf.append("    protected " + names[random.nextInt(classes)] + " f" + j + ";\n");
+                }
+            }
+            buf.append("}\n");
+
+            writeSource(srcDir, pkg, simpleName, buf.toString());
+        }
+
+        for (String pkg: packages) {
+            writeSource(
+                    srcDir, pkg, "package-info",
+                    "/**\n * Synthetic package.\n" +
+                    (random.nextInt(8) == 0? " * @apiviz.landmark\n" : "") +
+                    " */\npackage " + pkg + ";\n");
+        }
+        return packages.size();
+    }
+
+    private static void appendList(StringBuilder buf, String keyword, List<String> names) {
+        for (int i = 0; i < names.size(); i ++) {
+            buf.append(i == 0? keyword : ", ");
+            buf.append(names.get(i));
+        }
+    }
+
+    private static void writeSource(File srcDir, String pkg, String name, String content) throws IOException {
+        File dir = new File(srcDir, pkg.replace('.', File.separatorChar));
+        dir.mkdirs();
+        FileUtil.writeFile(new File(dir, name + ".java"), content);
+    }
+
+    /**
+     * Runs javadoc in a new JVM whose {@code PATH} finds the stand-in
+     * {@code dot} first.
+     *
+     * @return the exit code of javadoc, the elapsed time in nanoseconds and
+     *         the peak heap usage in bytes
+     */
+    private static long[] runChild(
+            File binDir, File srcDir, File outDir, File logFile,
+            String maxHeap, List<String> javadocOptions) throws IOException {
+
+        String classPath = getClassPath();
+        File toolsJar = new File(
+                System.getProperty("java.home") + File.separator + ".." +
+                File.separator + "lib" + File.separator + "tools.jar");
+        if (toolsJar.isFile()) {
+            classPath += File.pathSeparator + toolsJar.getCanonicalPath();
+        }
+
+        List<String> command = new ArrayList<String>();
+        command.add(getJavaExecutable());
+        if (maxHeap != null) {
+            command.add("-Xmx" + maxHeap);
+        }
+        command.add("-cp");
+        command.add(classPath);
+        command.add(ScalingBenchmark.class.getName());
+        command.add(RUN_JAVADOC);
+        command.add("-d");
+        command.add(outDir.getAbsolutePath());
+        command.add("-sourcepath");
+        command.add(srcDir.getAbsolutePath());
+        command.add("-subpackages");
+        command.add(ROOT_PACKAGE);
+        command.add("-quiet");
+        command.addAll(javadocOptions);
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectErrorStream(true);
+        Map<String, String> env = pb.environment();
+        String path = env.get("PATH");
+        env.put("PATH", binDir.getAbsolutePath() +
+                (path == null? "" : File.pathSeparator + path));
+
+        Process p = pb.start();
+        p.getOutputStream().close();
+        long[] result = null;
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(p.getInputStream(), "UTF-8"));
+        Writer log = new OutputStreamWriter(new FileOutputStream(logFile), "UTF-8");
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    String[] values = line.substring(RESULT_PREFIX.length()).split(" ");
+                    result = new long[values.length];
+                    for (int i = 0; i < values.length; i ++) {
+                        result[i] = Long.parseLong(values[i]);
+                    }
+                } else {
+                    log.write(line);
+                    log.write('\n');
+                }
+            }
+        } finally {
+            try {
+                log.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+            in.close();
+        }
+
+        for (;;) {
+            try {
+                p.waitFor();
+                break;
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+        }
+        if (result == null) {
+            throw new IOException(
+                    "javadoc terminated abnormally (exit code: " + p.exitValue() +
+                    "); see " + logFile);
+        }
+        return result;
+    }
+
+    /**
+     * Runs javadoc with APIviz in this JVM and prints the result for
+     * {@link #runChild}.  The heap usage is sampled in the background.
+     */
+    private static void runJavadoc(List<String> args) {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        final long[] peakHeap = new long[1];
+        Thread sampler = new Thread("APIviz-heap-sampler") {
+            @Override
+            public void run() {
+                for (;;) {
+                    long used = memory.getHeapMemoryUsage().getUsed();
+                    synchronized (peakHeap) {
+                        peakHeap[0] = Math.max(peakHeap[0], used);
+                    }
+                    try {
+                        Thread.sleep(HEAP_SAMPLING_INTERVAL);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        sampler.setDaemon(true);
+        sampler.start();
+
+        long startTime = System.nanoTime();
+        int exitCode = com.sun.tools.javadoc.Main.execute(
+                "javadoc", APIviz.class.getName(), args.toArray(new String[args.size()]));
+        long elapsedTime = System.nanoTime() - startTime;
+
+        sampler.interrupt();
+        long peak;
+        synchronized (peakHeap) {
+            peak = Math.max(peakHeap[0], memory.getHeapMemoryUsage().getUsed());
+        }
+        System.out.println(RESULT_PREFIX + exitCode + " " + elapsedTime + " " + peak);
+    }
+
+    /**
+     * Counts all files, the HTML pages and the pages a diagram was placed
+     * into.
+     */
+    private static void countFiles(File dir, int[] counts) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f: files) {
+            if (f.isDirectory()) {
+                countFiles(f, counts);
+                continue;
+            }
+            String name = f.getName();
+            counts[0] ++;
+            if (name.endsWith(".html")) {
+                counts[1] ++;
+                if (FileUtil.readFile(f).indexOf(DiagramGenerator.DIAGRAM_START) >= 0) {
+                    counts[2] ++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of the diagrams the report of a run marks as
+     * failed, or {@code -1} if the run wrote no report.
+     */
+    private static int countFailedDiagrams(File outDir) throws IOException {
+        File report = new File(outDir, PerformanceReport.JSON_FILE);
+        if (!report.isFile()) {
+            return -1;
+        }
+        String content = FileUtil.readFile(report);
+        int count = 0;
+        for (int i = content.indexOf(FAILED_STATUS); i >= 0;
+             i = content.indexOf(FAILED_STATUS, i + FAILED_STATUS.length())) {
+            count ++;
+        }
+        return count;
+    }
+
+    private static void deleteRecursively(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c: children) {
+                deleteRecursively(c);
+            }
+        }
+        f.delete();
+    }
+}
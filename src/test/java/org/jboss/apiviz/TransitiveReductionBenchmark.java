@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2008  Trustin Heuiseung Lee
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, 5th Floor, Boston, MA 02110-1301 USA
+ */
+package org.jboss.apiviz;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Measures {@link TransitiveReduction} on random package dependency graphs
+ * of 500, 2,000 and 10,000 packages, and compares its result with the
+ * previous edge-by-edge reduction of the overview diagram on the graphs
+ * small enough for it.
+ * <pre>
+ * java org.jboss.apiviz.TransitiveReductionBenchmark [cycles] [legacyLimit]
+ * </pre>
+ * {@code cycles} is the percentage of packages with a dependency on a
+ * package which depends on them (default: 0, i.e. acyclic graphs).
+ *
+ * @author The APIviz Project (http://apiviz.googlecode.com/)
+ * @author Trustin Lee (http://gleamynode.net/)
+ *
+ * @version $Rev$, $Date$
+ *
+ */
+public class TransitiveReductionBenchmark {
+
+    private static final int[] SIZES = { 500, 2000, 10000 };
+    private static final int DEPENDENCIES_PER_PACKAGE = 6;
+
+    public static void main(String[] args) throws Exception {
+        int cycles = args.length > 0? Integer.parseInt(args[0]) : 0;
+        int legacyLimit = args.length > 1? Integer.parseInt(args[1]) : 500;
+
+        // Warm up.
+        for (int i = 0; i < 5; i ++) {
+            TransitiveReduction.reduce(newGraph(new Random(i), 500, cycles));
+        }
+
+        for (int packages: SIZES) {
+            Set<Edge> edges = newGraph(new Random(42), packages, cycles);
+            int edgeCount = edges.size();
+
+            Set<Edge> reduced = new TreeSet<Edge>(edges);
+            long startTime = System.nanoTime();
+            TransitiveReduction.reduce(reduced);
+            long elapsed = (System.nanoTime() - startTime) / 1000000;
+
+            System.out.println(
+                    "Packages: " + packages + ", edges: " + edgeCount +
+                    " -> " + reduced.size() + ", " + elapsed + " ms");
+
+            if (packages <= legacyLimit) {
+                Set<Edge> legacy = new TreeSet<Edge>(edges);
+                startTime = System.nanoTime();
+                reduceLegacy(legacy);
+                elapsed = (System.nanoTime() - startTime) / 1000000;
+                System.out.println(
+                        "  Legacy: " + legacy.size() + " edges, " + elapsed + " ms, " +
+                        (legacy.equals(reduced)? "same result" : "DIFFERENT RESULT"));
+            }
+        }
+    }
+
+    /**
+     * Generates a package dependency graph where each package depends on
+     * up to {@link #DEPENDENCIES_PER_PACKAGE} packages, mostly nearby ones
+     * as in a layered API.
+     */
+    static Set<Edge> newGraph(Random random, int packages, int cycles) {
+        ApiPackage[] docs = new ApiPackage[packages];
+        for (int i = 0; i < packages; i ++) {
+            docs[i] = new ApiPackage(
+                    "org.example.p" + (100000 + i), true, null,
+                    Collections.<ApiTag>emptyList());
+        }
+
+        Set<Edge> edges = new TreeSet<Edge>();
+        for (int i = 1; i < packages; i ++) {
+            int dependencies = 1 + random.nextInt(DEPENDENCIES_PER_PACKAGE);
+            for (int j = 0; j < dependencies; j ++) {
+                int distance = 1 + (int) Math.abs(random.nextGaussian() * 20);
+                int target = Math.max(0, i - distance);
+                edges.add(new Edge(EdgeType.DEPENDENCY, docs[i], docs[target]));
+            }
+            if (random.nextInt(100) < cycles) {
+                int target = Math.max(0, i - 1 - random.nextInt(10));
+                edges.add(new Edge(EdgeType.DEPENDENCY, docs[target], docs[i]));
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * The reduction of the overview diagram before
+     * {@link TransitiveReduction} was introduced.
+     */
+    static void reduceLegacy(Set<Edge> edgesToRender) {
+        Map<ApiElement, Set<ApiElement>> dependencies = new HashMap<ApiElement, Set<ApiElement>>();
+        for (Edge edge: edgesToRender) {
+            Set<ApiElement> nextDependencies = dependencies.get(edge.getSource());
+            if (nextDependencies == null) {
+                nextDependencies = new HashSet<ApiElement>();
+                dependencies.put(edge.getSource(), nextDependencies);
+            }
+            nextDependencies.add(edge.getTarget());
+        }
+
+        for (int i = edgesToRender.size(); i > 0 ; i --) {
+            for (Edge edge: edgesToRender) {
+                if (isIndirectlyReachable(dependencies, edge.getSource(), edge.getTarget())) {
+                    edgesToRender.remove(edge);
+                    Set<ApiElement> targets = dependencies.get(edge.getSource());
+                    if (targets != null) {
+                        targets.remove(edge.getTarget());
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    private static boolean isIndirectlyReachable(Map<ApiElement, Set<ApiElement>> dependencyGraph, ApiElement source, ApiElement target) {
+        Set<ApiElement> intermediaryTargets = dependencyGraph.get(source);
+        if (intermediaryTargets == null || intermediaryTargets.isEmpty()) {
+            return false;
+        }
+
+        Set<ApiElement> visited = new HashSet<ApiElement>();
+        visited.add(source);
+
+        for (ApiElement t: intermediaryTargets) {
+            if (t == target) {
+                continue;
+            }
+            if (isIndirectlyReachable(dependencyGraph, t, target, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIndirectlyReachable(Map<ApiElement, Set<ApiElement>> dependencyGraph, ApiElement source, ApiElement target, Set<ApiElement> visited) {
+        if (visited.contains(source)) {
+            return false;
+        }
+        visited.add(source);
+
+        Set<ApiElement> intermediaryTargets = dependencyGraph.get(source);
+        if (intermediaryTargets == null || intermediaryTargets.isEmpty()) {
+            return false;
+        }
+
+        for (ApiElement t: intermediaryTargets) {
+            if (t == target) {
+                return true;
+            }
+
+            if (isIndirectlyReachable(dependencyGraph, t, target, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}